@@ -31,6 +31,16 @@ android {
         sourceCompatibility = JavaVersion.VERSION_11
         targetCompatibility = JavaVersion.VERSION_11
     }
+
+    testOptions {
+        // ScreenLeakTest inflates the real layouts under Robolectric.
+        unitTests.isIncludeAndroidResources = true
+    }
+
+    sourceSets {
+        // EmergencyLatencyBenchmark replays the same recorded traces on a device.
+        getByName("androidTest").resources.srcDir("src/test/resources")
+    }
 }
 
 dependencies {
@@ -49,6 +59,8 @@ dependencies {
     implementation("com.google.firebase:firebase-firestore")
     implementation(libs.firebase.database)
     testImplementation(libs.junit)
+    testImplementation("org.robolectric:robolectric:4.14.1")
+    testImplementation("org.mockito:mockito-core:5.14.2")
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
 
@@ -0,0 +1,46 @@
+package com.example.smartech;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures spoken-name lookups in a {@link ContactIndex} of 1000 contacts.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ContactIndexBenchmark {
+
+    private static final String TAG = "ContactIndexBenchmark";
+    private static final int CONTACT_COUNT = 1000;
+    private static final int LOOKUPS = 100000;
+
+    @Test
+    public void lookupLatencyAt1kContacts() {
+        List<ContactIndex.Contact> contacts = new ArrayList<>();
+        for (int i = 0; i < CONTACT_COUNT; i++) {
+            contacts.add(new ContactIndex.Contact("First" + i, "Last" + i, i + "@example.com"));
+        }
+        ContactIndex index = new ContactIndex(contacts);
+
+        int hits = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            hits += index.find("first" + (i % CONTACT_COUNT) + " last" + (i % CONTACT_COUNT)).size();
+        }
+        double microsPerLookup = (System.nanoTime() - start) / 1e3 / LOOKUPS;
+        Log.i(TAG, String.format(Locale.US, "%d contacts: %.2f us per lookup", CONTACT_COUNT, microsPerLookup));
+
+        assertEquals(LOOKUPS, hits);
+        // Scanning every contact for each word would take well over this on any phone.
+        assertTrue("lookup took " + microsPerLookup + " us", microsPerLookup < 50);
+    }
+}
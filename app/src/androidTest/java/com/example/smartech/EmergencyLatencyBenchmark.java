@@ -0,0 +1,339 @@
+package com.example.smartech;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Replays the recorded shakes from {@code src/test/resources/traces} on a device or emulator and
+ * asserts the p99 of {@link EmergencyLatencyTracer.Trace#getOverheadMs()} against the SLO.
+ *
+ * Samples are batched the way the adaptive sampling policy registers the accelerometer. After a
+ * detection everything runs on the real threads: the countdown on the main looper, contacts
+ * decrypted from {@link EmergencyContactStore} with the keystore key, and the dispatcher's send
+ * pool, with fake transports in place of SMS and the relay so nothing leaves the device. Launching
+ * the emergency screen is not included; the field log line from {@link EmergencyDispatchQueue}
+ * covers it.
+ * <pre>
+ * ./gradlew connectedDebugAndroidTest -Pandroid.testInstrumentationRunnerArguments.class=com.example.smartech.EmergencyLatencyBenchmark
+ * </pre>
+ * Optional runner arguments: {@code phases} (default 6), how many batch offsets each trace is
+ * replayed at, and {@code sendMs} (default 200), the fake transports' latency.
+ */
+@RunWith(AndroidJUnit4.class)
+public class EmergencyLatencyBenchmark {
+
+    private static final String TAG = "EmergencyLatency";
+    private static final String USER_ID = "latency-benchmark";
+    private static final String[] SHAKE_TRACES = {
+            "shake_vigorous", "shake_gentle", "shake_opposite_axes_while_walking"};
+    private static final long MS = 1000000L;
+    private static final long LOCATION_FIX_MS = 100;
+
+    private final Handler main = new Handler(Looper.getMainLooper());
+    private final ExecutorService senders = Executors.newFixedThreadPool(4);
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final EmergencyLatencyTracer tracer = new EmergencyLatencyTracer();
+
+    private int phases;
+    private long sendMs;
+    private EmergencyContactStore store;
+    private EmergencyDispatcher dispatcher;
+    private EmergencyAlertPreparer preparer;
+    private EmergencyCountdown countdown;
+    private CountDownLatch finished;
+    private EmergencyLatencyTracer.Trace result;
+
+    @Before
+    public void setUp() {
+        Bundle arguments = InstrumentationRegistry.getArguments();
+        phases = Integer.parseInt(arguments.getString("phases", "6"));
+        sendMs = Long.parseLong(arguments.getString("sendMs", "200"));
+
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        List<ContactIndex.Contact> contacts = new ArrayList<>();
+        contacts.add(new ContactIndex.Contact("Sam", "Lee", "sam@example.com", "+15550001"));
+        contacts.add(new ContactIndex.Contact("Kim", "Park", "kim@example.com", "+15550002"));
+        contacts.add(new ContactIndex.Contact("Ali", "Khan", "ali@example.com"));
+        store = EmergencyContactStore.getInstance(context);
+        store.save(USER_ID, contacts);
+
+        List<EmergencyDispatcher.Transport> transports = new ArrayList<>();
+        transports.add(new FakeTransport("sms", sendMs, true));
+        transports.add(new FakeTransport("relay", sendMs, false));
+        dispatcher = new EmergencyDispatcher(transports, senders, scheduler, new EmergencyDispatcher.Store() {
+            @Override
+            public void save(List<EmergencyDispatcher.Delivery> deliveries) {}
+
+            @Override
+            public List<EmergencyDispatcher.Delivery> load() {
+                return Collections.emptyList();
+            }
+        }, Runnable::run, System::currentTimeMillis);
+        dispatcher.setListener(new EmergencyDispatcher.Listener() {
+            @Override
+            public void onDeliveryChanged(EmergencyDispatcher.Delivery delivery) {
+                if (delivery.getStatus() == EmergencyDispatcher.Status.SENT) {
+                    tracer.sent(delivery.alertId, delivery.getTransport(), SystemClock.elapsedRealtimeNanos());
+                }
+            }
+
+            @Override
+            public void onAlertFinished(String alertId, List<EmergencyDispatcher.Delivery> deliveries) {
+                result = tracer.finish(alertId);
+                finished.countDown();
+            }
+        });
+
+        preparer = new EmergencyAlertPreparer(this::loadContacts, locationSource);
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> countdown = new EmergencyCountdown(main,
+                new EmergencyCountdown.Listener() {
+                    @Override
+                    public void onTick(int secondsLeft) {}
+
+                    @Override
+                    public void onExpired() {
+                        tracer.mark(EmergencyLatencyTracer.Stage.COUNTDOWN_ENDED, SystemClock.elapsedRealtimeNanos());
+                        preparer.fire(alert -> {
+                            long dispatchNs = SystemClock.elapsedRealtimeNanos();
+                            String alertId = dispatcher.dispatch(alert.contacts, alert.subject, alert.getBody());
+                            tracer.dispatched(alertId, dispatchNs);
+                        });
+                    }
+
+                    @Override
+                    public void onCancelled() {
+                        tracer.cancel();
+                    }
+                }));
+    }
+
+    @After
+    public void tearDown() {
+        store.clear();
+        senders.shutdownNow();
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void recordedShakes_meetTheP99Slo() throws Exception {
+        List<EmergencyLatencyTracer.Trace> traces = new ArrayList<>();
+        int expected = 0;
+        for (String name : SHAKE_TRACES) {
+            Recording recording = Recording.load(name);
+            for (int phase = 0; phase < phases; phase++) {
+                expected += recording.expectedShakes;
+                long offsetNs = AdaptiveSamplingPolicy.STILL_RATE.maxReportLatencyUs * 1000L * phase / phases;
+                traces.addAll(replay(recording, offsetNs));
+            }
+        }
+
+        long[] overheads = new long[traces.size()];
+        StringBuilder report = new StringBuilder();
+        for (int i = 0; i < traces.size(); i++) {
+            overheads[i] = traces.get(i).getOverheadMs();
+            report.append(traces.get(i).describe()).append('\n');
+        }
+        long p50 = EmergencyLatencyTracer.percentile(overheads, overheads.length, 50);
+        long p99 = EmergencyLatencyTracer.percentile(overheads, overheads.length, 99);
+        Log.i(TAG, String.format("%d of %d shakes alerted, overhead p50 %d ms, p99 %d ms, SLO %d ms, sends %d ms:%n%s",
+                traces.size(), expected, p50, p99, EmergencyLatencyTracer.SLO_P99_MS, sendMs, report));
+
+        assertEquals("shakes alerted", expected, traces.size());
+        assertTrue("p99 " + p99 + " ms", p99 <= EmergencyLatencyTracer.SLO_P99_MS);
+    }
+
+    /**
+     * Feeds the detector batch by batch at the rate the policy asks for; see the JVM harness in
+     * {@code EmergencyLatencyTracerTest} for the model.
+     */
+    private List<EmergencyLatencyTracer.Trace> replay(Recording recording, long offsetNs) throws InterruptedException {
+        AdaptiveSamplingPolicy policy = new AdaptiveSamplingPolicy(new PowerBudget(PowerBudget.DEFAULT_DAILY_BUDGET_MAH,
+                PowerBudget.TYPICAL_ACCELEROMETER_MA, PowerBudget.TYPICAL_GYROSCOPE_MA));
+        List<Long> fired = new ArrayList<>();
+        ShakeDetector detector = new ShakeDetector(ShakeDetector.DEFAULT_CONFIG, fired::add);
+        List<EmergencyLatencyTracer.Trace> traces = new ArrayList<>();
+
+        int i = 0;
+        long lastSampleNs = recording.timestampsNs[0] - AdaptiveSamplingPolicy.STILL_RATE.samplingPeriodUs * 1000L;
+        boolean first = true;
+        while (i < recording.size()) {
+            AdaptiveSamplingPolicy.Rate rate = policy.getRate();
+            long deliveredAtNs = recording.timestampsNs[i] + rate.maxReportLatencyUs * 1000L - (first ? offsetNs : 0);
+            first = false;
+            for (; i < recording.size() && recording.timestampsNs[i] <= deliveredAtNs; i++) {
+                if (recording.timestampsNs[i] - lastSampleNs < rate.samplingPeriodUs * 1000L - MS) continue;
+                lastSampleNs = recording.timestampsNs[i];
+                detector.onSample(recording.timestampsNs[i], recording.x[i], recording.y[i], recording.z[i]);
+                policy.onAccelerometer(recording.timestampsNs[i], recording.x[i], recording.y[i], recording.z[i]);
+                for (long sampleNs : fired) {
+                    long now = SystemClock.elapsedRealtimeNanos();
+                    traces.add(runAlert(now - (deliveredAtNs - sampleNs), now));
+                }
+                fired.clear();
+            }
+        }
+        return traces;
+    }
+
+    /** One alert from detection until every contact was reached, with the shortest countdown. */
+    private EmergencyLatencyTracer.Trace runAlert(long sensorNs, long detectedNs) throws InterruptedException {
+        finished = new CountDownLatch(1);
+        tracer.begin(EmergencyMonitorService.TRIGGER_SHAKE, sensorNs, detectedNs);
+        main.post(() -> {
+            tracer.mark(EmergencyLatencyTracer.Stage.COUNTDOWN_STARTED, SystemClock.elapsedRealtimeNanos());
+            preparer.start();
+            countdown.start(1);
+        });
+        assertTrue(finished.await(30, TimeUnit.SECONDS));
+        return result;
+    }
+
+    private void loadContacts(Consumer<List<ContactIndex.Contact>> callback) {
+        scheduler.execute(() -> {
+            List<ContactIndex.Contact> loaded = store.load(USER_ID);
+            tracer.mark(EmergencyLatencyTracer.Stage.CONTACTS_RESOLVED, SystemClock.elapsedRealtimeNanos());
+            callback.accept(loaded != null ? loaded : Collections.<ContactIndex.Contact>emptyList());
+        });
+    }
+
+    private final EmergencyAlertPreparer.LocationSource locationSource = new EmergencyAlertPreparer.LocationSource() {
+        @Override
+        public void requestFix(Consumer<LocationFix> callback) {
+            main.postDelayed(() -> {
+                tracer.mark(EmergencyLatencyTracer.Stage.LOCATION_FIXED, SystemClock.elapsedRealtimeNanos());
+                callback.accept(new LocationFix().set(LocationEscalator.Source.GPS, 1.0, 2.0, 5f,
+                        SystemClock.elapsedRealtime()));
+            }, LOCATION_FIX_MS);
+        }
+
+        @Override
+        public void cancel() {}
+
+        @Override
+        public LocationFix lastKnown() {
+            return new LocationFix();
+        }
+
+        @Override
+        public BreadcrumbTrail trail() {
+            return null;
+        }
+    };
+
+    /** Sends after a latency that varies by up to half again. */
+    private static class FakeTransport implements EmergencyDispatcher.Transport {
+        private final String name;
+        private final long latencyMs;
+        private final boolean needsPhone;
+        private final Random random = new Random(7);
+
+        FakeTransport(String name, long latencyMs, boolean needsPhone) {
+            this.name = name;
+            this.latencyMs = latencyMs;
+            this.needsPhone = needsPhone;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public boolean canReach(ContactIndex.Contact contact) {
+            return needsPhone ? !contact.phone.isEmpty() : !contact.email.isEmpty();
+        }
+
+        @Override
+        public boolean supportsAttachments() {
+            return false;
+        }
+
+        @Override
+        public void send(EmergencyDispatcher.Delivery delivery, EmergencyDispatcher.Callback callback) {
+            long jitterMs;
+            synchronized (random) {
+                jitterMs = (long) (random.nextDouble() * latencyMs / 2);
+            }
+            SystemClock.sleep(latencyMs + jitterMs);
+            callback.onSent();
+        }
+    }
+
+    /** An accelerometer trace in the format described in the traces README. */
+    private static class Recording {
+        final int expectedShakes;
+        final long[] timestampsNs;
+        final float[] x, y, z;
+
+        private Recording(int expectedShakes, List<float[]> rows, List<Long> times) {
+            this.expectedShakes = expectedShakes;
+            timestampsNs = new long[rows.size()];
+            x = new float[rows.size()];
+            y = new float[rows.size()];
+            z = new float[rows.size()];
+            for (int i = 0; i < rows.size(); i++) {
+                timestampsNs[i] = times.get(i);
+                x[i] = rows.get(i)[0];
+                y[i] = rows.get(i)[1];
+                z[i] = rows.get(i)[2];
+            }
+        }
+
+        int size() {
+            return timestampsNs.length;
+        }
+
+        static Recording load(String name) throws IOException {
+            InputStream in = EmergencyLatencyBenchmark.class.getResourceAsStream("/traces/" + name + ".csv");
+            assertNotNull("missing trace " + name, in);
+
+            int expected = 0;
+            List<float[]> rows = new ArrayList<>();
+            List<Long> times = new ArrayList<>();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith("# expectedShakes=")) {
+                        expected = Integer.parseInt(line.substring("# expectedShakes=".length()).trim());
+                        continue;
+                    }
+                    if (line.startsWith("#") || line.startsWith("timestamp") || line.isEmpty()) continue;
+                    String[] parts = line.split(",");
+                    times.add(Long.parseLong(parts[0]) * MS);
+                    rows.add(new float[]{Float.parseFloat(parts[1]), Float.parseFloat(parts[2]), Float.parseFloat(parts[3])});
+                }
+            }
+            return new Recording(expected, rows, times);
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.example.smartech;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures the app's data paths end to end against the local Firebase emulator suite.
+ *
+ * Each flow runs the production repositories (profile, contacts, planner queue and store),
+ * first with no added latency and then behind a
+ * {@link LatencyProxy}. Round trips are derived from the difference: a flow that waits on the
+ * network {@code n} times slows down by about {@code n} round-trip times.
+ *
+ * Needs no real Firebase project. On the host:
+ * <pre>
+ * firebase emulators:exec --project demo-smartech \
+ *     "./gradlew connectedDebugAndroidTest -Pandroid.testInstrumentationRunnerArguments.class=com.example.smartech.FlowBenchmark"
+ * </pre>
+ * Optional runner arguments: {@code emulatorHost} (default 10.0.2.2, the host seen from an
+ * Android emulator), {@code rttMs} (default 150) and {@code iterations} (default 5).
+ */
+@RunWith(AndroidJUnit4.class)
+public class FlowBenchmark {
+
+    private static final String TAG = "FlowBenchmark";
+    private static final String PASSWORD = "benchmark-password";
+    private static final long TIMEOUT_SECONDS = 30;
+
+    private static final List<LatencyProxy> proxies = new ArrayList<>();
+    private static String emulatorHost;
+    private static long rttMs;
+    private static int iterations;
+
+    private static Context context;
+    private static String email;
+    private static String userId;
+
+    private interface Flow {
+        void run() throws Exception;
+    }
+
+    @BeforeClass
+    public static void connectToEmulators() throws Exception {
+        Bundle arguments = InstrumentationRegistry.getArguments();
+        emulatorHost = arguments.getString("emulatorHost", "10.0.2.2");
+        rttMs = Long.parseLong(arguments.getString("rttMs", "150"));
+        iterations = Integer.parseInt(arguments.getString("iterations", "5"));
+
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        FirebaseApp.initializeApp(context);
+        FirebaseAuth.getInstance().useEmulator("127.0.0.1", proxy(9099));
+        FirebaseFirestore.getInstance().useEmulator("127.0.0.1", proxy(8080));
+        FirebaseDatabase.getInstance().useEmulator("127.0.0.1", proxy(9000));
+
+        email = "bench-" + UUID.randomUUID() + "@example.com";
+        userId = Tasks.await(FirebaseAuth.getInstance().createUserWithEmailAndPassword(email, PASSWORD),
+                TIMEOUT_SECONDS, TimeUnit.SECONDS).getUser().getUid();
+        seed();
+    }
+
+    @AfterClass
+    public static void closeProxies() throws Exception {
+        for (LatencyProxy proxy : proxies) {
+            proxy.close();
+        }
+    }
+
+    @Test
+    public void dataPathFlows() throws Exception {
+        Map<String, Flow> flows = new LinkedHashMap<>();
+        flows.put("login", FlowBenchmark::login);
+        flows.put("greeting", FlowBenchmark::greeting);
+        flows.put("task add/remove", FlowBenchmark::addAndRemoveTask);
+        flows.put("emergency contacts", FlowBenchmark::emergencyContacts);
+        flows.put("help contact lookup", FlowBenchmark::helpContactLookup);
+
+        StringBuilder report = new StringBuilder(String.format("%-20s %10s %10s %10s %12s%n",
+                "flow", "p50 ms", "p50 +rtt", "trips", "meter"));
+        for (Map.Entry<String, Flow> entry : flows.entrySet()) {
+            setOneWayDelay(0);
+            double baseline = median(time(entry.getValue()));
+
+            setOneWayDelay(rttMs / 2);
+            FirestoreMeter.beginFlow(DataAccessMeter.Flow.OTHER);
+            double delayed = median(time(entry.getValue()));
+            DataAccessMeter.Usage usage = DataAccessMeter.getInstance().getUsage(DataAccessMeter.Flow.OTHER);
+
+            double roundTrips = rttMs > 0 ? (delayed - baseline) / rttMs : 0;
+            report.append(String.format("%-20s %10.1f %10.1f %10.1f   %dr/%dw per %d runs%n", entry.getKey(),
+                    baseline, delayed, roundTrips, usage.reads, usage.writes, iterations));
+        }
+        Log.i(TAG, "Emulator flows, injected RTT " + rttMs + " ms:\n" + report);
+    }
+
+    private static void login() throws Exception {
+        FirebaseAuth.getInstance().signOut();
+        onMain(() -> UserProfileRepository.getInstance(context).clear());
+        Tasks.await(FirebaseAuth.getInstance().signInWithEmailAndPassword(email, PASSWORD),
+                TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        awaitProfile(() -> UserProfileRepository.getInstance(context).start(userId));
+    }
+
+    private static void greeting() throws Exception {
+        awaitProfile(() -> UserProfileRepository.getInstance(context).startForCurrentUser());
+        assertNotNull(UserProfileRepository.getInstance(context).getDisplayName());
+    }
+
+    private static void emergencyContacts() throws Exception {
+        // A fresh process: the listener is gone but the on-disk snapshot remains.
+        awaitProfile(() -> {
+            UserProfileRepository repository = UserProfileRepository.getInstance(context);
+            repository.stop();
+            repository.start(userId);
+        });
+        assertFalse(UserProfileRepository.getInstance(context).getEmergencyContacts().isEmpty());
+    }
+
+    /**
+     * Time until a planner add and the matching remove are both acknowledged by the server,
+     * including the queue's write-behind delay.
+     */
+    private static void addAndRemoveTask() throws Exception {
+        PlannerMutationQueue queue = PlannerMutationQueue.getInstance(context);
+        TaskStore[] store = new TaskStore[1];
+        onMain(() -> store[0] = new TaskStore(queue, userId, new TaskStore.Listener() {
+            @Override
+            public void onTasksLoaded(List<TaskStore.PlannerTask> tasks) {}
+
+            @Override
+            public void onTasksChanged(List<TaskStore.PlannerTask> tasks) {}
+
+            @Override
+            public void onTasksError(Exception e) {}
+        }));
+
+        TaskStore.PlannerTask task = store[0].newTask("benchmark task", 0);
+        awaitQueueDrained(queue, () -> store[0].apply(Collections.singletonList(task),
+                Collections.<TaskStore.PlannerTask>emptyList()));
+        awaitQueueDrained(queue, () -> store[0].apply(Collections.<TaskStore.PlannerTask>emptyList(),
+                Collections.singletonList(task)));
+        onMain(store[0]::stop);
+    }
+
+    private static void helpContactLookup() throws Exception {
+        ContactRepository contacts = ContactRepository.getInstance(context);
+        awaitProfile(contacts::startForCurrentUser);
+        assertFalse(contacts.find("alex").isEmpty());
+    }
+
+    private static void seed() throws Exception {
+        Map<String, String> contact = new HashMap<>();
+        contact.put("firstName", "Alex");
+        contact.put("lastName", "Doe");
+        contact.put("email", "alex@example.com");
+
+        Map<String, Object> user = new HashMap<>();
+        user.put("userId", userId);
+        user.put("username", "bench");
+        user.put("firstName", "Bench");
+        user.put("lastName", "User");
+        user.put("email", email);
+        user.put("firstTimeLogin", false);
+        user.put("emergencyContacts", Collections.singletonList(contact));
+        Tasks.await(FirebaseFirestore.getInstance().collection("users").document(userId).set(user),
+                TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        Map<String, Object> helpContact = new HashMap<>();
+        helpContact.put("name", "Alex");
+        helpContact.put("email", "alex@example.com");
+        DatabaseReference contacts = FirebaseDatabase.getInstance().getReference()
+                .child("users").child(userId).child("contacts");
+        Tasks.await(contacts.push().setValue(helpContact), TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private static int proxy(int emulatorPort) throws Exception {
+        LatencyProxy proxy = new LatencyProxy(emulatorHost, emulatorPort, 0);
+        proxies.add(proxy);
+        return proxy.start();
+    }
+
+    private static void setOneWayDelay(long delayMs) {
+        for (LatencyProxy proxy : proxies) {
+            proxy.setOneWayDelay(delayMs);
+        }
+    }
+
+    private static double[] time(Flow flow) throws Exception {
+        double[] samples = new double[iterations];
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            flow.run();
+            samples[i] = (System.nanoTime() - start) / 1e6;
+        }
+        return samples;
+    }
+
+    private static double median(double[] samples) {
+        double[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private static void onMain(Runnable action) {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(action);
+    }
+
+    private static void awaitProfile(Runnable start) throws InterruptedException {
+        CountDownLatch loaded = new CountDownLatch(1);
+        onMain(() -> {
+            start.run();
+            UserProfileRepository.getInstance(context).whenLoaded(loaded::countDown);
+        });
+        assertTrue("profile load timed out", loaded.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    private static void awaitQueueDrained(PlannerMutationQueue queue, Runnable mutate) throws InterruptedException {
+        CountDownLatch drained = new CountDownLatch(1);
+        PlannerMutationQueue.Listener listener = () -> {
+            if (queue.getPending().isEmpty()) drained.countDown();
+        };
+        onMain(() -> {
+            queue.addListener(listener);
+            mutate.run();
+        });
+        boolean done = drained.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        onMain(() -> queue.removeListener(listener));
+        assertTrue("planner batch was not acknowledged", done);
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.smartech;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Loopback TCP proxy that delivers every chunk {@code oneWayDelayMs} after it was received, in
+ * both directions, to simulate a slow mobile link in front of the Firebase emulators. Chunks
+ * are queued rather than slept on, so latency is added without capping throughput.
+ */
+class LatencyProxy implements Closeable {
+
+    private static final byte[] END_OF_STREAM = new byte[0];
+
+    private final String targetHost;
+    private final int targetPort;
+    private volatile long oneWayDelayMs;
+    private final List<Socket> sockets = new CopyOnWriteArrayList<>();
+    private ServerSocket serverSocket;
+
+    private static class Chunk {
+        final long deliverAt;
+        final byte[] data;
+
+        Chunk(long deliverAt, byte[] data) {
+            this.deliverAt = deliverAt;
+            this.data = data;
+        }
+    }
+
+    LatencyProxy(String targetHost, int targetPort, long oneWayDelayMs) {
+        this.targetHost = targetHost;
+        this.targetPort = targetPort;
+        this.oneWayDelayMs = oneWayDelayMs;
+    }
+
+    /**
+     * Changes the delay for chunks received from now on, on new and open connections alike.
+     */
+    void setOneWayDelay(long delayMs) {
+        oneWayDelayMs = delayMs;
+    }
+
+    /**
+     * Starts accepting connections and returns the local port to point clients at.
+     */
+    int start() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        Thread acceptor = new Thread(() -> {
+            while (!serverSocket.isClosed()) {
+                try {
+                    Socket client = serverSocket.accept();
+                    Socket target = new Socket(targetHost, targetPort);
+                    client.setTcpNoDelay(true);
+                    target.setTcpNoDelay(true);
+                    sockets.add(client);
+                    sockets.add(target);
+                    pipe(client, target);
+                    pipe(target, client);
+                } catch (IOException e) {
+                    // Closed, or the emulator refused the connection; the client sees the reset.
+                }
+            }
+        }, "LatencyProxy-" + targetPort);
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return serverSocket.getLocalPort();
+    }
+
+    private void pipe(Socket from, Socket to) {
+        BlockingQueue<Chunk> queue = new LinkedBlockingQueue<>();
+
+        Thread reader = new Thread(() -> {
+            byte[] buffer = new byte[16 * 1024];
+            try {
+                InputStream in = from.getInputStream();
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    queue.add(new Chunk(System.currentTimeMillis() + oneWayDelayMs, Arrays.copyOf(buffer, read)));
+                }
+            } catch (IOException ignored) {
+            }
+            queue.add(new Chunk(System.currentTimeMillis() + oneWayDelayMs, END_OF_STREAM));
+        });
+
+        Thread writer = new Thread(() -> {
+            try {
+                OutputStream out = to.getOutputStream();
+                while (true) {
+                    Chunk chunk = queue.take();
+                    long wait = chunk.deliverAt - System.currentTimeMillis();
+                    if (wait > 0) Thread.sleep(wait);
+                    if (chunk.data == END_OF_STREAM) break;
+                    out.write(chunk.data);
+                    out.flush();
+                }
+                to.shutdownOutput();
+            } catch (IOException | InterruptedException ignored) {
+            }
+        });
+
+        reader.setDaemon(true);
+        writer.setDaemon(true);
+        reader.start();
+        writer.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (serverSocket != null) serverSocket.close();
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+    }
+}
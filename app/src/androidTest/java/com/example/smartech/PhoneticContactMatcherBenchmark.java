@@ -0,0 +1,93 @@
+package com.example.smartech;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures misrecognized-name lookup latency with 10k synthetic contacts.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PhoneticContactMatcherBenchmark {
+
+    private static final String TAG = "PhoneticMatchBenchmark";
+    private static final int CONTACT_COUNT = 10000;
+    private static final int WARM_UP = 200;
+    private static final int LOOKUPS = 2000;
+
+    private static final String[] ONSETS = {"b", "c", "d", "f", "g", "j", "k", "l", "m", "n", "p", "r", "s", "t", "v",
+            "w", "z", "br", "ch", "st", "tr", "sh"};
+    private static final String[] VOWELS = {"a", "e", "i", "o", "u", "ay", "ee"};
+    private static final String[] CODAS = {"n", "r", "l", "s", "th", "ck", "m", "x", "nd", "rt"};
+
+    @Test
+    public void lookupLatencyAt10kContacts() {
+        Random random = new Random(11);
+        List<ContactIndex.Contact> contacts = new ArrayList<>();
+        for (int i = 0; i < CONTACT_COUNT; i++) {
+            contacts.add(new ContactIndex.Contact(syllables(random, 2), syllables(random, 3), i + "@example.com"));
+        }
+
+        long buildStart = System.nanoTime();
+        PhoneticContactMatcher matcher = new PhoneticContactMatcher(contacts);
+        double buildMs = (System.nanoTime() - buildStart) / 1e6;
+
+        for (int i = 0; i < WARM_UP; i++) {
+            matcher.match(contacts.get(i).getFullName(), 3);
+        }
+
+        long[] samples = new long[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            ContactIndex.Contact target = contacts.get(random.nextInt(CONTACT_COUNT));
+            String spoken = misspell(random, target.firstName) + " " + target.lastName;
+            long start = System.nanoTime();
+            matcher.match(spoken, 3);
+            samples[i] = System.nanoTime() - start;
+        }
+
+        Arrays.sort(samples);
+        double p50 = samples[LOOKUPS / 2] / 1e3;
+        double p95 = samples[LOOKUPS * 95 / 100] / 1e3;
+        Log.i(TAG, String.format(Locale.US, "%d contacts: build %.1f ms, p50 %.1f us, p95 %.1f us",
+                CONTACT_COUNT, buildMs, p50, p95));
+
+        assertTrue("p95 lookup took " + p95 + " us", p95 < 2000);
+    }
+
+    private static String syllables(Random random, int count) {
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            word.append(ONSETS[random.nextInt(ONSETS.length)]).append(VOWELS[random.nextInt(VOWELS.length)]);
+        }
+        word.append(CODAS[random.nextInt(CODAS.length)]);
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+
+    /** A vowel swapped or a letter doubled or dropped, as a recognizer would. */
+    private static String misspell(Random random, String word) {
+        char[] chars = word.toLowerCase(Locale.ROOT).toCharArray();
+        int position = 1 + random.nextInt(chars.length - 1);
+        switch (random.nextInt(3)) {
+            case 0:
+                if ("aeiou".indexOf(chars[position]) >= 0) {
+                    chars[position] = "aeiou".charAt(random.nextInt(5));
+                }
+                return new String(chars);
+            case 1:
+                return word.substring(0, position) + word.charAt(position) + word.substring(position);
+            default:
+                return word.substring(0, position) + word.substring(position + 1);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.smartech;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures local task lookup latency with 10k indexed tasks.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TaskSearchIndexBenchmark {
+
+    private static final String TAG = "TaskSearchBenchmark";
+    private static final String USER_ID = "benchmark";
+    private static final int TASK_COUNT = 10000;
+    private static final int LOOKUPS = 500;
+
+    private static final String[] VERBS = {"buy", "call", "pick up", "clean", "email", "visit", "pay", "book", "fix", "water"};
+    private static final String[] OBJECTS = {"milk", "mom", "pharmacy", "kitchen", "doctor", "rent", "plants", "bike",
+            "tickets", "groceries", "dentist", "laundry", "bread", "garage", "insurance", "library", "car", "dog"};
+
+    private Context context;
+    private TaskSearchIndex index;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        context.deleteDatabase("task_search_" + USER_ID + ".db");
+        index = new TaskSearchIndex(context, USER_ID);
+
+        Random random = new Random(42);
+        List<TaskStore.PlannerTask> tasks = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < TASK_COUNT; i++) {
+            String text = VERBS[random.nextInt(VERBS.length)] + " " + OBJECTS[random.nextInt(OBJECTS.length)] + " " + i;
+            tasks.add(new TaskStore.PlannerTask("task" + i, text, now - i * 60000L, now + random.nextInt(30) * 86400000L));
+        }
+        index.upsertNow(tasks);
+    }
+
+    @After
+    public void tearDown() {
+        index.close();
+        context.deleteDatabase("task_search_" + USER_ID + ".db");
+    }
+
+    @Test
+    public void lookupLatencyAt10kTasks() {
+        Random random = new Random(7);
+        long[] samples = new long[LOOKUPS];
+        int hits = 0;
+
+        for (int i = 0; i < LOOKUPS; i++) {
+            String query = OBJECTS[random.nextInt(OBJECTS.length)];
+            long start = System.nanoTime();
+            hits += index.searchNow(query, 5).size();
+            samples[i] = System.nanoTime() - start;
+        }
+
+        Arrays.sort(samples);
+        double p50 = samples[LOOKUPS / 2] / 1e6;
+        double p95 = samples[LOOKUPS * 95 / 100] / 1e6;
+        double max = samples[LOOKUPS - 1] / 1e6;
+        Log.i(TAG, String.format("%d tasks, %d lookups: p50=%.2f ms p95=%.2f ms max=%.2f ms",
+                TASK_COUNT, LOOKUPS, p50, p95, max));
+
+        assertTrue(hits > 0);
+        assertTrue("p95 lookup took " + p95 + " ms", p95 < 20);
+    }
+}
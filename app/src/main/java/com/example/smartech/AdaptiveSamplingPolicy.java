@@ -0,0 +1,123 @@
+package com.example.smartech;
+
+/**
+ * Picks the sensor rate for background emergency monitoring.
+ *
+ * While the device is still, only the accelerometer runs, slowly and with hardware batching,
+ * so the application processor wakes about once a second. Batches are kept that short because
+ * a shake that starts from rest is only seen once its batch arrives: with five second batches,
+ * replayed shakes were noticed up to four seconds late or missed outright. The still rate is
+ * 25 Hz rather than lower because a fall from rest happens inside a single batch, before the
+ * policy can switch rates: at 10 Hz the impact of a replayed backward fall fell between
+ * samples. Motion onset switches to the full rate with the gyroscope, which the shake and fall
+ * detectors need, and the policy drops back once the device has been still for a while. When
+ * the {@link PowerBudget} projects the day over budget, active monitoring falls back to a
+ * reduced rate.
+ */
+public class AdaptiveSamplingPolicy {
+
+    public enum Mode { STILL, ACTIVE, ACTIVE_REDUCED }
+
+    public static class Rate {
+        public final int samplingPeriodUs;
+        public final int maxReportLatencyUs;
+        public final boolean gyroscope;
+
+        Rate(int samplingPeriodUs, int maxReportLatencyUs, boolean gyroscope) {
+            this.samplingPeriodUs = samplingPeriodUs;
+            this.maxReportLatencyUs = maxReportLatencyUs;
+            this.gyroscope = gyroscope;
+        }
+
+        /** Samples per second. */
+        public double hz() {
+            return 1e6 / samplingPeriodUs;
+        }
+
+        /** Times per second the application processor is woken to take a batch. */
+        public double wakeupsPerSecond() {
+            return 1e6 / Math.max(samplingPeriodUs, maxReportLatencyUs);
+        }
+    }
+
+    public static final Rate STILL_RATE = new Rate(40000, 1000000, false);
+    public static final Rate ACTIVE_RATE = new Rate(20000, 250000, true);
+    public static final Rate REDUCED_RATE = new Rate(40000, 1000000, true);
+
+    private static final float GRAVITY = 9.80665f;
+    // Deviation of |a| from 1 g that counts as motion.
+    private static final float MOTION_G = 0.15f;
+    private static final long STILL_AFTER_MS = 30000;
+
+    private final PowerBudget budget;
+    private Mode mode = Mode.STILL;
+    private long lastMotionNs;
+    private long modeSinceNs;
+    private boolean started = false;
+
+    public AdaptiveSamplingPolicy(PowerBudget budget) {
+        this.budget = budget;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public Rate getRate() {
+        return rateFor(mode);
+    }
+
+    public static Rate rateFor(Mode mode) {
+        switch (mode) {
+            case ACTIVE:
+                return ACTIVE_RATE;
+            case ACTIVE_REDUCED:
+                return REDUCED_RATE;
+            default:
+                return STILL_RATE;
+        }
+    }
+
+    /**
+     * Feeds an accelerometer sample. Returns true when the mode changed and the sensors have to
+     * be registered again at {@link #getRate()}.
+     */
+    public boolean onAccelerometer(long timestampNs, float x, float y, float z) {
+        if (!started) {
+            started = true;
+            modeSinceNs = timestampNs;
+            lastMotionNs = timestampNs;
+        }
+
+        float g = (float) Math.sqrt(x * x + y * y + z * z) / GRAVITY;
+        boolean moving = Math.abs(g - 1f) > MOTION_G;
+        if (moving) {
+            lastMotionNs = timestampNs;
+        }
+
+        account(timestampNs);
+
+        Mode next = Mode.STILL;
+        boolean recentlyMoving = mode != Mode.STILL
+                && (timestampNs - lastMotionNs) / 1000000L < STILL_AFTER_MS;
+        if (moving || recentlyMoving) {
+            next = budget.isOverBudget() ? Mode.ACTIVE_REDUCED : Mode.ACTIVE;
+        }
+        return switchTo(next);
+    }
+
+    /**
+     * Charges the time spent in the current mode up to {@code timestampNs} to the budget.
+     */
+    public void account(long timestampNs) {
+        if (!started) return;
+        budget.charge(rateFor(mode), (timestampNs - modeSinceNs) / 1e9);
+        modeSinceNs = timestampNs;
+    }
+
+    private boolean switchTo(Mode next) {
+        if (next == mode) return false;
+        mode = next;
+        return true;
+    }
+}
@@ -0,0 +1,214 @@
+package com.example.smartech;
+
+/**
+ * The last few minutes of movement, kept in a fixed-size ring of delta-encoded fixes.
+ *
+ * Positions are stored as fixed-point degrees (1e-5, about a metre) and each entry holds only
+ * its difference from the one before: two shorts for the position and an int of milliseconds.
+ * The oldest entry is kept as absolute values, and is rolled forward when it is evicted. All
+ * arrays are allocated up front, so memory stays the same however long the trail runs, and
+ * {@link #add} never allocates.
+ *
+ * {@link #encode} writes the trail in the encoded polyline format (precision 5) that map tools
+ * read, followed by the time of each point in seconds before the newest one. Not thread safe.
+ */
+public class BreadcrumbTrail {
+
+    static final double SCALE = 1e5;
+
+    private final short[] deltaLat;
+    private final short[] deltaLon;
+    private final int[] deltaTimeMs;
+    private final long minIntervalMs;
+
+    private int head;
+    private int size;
+    private int baseLat, baseLon;
+    private long baseTimeMs;
+    private int lastLat, lastLon;
+    private long lastTimeMs;
+
+    /**
+     * @param capacity how many fixes to keep
+     * @param minIntervalMs fixes closer together than this are dropped
+     */
+    public BreadcrumbTrail(int capacity, long minIntervalMs) {
+        deltaLat = new short[capacity];
+        deltaLon = new short[capacity];
+        deltaTimeMs = new int[capacity];
+        this.minIntervalMs = minIntervalMs;
+    }
+
+    public int capacity() {
+        return deltaLat.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getNewestTimeMs() {
+        return lastTimeMs;
+    }
+
+    /**
+     * Appends a fix taken at {@code timeMs}. Fixes that are out of order, too soon after the
+     * previous one, or too far from it to encode (a short's worth of 1e-5 degrees, about 0.33
+     * degrees or 36 km of latitude) are handled by dropping, skipping, or restarting the trail
+     * respectively. Returns whether it was stored.
+     */
+    public boolean add(double latitude, double longitude, long timeMs) {
+        int lat = (int) Math.round(latitude * SCALE);
+        int lon = (int) Math.round(longitude * SCALE);
+
+        if (size == 0) {
+            start(lat, lon, timeMs);
+            return true;
+        }
+
+        long dt = timeMs - lastTimeMs;
+        if (dt <= 0 || dt < minIntervalMs) return false;
+
+        int dLat = lat - lastLat;
+        int dLon = lon - lastLon;
+        if (dLat != (short) dLat || dLon != (short) dLon || dt > Integer.MAX_VALUE) {
+            start(lat, lon, timeMs);
+            return true;
+        }
+
+        if (size == capacity()) {
+            evictOldest();
+        }
+        int index = (head + size) % capacity();
+        deltaLat[index] = (short) dLat;
+        deltaLon[index] = (short) dLon;
+        deltaTimeMs[index] = (int) dt;
+        size++;
+
+        lastLat = lat;
+        lastLon = lon;
+        lastTimeMs = timeMs;
+        return true;
+    }
+
+    public void clear() {
+        size = 0;
+        head = 0;
+    }
+
+    /** Drops the fixes taken before {@code cutoffMs}, which may leave the trail empty. */
+    public void dropOlderThan(long cutoffMs) {
+        while (size > 1 && baseTimeMs < cutoffMs) {
+            evictOldest();
+        }
+        if (size == 1 && baseTimeMs < cutoffMs) {
+            clear();
+        }
+    }
+
+    /** Copies this trail into {@code target}, which must have the same capacity. */
+    public BreadcrumbTrail copyInto(BreadcrumbTrail target) {
+        if (target.capacity() != capacity()) {
+            throw new IllegalArgumentException("Capacity mismatch");
+        }
+        System.arraycopy(deltaLat, 0, target.deltaLat, 0, capacity());
+        System.arraycopy(deltaLon, 0, target.deltaLon, 0, capacity());
+        System.arraycopy(deltaTimeMs, 0, target.deltaTimeMs, 0, capacity());
+        target.head = head;
+        target.size = size;
+        target.baseLat = baseLat;
+        target.baseLon = baseLon;
+        target.baseTimeMs = baseTimeMs;
+        target.lastLat = lastLat;
+        target.lastLon = lastLon;
+        target.lastTimeMs = lastTimeMs;
+        return target;
+    }
+
+    public BreadcrumbTrail copy() {
+        return copyInto(new BreadcrumbTrail(capacity(), minIntervalMs));
+    }
+
+    /**
+     * Decodes the trail, oldest first, into the given arrays, which need room for
+     * {@link #size()} entries.
+     */
+    public void decode(double[] latitudes, double[] longitudes, long[] timesMs) {
+        int lat = baseLat;
+        int lon = baseLon;
+        long time = baseTimeMs;
+        for (int i = 0; i < size; i++) {
+            int index = (head + i) % capacity();
+            if (i > 0) {
+                lat += deltaLat[index];
+                lon += deltaLon[index];
+                time += deltaTimeMs[index];
+            }
+            latitudes[i] = lat / SCALE;
+            longitudes[i] = lon / SCALE;
+            timesMs[i] = time;
+        }
+    }
+
+    /**
+     * Appends {@code <polyline> <seconds before newest, comma separated>}, oldest point first.
+     */
+    public StringBuilder encode(StringBuilder out) {
+        int previousLat = 0;
+        int previousLon = 0;
+        int lat = baseLat;
+        int lon = baseLon;
+        for (int i = 0; i < size; i++) {
+            int index = (head + i) % capacity();
+            if (i > 0) {
+                lat += deltaLat[index];
+                lon += deltaLon[index];
+            }
+            encodeValue(lat - previousLat, out);
+            encodeValue(lon - previousLon, out);
+            previousLat = lat;
+            previousLon = lon;
+        }
+
+        out.append(' ');
+        long time = baseTimeMs;
+        for (int i = 0; i < size; i++) {
+            int index = (head + i) % capacity();
+            if (i > 0) {
+                time += deltaTimeMs[index];
+                out.append(',');
+            }
+            out.append((lastTimeMs - time) / 1000);
+        }
+        return out;
+    }
+
+    private void start(int lat, int lon, long timeMs) {
+        head = 0;
+        size = 1;
+        baseLat = lat;
+        baseLon = lon;
+        baseTimeMs = timeMs;
+        lastLat = lat;
+        lastLon = lon;
+        lastTimeMs = timeMs;
+    }
+
+    private void evictOldest() {
+        head = (head + 1) % capacity();
+        size--;
+        baseLat += deltaLat[head];
+        baseLon += deltaLon[head];
+        baseTimeMs += deltaTimeMs[head];
+    }
+
+    /** One signed value of Google's encoded polyline format. */
+    static void encodeValue(int value, StringBuilder out) {
+        int v = value < 0 ? ~(value << 1) : value << 1;
+        while (v >= 0x20) {
+            out.append((char) ((0x20 | (v & 0x1f)) + 63));
+            v >>>= 5;
+        }
+        out.append((char) (v + 63));
+    }
+}
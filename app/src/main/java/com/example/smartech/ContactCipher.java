@@ -0,0 +1,60 @@
+package com.example.smartech;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * AES-GCM sealing for records kept on the device, such as the emergency contacts.
+ *
+ * A sealed record is a version byte, the 12 byte IV the cipher picked, and the ciphertext with
+ * its 128 bit tag. The record's owner (the user id) is bound in as associated data, so a record
+ * copied under another account's key name fails to open instead of being read as theirs. The key
+ * normally lives in the Android keystore; anything that can do AES/GCM works.
+ */
+public class ContactCipher {
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final byte VERSION = 1;
+    private static final int IV_BYTES = 12;
+    private static final int TAG_BITS = 128;
+
+    private final SecretKey key;
+
+    public ContactCipher(SecretKey key) {
+        this.key = key;
+    }
+
+    public byte[] seal(String owner, String plaintext) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        // Keystore keys refuse caller-chosen IVs, so the cipher picks one.
+        cipher.init(Cipher.ENCRYPT_MODE, key);
+        cipher.updateAAD(owner.getBytes(StandardCharsets.UTF_8));
+        byte[] iv = cipher.getIV();
+        if (iv.length != IV_BYTES) {
+            throw new GeneralSecurityException("Unexpected IV length " + iv.length);
+        }
+        byte[] ciphertext = cipher.doFinal(plaintext.getBytes(StandardCharsets.UTF_8));
+
+        byte[] sealed = new byte[1 + IV_BYTES + ciphertext.length];
+        sealed[0] = VERSION;
+        System.arraycopy(iv, 0, sealed, 1, IV_BYTES);
+        System.arraycopy(ciphertext, 0, sealed, 1 + IV_BYTES, ciphertext.length);
+        return sealed;
+    }
+
+    /** Throws if the record was altered, belongs to someone else, or was sealed with another key. */
+    public String open(String owner, byte[] sealed) throws GeneralSecurityException {
+        if (sealed.length < 1 + IV_BYTES + TAG_BITS / 8 || sealed[0] != VERSION) {
+            throw new GeneralSecurityException("Not a sealed record");
+        }
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BITS, sealed, 1, IV_BYTES));
+        cipher.updateAAD(owner.getBytes(StandardCharsets.UTF_8));
+        byte[] plaintext = cipher.doFinal(sealed, 1 + IV_BYTES, sealed.length - 1 - IV_BYTES);
+        return new String(plaintext, StandardCharsets.UTF_8);
+    }
+}
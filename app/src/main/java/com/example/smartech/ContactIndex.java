@@ -0,0 +1,132 @@
+package com.example.smartech;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable in-memory index of the user's emergency contacts keyed by normalized full, first
+ * and last name, so a spoken name resolves with a couple of hash lookups.
+ */
+public class ContactIndex {
+
+    public static final ContactIndex EMPTY = new ContactIndex(Collections.<Contact>emptyList());
+
+    public static class Contact {
+        public final String firstName;
+        public final String lastName;
+        public final String email;
+        /** Mobile number for SMS alerts; empty when the user did not give one. */
+        public final String phone;
+
+        public Contact(String firstName, String lastName, String email) {
+            this(firstName, lastName, email, null);
+        }
+
+        public Contact(String firstName, String lastName, String email, String phone) {
+            this.firstName = firstName != null ? firstName : "";
+            this.lastName = lastName != null ? lastName : "";
+            this.email = email != null ? email : "";
+            this.phone = phone != null ? phone : "";
+        }
+
+        public String getFullName() {
+            return lastName.isEmpty() ? firstName : firstName + " " + lastName;
+        }
+
+        /**
+         * The shape stored in the {@code emergencyContacts} array of {@code users/{uid}}.
+         */
+        public Map<String, String> toMap() {
+            Map<String, String> map = new HashMap<>();
+            map.put("firstName", firstName);
+            map.put("lastName", lastName);
+            map.put("email", email);
+            if (!phone.isEmpty()) {
+                map.put("phone", phone);
+            }
+            return map;
+        }
+
+        public static Contact fromMap(Map<String, String> map) {
+            return new Contact(map.get("firstName"), map.get("lastName"), map.get("email"), map.get("phone"));
+        }
+    }
+
+    private final List<Contact> contacts;
+    private final Map<String, List<Contact>> byFullName = new HashMap<>();
+    private final Map<String, List<Contact>> byFirstName = new HashMap<>();
+    private final Map<String, List<Contact>> byLastName = new HashMap<>();
+
+    public ContactIndex(List<Contact> contacts) {
+        this.contacts = Collections.unmodifiableList(new ArrayList<>(contacts));
+        for (Contact contact : this.contacts) {
+            put(byFullName, normalize(contact.getFullName()), contact);
+            put(byFirstName, normalize(contact.firstName), contact);
+            put(byLastName, normalize(contact.lastName), contact);
+        }
+    }
+
+    public static ContactIndex fromMaps(List<Map<String, String>> maps) {
+        List<Contact> contacts = new ArrayList<>(maps.size());
+        for (Map<String, String> map : maps) {
+            contacts.add(Contact.fromMap(map));
+        }
+        return new ContactIndex(contacts);
+    }
+
+    public List<Contact> getContacts() {
+        return contacts;
+    }
+
+    public boolean isEmpty() {
+        return contacts.isEmpty();
+    }
+
+    /**
+     * Returns the contacts matching a spoken name. A full name match wins over a first name
+     * match, which wins over a last name match; more than one result means the name is ambiguous.
+     */
+    public List<Contact> find(String spokenName) {
+        String key = normalize(spokenName);
+        if (key.startsWith("my ")) key = key.substring(3);
+        if (key.isEmpty()) return Collections.emptyList();
+
+        List<Contact> matches = byFullName.get(key);
+        if (matches == null) matches = byFirstName.get(key);
+        if (matches == null) matches = byLastName.get(key);
+        return matches != null ? Collections.unmodifiableList(matches) : Collections.<Contact>emptyList();
+    }
+
+    /**
+     * Lower-cases and keeps letters and digits only, with single spaces between words.
+     */
+    static String normalize(String name) {
+        if (name == null) return "";
+        StringBuilder normalized = new StringBuilder(name.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                if (pendingSpace && normalized.length() > 0) normalized.append(' ');
+                normalized.append(Character.toLowerCase(c));
+                pendingSpace = false;
+            } else if (Character.isWhitespace(c)) {
+                pendingSpace = true;
+            }
+        }
+        return normalized.toString();
+    }
+
+    private static void put(Map<String, List<Contact>> map, String key, Contact contact) {
+        if (key.isEmpty()) return;
+        List<Contact> list = map.get(key);
+        if (list == null) {
+            list = new ArrayList<>(1);
+            map.put(key, list);
+        }
+        list.add(contact);
+    }
+}
@@ -0,0 +1,316 @@
+package com.example.smartech;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Single place every screen reads and writes emergency contacts through.
+ *
+ * The {@code emergencyContacts} array on {@code users/{uid}} is the source of truth, kept current
+ * by {@link UserProfileRepository}. Reads are served from the copy in the encrypted
+ * {@link EmergencyContactStore}, which is read on a background thread when the user is started,
+ * written straight away on {@link #save}, and reconciled in the background whenever the profile
+ * delivers a different list. An alert therefore never waits on the network for its contacts. A
+ * {@link ContactIndex} is kept over whichever list is current. Contacts that older versions
+ * stored in the Realtime Database under {@code users/{uid}/contacts} are merged in once per user
+ * and never read again.
+ *
+ * Every write of the array also writes {@link #FIELD_EMERGENCY_EMAILS}, the contacts' addresses
+ * in lower case, which the security rules check {@code mail} documents against so the email
+ * relay cannot be used to write to anyone else. The rules only accept addresses that belong to
+ * one of at most {@link #MAX_CONTACTS} contacts. Profiles saved before the field existed get it
+ * once their snapshot arrives.
+ */
+public class ContactRepository {
+
+    private static final String TAG = "ContactRepository";
+    private static final String PREFS_NAME = "contacts";
+    private static final String KEY_LEGACY_MIGRATED = "legacy_migrated_";
+    static final String FIELD_EMERGENCY_EMAILS = "emergencyEmails";
+    /** The most contacts the security rules accept on a profile. */
+    public static final int MAX_CONTACTS = 5;
+
+    private static ContactRepository instance;
+
+    private final UserProfileRepository profileRepository;
+    private final EmergencyContactStore localStore;
+    private final SharedPreferences prefs;
+    private final Executor storeExecutor = Executors.newSingleThreadExecutor();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final List<Runnable> waitingForDevice = new ArrayList<>();
+    private String localUserId;
+    private List<ContactIndex.Contact> localContacts;
+    private boolean loadingLocal;
+    private Object indexedSource;
+    private ContactIndex index = ContactIndex.EMPTY;
+    private PhoneticContactMatcher matcher;
+
+    public static synchronized ContactRepository getInstance(Context context) {
+        if (instance == null) {
+            instance = new ContactRepository(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private ContactRepository(Context context) {
+        profileRepository = UserProfileRepository.getInstance(context);
+        localStore = EmergencyContactStore.getInstance(context);
+        prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        profileRepository.addListener(this::reconcile);
+    }
+
+    public void startForCurrentUser() {
+        FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
+        if (user == null) return;
+        String userId = user.getUid();
+        if (!userId.equals(localUserId)) {
+            localUserId = userId;
+            localContacts = null;
+            loadingLocal = true;
+            // Decrypting goes through the keystore, which is too slow for the main thread.
+            storeExecutor.execute(() -> {
+                List<ContactIndex.Contact> stored = localStore.load(userId);
+                handler.post(() -> onDeviceCopyLoaded(userId, stored));
+            });
+        }
+        profileRepository.start(userId);
+        migrateLegacyContacts(userId);
+    }
+
+    /**
+     * Runs the action once contacts are known: as soon as they are read from the device, or if
+     * none are stored there, as {@link UserProfileRepository#whenLoaded} does.
+     */
+    public void whenLoaded(Runnable action) {
+        if (localContacts != null) {
+            action.run();
+        } else if (loadingLocal) {
+            waitingForDevice.add(() -> whenLoaded(action));
+        } else {
+            profileRepository.whenLoaded(action);
+        }
+    }
+
+    /** Like {@link #whenLoaded(Runnable)}, but the action is dropped if {@code scope} is released first. */
+    public void whenLoaded(ResourceRegistry scope, Runnable action) {
+        if (localContacts != null) {
+            action.run();
+        } else if (loadingLocal) {
+            Runnable retry = () -> whenLoaded(scope, action);
+            waitingForDevice.add(retry);
+            scope.onRelease(() -> waitingForDevice.remove(retry));
+        } else {
+            profileRepository.whenLoaded(scope, action);
+        }
+    }
+
+    private void onDeviceCopyLoaded(String userId, List<ContactIndex.Contact> stored) {
+        // Signed out or switched users while reading.
+        if (!userId.equals(localUserId)) return;
+        loadingLocal = false;
+        // A save or the server's list may already have arrived; either is newer than the device copy.
+        if (localContacts == null) {
+            localContacts = stored;
+        }
+        runWaitingForDevice();
+    }
+
+    private void runWaitingForDevice() {
+        List<Runnable> waiting = new ArrayList<>(waitingForDevice);
+        waitingForDevice.clear();
+        for (Runnable action : waiting) {
+            action.run();
+        }
+    }
+
+    /**
+     * True once contacts are known, from the device or the server.
+     */
+    public boolean isAvailable() {
+        return localContacts != null || profileRepository.exists();
+    }
+
+    public Exception getLastError() {
+        return profileRepository.getLastError();
+    }
+
+    public List<ContactIndex.Contact> getContacts() {
+        return getIndex().getContacts();
+    }
+
+    /**
+     * Resolves a spoken name against the local index without touching the network.
+     */
+    public List<ContactIndex.Contact> find(String spokenName) {
+        return getIndex().find(spokenName);
+    }
+
+    /**
+     * Ranks contacts that sound like a spoken name, for when the recognizer misspelled it and
+     * {@link #find} has no exact match.
+     */
+    public List<PhoneticContactMatcher.Match> findSimilar(String spokenName, int limit) {
+        ContactIndex current = getIndex();
+        if (matcher == null) {
+            matcher = new PhoneticContactMatcher(current.getContacts());
+        }
+        return matcher.match(spokenName, limit);
+    }
+
+    /**
+     * Replaces the user's emergency contacts. The device copy is updated at once, so alerts use
+     * the new contacts even if the write has not reached the server yet.
+     */
+    public Task<Void> save(String userId, List<ContactIndex.Contact> contacts) {
+        if (userId.equals(localUserId)) {
+            localContacts = Collections.unmodifiableList(new ArrayList<>(contacts));
+        }
+        List<ContactIndex.Contact> copy = new ArrayList<>(contacts);
+        storeExecutor.execute(() -> localStore.save(userId, copy));
+
+        Map<String, Object> update = new HashMap<>();
+        update.put("emergencyContacts", toMaps(contacts));
+        update.put(FIELD_EMERGENCY_EMAILS, emailsOf(contacts));
+        return FirestoreMeter.update(FirebaseFirestore.getInstance().collection("users").document(userId), update);
+    }
+
+    /** Normalized the way {@link EmailRelayTransport} addresses its {@code mail} documents. */
+    static List<String> emailsOf(List<ContactIndex.Contact> contacts) {
+        List<String> emails = new ArrayList<>(contacts.size());
+        for (ContactIndex.Contact contact : contacts) {
+            String email = EmailRelayTransport.normalize(contact.email);
+            if (email.contains("@") && !emails.contains(email)) {
+                emails.add(email);
+            }
+        }
+        return emails;
+    }
+
+    /** Forgets the device copy of every user's contacts, e.g. on sign out. */
+    public void clearLocal() {
+        localUserId = null;
+        localContacts = null;
+        loadingLocal = false;
+        runWaitingForDevice();
+        storeExecutor.execute(localStore::clear);
+    }
+
+    private ContactIndex getIndex() {
+        // Both sources install a new list on every change, so identity tells us when to rebuild.
+        Object source = localContacts != null ? localContacts : profileRepository.getEmergencyContacts();
+        if (source != indexedSource) {
+            index = localContacts != null
+                    ? new ContactIndex(localContacts)
+                    : ContactIndex.fromMaps(profileRepository.getEmergencyContacts());
+            indexedSource = source;
+            matcher = null;
+        }
+        return index;
+    }
+
+    /**
+     * Adopts the server's list when it differs from the device copy, and stores it for next time.
+     */
+    private void reconcile() {
+        String userId = profileRepository.getUserId();
+        if (userId == null || !userId.equals(localUserId) || !profileRepository.exists()) return;
+        // Served from the profile's latency-compensated cache, so a save not yet acknowledged
+        // already shows up here.
+        List<ContactIndex.Contact> server = ContactIndex.fromMaps(profileRepository.getEmergencyContacts()).getContacts();
+        backfillEmails(userId, server);
+        if (localContacts != null && toMaps(localContacts).equals(toMaps(server))) return;
+
+        localContacts = Collections.unmodifiableList(new ArrayList<>(server));
+        storeExecutor.execute(() -> localStore.save(userId, server));
+    }
+
+    private void backfillEmails(String userId, List<ContactIndex.Contact> contacts) {
+        List<String> stored = profileRepository.getEmergencyEmails();
+        List<String> expected = emailsOf(contacts);
+        if (stored == null || stored.equals(expected)) return;
+
+        FirestoreMeter.update(FirebaseFirestore.getInstance().collection("users").document(userId),
+                        Collections.<String, Object>singletonMap(FIELD_EMERGENCY_EMAILS, expected))
+                .addOnFailureListener(e -> Log.w(TAG, "Could not store contact emails", e));
+    }
+
+    private static List<Map<String, String>> toMaps(List<ContactIndex.Contact> contacts) {
+        List<Map<String, String>> maps = new ArrayList<>(contacts.size());
+        for (ContactIndex.Contact contact : contacts) {
+            maps.add(contact.toMap());
+        }
+        return maps;
+    }
+
+    private void migrateLegacyContacts(String userId) {
+        if (prefs.getBoolean(KEY_LEGACY_MIGRATED + userId, false)) return;
+
+        profileRepository.whenLoaded(() -> {
+            if (!profileRepository.exists() || !userId.equals(profileRepository.getUserId())) return;
+
+            FirestoreMeter.get(FirebaseDatabase.getInstance().getReference().child("users").child(userId).child("contacts"))
+                    .addOnSuccessListener(snapshot -> {
+                        List<ContactIndex.Contact> current = getContacts();
+                        Set<String> knownEmails = new HashSet<>();
+                        for (ContactIndex.Contact contact : current) {
+                            knownEmails.add(contact.email.toLowerCase(Locale.ROOT));
+                        }
+
+                        List<Object> missing = new ArrayList<>();
+                        List<Object> missingEmails = new ArrayList<>();
+                        for (DataSnapshot child : snapshot.getChildren()) {
+                            if (current.size() + missing.size() >= MAX_CONTACTS) break;
+                            String name = child.child("name").getValue(String.class);
+                            String email = child.child("email").getValue(String.class);
+                            if (name == null || email == null || !knownEmails.add(email.toLowerCase(Locale.ROOT))) continue;
+
+                            String trimmed = name.trim();
+                            int space = trimmed.indexOf(' ');
+                            ContactIndex.Contact contact = space < 0
+                                    ? new ContactIndex.Contact(trimmed, "", email)
+                                    : new ContactIndex.Contact(trimmed.substring(0, space), trimmed.substring(space + 1).trim(), email);
+                            missing.add(contact.toMap());
+                            missingEmails.add(EmailRelayTransport.normalize(email));
+                        }
+
+                        if (missing.isEmpty()) {
+                            markMigrated(userId);
+                            return;
+                        }
+                        Map<String, Object> update = new HashMap<>();
+                        update.put("emergencyContacts", FieldValue.arrayUnion(missing.toArray()));
+                        update.put(FIELD_EMERGENCY_EMAILS, FieldValue.arrayUnion(missingEmails.toArray()));
+                        FirestoreMeter.update(FirebaseFirestore.getInstance().collection("users").document(userId), update)
+                                .addOnSuccessListener(aVoid -> markMigrated(userId))
+                                .addOnFailureListener(e -> Log.w(TAG, "Could not merge legacy contacts", e));
+                    })
+                    .addOnFailureListener(e -> Log.w(TAG, "Could not read legacy contacts", e));
+        });
+    }
+
+    private void markMigrated(String userId) {
+        prefs.edit().putBoolean(KEY_LEGACY_MIGRATED + userId, true).apply();
+    }
+}
@@ -1,17 +1,20 @@
 package com.example.smartech;
 
 import android.Manifest;
+import android.app.Application;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.VibrationEffect;
+import android.text.format.DateFormat;
 import android.os.Vibrator;
 import android.view.MotionEvent;
 import android.view.View;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.constraintlayout.widget.ConstraintLayout;
 import androidx.core.app.ActivityCompat;
@@ -19,30 +22,80 @@ import androidx.core.content.ContextCompat;
 
 import com.airbnb.lottie.LottieAnimationView;
 import com.google.firebase.auth.FirebaseAuth;
-import com.google.firebase.firestore.DocumentSnapshot;
-import com.google.firebase.firestore.FirebaseFirestore;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 public class DailyPlannerActivity extends AppCompatActivity {
 
     private static final int REQUEST_RECORD_AUDIO_PERMISSION = 1;
 
+    private final ResourceRegistry resources = ResourceRegistry.bindTo(this);
+    private State state;
     private VoiceAssistantHelper voiceAssistantHelper;
     private FirebaseAuth mAuth;
-    private FirebaseFirestore db;
 
     private LottieAnimationView micAnimation;
     private TextView recognizedText;
     private ConstraintLayout mainLayout;
 
-    private final Map<Integer, String> taskIdMap = new HashMap<>();
+    private TaskStore taskStore;
+    private TaskSearchIndex searchIndex;
+
+    /**
+     * Kept across rotations: the engines, and the task store with what it has loaded, so a new
+     * activity shows the tasks again instead of fetching and reading them out again.
+     */
+    public static class State extends ScreenViewModel implements TaskStore.Listener {
+        TaskStore taskStore;
+        TaskSearchIndex searchIndex;
+        private TaskStore.Listener screen;
+
+        public State(@NonNull Application application) {
+            super(application);
+        }
+
+        void startTaskStore(String userId) {
+            if (taskStore != null) return;
+            PlannerMutationQueue queue = PlannerMutationQueue.getInstance(getApplication());
+            // The store feeds the index, so it is registered second and stopped first.
+            searchIndex = resources.add(new TaskSearchIndex(getApplication(), userId), TaskSearchIndex::close);
+            taskStore = resources.add(new TaskStore(queue, userId, this), TaskStore::stop);
+            taskStore.setSearchIndex(searchIndex);
+            taskStore.start();
+            searchIndex.startSync(queue);
+        }
+
+        /** Passes the store's callbacks to {@code listener} until {@code scope} is released. */
+        void bind(ResourceRegistry scope, TaskStore.Listener listener) {
+            screen = listener;
+            scope.onRelease(() -> {
+                if (screen == listener) screen = null;
+            });
+        }
+
+        @Override
+        public void onTasksLoaded(List<TaskStore.PlannerTask> tasks) {
+            if (screen != null) screen.onTasksLoaded(tasks);
+        }
+
+        @Override
+        public void onTasksChanged(List<TaskStore.PlannerTask> tasks) {
+            if (screen != null) screen.onTasksChanged(tasks);
+        }
+
+        @Override
+        public void onTasksError(Exception e) {
+            if (screen != null) screen.onTasksError(e);
+        }
+    }
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_daily_planner);
+        state = ScreenViewModel.of(this, State.class);
 
         initializeComponents();
 
@@ -52,12 +105,11 @@ public class DailyPlannerActivity extends AppCompatActivity {
 
         setupTouchListeners();
 
-        fetchTasks();
+        startTaskStore();
     }
 
     private void initializeComponents() {
         mAuth = FirebaseAuth.getInstance();
-        db = FirebaseFirestore.getInstance();
 
         micAnimation = findViewById(R.id.micAnimation);
         recognizedText = findViewById(R.id.recognizedText);
@@ -74,7 +126,8 @@ public class DailyPlannerActivity extends AppCompatActivity {
     }
 
     private void setupVoiceAssistant() {
-        voiceAssistantHelper = new VoiceAssistantHelper(this, new VoiceAssistantHelper.Listener() {
+        voiceAssistantHelper = state.getVoice();
+        voiceAssistantHelper.bind(resources, new VoiceAssistantHelper.Listener() {
             @Override
             public void onCommandReceived(String command) {
                 handleVoiceCommand(command);
@@ -94,30 +147,24 @@ public class DailyPlannerActivity extends AppCompatActivity {
         });
     }
 
-    private void handleVoiceCommand(String command) {
+    void handleVoiceCommand(String command) {
         if (command == null || command.trim().isEmpty()) return;
 
         recognizedText.setText("You said: " + command);
         String lowerCmd = command.toLowerCase();
 
-        if (lowerCmd.contains("what are my tasks") || lowerCmd.contains("show my tasks") || lowerCmd.contains("list my tasks")) {
-            fetchTasks();
-        } else if (lowerCmd.startsWith("add task")) {
-            String taskDetails = command.replaceFirst("(?i)add task", "").trim();
-            if (!taskDetails.isEmpty()) {
-                voiceAssistantHelper.speak("Task added: " + taskDetails);
-                addNewTask(taskDetails);
-            } else {
-                voiceAssistantHelper.speak("Please specify a task to add.");
-            }
-        } else if (lowerCmd.startsWith("remove task")) {
-            String numberStr = lowerCmd.replaceFirst("(?i)remove task", "").trim();
-            try {
-                int index = Integer.parseInt(numberStr);
-                removeTaskByIndex(index);
-            } catch (NumberFormatException e) {
-                voiceAssistantHelper.speak("Please say a valid task number to remove.");
-            }
+        if (lowerCmd.contains("more tasks") || lowerCmd.contains("next tasks")) {
+            readMoreTasks();
+        } else if (lowerCmd.contains("what are my tasks") || lowerCmd.contains("show my tasks") || lowerCmd.contains("list my tasks")) {
+            if (taskStore == null) return;
+            TaskStore.Scope scope = lowerCmd.contains("week") ? TaskStore.Scope.WEEK : TaskStore.Scope.TODAY;
+            taskStore.setScope(scope);
+        } else if (PlannerCommandParser.isTaskEdit(command)) {
+            applyTaskEdits(command);
+        } else if (PlannerCommandParser.parseFindQuery(command) != null) {
+            findTasks(PlannerCommandParser.parseFindQuery(command));
+        } else if (PlannerCommandParser.parseRemoveByName(command) != null) {
+            removeTaskByName(PlannerCommandParser.parseRemoveByName(command));
         } else if (lowerCmd.contains("go home") || lowerCmd.contains("go back") || lowerCmd.contains("return home") || lowerCmd.contains("go back home")) {
             voiceAssistantHelper.speak("Going back to home.");
             startActivity(new Intent(DailyPlannerActivity.this, HomeActivity.class));
@@ -164,99 +211,182 @@ public class DailyPlannerActivity extends AppCompatActivity {
         }
     }
 
-    private void addNewTask(String taskDetails) {
+    private void startTaskStore() {
         if (mAuth.getCurrentUser() == null) return;
 
-        String userId = mAuth.getCurrentUser().getUid();
-        Map<String, String> taskMap = new HashMap<>();
-        taskMap.put("task", taskDetails);
-
-        db.collection("daily_plans")
-                .document(userId)
-                .collection("tasks")
-                .add(taskMap)
-                .addOnSuccessListener(documentReference -> {
-                    fetchTasks();
-                    Toast.makeText(this, "Task added", Toast.LENGTH_SHORT).show();
-                })
-                .addOnFailureListener(e ->
-                        Toast.makeText(this, "Error adding task", Toast.LENGTH_SHORT).show());
+        state.bind(resources, new TaskStore.Listener() {
+            @Override
+            public void onTasksLoaded(List<TaskStore.PlannerTask> tasks) {
+                readTasks();
+            }
+
+            @Override
+            public void onTasksChanged(List<TaskStore.PlannerTask> tasks) {
+                showTasks(tasks);
+            }
+
+            @Override
+            public void onTasksError(Exception e) {
+                Toast.makeText(DailyPlannerActivity.this, "Error fetching tasks", Toast.LENGTH_SHORT).show();
+                voiceAssistantHelper.speak("There was an error fetching your tasks.");
+            }
+        });
+        state.startTaskStore(mAuth.getCurrentUser().getUid());
+        taskStore = state.taskStore;
+        searchIndex = state.searchIndex;
+        // Kept from before a rotation: shown again, not read out again.
+        if (taskStore.isLoaded()) {
+            showTasks(taskStore.getTasks());
+        }
     }
 
-    private void fetchTasks() {
-        if (mAuth.getCurrentUser() == null) return;
+    private String showTasks(List<TaskStore.PlannerTask> tasks) {
+        if (tasks.isEmpty()) {
+            recognizedText.setText("No tasks found.");
+            return null;
+        }
 
-        String userId = mAuth.getCurrentUser().getUid();
-        db.collection("daily_plans")
-                .document(userId)
-                .collection("tasks")
-                .get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
-                    taskIdMap.clear();
-                    if (queryDocumentSnapshots != null && !queryDocumentSnapshots.isEmpty()) {
-                        StringBuilder tasks = new StringBuilder("Your tasks:\n");
-                        int index = 1;
-                        for (DocumentSnapshot document : queryDocumentSnapshots) {
-                            String task = document.getString("task");
-                            if (task != null) {
-                                tasks.append(index).append(". ").append(task).append("\n");
-                                taskIdMap.put(index, document.getId());
-                                index++;
-                            }
-                        }
-                        recognizedText.setText(tasks.toString());
-                        voiceAssistantHelper.speak(tasks.toString());
-                    } else {
-                        recognizedText.setText("No tasks found.");
-                        voiceAssistantHelper.speak("You have no tasks for today.");
-                    }
-                })
-                .addOnFailureListener(e -> {
-                    Toast.makeText(this, "Error fetching tasks", Toast.LENGTH_SHORT).show();
-                    voiceAssistantHelper.speak("There was an error fetching your tasks.");
-                });
+        StringBuilder text = new StringBuilder("Your tasks:\n");
+        for (int i = 0; i < tasks.size(); i++) {
+            text.append(i + 1).append(". ").append(tasks.get(i).text)
+                    .append(describeDueDate(tasks.get(i))).append("\n");
+        }
+        recognizedText.setText(text.toString());
+        return text.toString();
     }
 
-    private void removeTaskByIndex(int index) {
-        if (mAuth.getCurrentUser() == null) return;
+    private void readTasks() {
+        if (taskStore == null || !taskStore.isLoaded()) return;
 
-        String userId = mAuth.getCurrentUser().getUid();
-        String docId = taskIdMap.get(index);
-
-        if (docId != null) {
-            db.collection("daily_plans")
-                    .document(userId)
-                    .collection("tasks")
-                    .document(docId)
-                    .get()
-                    .addOnSuccessListener(documentSnapshot -> {
-                        String removedTask = documentSnapshot.getString("task");
-                        db.collection("daily_plans")
-                                .document(userId)
-                                .collection("tasks")
-                                .document(docId)
-                                .delete()
-                                .addOnSuccessListener(aVoid -> {
-                                    Toast.makeText(this, "Task removed", Toast.LENGTH_SHORT).show();
-                                    voiceAssistantHelper.speak("Task removed: " + removedTask);
-                                    fetchTasks();
-                                })
-                                .addOnFailureListener(e ->
-                                        Toast.makeText(this, "Error removing task", Toast.LENGTH_SHORT).show());
-                    })
-                    .addOnFailureListener(e ->
-                            Toast.makeText(this, "Error fetching task for removal", Toast.LENGTH_SHORT).show());
+        String text = showTasks(taskStore.getTasks());
+        if (text != null) {
+            if (taskStore.hasMorePages()) {
+                text += "Say more tasks to hear the rest.";
+            }
+            voiceAssistantHelper.speak(text);
+        } else if (taskStore.getScope() == TaskStore.Scope.WEEK) {
+            voiceAssistantHelper.speak("You have no tasks for this week.");
         } else {
-            Toast.makeText(this, "Invalid task number", Toast.LENGTH_SHORT).show();
-            voiceAssistantHelper.speak("Invalid task number.");
+            voiceAssistantHelper.speak("You have no tasks for today.");
         }
     }
 
-    @Override
-    protected void onDestroy() {
-        super.onDestroy();
-        if (voiceAssistantHelper != null) {
-            voiceAssistantHelper.stopListening();
+    private void readMoreTasks() {
+        if (taskStore == null || !taskStore.isLoaded()) return;
+
+        int firstNumber = taskStore.getTasks().size() + 1;
+        taskStore.loadMore(page -> {
+            if (page.isEmpty()) {
+                voiceAssistantHelper.speak("There are no more tasks.");
+                return;
+            }
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < page.size(); i++) {
+                text.append(firstNumber + i).append(". ").append(page.get(i).text)
+                        .append(describeDueDate(page.get(i))).append("\n");
+            }
+            voiceAssistantHelper.speak(text.toString());
+        });
+    }
+
+    private void findTasks(String query) {
+        if (searchIndex == null) return;
+
+        searchIndex.search(query, 5, results -> {
+            if (results.isEmpty()) {
+                voiceAssistantHelper.speak("I couldn't find a task about " + query + ".");
+                return;
+            }
+            StringBuilder text = new StringBuilder(results.size() == 1 ? "I found one task: " : "I found " + results.size() + " tasks: ");
+            for (int i = 0; i < results.size(); i++) {
+                if (i > 0) text.append(", ");
+                text.append(results.get(i).text).append(describeDueDate(results.get(i)));
+            }
+            recognizedText.setText(text.toString());
+            voiceAssistantHelper.speak(text.toString());
+        });
+    }
+
+    private void removeTaskByName(String query) {
+        if (searchIndex == null || taskStore == null) return;
+
+        searchIndex.search(query, 2, results -> {
+            if (results.isEmpty()) {
+                voiceAssistantHelper.speak("I couldn't find a task about " + query + ".");
+            } else if (results.size() > 1) {
+                voiceAssistantHelper.speak("More than one task matches " + query + ". Please say the task number instead.");
+            } else {
+                TaskStore.PlannerTask task = results.get(0);
+                FirestoreMeter.beginFlow(DataAccessMeter.Flow.REMOVE_TASK);
+                taskStore.apply(new ArrayList<TaskStore.PlannerTask>(), Collections.singletonList(task));
+                Toast.makeText(this, "Task removed", Toast.LENGTH_SHORT).show();
+                voiceAssistantHelper.speak("Task removed: " + task.text);
+            }
+        });
+    }
+
+    private String describeDueDate(TaskStore.PlannerTask task) {
+        long today = TaskStore.startOfDay(System.currentTimeMillis(), 0);
+        if (task.dueAt <= 0 || task.dueAt == today) return "";
+        if (task.dueAt == TaskStore.startOfDay(today, 1)) return " due tomorrow";
+        if (task.dueAt < today) return " from " + DateFormat.format("EEEE, MMMM d", task.dueAt);
+        return " due " + DateFormat.format("EEEE, MMMM d", task.dueAt);
+    }
+
+    /**
+     * Applies every add and remove in the utterance as one batch. Task numbers refer to the
+     * list as it was read out before the command, and nothing is applied if any part is invalid.
+     */
+    private void applyTaskEdits(String command) {
+        if (taskStore == null) return;
+
+        List<TaskStore.PlannerTask> snapshot = new ArrayList<>(taskStore.getTasks());
+        List<TaskStore.PlannerTask> additions = new ArrayList<>();
+        List<TaskStore.PlannerTask> removals = new ArrayList<>();
+
+        for (PlannerCommandParser.Operation operation : PlannerCommandParser.parse(command)) {
+            if (operation.type == PlannerCommandParser.Type.ADD) {
+                if (operation.text.isEmpty()) {
+                    voiceAssistantHelper.speak("Please specify a task to add.");
+                    return;
+                }
+                additions.add(taskStore.newTask(operation.text, operation.dueInDays));
+            } else {
+                if (operation.number == 0) {
+                    voiceAssistantHelper.speak("Please say a valid task number to remove.");
+                    return;
+                }
+                if (operation.number > snapshot.size()) {
+                    Toast.makeText(this, "Invalid task number", Toast.LENGTH_SHORT).show();
+                    voiceAssistantHelper.speak("Invalid task number " + operation.number + ".");
+                    return;
+                }
+                TaskStore.PlannerTask task = snapshot.get(operation.number - 1);
+                if (!removals.contains(task)) {
+                    removals.add(task);
+                }
+            }
+        }
+
+        FirestoreMeter.beginFlow(additions.isEmpty() ? DataAccessMeter.Flow.REMOVE_TASK : DataAccessMeter.Flow.ADD_TASK);
+        taskStore.apply(additions, removals);
+
+        StringBuilder confirmation = new StringBuilder();
+        appendSummary(confirmation, "Task added: ", "Added " + additions.size() + " tasks: ", additions);
+        appendSummary(confirmation, "Task removed: ", "Removed " + removals.size() + " tasks: ", removals);
+
+        Toast.makeText(this, "Planner updated", Toast.LENGTH_SHORT).show();
+        voiceAssistantHelper.speak(confirmation.toString());
+    }
+
+    private void appendSummary(StringBuilder out, String singular, String plural, List<TaskStore.PlannerTask> tasks) {
+        if (tasks.isEmpty()) return;
+        if (out.length() > 0) out.append(". ");
+
+        out.append(tasks.size() == 1 ? singular : plural);
+        for (int i = 0; i < tasks.size(); i++) {
+            if (i > 0) out.append(", ");
+            out.append(tasks.get(i).text);
         }
     }
 }
@@ -0,0 +1,201 @@
+package com.example.smartech;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts billed Firestore and Realtime Database operations per user flow.
+ *
+ * Call sites report through {@link FirestoreMeter}; usage is attributed to whichever flow was
+ * begun last. Each flow has a declared {@link Budget} which tests assert against, so a change
+ * that makes, say, greeting the user read the profile twice fails the build.
+ */
+public class DataAccessMeter {
+
+    public enum Flow { LAUNCH, GREET, ADD_TASK, REMOVE_TASK, EMERGENCY, OTHER }
+
+    /** Firestore bills this per document on top of its fields. */
+    static final int DOCUMENT_OVERHEAD_BYTES = 32;
+
+    private static final Map<Flow, Budget> BUDGETS = new EnumMap<>(Flow.class);
+
+    static {
+        // The profile listener's first snapshot; launching never touches tasks.
+        BUDGETS.put(Flow.LAUNCH, new Budget(1, 1, 2, 8 * 1024));
+        // Greeting and contacts are served from the profile listener that is already attached.
+        BUDGETS.put(Flow.GREET, new Budget(1, 0, 2, 8 * 1024));
+        // Writes go out as one batch for the whole utterance; the listener echoes them back once.
+        BUDGETS.put(Flow.ADD_TASK, new Budget(10, 10, 4, 16 * 1024));
+        // Removals are deletes in one batch; the task is found in the local index, not read.
+        BUDGETS.put(Flow.REMOVE_TASK, new Budget(0, 10, 4, 8 * 1024));
+        // Contacts come from the profile cache; the only writes are one relay email per contact.
+        BUDGETS.put(Flow.EMERGENCY, new Budget(1, 10, 2, 16 * 1024));
+    }
+
+    private static DataAccessMeter instance;
+
+    private final Map<Flow, Usage> usage = new EnumMap<>(Flow.class);
+    private Flow currentFlow = Flow.OTHER;
+
+    public static synchronized DataAccessMeter getInstance() {
+        if (instance == null) {
+            instance = new DataAccessMeter();
+        }
+        return instance;
+    }
+
+    DataAccessMeter() {
+        for (Flow flow : Flow.values()) {
+            usage.put(flow, new Usage());
+        }
+    }
+
+    /**
+     * Attributes everything recorded from now on to {@code flow}, starting its counters from
+     * zero. Returns what the previous flow used.
+     */
+    public synchronized Usage beginFlow(Flow flow) {
+        Usage previous = usage.get(currentFlow).copy();
+        currentFlow = flow;
+        usage.put(flow, new Usage());
+        return previous;
+    }
+
+    public synchronized Flow getCurrentFlow() {
+        return currentFlow;
+    }
+
+    public synchronized void recordReads(int documents, long bytes) {
+        Usage current = usage.get(currentFlow);
+        current.reads += documents;
+        current.bytes += bytes;
+    }
+
+    public synchronized void recordWrites(int documents, long bytes) {
+        Usage current = usage.get(currentFlow);
+        current.writes += documents;
+        current.bytes += bytes;
+    }
+
+    /**
+     * A snapshot delivered to a listener. Only documents that came from the server are billed
+     * as reads; cached snapshots count as events alone.
+     */
+    public synchronized void recordListenerEvent(int billedDocuments, long bytes) {
+        Usage current = usage.get(currentFlow);
+        current.listenerEvents++;
+        current.reads += billedDocuments;
+        current.bytes += bytes;
+    }
+
+    public synchronized Usage getUsage(Flow flow) {
+        return usage.get(flow).copy();
+    }
+
+    public synchronized void reset() {
+        for (Flow flow : Flow.values()) {
+            usage.put(flow, new Usage());
+        }
+        currentFlow = Flow.OTHER;
+    }
+
+    /**
+     * Returns the declared budget of a flow, or null when it is unbudgeted.
+     */
+    public static Budget getBudget(Flow flow) {
+        return BUDGETS.get(flow);
+    }
+
+    /**
+     * Describes how the flow's recorded usage exceeds its budget; empty when it is within it.
+     */
+    public synchronized List<String> checkBudget(Flow flow) {
+        Budget budget = BUDGETS.get(flow);
+        if (budget == null) return Collections.emptyList();
+        return budget.violations(flow, usage.get(flow));
+    }
+
+    /**
+     * Rough wire size of a document value using Firestore's storage size rules.
+     */
+    static long estimateSize(Object value) {
+        if (value == null || value instanceof Boolean) return 1;
+        if (value instanceof String) return ((String) value).length() + 1;
+        if (value instanceof Number) return 8;
+        if (value instanceof Map) {
+            long size = 0;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                size += String.valueOf(entry.getKey()).length() + 1 + estimateSize(entry.getValue());
+            }
+            return size;
+        }
+        if (value instanceof List) {
+            long size = 0;
+            for (Object item : (List<?>) value) {
+                size += estimateSize(item);
+            }
+            return size;
+        }
+        // Timestamps, references and geo points.
+        return 16;
+    }
+
+    static long estimateDocumentSize(String path, Map<String, Object> data) {
+        return path.length() + 1 + (data != null ? estimateSize(data) : 0) + DOCUMENT_OVERHEAD_BYTES;
+    }
+
+    public static class Usage {
+        public int reads;
+        public int writes;
+        public int listenerEvents;
+        public long bytes;
+
+        Usage copy() {
+            Usage copy = new Usage();
+            copy.reads = reads;
+            copy.writes = writes;
+            copy.listenerEvents = listenerEvents;
+            copy.bytes = bytes;
+            return copy;
+        }
+
+        @Override
+        public String toString() {
+            return reads + " reads, " + writes + " writes, " + listenerEvents + " listener events, " + bytes + " bytes";
+        }
+    }
+
+    public static class Budget {
+        public final int maxReads;
+        public final int maxWrites;
+        public final int maxListenerEvents;
+        public final long maxBytes;
+
+        public Budget(int maxReads, int maxWrites, int maxListenerEvents, long maxBytes) {
+            this.maxReads = maxReads;
+            this.maxWrites = maxWrites;
+            this.maxListenerEvents = maxListenerEvents;
+            this.maxBytes = maxBytes;
+        }
+
+        List<String> violations(Flow flow, Usage usage) {
+            List<String> violations = new ArrayList<>();
+            if (usage.reads > maxReads) {
+                violations.add(flow + ": " + usage.reads + " reads exceeds budget of " + maxReads);
+            }
+            if (usage.writes > maxWrites) {
+                violations.add(flow + ": " + usage.writes + " writes exceeds budget of " + maxWrites);
+            }
+            if (usage.listenerEvents > maxListenerEvents) {
+                violations.add(flow + ": " + usage.listenerEvents + " listener events exceeds budget of " + maxListenerEvents);
+            }
+            if (usage.bytes > maxBytes) {
+                violations.add(flow + ": " + usage.bytes + " bytes exceeds budget of " + maxBytes);
+            }
+            return violations;
+        }
+    }
+}
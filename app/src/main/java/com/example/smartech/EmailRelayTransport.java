@@ -0,0 +1,169 @@
+package com.example.smartech;
+
+import android.util.Base64;
+
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Sends alerts by email through the {@code mail} collection, which the Firebase "Trigger Email"
+ * extension watches and delivers over SMTP. The SMTP credentials stay on the server.
+ *
+ * Each document carries the sender's {@code uid}, and the security rules only accept it when
+ * {@code to} is one of that user's own emergency contacts, so signed-in clients cannot use the
+ * relay to mail arbitrary addresses.
+ *
+ * The document id is derived from the alert and the contact, so a retry overwrites the earlier
+ * attempt instead of queueing a second email. Attachments are inlined as base64, which keeps
+ * the whole message within Firestore's 1 MiB document limit only because evidence captures are
+ * capped well below it. They are read and encoded once per alert and the result is shared by
+ * every contact's message until {@link #release} is called for the alert.
+ */
+public class EmailRelayTransport implements EmergencyDispatcher.Transport {
+
+    private final FirebaseFirestore db;
+    private final FirebaseAuth auth;
+    private final Map<String, EncodedAttachments> encoded = new HashMap<>();
+
+    public EmailRelayTransport(FirebaseFirestore db, FirebaseAuth auth) {
+        this.db = db;
+        this.auth = auth;
+    }
+
+    /** How addresses are written to {@code to} and listed for the rules to check against. */
+    static String normalize(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    @Override
+    public String getName() {
+        return "email";
+    }
+
+    @Override
+    public boolean canReach(ContactIndex.Contact contact) {
+        return contact.email.contains("@");
+    }
+
+    @Override
+    public boolean supportsAttachments() {
+        return true;
+    }
+
+    @Override
+    public void send(EmergencyDispatcher.Delivery delivery, EmergencyDispatcher.Callback callback) {
+        FirebaseUser user = auth.getCurrentUser();
+        if (user == null) {
+            // The rules refuse anonymous mail; another transport may still get through.
+            callback.onFailed(new IllegalStateException("Not signed in"), false);
+            return;
+        }
+
+        Map<String, Object> message = new HashMap<>();
+        message.put("subject", delivery.subject);
+        message.put("text", delivery.body);
+        if (!delivery.attachments.isEmpty()) {
+            try {
+                message.put("attachments", encodedAttachments(delivery));
+            } catch (IOException e) {
+                // The files were cleaned up or never written; nothing will make them reappear.
+                callback.onFailed(e, false);
+                return;
+            }
+        }
+
+        Map<String, Object> mail = new HashMap<>();
+        mail.put("to", normalize(delivery.contact.email));
+        mail.put("uid", user.getUid());
+        mail.put("message", message);
+        mail.put("alertId", delivery.alertId);
+        mail.put("createdAt", delivery.createdAtMs);
+
+        String id = delivery.alertId + "_" + Integer.toHexString(normalize(delivery.contact.email).hashCode());
+        DocumentReference ref = db.collection("mail").document(id);
+        FirestoreMeter.set(ref, mail)
+                .addOnSuccessListener(aVoid -> callback.onSent())
+                .addOnFailureListener(e -> {
+                    boolean retryable = !(e instanceof FirebaseFirestoreException)
+                            || ((FirebaseFirestoreException) e).getCode() != FirebaseFirestoreException.Code.PERMISSION_DENIED;
+                    callback.onFailed(e, retryable);
+                });
+    }
+
+    /** Drops the attachments encoded for {@code alertId}. Called once the alert has finished. */
+    public void release(String alertId) {
+        synchronized (encoded) {
+            encoded.remove(alertId);
+        }
+    }
+
+    private List<Map<String, Object>> encodedAttachments(EmergencyDispatcher.Delivery delivery) throws IOException {
+        EncodedAttachments entry;
+        synchronized (encoded) {
+            entry = encoded.get(delivery.alertId);
+            if (entry == null) {
+                entry = new EncodedAttachments(delivery.attachments);
+                encoded.put(delivery.alertId, entry);
+            }
+        }
+        return entry.get();
+    }
+
+    /** In the form the extension hands to nodemailer. */
+    private static List<Map<String, Object>> readAttachments(List<String> paths) throws IOException {
+        List<Map<String, Object>> attachments = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            File file = new File(path);
+            byte[] bytes = new byte[(int) file.length()];
+            try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+                in.readFully(bytes);
+            }
+            Map<String, Object> attachment = new HashMap<>();
+            attachment.put("filename", file.getName());
+            attachment.put("content", Base64.encodeToString(bytes, Base64.NO_WRAP));
+            attachment.put("encoding", "base64");
+            attachments.add(Collections.unmodifiableMap(attachment));
+        }
+        return Collections.unmodifiableList(attachments);
+    }
+
+    /**
+     * One alert's attachments, encoded by whichever delivery asks first while the others wait
+     * for it. A failure is kept too: the files will not come back for a later delivery either.
+     */
+    private static class EncodedAttachments {
+        private final List<String> paths;
+        private List<Map<String, Object>> attachments;
+        private IOException error;
+
+        EncodedAttachments(List<String> paths) {
+            this.paths = paths;
+        }
+
+        synchronized List<Map<String, Object>> get() throws IOException {
+            if (attachments == null && error == null) {
+                try {
+                    attachments = readAttachments(paths);
+                } catch (IOException e) {
+                    error = e;
+                }
+            }
+            if (error != null) throw error;
+            return attachments;
+        }
+    }
+}
@@ -1,21 +1,12 @@
 package com.example.smartech;
 
 import android.Manifest;
-import android.content.Intent;
+import android.app.Application;
 import android.content.pm.PackageManager;
-import android.hardware.Sensor;
-import android.hardware.SensorEvent;
-import android.hardware.SensorEventListener;
-import android.hardware.SensorManager;
-import android.location.Location;
-import android.location.LocationListener;
-import android.location.LocationManager;
-import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.VibrationEffect;
 import android.os.Vibrator;
-import android.speech.tts.TextToSpeech;
 import android.widget.TextView;
 import android.widget.Toast;
 import androidx.annotation.NonNull;
@@ -24,71 +15,113 @@ import androidx.constraintlayout.widget.ConstraintLayout;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 import com.airbnb.lottie.LottieAnimationView;
-import com.google.firebase.auth.FirebaseAuth;
-import com.google.firebase.firestore.DocumentSnapshot;
-import com.google.firebase.firestore.FirebaseFirestore;
 
 import java.util.List;
-import java.util.Locale;
-import java.util.Map;
 
-public class EmergencyActivity extends AppCompatActivity implements SensorEventListener {
+public class EmergencyActivity extends AppCompatActivity {
 
     private static final int REQUEST_PERMISSIONS = 1;
+    private final ResourceRegistry resources = ResourceRegistry.bindTo(this);
+    private State state;
     private VoiceAssistantHelper voiceAssistantHelper;
     private LottieAnimationView micAnimation;
     private TextView recognizedText;
     private ConstraintLayout mainLayout;
-    private TextToSpeech textToSpeech;
 
-    private SensorManager sensorManager;
-    private Sensor accelerometer;
-    private float lastX, lastY, lastZ;
-    private long lastShakeTime = 0;
-    private static final int SHAKE_THRESHOLD = 800;
+    private EmergencyDispatchQueue dispatchQueue;
 
-    private LocationManager locationManager;
-    private String currentLocation = "Location not available";
+    /**
+     * Kept across rotations: the engines and the alert this screen announces deliveries for. The
+     * countdown itself runs in {@link EmergencyMonitorService}, so neither a rotation nor leaving
+     * the screen affects it.
+     */
+    public static class State extends ScreenViewModel {
+        String alertId;
+        boolean announced = false;
 
-    private FirebaseFirestore db;
-    private FirebaseAuth mAuth;
+        public State(@NonNull Application application) {
+            super(application);
+        }
+    }
+
+    private final EmergencyDispatcher.Listener dispatchListener = new EmergencyDispatcher.Listener() {
+        @Override
+        public void onDeliveryChanged(EmergencyDispatcher.Delivery delivery) {}
+
+        @Override
+        public void onAlertFinished(String alertId, List<EmergencyDispatcher.Delivery> deliveries) {
+            // Follow-ups such as recorded evidence are not announced.
+            if (alertId.equals(state.alertId)) {
+                reportDelivery(deliveries);
+            }
+        }
+    };
+
+    /** The service speaks and vibrates the countdown; this screen only shows it. */
+    private final EmergencyMonitorService.AlarmListener alarmListener = new EmergencyMonitorService.AlarmListener() {
+        @Override
+        public void onCountdown(String reason, int secondsLeft, int seconds) {
+            recognizedText.setText(reason + " detected. Sending an emergency alert in " + secondsLeft
+                    + " seconds. Tap to cancel.");
+        }
+
+        @Override
+        public void onSending() {
+            recognizedText.setText("Sending emergency alert to your contacts.");
+        }
+
+        @Override
+        public void onCancelled() {
+            recognizedText.setText("Emergency alert cancelled.");
+        }
+
+        @Override
+        public void onDispatched(String alertId, List<ContactIndex.Contact> contacts) {
+            state.alertId = alertId;
+        }
+
+        @Override
+        public void onNotSent(String reason) {
+            recognizedText.setText(reason);
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_emergency);
+        state = ScreenViewModel.of(this, State.class);
 
         micAnimation = findViewById(R.id.micAnimation);
         recognizedText = findViewById(R.id.recognizedText);
         mainLayout = findViewById(R.id.main);
 
-        db = FirebaseFirestore.getInstance();
-        mAuth = FirebaseAuth.getInstance();
+        dispatchQueue = EmergencyDispatchQueue.getInstance(this);
+        dispatchQueue.addListener(dispatchListener);
+        resources.onRelease(() -> dispatchQueue.removeListener(dispatchListener));
 
         if (ContextCompat.checkSelfPermission(this, Manifest.permission.RECORD_AUDIO) != PackageManager.PERMISSION_GRANTED ||
-                ContextCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION) != PackageManager.PERMISSION_GRANTED) {
+                ContextCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION) != PackageManager.PERMISSION_GRANTED ||
+                ContextCompat.checkSelfPermission(this, Manifest.permission.SEND_SMS) != PackageManager.PERMISSION_GRANTED) {
             ActivityCompat.requestPermissions(this,
-                    new String[]{Manifest.permission.RECORD_AUDIO, Manifest.permission.ACCESS_FINE_LOCATION},
+                    new String[]{Manifest.permission.RECORD_AUDIO, Manifest.permission.ACCESS_FINE_LOCATION,
+                            Manifest.permission.SEND_SMS},
                     REQUEST_PERMISSIONS);
         }
 
-        textToSpeech = new TextToSpeech(this, status -> {
-            if (status == TextToSpeech.SUCCESS) {
-                int langResult = textToSpeech.setLanguage(Locale.US);
-                if (langResult == TextToSpeech.LANG_MISSING_DATA || langResult == TextToSpeech.LANG_NOT_SUPPORTED) {
-                    Toast.makeText(EmergencyActivity.this, "Language not supported", Toast.LENGTH_SHORT).show();
-                } else {
-                    speakOut("Emergency feature opened.");
-                }
-            } else {
-                Toast.makeText(EmergencyActivity.this, "TextToSpeech initialization failed", Toast.LENGTH_SHORT).show();
-            }
-        });
+        // The service records the evidence; this screen lends it the camera while it is showing.
+        EvidenceRecorder.getInstance(this).attachScreen(this);
+        EmergencyMonitorService.addAlarmListener(alarmListener);
+        resources.onRelease(() -> EmergencyMonitorService.removeAlarmListener(alarmListener));
 
-        voiceAssistantHelper = new VoiceAssistantHelper(this, new VoiceAssistantHelper.Listener() {
+        voiceAssistantHelper = state.getVoice();
+        voiceAssistantHelper.bind(resources, new VoiceAssistantHelper.Listener() {
             @Override
             public void onCommandReceived(String command) {
                 recognizedText.setText(command);
+                if (EmergencyMonitorService.isCountdownRunning() && command.toLowerCase().contains("cancel")) {
+                    EmergencyMonitorService.cancelAlarm();
+                }
             }
 
             @Override
@@ -106,6 +139,10 @@ public class EmergencyActivity extends AppCompatActivity implements SensorEventL
         mainLayout.setOnTouchListener((v, event) -> {
             switch (event.getAction()) {
                 case android.view.MotionEvent.ACTION_DOWN:
+                    if (EmergencyMonitorService.isCountdownRunning()) {
+                        EmergencyMonitorService.cancelAlarm();
+                        break;
+                    }
                     vibrate();
                     voiceAssistantHelper.startListening();
                     break;
@@ -116,28 +153,37 @@ public class EmergencyActivity extends AppCompatActivity implements SensorEventL
             return true;
         });
 
-        sensorManager = (SensorManager) getSystemService(SENSOR_SERVICE);
-        if (sensorManager != null) {
-            accelerometer = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
-        }
+        state.getSpeech().whenStarted(resources, status -> {
+            if (state.announced) return;
+            state.announced = true;
+            if (status == TextSpeakerHelper.Status.LANGUAGE_UNSUPPORTED) {
+                Toast.makeText(EmergencyActivity.this, "Language not supported", Toast.LENGTH_SHORT).show();
+            } else if (status == TextSpeakerHelper.Status.FAILED) {
+                Toast.makeText(EmergencyActivity.this, "TextToSpeech initialization failed", Toast.LENGTH_SHORT).show();
+            } else if (!EmergencyMonitorService.isCountdownRunning()) {
+                // Opened part way through a countdown, the service is already announcing it.
+                speakOut("Emergency feature opened.");
+            }
+        });
 
-        locationManager = (LocationManager) getSystemService(LOCATION_SERVICE);
-        if (ContextCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION) == PackageManager.PERMISSION_GRANTED) {
-            locationManager.requestLocationUpdates(LocationManager.GPS_PROVIDER, 0, 0, locationListener);
-        }
+        EmergencyMonitorService.start(this);
     }
 
-    private final LocationListener locationListener = new LocationListener() {
-        @Override
-        public void onLocationChanged(@NonNull Location location) {
-            currentLocation = "Lat: " + location.getLatitude() + ", Long: " + location.getLongitude();
+    @Override
+    public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions, @NonNull int[] grantResults) {
+        super.onRequestPermissionsResult(requestCode, permissions, grantResults);
+        if (requestCode != REQUEST_PERMISSIONS) return;
+        for (int i = 0; i < permissions.length && i < grantResults.length; i++) {
+            if (Manifest.permission.ACCESS_FINE_LOCATION.equals(permissions[i])
+                    && grantResults[i] == PackageManager.PERMISSION_GRANTED) {
+                // Lets the running service add location and start recording the trail.
+                EmergencyMonitorService.start(this);
+            }
         }
-    };
+    }
 
     private void speakOut(String text) {
-        if (textToSpeech != null) {
-            textToSpeech.speak(text, TextToSpeech.QUEUE_FLUSH, null, null);
-        }
+        state.getSpeech().speak(text);
     }
 
     private void vibrate() {
@@ -151,89 +197,28 @@ public class EmergencyActivity extends AppCompatActivity implements SensorEventL
         }
     }
 
-    @Override
-    public void onSensorChanged(SensorEvent event) {
-        float x = event.values[0];
-        float y = event.values[1];
-        float z = event.values[2];
-
-        long currentTime = System.currentTimeMillis();
-
-        if ((currentTime - lastShakeTime) > 1000) {
-            long diffTime = currentTime - lastShakeTime;
-            lastShakeTime = currentTime;
-
-            float speed = Math.abs(x + y + z - lastX - lastY - lastZ) / diffTime * 10000;
-
-            if (speed > SHAKE_THRESHOLD) {
-                speakOut("Shake detected. Sending emergency alert to your contacts.");
-                triggerEmergencyProtocol();
+    /**
+     * Speaks how the alert went once every contact was either reached or given up on.
+     */
+    private void reportDelivery(List<EmergencyDispatcher.Delivery> deliveries) {
+        if (deliveries.isEmpty()) return;
+
+        StringBuilder failed = new StringBuilder();
+        int sent = 0;
+        for (EmergencyDispatcher.Delivery delivery : deliveries) {
+            if (delivery.getStatus() == EmergencyDispatcher.Status.SENT) {
+                sent++;
+            } else {
+                if (failed.length() > 0) failed.append(", ");
+                failed.append(delivery.contact.getFullName());
             }
-
-            lastX = x;
-            lastY = y;
-            lastZ = z;
-        }
-    }
-
-    @Override
-    public void onAccuracyChanged(Sensor sensor, int accuracy) {}
-
-    @Override
-    protected void onResume() {
-        super.onResume();
-        if (accelerometer != null) {
-            sensorManager.registerListener(this, accelerometer, SensorManager.SENSOR_DELAY_NORMAL);
         }
-    }
-
-    @Override
-    protected void onPause() {
-        super.onPause();
-        sensorManager.unregisterListener(this);
-    }
-
-    @Override
-    protected void onDestroy() {
-        if (textToSpeech != null) {
-            textToSpeech.stop();
-            textToSpeech.shutdown();
-        }
-        super.onDestroy();
-    }
-
-    private void triggerEmergencyProtocol() {
-        String userId = mAuth.getCurrentUser().getUid();
-        db.collection("users").document(userId).get()
-                .addOnSuccessListener(documentSnapshot -> {
-                    if (documentSnapshot.exists()) {
-                        List<Map<String, String>> contacts = (List<Map<String, String>>) documentSnapshot.get("emergencyContacts");
-                        if (contacts != null) {
-                            for (Map<String, String> contact : contacts) {
-                                String name = contact.get("firstName") + " " + contact.get("lastName");
-                                String email = contact.get("email");
-                                sendEmailToContact(name, email, currentLocation);
-                            }
-                        } else {
-                            speakOut("No emergency contacts found.");
-                        }
-                    } else {
-                        speakOut("User data not found.");
-                    }
-                })
-                .addOnFailureListener(e -> speakOut("Failed to retrieve contacts: " + e.getMessage()));
-    }
-
-    private void sendEmailToContact(String name, String email, String location) {
-        Intent emailIntent = new Intent(Intent.ACTION_SENDTO);
-        emailIntent.setData(Uri.parse("mailto:" + email));
-        emailIntent.putExtra(Intent.EXTRA_SUBJECT, "EMERGENCY ALERT");
-        emailIntent.putExtra(Intent.EXTRA_TEXT, "This is an emergency alert from your contact. Current location: " + location);
 
-        try {
-            startActivity(Intent.createChooser(emailIntent, "Send email to " + name));
-        } catch (Exception e) {
-            speakOut("Could not send email to " + name);
+        if (sent == deliveries.size()) {
+            speakOut("Emergency alert delivered to all " + sent + " contacts.");
+        } else {
+            speakOut("Emergency alert delivered to " + sent + " of " + deliveries.size()
+                    + " contacts. Could not reach " + failed + ".");
         }
     }
 }
@@ -0,0 +1,187 @@
+package com.example.smartech;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Gets an emergency alert ready while the cancellable countdown is still running.
+ *
+ * {@link #start()} asks for the contacts and a fresh location fix at the same time and rebuilds
+ * the message as each arrives. When the countdown expires, {@link #fire} hands over the
+ * prepared alert at once; only if the contacts have not arrived yet does it wait for them. A
+ * location fix that is still outstanding is not waited for: the last known position is used
+ * instead. {@link #cancel()} drops everything, so a false alarm costs nothing but the lookups.
+ */
+public class EmergencyAlertPreparer {
+
+    public interface ContactSource {
+        /** Calls back once with the contacts, or an empty list if they could not be loaded. */
+        void load(Consumer<List<ContactIndex.Contact>> callback);
+    }
+
+    public interface LocationSource {
+        /** Calls back once with a fresh position. */
+        void requestFix(Consumer<LocationFix> callback);
+
+        void cancel();
+
+        /** The best position known right now, or an invalid fix. */
+        LocationFix lastKnown();
+
+        /** A snapshot of recent movement, or null if none was recorded. */
+        BreadcrumbTrail trail();
+    }
+
+    public interface Listener {
+        void onReady(Alert alert);
+    }
+
+    /** The security rules only relay mail with this subject and a body from {@link #buildBody}. */
+    public static final String SUBJECT = "EMERGENCY ALERT";
+
+    public static class Alert {
+        public final List<ContactIndex.Contact> contacts;
+        public final String subject;
+        public final LocationFix location;
+        /** False when the alert had to go out before a fresh fix arrived. */
+        public final boolean freshLocation;
+        /** Recent movement leading up to the alert, or null. */
+        public final BreadcrumbTrail trail;
+        private String body;
+
+        Alert(List<ContactIndex.Contact> contacts, LocationFix location, boolean freshLocation,
+              BreadcrumbTrail trail) {
+            this.contacts = contacts;
+            this.subject = SUBJECT;
+            this.location = location;
+            this.freshLocation = freshLocation;
+            this.trail = trail;
+        }
+
+        /** Formatted when the message is composed, so superseded preparations never build text. */
+        public synchronized String getBody() {
+            if (body == null) {
+                body = buildBody(location.describe(), trail);
+            }
+            return body;
+        }
+    }
+
+    private final ContactSource contactSource;
+    private final LocationSource locationSource;
+
+    private int generation = 0;
+    private List<ContactIndex.Contact> contacts;
+    private LocationFix freshLocation;
+    private Alert prepared;
+    private Listener pendingListener;
+
+    public EmergencyAlertPreparer(ContactSource contactSource, LocationSource locationSource) {
+        this.contactSource = contactSource;
+        this.locationSource = locationSource;
+    }
+
+    /**
+     * Starts fetching contacts and a location fix in parallel. Restarts any earlier preparation.
+     */
+    public void start() {
+        final int current;
+        synchronized (this) {
+            current = ++generation;
+            contacts = null;
+            freshLocation = null;
+            prepared = null;
+            pendingListener = null;
+        }
+        contactSource.load(loaded -> onContacts(current, loaded));
+        locationSource.requestFix(location -> onLocation(current, location));
+    }
+
+    /**
+     * Delivers the alert to {@code listener}: immediately if the contacts are in, otherwise as
+     * soon as they arrive.
+     */
+    public void fire(Listener listener) {
+        Alert alert;
+        synchronized (this) {
+            if (contacts == null) {
+                pendingListener = listener;
+                return;
+            }
+            alert = finish();
+        }
+        listener.onReady(alert);
+    }
+
+    public void cancel() {
+        synchronized (this) {
+            generation++;
+            contacts = null;
+            freshLocation = null;
+            prepared = null;
+            pendingListener = null;
+        }
+        locationSource.cancel();
+    }
+
+    /** The alert as it would go out right now, or null while the contacts are still loading. */
+    public synchronized Alert getPrepared() {
+        return prepared;
+    }
+
+    private void onContacts(int from, List<ContactIndex.Contact> loaded) {
+        Listener listener;
+        Alert alert;
+        synchronized (this) {
+            if (from != generation) return;
+            contacts = loaded != null ? loaded : Collections.<ContactIndex.Contact>emptyList();
+            rebuild();
+            if (pendingListener == null) return;
+            listener = pendingListener;
+            pendingListener = null;
+            alert = finish();
+        }
+        listener.onReady(alert);
+    }
+
+    private void onLocation(int from, LocationFix location) {
+        synchronized (this) {
+            if (from != generation) return;
+            freshLocation = location;
+            rebuild();
+        }
+    }
+
+    private void rebuild() {
+        if (contacts == null) return;
+        if (freshLocation != null) {
+            prepared = new Alert(contacts, freshLocation, true, locationSource.trail());
+        } else {
+            prepared = new Alert(contacts, locationSource.lastKnown(), false, locationSource.trail());
+        }
+    }
+
+    /** Hands over the prepared alert and ends this preparation. */
+    private Alert finish() {
+        rebuild();
+        Alert alert = prepared;
+        generation++;
+        if (freshLocation == null) {
+            locationSource.cancel();
+        }
+        return alert;
+    }
+
+    /** firestore.rules matches relayed mail against this exact format; change both together. */
+    static String buildBody(String location, BreadcrumbTrail trail) {
+        StringBuilder body = new StringBuilder("This is an emergency alert from your contact. Current location: ")
+                .append(location);
+        if (trail != null && trail.size() > 1) {
+            // Paste the first part into any polyline decoder to see the route.
+            body.append("\nRecent movement (encoded polyline, oldest first, then seconds before the last point): ");
+            trail.encode(body);
+        }
+        return body.toString();
+    }
+}
@@ -1,6 +1,8 @@
 package com.example.smartech;
 
+import android.Manifest;
 import android.content.Intent;
+import android.content.pm.PackageManager;
 import android.content.res.ColorStateList;
 import android.graphics.Color;
 import android.os.Bundle;
@@ -8,32 +10,34 @@ import android.text.InputType;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Button;
+import android.widget.CheckBox;
 import android.widget.EditText;
 import android.widget.LinearLayout;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.app.ActivityCompat;
+import androidx.core.content.ContextCompat;
 
 import com.google.firebase.auth.FirebaseAuth;
-import com.google.firebase.firestore.FirebaseFirestore;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
 
 public class EmergencyContactActivity extends AppCompatActivity {
 
-    private static final int MAX_CONTACTS = 5;
+    private static final int REQUEST_EVIDENCE_PERMISSIONS = 1;
     private int contactCount = 1;
 
     private LinearLayout emergencyContactsContainer;
     private Button addContactButton;
     private Button removeContactButton;
     private Button doneButton;
+    private CheckBox evidenceCaptureCheckBox;
 
     private FirebaseAuth mAuth;
-    private FirebaseFirestore db;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -41,22 +45,37 @@ public class EmergencyContactActivity extends AppCompatActivity {
         setContentView(R.layout.activity_emergency_contact);
 
         mAuth = FirebaseAuth.getInstance();
-        db = FirebaseFirestore.getInstance();
 
         emergencyContactsContainer = findViewById(R.id.emergencyContactsContainer);
         addContactButton = findViewById(R.id.addContactButton);
         removeContactButton = findViewById(R.id.removeContactButton);
         doneButton = findViewById(R.id.doneButton);
+        evidenceCaptureCheckBox = findViewById(R.id.evidenceCaptureCheckBox);
+
+        // Off unless the user asks for it; photos and sound go to the contacts by email.
+        evidenceCaptureCheckBox.setChecked(EvidenceRecorder.isEnabled(this));
+        evidenceCaptureCheckBox.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            EvidenceRecorder.setEnabled(this, isChecked);
+            if (isChecked && (ContextCompat.checkSelfPermission(this, Manifest.permission.CAMERA) != PackageManager.PERMISSION_GRANTED
+                    || ContextCompat.checkSelfPermission(this, Manifest.permission.RECORD_AUDIO) != PackageManager.PERMISSION_GRANTED)) {
+                ActivityCompat.requestPermissions(this,
+                        new String[]{Manifest.permission.CAMERA, Manifest.permission.RECORD_AUDIO},
+                        REQUEST_EVIDENCE_PERMISSIONS);
+            } else if (isChecked) {
+                // Lets the monitoring service record sound in the background.
+                EmergencyMonitorService.start(this);
+            }
+        });
 
         // Initial contact field
         addInitialContactField();
 
         // Button to add a new contact field
         addContactButton.setOnClickListener(v -> {
-            if (validateLastContact() && contactCount < MAX_CONTACTS) {
+            if (validateLastContact() && contactCount < ContactRepository.MAX_CONTACTS) {
                 addNewContactField();
-            } else if (contactCount >= MAX_CONTACTS) {
-                Toast.makeText(this, "Maximum of 5 contacts allowed", Toast.LENGTH_SHORT).show();
+            } else if (contactCount >= ContactRepository.MAX_CONTACTS) {
+                Toast.makeText(this, "Maximum of " + ContactRepository.MAX_CONTACTS + " contacts allowed", Toast.LENGTH_SHORT).show();
             }
         });
 
@@ -139,20 +158,35 @@ public class EmergencyContactActivity extends AppCompatActivity {
                 ViewGroup.LayoutParams.MATCH_PARENT,
                 ViewGroup.LayoutParams.WRAP_CONTENT
         );
-        lpEmail.setMargins(0, 8, 0, 16);
+        lpEmail.setMargins(0, 8, 0, 8);
         emailEditText.setLayoutParams(lpEmail);
 
+        // Phone input, optional; used for SMS alerts
+        EditText phoneEditText = new EditText(this);
+        phoneEditText.setHint("Contact Phone (for SMS alerts)");
+        phoneEditText.setInputType(InputType.TYPE_CLASS_PHONE);
+        phoneEditText.setBackground(getDrawable(android.R.drawable.edit_text));
+        phoneEditText.setPadding(12, 12, 12, 12);
+        LinearLayout.LayoutParams lpPhone = new LinearLayout.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT,
+                ViewGroup.LayoutParams.WRAP_CONTENT
+        );
+        lpPhone.setMargins(0, 0, 0, 16);
+        phoneEditText.setLayoutParams(lpPhone);
+
         // Add to the container
         emergencyContactsContainer.addView(nameRow);
         emergencyContactsContainer.addView(emailEditText);
+        emergencyContactsContainer.addView(phoneEditText);
     }
 
     private boolean validateLastContact() {
         int childCount = emergencyContactsContainer.getChildCount();
-        if (childCount < 2) return false;
+        if (childCount < 3) return false;
 
-        View nameRowView = emergencyContactsContainer.getChildAt(childCount - 2);
-        View emailView = emergencyContactsContainer.getChildAt(childCount - 1);
+        View nameRowView = emergencyContactsContainer.getChildAt(childCount - 3);
+        View emailView = emergencyContactsContainer.getChildAt(childCount - 2);
+        EditText phone = (EditText) emergencyContactsContainer.getChildAt(childCount - 1);
 
         if (!(nameRowView instanceof LinearLayout)) return false;
 
@@ -182,12 +216,18 @@ public class EmergencyContactActivity extends AppCompatActivity {
             return false;
         }
 
+        String phoneStr = phone.getText().toString().trim();
+        if (!phoneStr.isEmpty() && !phoneStr.matches("^\\+?[0-9 ()-]{6,}$")) {
+            phone.setError("Enter a valid phone number");
+            return false;
+        }
+
         return true;
     }
 
     private void saveContactsToFirestore() {
         String userId = mAuth.getCurrentUser().getUid();
-        ArrayList<Map<String, String>> contactsList = new ArrayList<>();
+        List<ContactIndex.Contact> contactsList = new ArrayList<>();
 
         int childIndex = 0;
 
@@ -195,13 +235,15 @@ public class EmergencyContactActivity extends AppCompatActivity {
             // Skip number label (TextView)
             childIndex++; // this skips the label
 
-            if (childIndex + 1 >= emergencyContactsContainer.getChildCount()) break;
+            if (childIndex + 2 >= emergencyContactsContainer.getChildCount()) break;
 
             View nameRowView = emergencyContactsContainer.getChildAt(childIndex);
             View emailView = emergencyContactsContainer.getChildAt(childIndex + 1);
+            View phoneView = emergencyContactsContainer.getChildAt(childIndex + 2);
 
-            if (!(nameRowView instanceof LinearLayout) || !(emailView instanceof EditText)) {
-                childIndex += 2;
+            if (!(nameRowView instanceof LinearLayout) || !(emailView instanceof EditText)
+                    || !(phoneView instanceof EditText)) {
+                childIndex += 3;
                 continue;
             }
 
@@ -209,18 +251,18 @@ public class EmergencyContactActivity extends AppCompatActivity {
             EditText firstName = (EditText) nameRow.getChildAt(0);
             EditText lastName = (EditText) nameRow.getChildAt(1);
             EditText email = (EditText) emailView;
+            EditText phone = (EditText) phoneView;
 
-            Map<String, String> contact = new HashMap<>();
-            contact.put("firstName", firstName.getText().toString().trim());
-            contact.put("lastName", lastName.getText().toString().trim());
-            contact.put("email", email.getText().toString().trim());
-
-            contactsList.add(contact);
+            contactsList.add(new ContactIndex.Contact(
+                    firstName.getText().toString().trim(),
+                    lastName.getText().toString().trim(),
+                    email.getText().toString().trim(),
+                    phone.getText().toString().trim()));
 
-            childIndex += 2;
+            childIndex += 3;
         }
 
-        db.collection("users").document(userId).update("emergencyContacts", contactsList)
+        ContactRepository.getInstance(this).save(userId, contactsList)
                 .addOnSuccessListener(aVoid -> {
                     Toast.makeText(EmergencyContactActivity.this, "Contacts saved successfully!", Toast.LENGTH_SHORT).show();
                     // Navigate to LoginActivity instead of HomeActivity
@@ -235,8 +277,8 @@ public class EmergencyContactActivity extends AppCompatActivity {
     private void removeLastContactField() {
         if (contactCount <= 1) return;
 
-        // Remove the number label, name row, and email
-        for (int i = 0; i < 3; i++) {
+        // Remove the number label, name row, email and phone
+        for (int i = 0; i < 4; i++) {
             emergencyContactsContainer.removeViewAt(emergencyContactsContainer.getChildCount() - 1);
         }
 
@@ -254,4 +296,20 @@ public class EmergencyContactActivity extends AppCompatActivity {
             // Replace with your primary color
         }
     }
+
+    @Override
+    public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions, @NonNull int[] grantResults) {
+        super.onRequestPermissionsResult(requestCode, permissions, grantResults);
+        if (requestCode != REQUEST_EVIDENCE_PERMISSIONS) return;
+        if (ContextCompat.checkSelfPermission(this, Manifest.permission.RECORD_AUDIO) == PackageManager.PERMISSION_GRANTED) {
+            EmergencyMonitorService.start(this);
+        }
+        for (int result : grantResults) {
+            if (result != PackageManager.PERMISSION_GRANTED) {
+                Toast.makeText(this, "Without camera and microphone access, only what is allowed will be recorded",
+                        Toast.LENGTH_LONG).show();
+                return;
+            }
+        }
+    }
 }
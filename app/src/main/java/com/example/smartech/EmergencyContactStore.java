@@ -0,0 +1,130 @@
+package com.example.smartech;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+import android.util.Base64;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+/**
+ * The user's emergency contacts, encrypted on the device so an alert can go out with no network.
+ *
+ * Records are sealed by {@link ContactCipher} with an AES key that never leaves the Android
+ * keystore. The key needs no unlock, because alerts have to work from the lock screen. When the
+ * keystore is unusable the store simply holds nothing and callers fall back to Firestore.
+ */
+public class EmergencyContactStore {
+
+    private static final String TAG = "EmergencyContactStore";
+    private static final String PREFS_NAME = "emergency_contacts_secure";
+    private static final String KEY_CONTACTS = "contacts_";
+    private static final String KEYSTORE = "AndroidKeyStore";
+    private static final String KEY_ALIAS = "emergency_contacts";
+
+    private static EmergencyContactStore instance;
+
+    private final SharedPreferences prefs;
+    private ContactCipher cipher;
+
+    public static synchronized EmergencyContactStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new EmergencyContactStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private EmergencyContactStore(Context context) {
+        prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /** The stored contacts of {@code userId}, or null if none were stored or they cannot be read. */
+    public synchronized List<ContactIndex.Contact> load(String userId) {
+        String stored = prefs.getString(KEY_CONTACTS + userId, null);
+        if (stored == null) return null;
+
+        try {
+            JSONArray array = new JSONArray(getCipher().open(userId, Base64.decode(stored, Base64.NO_WRAP)));
+            List<ContactIndex.Contact> contacts = new ArrayList<>(array.length());
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject item = array.getJSONObject(i);
+                Map<String, String> map = new HashMap<>();
+                Iterator<String> keys = item.keys();
+                while (keys.hasNext()) {
+                    String key = keys.next();
+                    map.put(key, item.getString(key));
+                }
+                contacts.add(ContactIndex.Contact.fromMap(map));
+            }
+            return contacts;
+        } catch (GeneralSecurityException | IOException | JSONException | IllegalArgumentException e) {
+            // A reinstalled keystore key, or a tampered file; Firestore has the real copy.
+            Log.w(TAG, "Discarding unreadable emergency contacts", e);
+            prefs.edit().remove(KEY_CONTACTS + userId).apply();
+            return null;
+        }
+    }
+
+    public synchronized void save(String userId, List<ContactIndex.Contact> contacts) {
+        try {
+            JSONArray array = new JSONArray();
+            for (ContactIndex.Contact contact : contacts) {
+                array.put(new JSONObject(contact.toMap()));
+            }
+            byte[] sealed = getCipher().seal(userId, array.toString());
+            prefs.edit().putString(KEY_CONTACTS + userId, Base64.encodeToString(sealed, Base64.NO_WRAP)).apply();
+        } catch (GeneralSecurityException | IOException e) {
+            Log.w(TAG, "Could not store emergency contacts", e);
+        }
+    }
+
+    /** Forgets every user's contacts, e.g. on sign out. */
+    public synchronized void clear() {
+        prefs.edit().clear().apply();
+    }
+
+    private ContactCipher getCipher() throws GeneralSecurityException, IOException {
+        if (cipher == null) {
+            cipher = new ContactCipher(getOrCreateKey(KEY_ALIAS));
+        }
+        return cipher;
+    }
+
+    /**
+     * The keystore AES key under {@code alias}, created on first use. Usable without unlocking,
+     * like every key kept for alerts.
+     */
+    static SecretKey getOrCreateKey(String alias) throws GeneralSecurityException, IOException {
+        KeyStore keyStore = KeyStore.getInstance(KEYSTORE);
+        keyStore.load(null);
+        KeyStore.Entry entry = keyStore.getEntry(alias, null);
+        if (entry instanceof KeyStore.SecretKeyEntry) {
+            return ((KeyStore.SecretKeyEntry) entry).getSecretKey();
+        }
+
+        KeyGenerator generator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, KEYSTORE);
+        generator.init(new KeyGenParameterSpec.Builder(alias,
+                KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+                .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+                .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+                .setKeySize(256)
+                .build());
+        return generator.generateKey();
+    }
+}
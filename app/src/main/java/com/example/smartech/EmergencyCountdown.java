@@ -0,0 +1,64 @@
+package com.example.smartech;
+
+import android.os.Handler;
+
+/**
+ * One-second countdown before an automatically detected emergency is acted on, giving the user
+ * a chance to cancel a false alarm. Ticks and the final callback run on the handler's thread.
+ */
+public class EmergencyCountdown {
+
+    public interface Listener {
+        void onTick(int secondsLeft);
+        void onExpired();
+        void onCancelled();
+    }
+
+    private static final long TICK_MS = 1000;
+
+    private final Handler handler;
+    private final Listener listener;
+    private final Runnable tick = this::tick;
+    private int secondsLeft;
+    private boolean running = false;
+
+    public EmergencyCountdown(Handler handler, Listener listener) {
+        this.handler = handler;
+        this.listener = listener;
+    }
+
+    /**
+     * Starts counting down from {@code seconds}. Does nothing if a countdown is already running,
+     * so a second trigger does not extend the first.
+     */
+    public void start(int seconds) {
+        if (running) return;
+        running = true;
+        secondsLeft = seconds;
+        listener.onTick(secondsLeft);
+        handler.postDelayed(tick, TICK_MS);
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public void cancel() {
+        if (!running) return;
+        running = false;
+        handler.removeCallbacks(tick);
+        listener.onCancelled();
+    }
+
+    private void tick() {
+        if (!running) return;
+        secondsLeft--;
+        if (secondsLeft <= 0) {
+            running = false;
+            listener.onExpired();
+            return;
+        }
+        listener.onTick(secondsLeft);
+        handler.postDelayed(tick, TICK_MS);
+    }
+}
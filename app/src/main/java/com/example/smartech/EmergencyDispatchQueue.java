@@ -0,0 +1,256 @@
+package com.example.smartech;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Base64;
+import android.util.Log;
+
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+
+/**
+ * Process-wide owner of the {@link EmergencyDispatcher}.
+ *
+ * Alerts go out by SMS when the contact has a phone number and by relayed email otherwise, with
+ * the other transport used on retry. Delivery state, contacts and alert text included, is sealed
+ * by {@link ContactCipher} under its own keystore key, committed to SharedPreferences on a
+ * background thread as it changes, and resumed when the queue is first created, which {@link EmergencyMonitorService}
+ * does when the system restarts it after the process was killed. Listeners are called on the
+ * main thread. Sends are reported to {@link EmergencyLatencyTracer} as they complete, and the
+ * traced alert's timings are logged once it finishes.
+ */
+public class EmergencyDispatchQueue {
+
+    private static final String TAG = "EmergencyDispatchQueue";
+    private static final String PREFS_NAME = "emergency_dispatch";
+    private static final String KEY_DELIVERIES = "deliveries";
+    private static final String KEY_ALIAS = "emergency_dispatch";
+    private static final int SEND_THREADS = 4;
+
+    private static EmergencyDispatchQueue instance;
+
+    private final SharedPreferences prefs;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final List<EmergencyDispatcher.Listener> listeners = new CopyOnWriteArrayList<>();
+    private final EmergencyDispatcher dispatcher;
+    private final EmailRelayTransport emailRelay;
+    private final EmergencyLatencyTracer tracer = EmergencyLatencyTracer.getInstance();
+
+    public static synchronized EmergencyDispatchQueue getInstance(Context context) {
+        if (instance == null) {
+            instance = new EmergencyDispatchQueue(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private EmergencyDispatchQueue(Context context) {
+        prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+
+        List<EmergencyDispatcher.Transport> transports = new ArrayList<>();
+        transports.add(new SmsTransport(context));
+        emailRelay = new EmailRelayTransport(FirebaseFirestore.getInstance(), FirebaseAuth.getInstance());
+        transports.add(emailRelay);
+        dispatcher = new EmergencyDispatcher(transports, Executors.newFixedThreadPool(SEND_THREADS),
+                Executors.newSingleThreadScheduledExecutor(), new PrefsStore(), Executors.newSingleThreadExecutor(),
+                System::currentTimeMillis);
+
+        dispatcher.setListener(new EmergencyDispatcher.Listener() {
+            @Override
+            public void onDeliveryChanged(EmergencyDispatcher.Delivery delivery) {
+                if (delivery.getStatus() == EmergencyDispatcher.Status.SENT) {
+                    tracer.sent(delivery.alertId, delivery.getTransport(), SystemClock.elapsedRealtimeNanos());
+                }
+                handler.post(() -> {
+                    for (EmergencyDispatcher.Listener listener : listeners) {
+                        listener.onDeliveryChanged(delivery);
+                    }
+                });
+            }
+
+            @Override
+            public void onAlertFinished(String alertId, List<EmergencyDispatcher.Delivery> deliveries) {
+                emailRelay.release(alertId);
+                EmergencyLatencyTracer.Trace trace = tracer.finish(alertId);
+                if (trace != null) {
+                    Log.i(TAG, "Alert latency " + trace.describe() + "; p99 of recent alerts "
+                            + tracer.overheadPercentileMs(99) + "ms, objective " + EmergencyLatencyTracer.SLO_P99_MS + "ms");
+                }
+                handler.post(() -> {
+                    for (EmergencyDispatcher.Listener listener : listeners) {
+                        listener.onAlertFinished(alertId, deliveries);
+                    }
+                });
+            }
+        });
+
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (connectivityManager != null) {
+            connectivityManager.registerDefaultNetworkCallback(new ConnectivityManager.NetworkCallback() {
+                @Override
+                public void onAvailable(Network network) {
+                    dispatcher.retryNow();
+                }
+            });
+        }
+
+        dispatcher.resume();
+    }
+
+    /**
+     * Sends the alert to every contact in parallel. Returns the alert id passed to listeners.
+     */
+    public String dispatch(List<ContactIndex.Contact> contacts, String subject, String body) {
+        return dispatcher.dispatch(contacts, subject, body);
+    }
+
+    /**
+     * Sends files recorded for an alert to every contact a transport can carry them to.
+     */
+    public String dispatch(List<ContactIndex.Contact> contacts, String subject, String body, List<String> attachments) {
+        return dispatcher.dispatch(contacts, subject, body, attachments);
+    }
+
+    public List<EmergencyDispatcher.Delivery> getPending() {
+        return dispatcher.getPending();
+    }
+
+    public void addListener(EmergencyDispatcher.Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(EmergencyDispatcher.Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Called on the dispatcher's store writer and committed synchronously there: the queue exists
+     * for the case where the process dies right after the alert was raised. When the keystore is unusable nothing is kept, rather than contacts
+     * and locations in plain text; alerts then still go out, but not across a restart.
+     */
+    private class PrefsStore implements EmergencyDispatcher.Store {
+        private ContactCipher cipher;
+
+        @Override
+        public void save(List<EmergencyDispatcher.Delivery> deliveries) {
+            JSONArray array = new JSONArray();
+            try {
+                for (EmergencyDispatcher.Delivery delivery : deliveries) {
+                    JSONObject contact = new JSONObject();
+                    for (Map.Entry<String, String> entry : delivery.contact.toMap().entrySet()) {
+                        contact.put(entry.getKey(), entry.getValue());
+                    }
+                    JSONObject item = new JSONObject();
+                    item.put("a", delivery.alertId);
+                    item.put("c", contact);
+                    item.put("s", delivery.subject);
+                    item.put("b", delivery.body);
+                    if (!delivery.attachments.isEmpty()) {
+                        item.put("at", new JSONArray(delivery.attachments));
+                    }
+                    item.put("t", delivery.createdAtMs);
+                    item.put("st", delivery.getStatus().name());
+                    item.put("n", delivery.getAttempts());
+                    item.putOpt("tr", delivery.getTransport());
+                    item.putOpt("e", delivery.getLastError());
+                    item.put("r", delivery.getNextAttemptAtMs());
+                    if (!delivery.getRuledOut().isEmpty()) {
+                        item.put("x", new JSONArray(delivery.getRuledOut()));
+                    }
+                    array.put(item);
+                }
+            } catch (JSONException e) {
+                Log.w(TAG, "Could not persist emergency deliveries", e);
+                return;
+            }
+            String sealed;
+            try {
+                // Bound to the preference it is stored under, as contacts are bound to their user.
+                sealed = Base64.encodeToString(getCipher().seal(KEY_DELIVERIES, array.toString()), Base64.NO_WRAP);
+            } catch (GeneralSecurityException | IOException e) {
+                Log.w(TAG, "Could not seal emergency deliveries", e);
+                // An older state would be resent on the next start.
+                prefs.edit().remove(KEY_DELIVERIES).commit();
+                return;
+            }
+            if (!prefs.edit().putString(KEY_DELIVERIES, sealed).commit()) {
+                Log.w(TAG, "Could not write emergency deliveries");
+            }
+        }
+
+        @Override
+        public List<EmergencyDispatcher.Delivery> load() {
+            List<EmergencyDispatcher.Delivery> deliveries = new ArrayList<>();
+            String stored = prefs.getString(KEY_DELIVERIES, null);
+            if (stored == null) return deliveries;
+
+            try {
+                JSONArray array = new JSONArray(getCipher().open(KEY_DELIVERIES, Base64.decode(stored, Base64.NO_WRAP)));
+                for (int i = 0; i < array.length(); i++) {
+                    JSONObject item = array.getJSONObject(i);
+                    JSONObject contactJson = item.getJSONObject("c");
+                    Map<String, String> contact = new HashMap<>();
+                    Iterator<String> keys = contactJson.keys();
+                    while (keys.hasNext()) {
+                        String key = keys.next();
+                        contact.put(key, contactJson.getString(key));
+                    }
+                    List<String> attachments = new ArrayList<>();
+                    JSONArray attachmentsJson = item.optJSONArray("at");
+                    for (int j = 0; attachmentsJson != null && j < attachmentsJson.length(); j++) {
+                        attachments.add(attachmentsJson.getString(j));
+                    }
+                    List<String> ruledOut = new ArrayList<>();
+                    JSONArray ruledOutJson = item.optJSONArray("x");
+                    for (int j = 0; ruledOutJson != null && j < ruledOutJson.length(); j++) {
+                        ruledOut.add(ruledOutJson.getString(j));
+                    }
+                    deliveries.add(EmergencyDispatcher.Delivery.restore(
+                            item.getString("a"),
+                            ContactIndex.Contact.fromMap(contact),
+                            item.getString("s"),
+                            item.getString("b"),
+                            attachments,
+                            item.getLong("t"),
+                            EmergencyDispatcher.Status.valueOf(item.getString("st")),
+                            item.getInt("n"),
+                            item.optString("tr", null),
+                            item.optString("e", null),
+                            item.getLong("r"),
+                            ruledOut));
+                }
+            } catch (GeneralSecurityException | IOException | JSONException | IllegalArgumentException e) {
+                Log.w(TAG, "Discarding unreadable emergency deliveries", e);
+                prefs.edit().remove(KEY_DELIVERIES).apply();
+                deliveries.clear();
+            }
+            return deliveries;
+        }
+
+        private ContactCipher getCipher() throws GeneralSecurityException, IOException {
+            if (cipher == null) {
+                cipher = new ContactCipher(EmergencyContactStore.getOrCreateKey(KEY_ALIAS));
+            }
+            return cipher;
+        }
+    }
+}
@@ -0,0 +1,457 @@
+package com.example.smartech;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Sends an emergency alert to every contact at once and keeps retrying until each one is
+ * delivered or runs out of attempts.
+ *
+ * Every contact gets a {@link Delivery} that is handed to the first {@link Transport} able to
+ * reach it; retries rotate through the other transports with exponential backoff. A failure
+ * that retrying cannot fix rules out only the transport it came from, and the next one able to
+ * reach the contact is tried straight away; the delivery fails once none is left.
+ *
+ * Deliveries are written to a {@link Store} by a single background writer, so a slow store
+ * never holds up a send: a new alert is queued for writing once and every send starts at once.
+ * Changes made while a write is under way are folded into the next one. The start of a send is
+ * not written at all, as {@link #resume()} would send again either way. After process death it
+ * picks up whatever was still unfinished; a delivery that was being sent at that point is sent
+ * again, since a duplicate alert is better than a missing one.
+ */
+public class EmergencyDispatcher {
+
+    public enum Status { PENDING, SENDING, SENT, RETRYING, FAILED }
+
+    public interface Transport {
+        String getName();
+
+        boolean canReach(ContactIndex.Contact contact);
+
+        /** Whether {@link Delivery#attachments} go out with the message. */
+        boolean supportsAttachments();
+
+        /**
+         * Starts sending and reports back through {@code callback} exactly once, from any thread.
+         */
+        void send(Delivery delivery, Callback callback);
+    }
+
+    public interface Callback {
+        void onSent();
+
+        void onFailed(Exception error, boolean retryable);
+    }
+
+    public interface Store {
+        void save(List<Delivery> deliveries);
+
+        List<Delivery> load();
+    }
+
+    /**
+     * Called on whatever thread caused the change, with the dispatcher locked; hand the work off
+     * rather than calling back into the dispatcher.
+     */
+    public interface Listener {
+        void onDeliveryChanged(Delivery delivery);
+
+        /** Called once every delivery of the alert is either sent or failed for good. */
+        void onAlertFinished(String alertId, List<Delivery> deliveries);
+    }
+
+    /**
+     * One contact's copy of an alert. Instances handed out are snapshots; the dispatcher keeps
+     * its own.
+     */
+    public static class Delivery {
+        public final String alertId;
+        public final ContactIndex.Contact contact;
+        public final String subject;
+        public final String body;
+        public final long createdAtMs;
+        /** Paths of files to send along, possibly none. */
+        public final List<String> attachments;
+        Status status = Status.PENDING;
+        int attempts;
+        String transport;
+        String lastError;
+        long nextAttemptAtMs;
+        /** Transports that failed for good for this contact. */
+        final Set<String> ruledOut = new LinkedHashSet<>();
+
+        public Delivery(String alertId, ContactIndex.Contact contact, String subject, String body, long createdAtMs) {
+            this(alertId, contact, subject, body, Collections.<String>emptyList(), createdAtMs);
+        }
+
+        public Delivery(String alertId, ContactIndex.Contact contact, String subject, String body,
+                        List<String> attachments, long createdAtMs) {
+            this.alertId = alertId;
+            this.contact = contact;
+            this.subject = subject;
+            this.body = body;
+            this.attachments = Collections.unmodifiableList(new ArrayList<>(attachments));
+            this.createdAtMs = createdAtMs;
+        }
+
+        /** Restores a delivery written by a {@link Store}. */
+        public static Delivery restore(String alertId, ContactIndex.Contact contact, String subject, String body,
+                                       List<String> attachments, long createdAtMs, Status status, int attempts,
+                                       String transport, String lastError, long nextAttemptAtMs,
+                                       Collection<String> ruledOut) {
+            Delivery delivery = new Delivery(alertId, contact, subject, body, attachments, createdAtMs);
+            delivery.status = status;
+            delivery.attempts = attempts;
+            delivery.transport = transport;
+            delivery.lastError = lastError;
+            delivery.nextAttemptAtMs = nextAttemptAtMs;
+            delivery.ruledOut.addAll(ruledOut);
+            return delivery;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public int getAttempts() {
+            return attempts;
+        }
+
+        /** Name of the transport used for the latest attempt. */
+        public String getTransport() {
+            return transport;
+        }
+
+        public String getLastError() {
+            return lastError;
+        }
+
+        public long getNextAttemptAtMs() {
+            return nextAttemptAtMs;
+        }
+
+        /** Names of the transports that will not be tried again for this contact. */
+        public List<String> getRuledOut() {
+            return new ArrayList<>(ruledOut);
+        }
+
+        public boolean isFinished() {
+            return status == Status.SENT || status == Status.FAILED;
+        }
+
+        Delivery copy() {
+            return restore(alertId, contact, subject, body, attachments, createdAtMs, status, attempts, transport,
+                    lastError, nextAttemptAtMs, ruledOut);
+        }
+
+        String key() {
+            return alertId + "/" + ContactIndex.normalize(contact.getFullName()) + "/" + contact.email + "/" + contact.phone;
+        }
+    }
+
+    public static final int MAX_ATTEMPTS = 6;
+    static final long MIN_RETRY_DELAY_MS = 2000;
+    static final long MAX_RETRY_DELAY_MS = 60000;
+    static final long SEND_TIMEOUT_MS = 30000;
+
+    private final List<Transport> transports;
+    private final Executor executor;
+    private final ScheduledExecutorService scheduler;
+    private final Store store;
+    private final Executor storeWriter;
+    private final LongSupplier clock;
+    private final Map<String, Delivery> deliveries = new LinkedHashMap<>();
+    private Listener listener;
+    private boolean writeQueued;
+
+    /**
+     * @param transports in order of preference
+     * @param executor runs {@link Transport#send} calls, one per contact in parallel
+     * @param scheduler runs retries and send timeouts
+     * @param storeWriter runs {@link Store#save} calls; must run them one at a time, in order
+     */
+    public EmergencyDispatcher(List<Transport> transports, Executor executor, ScheduledExecutorService scheduler,
+                               Store store, Executor storeWriter, LongSupplier clock) {
+        this.transports = new ArrayList<>(transports);
+        this.executor = executor;
+        this.scheduler = scheduler;
+        this.store = store;
+        this.storeWriter = storeWriter;
+        this.clock = clock;
+    }
+
+    public synchronized void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Queues the alert for every contact and starts sending right away. Returns the alert id.
+     */
+    public String dispatch(List<ContactIndex.Contact> contacts, String subject, String body) {
+        return dispatch(contacts, subject, body, Collections.<String>emptyList());
+    }
+
+    /**
+     * Like {@link #dispatch(List, String, String)}, but only through transports that can carry
+     * the attachments. Contacts none of them can reach are left out rather than failed.
+     */
+    public String dispatch(List<ContactIndex.Contact> contacts, String subject, String body, List<String> attachments) {
+        String alertId = UUID.randomUUID().toString();
+        List<Delivery> started = new ArrayList<>();
+        synchronized (this) {
+            long now = clock.getAsLong();
+            for (ContactIndex.Contact contact : contacts) {
+                Delivery delivery = new Delivery(alertId, contact, subject, body, attachments, now);
+                if (deliveries.containsKey(delivery.key())) continue;
+                if (!attachments.isEmpty() && reachable(delivery).isEmpty()) continue;
+                deliveries.put(delivery.key(), delivery);
+                started.add(delivery);
+            }
+            persist();
+        }
+        for (Delivery delivery : started) {
+            attempt(delivery.key());
+        }
+        if (started.isEmpty()) {
+            finish(alertId, Collections.<Delivery>emptyList());
+        }
+        return alertId;
+    }
+
+    /**
+     * Reloads unfinished deliveries from the store and schedules them again. Call once at start.
+     */
+    public void resume() {
+        List<Delivery> resumed = new ArrayList<>();
+        synchronized (this) {
+            for (Delivery delivery : store.load()) {
+                if (delivery.isFinished() || deliveries.containsKey(delivery.key())) continue;
+                if (delivery.status == Status.SENDING) {
+                    // Interrupted mid-send; the outcome is unknown, so send again.
+                    delivery.status = Status.PENDING;
+                }
+                deliveries.put(delivery.key(), delivery);
+                resumed.add(delivery);
+            }
+        }
+        long now = clock.getAsLong();
+        for (Delivery delivery : resumed) {
+            long delayMs = delivery.status == Status.RETRYING ? Math.max(0, delivery.nextAttemptAtMs - now) : 0;
+            scheduleAttempt(delivery.key(), delayMs);
+        }
+    }
+
+    /** Snapshots of the deliveries of {@code alertId} that have not been cleared yet. */
+    public synchronized List<Delivery> getDeliveries(String alertId) {
+        List<Delivery> result = new ArrayList<>();
+        for (Delivery delivery : deliveries.values()) {
+            if (delivery.alertId.equals(alertId)) {
+                result.add(delivery.copy());
+            }
+        }
+        return result;
+    }
+
+    /** Snapshots of every delivery still waiting to be sent. */
+    public synchronized List<Delivery> getPending() {
+        List<Delivery> result = new ArrayList<>();
+        for (Delivery delivery : deliveries.values()) {
+            if (!delivery.isFinished()) {
+                result.add(delivery.copy());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sends every retrying delivery now instead of waiting for its backoff, e.g. when the network
+     * comes back.
+     */
+    public void retryNow() {
+        List<String> keys = new ArrayList<>();
+        synchronized (this) {
+            for (Delivery delivery : deliveries.values()) {
+                if (delivery.status == Status.RETRYING) {
+                    keys.add(delivery.key());
+                }
+            }
+        }
+        for (String key : keys) {
+            attempt(key);
+        }
+    }
+
+    private void scheduleAttempt(String key, long delayMs) {
+        if (delayMs <= 0) {
+            attempt(key);
+        } else {
+            scheduler.schedule(() -> attempt(key), delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void attempt(String key) {
+        Delivery delivery;
+        Transport transport;
+        int attemptNumber;
+        synchronized (this) {
+            delivery = deliveries.get(key);
+            if (delivery == null || delivery.status == Status.SENDING || delivery.isFinished()) return;
+
+            List<Transport> reachable = reachable(delivery);
+            if (reachable.isEmpty()) {
+                delivery.status = Status.FAILED;
+                if (delivery.ruledOut.isEmpty()) {
+                    delivery.lastError = "No way to reach this contact";
+                }
+                changed(delivery);
+                return;
+            }
+            transport = reachable.get(delivery.attempts % reachable.size());
+            delivery.attempts++;
+            delivery.transport = transport.getName();
+            delivery.status = Status.SENDING;
+            attemptNumber = delivery.attempts;
+            notifyChanged(delivery);
+        }
+
+        Callback callback = new Callback() {
+            @Override
+            public void onSent() {
+                complete(key, attemptNumber, null, false);
+            }
+
+            @Override
+            public void onFailed(Exception error, boolean retryable) {
+                complete(key, attemptNumber, error, retryable);
+            }
+        };
+        scheduler.schedule(() -> complete(key, attemptNumber, new Exception("Timed out"), true),
+                SEND_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        Delivery snapshot = delivery.copy();
+        executor.execute(() -> {
+            try {
+                transport.send(snapshot, callback);
+            } catch (RuntimeException e) {
+                callback.onFailed(e, true);
+            }
+        });
+    }
+
+    private void complete(String key, int attemptNumber, Exception error, boolean retryable) {
+        long retryDelayMs = -1;
+        synchronized (this) {
+            Delivery delivery = deliveries.get(key);
+            // Stale callbacks (a timeout after success, or a late reply to an earlier attempt)
+            // are ignored.
+            if (delivery == null || delivery.status != Status.SENDING || delivery.attempts != attemptNumber) return;
+
+            if (error == null) {
+                delivery.status = Status.SENT;
+                delivery.lastError = null;
+            } else {
+                delivery.lastError = error.getMessage();
+                if (!retryable) {
+                    // Only this transport is hopeless, e.g. SMS without a SIM; another may still get through.
+                    delivery.ruledOut.add(delivery.transport);
+                }
+                if (delivery.attempts >= MAX_ATTEMPTS || reachable(delivery).isEmpty()) {
+                    delivery.status = Status.FAILED;
+                } else {
+                    retryDelayMs = retryable ? retryDelay(delivery.attempts) : 0;
+                    delivery.status = Status.RETRYING;
+                    delivery.nextAttemptAtMs = clock.getAsLong() + retryDelayMs;
+                }
+            }
+            changed(delivery);
+        }
+        if (retryDelayMs >= 0) {
+            scheduleAttempt(key, retryDelayMs);
+        }
+    }
+
+    /** Notifies, queues a write, and finishes the alert if this was its last open delivery. */
+    private void changed(Delivery delivery) {
+        notifyChanged(delivery);
+
+        List<Delivery> alert = new ArrayList<>();
+        boolean finished = true;
+        for (Delivery other : deliveries.values()) {
+            if (!other.alertId.equals(delivery.alertId)) continue;
+            alert.add(other.copy());
+            finished &= other.isFinished();
+        }
+        if (finished) {
+            for (Delivery other : alert) {
+                deliveries.remove(other.key());
+            }
+        }
+        persist();
+        if (finished) {
+            finish(delivery.alertId, alert);
+        }
+    }
+
+    private void notifyChanged(Delivery delivery) {
+        Listener current = listener;
+        if (current != null) {
+            current.onDeliveryChanged(delivery.copy());
+        }
+    }
+
+    private void finish(String alertId, List<Delivery> alert) {
+        Listener current;
+        synchronized (this) {
+            current = listener;
+        }
+        if (current != null) {
+            current.onAlertFinished(alertId, alert);
+        }
+    }
+
+    /** Queues a write of the current deliveries unless one is already waiting to start. */
+    private void persist() {
+        if (writeQueued) return;
+        writeQueued = true;
+        storeWriter.execute(this::write);
+    }
+
+    private void write() {
+        List<Delivery> snapshot;
+        synchronized (this) {
+            writeQueued = false;
+            snapshot = new ArrayList<>(deliveries.size());
+            for (Delivery delivery : deliveries.values()) {
+                snapshot.add(delivery.copy());
+            }
+        }
+        store.save(snapshot);
+    }
+
+    private List<Transport> reachable(Delivery delivery) {
+        List<Transport> result = new ArrayList<>();
+        for (Transport transport : transports) {
+            if (!delivery.attachments.isEmpty() && !transport.supportsAttachments()) continue;
+            if (delivery.ruledOut.contains(transport.getName())) continue;
+            if (transport.canReach(delivery.contact)) {
+                result.add(transport);
+            }
+        }
+        return result;
+    }
+
+    static long retryDelay(int attempts) {
+        long delay = MIN_RETRY_DELAY_MS << Math.min(attempts - 1, 10);
+        return Math.min(delay, MAX_RETRY_DELAY_MS);
+    }
+}
@@ -0,0 +1,236 @@
+package com.example.smartech;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Timestamps an emergency from the sensor sample that set it off until each message has left
+ * the device, and keeps the traces of recent alerts for percentiles.
+ *
+ * Times are passed in by the call sites, in nanoseconds on the clock {@code SensorEvent}
+ * timestamps use ({@code SystemClock.elapsedRealtimeNanos()} on a device). Only one emergency
+ * is traced at a time, like only one countdown runs at a time; stages reported while nothing is
+ * being traced are ignored. The countdown is deliberate, so the service level objective is set
+ * on {@link Trace#getOverheadMs()}, the time the app adds around it.
+ */
+public class EmergencyLatencyTracer {
+
+    public enum Stage {
+        /** The sample the detector fired on was taken. */
+        SENSOR_EVENT,
+        /** The detector's decision reached the app, after any hardware batching. */
+        DETECTED,
+        COUNTDOWN_STARTED,
+        COUNTDOWN_ENDED,
+        CONTACTS_RESOLVED,
+        LOCATION_FIXED,
+        /** The alert was handed to the dispatcher. */
+        DISPATCHED
+    }
+
+    /** The app's own share of an alert, 99 times out of 100. */
+    public static final long SLO_P99_MS = 2500;
+
+    static final int HISTORY = 64;
+    // A detection whose countdown has not ended by then was never acted on.
+    private static final long PENDING_TIMEOUT_NS = 60 * 1000000000L;
+
+    private static EmergencyLatencyTracer instance;
+
+    private final Trace[] history = new Trace[HISTORY];
+    private int historyCount = 0;
+    private int historyNext = 0;
+    private Trace current;
+
+    public static synchronized EmergencyLatencyTracer getInstance() {
+        if (instance == null) {
+            instance = new EmergencyLatencyTracer();
+        }
+        return instance;
+    }
+
+    EmergencyLatencyTracer() {}
+
+    /**
+     * Starts tracing a detection. A repeat detection while the first one's countdown has yet to
+     * end belongs to the same emergency and is ignored.
+     */
+    public synchronized void begin(String trigger, long sensorNs, long detectedNs) {
+        if (current != null && !current.reached(Stage.COUNTDOWN_ENDED)
+                && detectedNs - current.getNs(Stage.DETECTED) < PENDING_TIMEOUT_NS) {
+            return;
+        }
+        current = new Trace(trigger);
+        current.stageNs[Stage.SENSOR_EVENT.ordinal()] = sensorNs;
+        current.stageNs[Stage.DETECTED.ordinal()] = detectedNs;
+    }
+
+    /** Records the first time {@code stage} is reached by the emergency being traced. */
+    public synchronized void mark(Stage stage, long nowNs) {
+        if (current == null) return;
+        if (current.stageNs[stage.ordinal()] == 0) {
+            current.stageNs[stage.ordinal()] = nowNs;
+        }
+    }
+
+    /** Records the hand-over to the dispatcher and which alert id the sends will carry. */
+    public synchronized void dispatched(String alertId, long dispatchNs) {
+        if (current == null) return;
+        mark(Stage.DISPATCHED, dispatchNs);
+        current.alertId = alertId;
+    }
+
+    /**
+     * Records one message of {@code alertId} leaving the device. Sends that complete before
+     * {@link #dispatched} returned the alert id are credited to the trace that was just dispatched.
+     */
+    public synchronized void sent(String alertId, String transport, long nowNs) {
+        if (current == null || !current.owns(alertId)) return;
+        current.alertId = alertId;
+        current.sendTransports.add(transport);
+        current.sendNs = append(current.sendNs, current.sendTransports.size() - 1, nowNs);
+    }
+
+    /**
+     * Ends the trace of {@code alertId} once every delivery finished, and returns it, or null if
+     * that alert was not being traced.
+     */
+    public synchronized Trace finish(String alertId) {
+        if (current == null || !current.owns(alertId)) return null;
+        Trace finished = current;
+        current = null;
+        history[historyNext] = finished;
+        historyNext = (historyNext + 1) % HISTORY;
+        historyCount = Math.min(historyCount + 1, HISTORY);
+        return finished;
+    }
+
+    /** Forgets the emergency being traced, e.g. when its countdown was cancelled. */
+    public synchronized void cancel() {
+        current = null;
+    }
+
+    /**
+     * The {@code percentile} (0 to 100) of the overhead of recent alerts that reached at least
+     * one contact, or -1 if there were none.
+     */
+    public synchronized long overheadPercentileMs(double percentile) {
+        long[] values = new long[historyCount];
+        int n = 0;
+        for (int i = 0; i < historyCount; i++) {
+            long overhead = history[i].getOverheadMs();
+            if (overhead >= 0) values[n++] = overhead;
+        }
+        return percentile(values, n, percentile);
+    }
+
+    /** Nearest-rank percentile of the first {@code n} values, or -1 if there are none. */
+    static long percentile(long[] values, int n, double percentile) {
+        if (n == 0) return -1;
+        long[] sorted = Arrays.copyOf(values, n);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100.0 * n);
+        return sorted[Math.max(0, Math.min(n - 1, rank - 1))];
+    }
+
+    private static long[] append(long[] array, int index, long value) {
+        if (index >= array.length) {
+            array = Arrays.copyOf(array, Math.max(4, array.length * 2));
+        }
+        array[index] = value;
+        return array;
+    }
+
+    /** One emergency's timestamps. Read it only once {@link #finish} has handed it over. */
+    public static class Trace {
+        public final String trigger;
+        private final long[] stageNs = new long[Stage.values().length];
+        private final List<String> sendTransports = new ArrayList<>();
+        private long[] sendNs = new long[0];
+        private String alertId;
+
+        Trace(String trigger) {
+            this.trigger = trigger;
+        }
+
+        private boolean owns(String id) {
+            return id.equals(alertId) || (alertId == null && reached(Stage.DISPATCHED));
+        }
+
+        public boolean reached(Stage stage) {
+            return stageNs[stage.ordinal()] != 0;
+        }
+
+        public long getNs(Stage stage) {
+            return stageNs[stage.ordinal()];
+        }
+
+        /** Milliseconds from the sensor event to {@code stage}, or -1 if it was not reached. */
+        public long sinceSensorMs(Stage stage) {
+            return reached(stage) ? toMs(getNs(stage) - getNs(Stage.SENSOR_EVENT)) : -1;
+        }
+
+        public int getSentCount() {
+            return sendTransports.size();
+        }
+
+        /** When the last message left the device, or 0 if none did. */
+        public long getLastSentNs() {
+            long last = 0;
+            for (int i = 0; i < sendTransports.size(); i++) {
+                last = Math.max(last, sendNs[i]);
+            }
+            return last;
+        }
+
+        /**
+         * Time from the sensor event to the countdown appearing, plus time from the end of the
+         * countdown to the last message leaving, or -1 if nothing was sent.
+         */
+        public long getOverheadMs() {
+            if (getSentCount() == 0 || !reached(Stage.COUNTDOWN_STARTED) || !reached(Stage.COUNTDOWN_ENDED)) {
+                return -1;
+            }
+            return toMs(getNs(Stage.COUNTDOWN_STARTED) - getNs(Stage.SENSOR_EVENT)
+                    + getLastSentNs() - getNs(Stage.COUNTDOWN_ENDED));
+        }
+
+        /**
+         * One line with every stage relative to the sensor event and, per transport, the number
+         * of messages it sent and when its last one left.
+         */
+        public String describe() {
+            StringBuilder line = new StringBuilder(trigger).append(':');
+            for (Stage stage : Stage.values()) {
+                if (stage == Stage.SENSOR_EVENT || !reached(stage)) continue;
+                line.append(' ').append(stage.name().toLowerCase(Locale.US)).append(" +")
+                        .append(sinceSensorMs(stage)).append("ms");
+            }
+
+            Map<String, long[]> perTransport = new LinkedHashMap<>();
+            for (int i = 0; i < sendTransports.size(); i++) {
+                long[] countAndLast = perTransport.get(sendTransports.get(i));
+                if (countAndLast == null) {
+                    countAndLast = new long[2];
+                    perTransport.put(sendTransports.get(i), countAndLast);
+                }
+                countAndLast[0]++;
+                countAndLast[1] = Math.max(countAndLast[1], sendNs[i]);
+            }
+            for (Map.Entry<String, long[]> entry : perTransport.entrySet()) {
+                line.append(", ").append(entry.getKey()).append(' ').append(entry.getValue()[0])
+                        .append(" sent by +").append(toMs(entry.getValue()[1] - getNs(Stage.SENSOR_EVENT)))
+                        .append("ms");
+            }
+            return line.append("; overhead ").append(getOverheadMs()).append("ms").toString();
+        }
+
+        private static long toMs(long ns) {
+            return ns / 1000000L;
+        }
+    }
+}
@@ -0,0 +1,603 @@
+package com.example.smartech;
+
+import android.Manifest;
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageManager;
+import android.content.pm.ServiceInfo;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.media.AudioAttributes;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.os.VibrationEffect;
+import android.os.Vibrator;
+import android.util.Log;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.ServiceCompat;
+import androidx.core.content.ContextCompat;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Foreground service that keeps the shake and fall detectors running while the app is in the
+ * background.
+ *
+ * Sensors are registered with hardware batching at the rate {@link AdaptiveSamplingPolicy} asks
+ * for, so the phone mostly sleeps while it lies still. A detection starts the cancellable
+ * {@link EmergencyCountdown} right here, prepares the alert while it runs and hands it to
+ * {@link EmergencyDispatchQueue} when it expires, whether or not any screen is showing; Android
+ * 10 and later do not let a background service open an activity. For the same reason the
+ * countdown is spoken and felt from here, so it is just as noticeable when no screen is up. The
+ * alert notification offers a Cancel action and opens {@link EmergencyActivity}, which mirrors
+ * the countdown through {@link AlarmListener} and can only cancel it. Every {@link #REPORT_INTERVAL_MS} the estimated
+ * and the measured battery cost per day are logged and shown in the ongoing notification.
+ *
+ * Location and the microphone are only added to the foreground service types, and the
+ * breadcrumb trail only started, when a screen that is showing starts the service: Android 14
+ * refuses them to a sticky restart in the background. Such a restart monitors without the trail
+ * or recorded sound until the app is opened.
+ */
+public class EmergencyMonitorService extends Service implements SensorEventListener, EmergencyCountdown.Listener {
+
+    /** Follows the emergency countdown, e.g. to show it. Called on the main thread. */
+    public interface AlarmListener {
+        void onCountdown(String reason, int secondsLeft, int seconds);
+        void onSending();
+        void onCancelled();
+        /** The alert is on its way to {@code contacts}. */
+        void onDispatched(String alertId, List<ContactIndex.Contact> contacts);
+        /** Nothing was sent, for the reason given. */
+        void onNotSent(String reason);
+    }
+
+    private static final String TAG = "EmergencyMonitor";
+
+    public static final String TRIGGER_SHAKE = "shake";
+    public static final String TRIGGER_FALL = "fall";
+    static final String ACTION_CANCEL = "com.example.smartech.action.CANCEL_EMERGENCY";
+    /** Set when a screen in front starts the service, the only time location may be added. */
+    static final String EXTRA_FROM_VISIBLE_SCREEN = "fromVisibleScreen";
+
+    private static final String CHANNEL_MONITOR = "emergency_monitor";
+    private static final String CHANNEL_ALERT = "emergency_alert";
+    private static final int MONITOR_NOTIFICATION_ID = 41;
+    static final int ALERT_NOTIFICATION_ID = 42;
+
+    private static final long REPORT_INTERVAL_MS = 15 * 60 * 1000;
+    private static final double HOURS_PER_DAY = 24;
+
+    static final int FALL_COUNTDOWN_SECONDS = 15;
+    // A shake is deliberate, so it only needs long enough to catch an accidental one.
+    static final int SHAKE_COUNTDOWN_SECONDS = 5;
+
+    private static final List<AlarmListener> alarmListeners = new CopyOnWriteArrayList<>();
+    private static EmergencyMonitorService running;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final ResourceRegistry resources = new ResourceRegistry();
+
+    private SensorManager sensorManager;
+    private Sensor accelerometer;
+    private Sensor gyroscope;
+    private PowerBudget budget;
+    private AdaptiveSamplingPolicy policy;
+    private AdaptiveSamplingPolicy.Rate registeredRate;
+
+    private final ShakeDetector shakeDetector = new ShakeDetector(ShakeDetector.DEFAULT_CONFIG,
+            timestampNs -> dispatchTrigger(TRIGGER_SHAKE, timestampNs));
+    private final FallDetector fallDetector = new FallDetector(timestampNs -> dispatchTrigger(TRIGGER_FALL, timestampNs));
+
+    private long startElapsedMs;
+    private long startChargeUah;
+
+    private final EmergencyLatencyTracer tracer = EmergencyLatencyTracer.getInstance();
+    private final EmergencyCountdown countdown = new EmergencyCountdown(handler, this);
+    private ContactRepository contactRepository;
+    private LocationEngine locationEngine;
+    private EmergencyAlertPreparer alertPreparer;
+    private String countdownReason;
+    private int countdownSeconds;
+    private boolean locationInForeground = false;
+    private boolean microphoneInForeground = false;
+    private TextSpeakerHelper speech;
+    private String pendingAnnouncement;
+
+    /**
+     * Starts monitoring, or brings location into it if it was missing. Call from a screen that
+     * is showing, e.g. again once the location permission was granted.
+     */
+    public static void start(Context context) {
+        ContextCompat.startForegroundService(context, new Intent(context, EmergencyMonitorService.class)
+                .putExtra(EXTRA_FROM_VISIBLE_SCREEN, true));
+    }
+
+    public static void stop(Context context) {
+        context.stopService(new Intent(context, EmergencyMonitorService.class));
+    }
+
+    public static void addAlarmListener(AlarmListener listener) {
+        alarmListeners.add(listener);
+    }
+
+    public static void removeAlarmListener(AlarmListener listener) {
+        alarmListeners.remove(listener);
+    }
+
+    /** Whether an emergency countdown is running. Main thread only. */
+    public static boolean isCountdownRunning() {
+        return running != null && running.countdown.isRunning();
+    }
+
+    /** Stops a running countdown before its alert goes out. Main thread only. */
+    public static void cancelAlarm() {
+        if (running != null) {
+            running.countdown.cancel();
+        }
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        createChannels();
+        // Resumes alerts that were still being delivered when the process was killed.
+        EmergencyDispatchQueue.getInstance(this);
+        contactRepository = ContactRepository.getInstance(this);
+        locationEngine = LocationEngine.getInstance(this);
+        alertPreparer = new EmergencyAlertPreparer(this::loadContacts, locationSource);
+        // Warm, so a detection finds the contacts already loaded.
+        contactRepository.startForCurrentUser();
+
+        // Without location for now: this may be a sticky restart in the background, which
+        // Android 14 refuses location for. onStartCommand adds it when a screen started us.
+        if (!startInForeground()) {
+            stopSelf();
+            return;
+        }
+
+        sensorManager = (SensorManager) getSystemService(SENSOR_SERVICE);
+        if (sensorManager != null) {
+            accelerometer = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
+            gyroscope = sensorManager.getDefaultSensor(Sensor.TYPE_GYROSCOPE);
+        }
+        if (accelerometer == null) {
+            Log.w(TAG, "No accelerometer, emergency monitoring is unavailable");
+            stopSelf();
+            return;
+        }
+
+        budget = new PowerBudget(PowerBudget.DEFAULT_DAILY_BUDGET_MAH,
+                powerOf(accelerometer, PowerBudget.TYPICAL_ACCELEROMETER_MA),
+                powerOf(gyroscope, PowerBudget.TYPICAL_GYROSCOPE_MA));
+        policy = new AdaptiveSamplingPolicy(budget);
+        applyRate();
+
+        startElapsedMs = SystemClock.elapsedRealtime();
+        startChargeUah = readChargeCounterUah();
+        handler.postDelayed(reportTask, REPORT_INTERVAL_MS);
+        running = this;
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        if (intent != null && ACTION_CANCEL.equals(intent.getAction())) {
+            countdown.cancel();
+        } else if (running == this && intent != null && intent.getBooleanExtra(EXTRA_FROM_VISIBLE_SCREEN, false)) {
+            addWhileInUseTypes();
+        }
+        return START_STICKY;
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return null;
+    }
+
+    @Override
+    public void onDestroy() {
+        if (running == this) running = null;
+        countdown.cancel();
+        handler.removeCallbacksAndMessages(null);
+        LocationEngine.getInstance(this).stopTrail();
+        if (sensorManager != null) {
+            sensorManager.unregisterListener(this);
+        }
+        if (policy != null) {
+            policy.account(SystemClock.elapsedRealtimeNanos());
+            report();
+        }
+        for (Exception e : resources.release()) {
+            Log.w(TAG, "Could not release a resource", e);
+        }
+        super.onDestroy();
+    }
+
+    @Override
+    public void onSensorChanged(SensorEvent event) {
+        if (event.sensor.getType() == Sensor.TYPE_GYROSCOPE) {
+            fallDetector.onGyroscope(event.timestamp, event.values[0], event.values[1], event.values[2]);
+            return;
+        }
+        float x = event.values[0], y = event.values[1], z = event.values[2];
+        shakeDetector.onSample(event.timestamp, x, y, z);
+        fallDetector.onAccelerometer(event.timestamp, x, y, z);
+        if (policy.onAccelerometer(event.timestamp, x, y, z)) {
+            // Re-register after the rest of this batch has been delivered.
+            handler.post(this::applyRate);
+        }
+    }
+
+    @Override
+    public void onAccuracyChanged(Sensor sensor, int accuracy) {}
+
+    private void applyRate() {
+        AdaptiveSamplingPolicy.Rate rate = policy.getRate();
+        if (rate == registeredRate) return;
+        registeredRate = rate;
+
+        sensorManager.unregisterListener(this);
+        sensorManager.registerListener(this, accelerometer, rate.samplingPeriodUs, rate.maxReportLatencyUs);
+        boolean gyroscopeOn = rate.gyroscope && gyroscope != null;
+        if (gyroscopeOn) {
+            sensorManager.registerListener(this, gyroscope, rate.samplingPeriodUs, rate.maxReportLatencyUs);
+        }
+        fallDetector.setGyroscopeAvailable(gyroscopeOn);
+        Log.d(TAG, "Sampling mode " + policy.getMode() + " at " + Math.round(rate.hz()) + " Hz");
+    }
+
+    /**
+     * Starts the countdown for a detection and, in parallel, loads the contacts, gets a fresh
+     * location fix and builds the message, so the alert goes out the moment the countdown ends.
+     *
+     * @param sensorNs timestamp of the sample the detector fired on, which arrives late by
+     *                 however long the hardware held its batch
+     */
+    void dispatchTrigger(String trigger, long sensorNs) {
+        if (countdown.isRunning()) return;
+        tracer.begin(trigger, sensorNs, SystemClock.elapsedRealtimeNanos());
+        Log.i(TAG, "Emergency trigger: " + trigger);
+        FirestoreMeter.beginFlow(DataAccessMeter.Flow.EMERGENCY);
+        boolean fall = TRIGGER_FALL.equals(trigger);
+        countdownReason = fall ? "Fall" : "Shake";
+        countdownSeconds = fall ? FALL_COUNTDOWN_SECONDS : SHAKE_COUNTDOWN_SECONDS;
+        contactRepository.startForCurrentUser();
+        tracer.mark(EmergencyLatencyTracer.Stage.COUNTDOWN_STARTED, SystemClock.elapsedRealtimeNanos());
+        alertPreparer.start();
+        countdown.start(countdownSeconds);
+
+        // Goes straight through when one of our screens is showing; otherwise the system blocks
+        // it and the notification stands in. Nothing below depends on it.
+        try {
+            startActivity(screenIntent());
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Could not open the emergency screen directly", e);
+        }
+    }
+
+    @Override
+    public void onTick(int secondsLeft) {
+        notifyAlert(countdownReason + " detected. Sending an emergency alert in " + secondsLeft + " seconds.", true);
+        // Longer pulses for the last seconds, so the countdown can be felt as well as heard.
+        vibrate(secondsLeft <= 3 ? 400 : 150);
+        if (secondsLeft == countdownSeconds) {
+            announce(countdownReason + " detected. Sending an emergency alert in " + secondsLeft
+                    + " seconds. Tap the screen or say cancel to stop it.");
+        } else if (secondsLeft % 5 == 0 || secondsLeft <= 3) {
+            announce(String.valueOf(secondsLeft));
+        }
+        for (AlarmListener listener : alarmListeners) {
+            listener.onCountdown(countdownReason, secondsLeft, countdownSeconds);
+        }
+    }
+
+    @Override
+    public void onExpired() {
+        tracer.mark(EmergencyLatencyTracer.Stage.COUNTDOWN_ENDED, SystemClock.elapsedRealtimeNanos());
+        announce("Sending emergency alert to your contacts.");
+        for (AlarmListener listener : alarmListeners) {
+            listener.onSending();
+        }
+        alertPreparer.fire(alert -> {
+            // Straight away when the contacts were already in; otherwise from the thread that loaded them.
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                sendAlert(alert);
+            } else {
+                handler.post(() -> sendAlert(alert));
+            }
+        });
+    }
+
+    @Override
+    public void onCancelled() {
+        alertPreparer.cancel();
+        tracer.cancel();
+        NotificationManager manager = getSystemService(NotificationManager.class);
+        if (manager != null) {
+            manager.cancel(ALERT_NOTIFICATION_ID);
+        }
+        announce("Emergency alert cancelled.");
+        for (AlarmListener listener : alarmListeners) {
+            listener.onCancelled();
+        }
+    }
+
+    private void sendAlert(EmergencyAlertPreparer.Alert alert) {
+        if (!alert.contacts.isEmpty()) {
+            long dispatchNs = SystemClock.elapsedRealtimeNanos();
+            String alertId = EmergencyDispatchQueue.getInstance(this).dispatch(alert.contacts, alert.subject, alert.getBody());
+            tracer.dispatched(alertId, dispatchNs);
+            notifyAlert("Emergency alert sent to your contacts.", false);
+            for (AlarmListener listener : alarmListeners) {
+                listener.onDispatched(alertId, alert.contacts);
+            }
+            // Only once the alert is on its way, so recording can never delay it.
+            EvidenceRecorder.getInstance(this).capture(alertId, alert.contacts);
+            return;
+        }
+
+        String reason;
+        if (contactRepository.getLastError() != null) {
+            reason = "Failed to retrieve contacts: " + contactRepository.getLastError().getMessage();
+        } else if (contactRepository.isAvailable()) {
+            reason = "No emergency contacts found.";
+        } else {
+            reason = "User data not found.";
+        }
+        Log.w(TAG, "Emergency alert not sent: " + reason);
+        notifyAlert("Emergency alert not sent. " + reason, false);
+        announce(reason);
+        for (AlarmListener listener : alarmListeners) {
+            listener.onNotSent(reason);
+        }
+    }
+
+    private void loadContacts(Consumer<List<ContactIndex.Contact>> callback) {
+        contactRepository.whenLoaded(() -> {
+            tracer.mark(EmergencyLatencyTracer.Stage.CONTACTS_RESOLVED, SystemClock.elapsedRealtimeNanos());
+            callback.accept(contactRepository.isAvailable()
+                    ? contactRepository.getContacts()
+                    : Collections.<ContactIndex.Contact>emptyList());
+        });
+    }
+
+    /**
+     * Starting the countdown asks the location engine for a high-accuracy burst; nothing listens
+     * for location while the service merely monitors.
+     */
+    private final EmergencyAlertPreparer.LocationSource locationSource = new EmergencyAlertPreparer.LocationSource() {
+        @Override
+        public void requestFix(Consumer<LocationFix> callback) {
+            locationEngine.requestEmergencyFix(fix -> {
+                if (fix.isValid()) {
+                    tracer.mark(EmergencyLatencyTracer.Stage.LOCATION_FIXED, SystemClock.elapsedRealtimeNanos());
+                    callback.accept(fix);
+                }
+            });
+        }
+
+        @Override
+        public void cancel() {
+            locationEngine.cancel();
+        }
+
+        @Override
+        public LocationFix lastKnown() {
+            return locationEngine.getLastFix();
+        }
+
+        @Override
+        public BreadcrumbTrail trail() {
+            return locationEngine.getTrail();
+        }
+    };
+
+    /**
+     * Speaks {@code text}. The engine is started by the first detection and kept from then on;
+     * until it is up, only the latest announcement is held back for it.
+     */
+    private void announce(String text) {
+        if (speech == null) {
+            speech = resources.add(new TextSpeakerHelper(this), TextSpeakerHelper::shutdown);
+            speech.whenStarted(resources, status -> {
+                String waiting = pendingAnnouncement;
+                pendingAnnouncement = null;
+                speech.speak(waiting);
+            });
+        }
+        if (speech.getStatus() == TextSpeakerHelper.Status.STARTING) {
+            pendingAnnouncement = text;
+        } else {
+            speech.speak(text);
+        }
+    }
+
+    private void vibrate(long durationMs) {
+        Vibrator vibrator = (Vibrator) getSystemService(VIBRATOR_SERVICE);
+        if (vibrator == null || !vibrator.hasVibrator()) return;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            // As an alarm, which Android still lets through while the app is in the background.
+            vibrator.vibrate(VibrationEffect.createOneShot(durationMs, VibrationEffect.DEFAULT_AMPLITUDE),
+                    new AudioAttributes.Builder().setUsage(AudioAttributes.USAGE_ALARM).build());
+        } else {
+            vibrator.vibrate(durationMs);
+        }
+    }
+
+    private Intent screenIntent() {
+        return new Intent(this, EmergencyActivity.class)
+                .addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_SINGLE_TOP);
+    }
+
+    /**
+     * Shows the state of the emergency. While the countdown runs the notification can cancel it
+     * without opening anything, and takes over the screen the first time it is shown.
+     */
+    private void notifyAlert(String text, boolean cancellable) {
+        NotificationManager manager = getSystemService(NotificationManager.class);
+        if (manager == null) return;
+        PendingIntent openScreen = PendingIntent.getActivity(this, 0, screenIntent(),
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+        NotificationCompat.Builder alert = new NotificationCompat.Builder(this, CHANNEL_ALERT)
+                .setSmallIcon(android.R.drawable.stat_sys_warning)
+                .setContentTitle("Emergency")
+                .setContentText(text)
+                .setPriority(NotificationCompat.PRIORITY_MAX)
+                .setCategory(NotificationCompat.CATEGORY_ALARM)
+                .setOnlyAlertOnce(true)
+                .setContentIntent(openScreen)
+                .setAutoCancel(!cancellable);
+        if (cancellable) {
+            PendingIntent cancel = PendingIntent.getService(this, 2,
+                    new Intent(this, EmergencyMonitorService.class).setAction(ACTION_CANCEL),
+                    PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+            alert.setOngoing(true)
+                    .setFullScreenIntent(openScreen, true)
+                    .addAction(android.R.drawable.ic_menu_close_clear_cancel, "Cancel", cancel);
+        }
+        manager.notify(ALERT_NOTIFICATION_ID, alert.build());
+    }
+
+    private final Runnable reportTask = new Runnable() {
+        @Override
+        public void run() {
+            policy.account(SystemClock.elapsedRealtimeNanos());
+            report();
+            handler.postDelayed(this, REPORT_INTERVAL_MS);
+        }
+    };
+
+    /**
+     * Logs the modelled cost of monitoring next to the whole device's measured drain since the
+     * service started. The drain figure is an upper bound: it includes everything else the phone
+     * did in that time.
+     */
+    private void report() {
+        String estimate = String.format(Locale.US, "~%.0f of %.0f mAh/day",
+                budget.projectedDailyMah(), budget.getDailyBudgetMah());
+
+        String measured = "";
+        double hours = (SystemClock.elapsedRealtime() - startElapsedMs) / 3600000.0;
+        long chargeUah = readChargeCounterUah();
+        if (hours > 0 && startChargeUah > 0 && chargeUah > 0 && !isCharging()) {
+            double drainedMah = (startChargeUah - chargeUah) / 1000.0;
+            measured = String.format(Locale.US, ", device drained %.0f mAh/day", drainedMah * HOURS_PER_DAY / hours);
+        }
+
+        Log.i(TAG, "Battery cost " + estimate + measured + ", mode " + policy.getMode()
+                + (budget.isOverBudget() ? ", over budget" : ""));
+        NotificationManager manager = getSystemService(NotificationManager.class);
+        if (manager != null) {
+            manager.notify(MONITOR_NOTIFICATION_ID,
+                    buildMonitorNotification("Listening for shakes and falls. Battery " + estimate + "."));
+        }
+    }
+
+    private long readChargeCounterUah() {
+        BatteryManager batteryManager = (BatteryManager) getSystemService(BATTERY_SERVICE);
+        if (batteryManager == null) return 0;
+        int value = batteryManager.getIntProperty(BatteryManager.BATTERY_PROPERTY_CHARGE_COUNTER);
+        return value == Integer.MIN_VALUE ? 0 : value;
+    }
+
+    private boolean isCharging() {
+        Intent battery = registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        int plugged = battery != null ? battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) : 0;
+        return plugged != 0;
+    }
+
+    /** Runs the service in the foreground for health sensing. Returns false if that is refused. */
+    private boolean startInForeground() {
+        Notification notification = buildMonitorNotification("Listening for shakes and falls.");
+        // Older versions take the types from the manifest and do not check them.
+        int type = Build.VERSION.SDK_INT >= Build.VERSION_CODES.UPSIDE_DOWN_CAKE
+                ? ServiceInfo.FOREGROUND_SERVICE_TYPE_HEALTH : 0;
+        try {
+            ServiceCompat.startForeground(this, MONITOR_NOTIFICATION_ID, notification, type);
+            return true;
+        } catch (SecurityException | IllegalStateException e) {
+            Log.e(TAG, "Could not monitor in the foreground", e);
+            return false;
+        }
+    }
+
+    /**
+     * Adds location, and the microphone when evidence is recorded, to the foreground service
+     * types once their permissions are held. Android 14 throws when they are not allowed right
+     * now, even with the permissions held; the service then carries on as it was.
+     */
+    private void addWhileInUseTypes() {
+        boolean location = locationInForeground || hasPermission(Manifest.permission.ACCESS_FINE_LOCATION);
+        boolean microphone = microphoneInForeground
+                || (EvidenceRecorder.isEnabled(this) && hasPermission(Manifest.permission.RECORD_AUDIO));
+        if (location == locationInForeground && microphone == microphoneInForeground) return;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.UPSIDE_DOWN_CAKE) {
+            int type = ServiceInfo.FOREGROUND_SERVICE_TYPE_HEALTH
+                    | (location ? ServiceInfo.FOREGROUND_SERVICE_TYPE_LOCATION : 0)
+                    | (microphone ? ServiceInfo.FOREGROUND_SERVICE_TYPE_MICROPHONE : 0);
+            try {
+                ServiceCompat.startForeground(this, MONITOR_NOTIFICATION_ID,
+                        buildMonitorNotification("Listening for shakes and falls."), type);
+            } catch (SecurityException | IllegalStateException e) {
+                Log.w(TAG, "Location or the microphone is not allowed in the foreground right now", e);
+                return;
+            }
+        }
+        if (location && !locationInForeground) {
+            // Keeps the last few minutes of movement for the alert message.
+            locationEngine.startTrail();
+        }
+        locationInForeground = location;
+        microphoneInForeground = microphone;
+    }
+
+    private boolean hasPermission(String permission) {
+        return ContextCompat.checkSelfPermission(this, permission) == PackageManager.PERMISSION_GRANTED;
+    }
+
+    private static double powerOf(Sensor sensor, double fallbackMa) {
+        return sensor != null && sensor.getPower() > 0 ? sensor.getPower() : fallbackMa;
+    }
+
+    private Notification buildMonitorNotification(String text) {
+        PendingIntent openApp = PendingIntent.getActivity(this, 1,
+                new Intent(this, EmergencyActivity.class).addFlags(Intent.FLAG_ACTIVITY_NEW_TASK),
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+        return new NotificationCompat.Builder(this, CHANNEL_MONITOR)
+                .setSmallIcon(R.drawable.ic_launcher_foreground)
+                .setContentTitle("Emergency monitoring on")
+                .setContentText(text)
+                .setOngoing(true)
+                .setOnlyAlertOnce(true)
+                .setPriority(NotificationCompat.PRIORITY_LOW)
+                .setContentIntent(openApp)
+                .build();
+    }
+
+    private void createChannels() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) return;
+        NotificationManager manager = getSystemService(NotificationManager.class);
+        if (manager == null) return;
+        manager.createNotificationChannel(new NotificationChannel(CHANNEL_MONITOR,
+                "Emergency monitoring", NotificationManager.IMPORTANCE_LOW));
+        manager.createNotificationChannel(new NotificationChannel(CHANNEL_ALERT,
+                "Emergency alerts", NotificationManager.IMPORTANCE_HIGH));
+    }
+}
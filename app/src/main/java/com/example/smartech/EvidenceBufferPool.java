@@ -0,0 +1,147 @@
+package com.example.smartech;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fixed-size byte buffers shared by everything an evidence capture compresses, with a hard cap
+ * on how many can exist.
+ *
+ * Buffers are allocated on first use and reused after {@link #release}; once the cap is reached
+ * {@link #acquire()} returns null instead of allocating. {@link Stream} spreads its output over as
+ * many buffers as it needs and fails with {@link CapExceededException} when the pool runs dry,
+ * so a capture can use at most {@link #getCapBytes()} bytes however much it is fed. Thread safe.
+ */
+public class EvidenceBufferPool {
+
+    /** Thrown by {@link Stream} when writing more would go over the pool's cap. */
+    public static class CapExceededException extends IOException {
+        CapExceededException(int capBytes) {
+            super("Evidence memory cap of " + capBytes + " bytes reached");
+        }
+    }
+
+    private final int bufferSize;
+    private final int maxBuffers;
+    private final ArrayDeque<byte[]> free = new ArrayDeque<>();
+    private int allocated;
+    private int inUse;
+    private int peakInUse;
+
+    public EvidenceBufferPool(int bufferSize, int maxBuffers) {
+        this.bufferSize = bufferSize;
+        this.maxBuffers = maxBuffers;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public int getCapBytes() {
+        return bufferSize * maxBuffers;
+    }
+
+    /** A free buffer, or null when every buffer the cap allows is in use. */
+    public synchronized byte[] acquire() {
+        byte[] buffer = free.poll();
+        if (buffer == null) {
+            if (allocated == maxBuffers) return null;
+            buffer = new byte[bufferSize];
+            allocated++;
+        }
+        inUse++;
+        peakInUse = Math.max(peakInUse, inUse);
+        return buffer;
+    }
+
+    public synchronized void release(byte[] buffer) {
+        if (buffer.length != bufferSize) {
+            throw new IllegalArgumentException("Not a buffer from this pool");
+        }
+        inUse--;
+        free.push(buffer);
+    }
+
+    public synchronized int getInUseBytes() {
+        return inUse * bufferSize;
+    }
+
+    public synchronized int getPeakInUseBytes() {
+        return peakInUse * bufferSize;
+    }
+
+    /** Bytes ever allocated by this pool; never more than the cap. */
+    public synchronized int getAllocatedBytes() {
+        return allocated * bufferSize;
+    }
+
+    public Stream newStream() {
+        return new Stream();
+    }
+
+    /**
+     * Output backed by pooled buffers. {@link #close()} hands them back; the data must be
+     * copied out with {@link #writeTo} first.
+     */
+    public class Stream extends OutputStream {
+        private final List<byte[]> buffers = new ArrayList<>();
+        private int position = bufferSize;
+        private int length;
+        private boolean closed;
+
+        @Override
+        public void write(int b) throws IOException {
+            ensureSpace();
+            buffers.get(buffers.size() - 1)[position++] = (byte) b;
+            length++;
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int count) throws IOException {
+            while (count > 0) {
+                ensureSpace();
+                int chunk = Math.min(count, bufferSize - position);
+                System.arraycopy(data, offset, buffers.get(buffers.size() - 1), position, chunk);
+                position += chunk;
+                offset += chunk;
+                count -= chunk;
+                length += chunk;
+            }
+        }
+
+        public int size() {
+            return length;
+        }
+
+        public void writeTo(OutputStream out) throws IOException {
+            int left = length;
+            for (byte[] buffer : buffers) {
+                int chunk = Math.min(left, bufferSize);
+                out.write(buffer, 0, chunk);
+                left -= chunk;
+            }
+        }
+
+        @Override
+        public void close() {
+            if (closed) return;
+            closed = true;
+            for (byte[] buffer : buffers) {
+                release(buffer);
+            }
+            buffers.clear();
+        }
+
+        private void ensureSpace() throws IOException {
+            if (closed) throw new IOException("Stream closed");
+            if (position < bufferSize) return;
+            byte[] buffer = acquire();
+            if (buffer == null) throw new CapExceededException(getCapBytes());
+            buffers.add(buffer);
+            position = 0;
+        }
+    }
+}
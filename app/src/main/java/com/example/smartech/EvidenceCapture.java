@@ -0,0 +1,333 @@
+package com.example.smartech;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Records a few photos and a short audio clip after an emergency alert has gone out.
+ *
+ * Frames arrive from a {@link FrameSource} on its own thread. Up to {@link Config#frames} of
+ * them, spaced {@link Config#frameIntervalMs} apart, are compressed on the executor; every other
+ * frame is handed straight back so the camera never waits on us. Audio is read in small chunks
+ * on the executor and stored as 8-bit mu-law WAV. All compressed output goes into buffers from
+ * one {@link EvidenceBufferPool}: anything that would go over its cap is dropped rather than
+ * allocated, and buffers return to the pool as soon as the {@link Store} has saved the item.
+ *
+ * One capture runs at a time. The {@link Listener} hears once, from the executor, when the
+ * frames and the clip are done or the timeout has passed.
+ */
+public class EvidenceCapture {
+
+    /** One camera frame, owned by its source until {@link #close()}. */
+    public interface Frame {
+        /** Writes the frame as a JPEG. */
+        void compress(OutputStream out) throws IOException;
+
+        void close();
+    }
+
+    public interface FrameSource {
+        /** Starts delivering frames to {@code callback} from a background thread. */
+        void start(FrameCallback callback);
+
+        void stop();
+    }
+
+    public interface FrameCallback {
+        void onFrame(Frame frame);
+    }
+
+    public interface AudioSource {
+        int getSampleRate();
+
+        /** Returns false if the microphone could not be opened. */
+        boolean start();
+
+        /** Blocks until some 16-bit samples are available; returns how many, or -1 on error. */
+        int read(short[] buffer);
+
+        void stop();
+    }
+
+    public interface Store {
+        /** Saves {@code data} under {@code name} and returns where it went. */
+        String save(String captureId, String name, EvidenceBufferPool.Stream data) throws IOException;
+    }
+
+    public interface Listener {
+        /** The saved items in capture order; empty if nothing could be recorded. */
+        void onCaptured(String captureId, List<String> saved);
+    }
+
+    public static class Config {
+        public final int frames;
+        public final long frameIntervalMs;
+        public final long audioMs;
+        public final long timeoutMs;
+
+        public Config(int frames, long frameIntervalMs, long audioMs, long timeoutMs) {
+            this.frames = frames;
+            this.frameIntervalMs = frameIntervalMs;
+            this.audioMs = audioMs;
+            this.timeoutMs = timeoutMs;
+        }
+    }
+
+    /** Four photos a second apart and ten seconds of sound, given up on after twenty seconds. */
+    public static final Config DEFAULT_CONFIG = new Config(4, 1000, 10000, 20000);
+
+    private static final int AUDIO_CHUNK_MS = 100;
+
+    private final FrameSource frameSource;
+    private final AudioSource audioSource;
+    private final Store store;
+    private final EvidenceBufferPool pool;
+    private final ScheduledExecutorService executor;
+    private final LongSupplier clock;
+    private final Config config;
+
+    private Session session;
+
+    /**
+     * @param frameSource null to record no photos
+     * @param audioSource null to record no sound
+     * @param executor needs two threads: the audio loop holds one for the length of the clip
+     */
+    public EvidenceCapture(FrameSource frameSource, AudioSource audioSource, Store store, EvidenceBufferPool pool,
+                           ScheduledExecutorService executor, LongSupplier clock, Config config) {
+        this.frameSource = frameSource;
+        this.audioSource = audioSource;
+        this.store = store;
+        this.pool = pool;
+        this.executor = executor;
+        this.clock = clock;
+        this.config = config;
+    }
+
+    /** Starts recording; returns false if a capture is already running. */
+    public boolean capture(String captureId, Listener listener) {
+        Session started;
+        synchronized (this) {
+            if (session != null) return false;
+            started = new Session(captureId, listener);
+            session = started;
+            if (frameSource != null) started.openParts++;
+            if (audioSource != null) started.openParts++;
+        }
+
+        if (frameSource != null) {
+            frameSource.start(frame -> onFrame(started, frame));
+        }
+        if (audioSource != null) {
+            executor.execute(() -> recordAudio(started));
+        }
+        executor.schedule(() -> timeOut(started), config.timeoutMs, TimeUnit.MILLISECONDS);
+        if (frameSource == null && audioSource == null) {
+            synchronized (this) {
+                started.openParts = 1;
+            }
+            partDone(started);
+        }
+        return true;
+    }
+
+    public synchronized boolean isCapturing() {
+        return session != null;
+    }
+
+    private void onFrame(Session s, Frame frame) {
+        boolean take;
+        boolean enough = false;
+        int index = 0;
+        synchronized (this) {
+            long now = clock.getAsLong();
+            take = session == s && !s.framesDone && (s.framesTaken == 0 || now - s.lastFrameMs >= config.frameIntervalMs);
+            if (take) {
+                index = s.framesTaken++;
+                s.lastFrameMs = now;
+                s.openParts++;
+                enough = s.framesTaken == config.frames;
+            }
+        }
+        if (!take) {
+            frame.close();
+            return;
+        }
+        if (enough) {
+            stopFrames(s);
+        }
+        final int number = index + 1;
+        executor.execute(() -> {
+            try {
+                save(s, number, "photo-" + number + ".jpg", frame::compress);
+            } finally {
+                frame.close();
+                partDone(s);
+            }
+        });
+    }
+
+    private interface Writer {
+        void write(OutputStream out) throws IOException;
+    }
+
+    /** Compresses into pooled buffers and stores the result; an item over the cap is dropped. */
+    private void save(Session s, int order, String name, Writer writer) {
+        EvidenceBufferPool.Stream stream = pool.newStream();
+        try {
+            writer.write(stream);
+            String saved = store.save(s.captureId, name, stream);
+            synchronized (this) {
+                s.saved.add(new Saved(order, saved));
+            }
+        } catch (IOException e) {
+            // Over the cap or not writable; the rest of the capture carries on without it.
+        } finally {
+            stream.close();
+        }
+    }
+
+    private void recordAudio(Session s) {
+        try {
+            if (!audioSource.start()) return;
+            int sampleRate = audioSource.getSampleRate();
+            int total = (int) (sampleRate * config.audioMs / 1000);
+            short[] chunk = new short[sampleRate * AUDIO_CHUNK_MS / 1000];
+            byte[] encoded = new byte[chunk.length];
+            // Ordered after every photo.
+            save(s, Integer.MAX_VALUE, "audio.wav", out -> {
+                writeWavHeader(out, sampleRate, total);
+                int written = 0;
+                try {
+                    while (written < total && !s.stopRequested) {
+                        int read = audioSource.read(chunk);
+                        if (read <= 0) break;
+                        int count = Math.min(read, total - written);
+                        for (int i = 0; i < count; i++) {
+                            encoded[i] = muLaw(chunk[i]);
+                        }
+                        out.write(encoded, 0, count);
+                        written += count;
+                    }
+                } finally {
+                    audioSource.stop();
+                }
+                // The header promised this many samples; a clip cut short ends in silence.
+                while (written < total) {
+                    int count = Math.min(encoded.length, total - written);
+                    Arrays.fill(encoded, 0, count, muLaw((short) 0));
+                    out.write(encoded, 0, count);
+                    written += count;
+                }
+            });
+        } finally {
+            partDone(s);
+        }
+    }
+
+    private void timeOut(Session s) {
+        synchronized (this) {
+            if (session != s) return;
+            s.stopRequested = true;
+        }
+        stopFrames(s);
+    }
+
+    private void stopFrames(Session s) {
+        synchronized (this) {
+            if (frameSource == null || s.framesDone) return;
+            s.framesDone = true;
+        }
+        frameSource.stop();
+        partDone(s);
+    }
+
+    private void partDone(Session s) {
+        List<String> saved;
+        synchronized (this) {
+            if (--s.openParts > 0) return;
+            if (session == s) session = null;
+            Collections.sort(s.saved, (a, b) -> Integer.compare(a.order, b.order));
+            saved = new ArrayList<>(s.saved.size());
+            for (Saved item : s.saved) {
+                saved.add(item.location);
+            }
+        }
+        s.listener.onCaptured(s.captureId, saved);
+    }
+
+    private static class Saved {
+        final int order;
+        final String location;
+
+        Saved(int order, String location) {
+            this.order = order;
+            this.location = location;
+        }
+    }
+
+    private static class Session {
+        final String captureId;
+        final Listener listener;
+        final List<Saved> saved = new ArrayList<>();
+        int openParts;
+        int framesTaken;
+        long lastFrameMs;
+        boolean framesDone;
+        volatile boolean stopRequested;
+
+        Session(String captureId, Listener listener) {
+            this.captureId = captureId;
+            this.listener = listener;
+        }
+    }
+
+    /** RIFF header for mono 8-bit mu-law (format 7) with {@code samples} samples of data. */
+    static void writeWavHeader(OutputStream out, int sampleRate, int samples) throws IOException {
+        out.write(new byte[]{'R', 'I', 'F', 'F'});
+        writeInt(out, 36 + samples);
+        out.write(new byte[]{'W', 'A', 'V', 'E', 'f', 'm', 't', ' '});
+        writeInt(out, 16);
+        writeShort(out, 7);
+        writeShort(out, 1);
+        writeInt(out, sampleRate);
+        writeInt(out, sampleRate);
+        writeShort(out, 1);
+        writeShort(out, 8);
+        out.write(new byte[]{'d', 'a', 't', 'a'});
+        writeInt(out, samples);
+    }
+
+    /** G.711 mu-law: halves 16-bit PCM while keeping quiet speech audible. */
+    static byte muLaw(short sample) {
+        int pcm = sample;
+        int sign = (pcm >> 8) & 0x80;
+        if (sign != 0) pcm = -pcm;
+        pcm = Math.min(pcm, 32635) + 0x84;
+        int exponent = 7;
+        for (int mask = 0x4000; (pcm & mask) == 0 && exponent > 0; mask >>= 1) {
+            exponent--;
+        }
+        int mantissa = (pcm >> (exponent + 3)) & 0x0f;
+        return (byte) ~(sign | (exponent << 4) | mantissa);
+    }
+
+    private static void writeInt(OutputStream out, int value) throws IOException {
+        out.write(value);
+        out.write(value >> 8);
+        out.write(value >> 16);
+        out.write(value >> 24);
+    }
+
+    private static void writeShort(OutputStream out, int value) throws IOException {
+        out.write(value);
+        out.write(value >> 8);
+    }
+}
@@ -0,0 +1,384 @@
+package com.example.smartech;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.Size;
+
+import androidx.camera.core.CameraSelector;
+import androidx.camera.core.ImageAnalysis;
+import androidx.camera.core.ImageProxy;
+import androidx.camera.core.resolutionselector.ResolutionSelector;
+import androidx.camera.core.resolutionselector.ResolutionStrategy;
+import androidx.camera.lifecycle.ProcessCameraProvider;
+import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Opt-in photo and audio evidence for emergency alerts.
+ *
+ * Started by {@link EmergencyMonitorService} once the alert itself has been handed to the
+ * {@link EmergencyDispatchQueue}, so recording never holds it up. Sound comes from
+ * {@link AudioRecord} whether or not a screen is up, as long as the service runs with the
+ * microphone foreground service type. It only gets that type when a visible screen started it,
+ * so after a sticky restart in the background sound is missing too until the app is opened.
+ * Photos come from the back camera through CameraX and need a screen that is showing, one
+ * attached through {@link #attachScreen}; an alert raised with none carries sound only. Both are
+ * compressed by {@link EvidenceCapture} into a shared
+ * {@link EvidenceBufferPool} capped at 512 KB, which also keeps the relayed email under
+ * Firestore's document size limit. The files are written to no-backup storage, sent as a
+ * follow-up alert to every contact reachable by email, and deleted once that alert finishes.
+ */
+public class EvidenceRecorder {
+
+    private static final String TAG = "EvidenceRecorder";
+    private static final String PREFS_NAME = "emergency_evidence";
+    private static final String KEY_ENABLED = "enabled";
+    private static final String DIRECTORY = "evidence";
+    /** Like the alert itself, the follow-up is relayed only with exactly this text. */
+    private static final String SUBJECT = EmergencyAlertPreparer.SUBJECT + ": photos and audio";
+    private static final String BODY = "Photos and sound recorded when the emergency alert was sent.";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_BUFFERS = 8;
+    private static final int SAMPLE_RATE = 8000;
+    private static final int JPEG_QUALITY = 70;
+
+    private static EvidenceRecorder instance;
+
+    private final Context context;
+    private final File directory;
+    private final EmergencyDispatchQueue dispatchQueue;
+    private final EvidenceBufferPool pool = new EvidenceBufferPool(BUFFER_SIZE, MAX_BUFFERS);
+    private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(2);
+    private EvidenceCapture capture;
+    private LifecycleOwner visibleScreen;
+
+    public static boolean isEnabled(Context context) {
+        return prefs(context).getBoolean(KEY_ENABLED, false);
+    }
+
+    public static void setEnabled(Context context, boolean enabled) {
+        prefs(context).edit().putBoolean(KEY_ENABLED, enabled).apply();
+    }
+
+    public static synchronized EvidenceRecorder getInstance(Context context) {
+        if (instance == null) {
+            instance = new EvidenceRecorder(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private EvidenceRecorder(Context context) {
+        this.context = context;
+        directory = new File(context.getNoBackupFilesDir(), DIRECTORY);
+        dispatchQueue = EmergencyDispatchQueue.getInstance(context);
+        dispatchQueue.addListener(new EmergencyDispatcher.Listener() {
+            @Override
+            public void onDeliveryChanged(EmergencyDispatcher.Delivery delivery) {}
+
+            @Override
+            public void onAlertFinished(String alertId, List<EmergencyDispatcher.Delivery> deliveries) {
+                for (EmergencyDispatcher.Delivery delivery : deliveries) {
+                    deleteAttachments(delivery.attachments);
+                }
+            }
+        });
+        executor.execute(this::deleteOrphans);
+    }
+
+    /**
+     * Lets captures take photos with the camera bound to {@code screen} while it is visible.
+     * Main thread only.
+     */
+    public void attachScreen(LifecycleOwner screen) {
+        screen.getLifecycle().addObserver(new DefaultLifecycleObserver() {
+            @Override
+            public void onStart(@NonNull LifecycleOwner owner) {
+                synchronized (EvidenceRecorder.this) {
+                    visibleScreen = owner;
+                }
+            }
+
+            @Override
+            public void onStop(@NonNull LifecycleOwner owner) {
+                synchronized (EvidenceRecorder.this) {
+                    if (visibleScreen == owner) {
+                        visibleScreen = null;
+                    }
+                }
+            }
+
+            @Override
+            public void onDestroy(@NonNull LifecycleOwner owner) {
+                owner.getLifecycle().removeObserver(this);
+            }
+        });
+    }
+
+    /**
+     * Records evidence for {@code alertId} and sends it to {@code contacts} when done, with
+     * photos only if an attached screen is visible. Does nothing unless the user opted in or
+     * while an earlier capture is still running.
+     */
+    public synchronized void capture(String alertId, List<ContactIndex.Contact> contacts) {
+        if (!isEnabled(context) || (capture != null && capture.isCapturing())) return;
+
+        EvidenceCapture.FrameSource camera = visibleScreen != null && hasPermission(Manifest.permission.CAMERA)
+                ? new CameraFrameSource(visibleScreen) : null;
+        EvidenceCapture.AudioSource microphone = hasPermission(Manifest.permission.RECORD_AUDIO)
+                ? new MicrophoneSource() : null;
+        if (camera == null && microphone == null) {
+            Log.w(TAG, "Evidence capture is on but there is no screen for the camera and no microphone access");
+            return;
+        }
+
+        capture = new EvidenceCapture(camera, microphone, new FileStore(), pool, executor,
+                SystemClock::elapsedRealtime, EvidenceCapture.DEFAULT_CONFIG);
+        capture.capture(alertId, (captureId, saved) -> {
+            Log.i(TAG, "Captured " + saved.size() + " evidence files, pool peak "
+                    + pool.getPeakInUseBytes() / 1024 + " KB");
+            if (saved.isEmpty()) return;
+            dispatchQueue.dispatch(contacts, SUBJECT, BODY, saved);
+        });
+    }
+
+    private boolean hasPermission(String permission) {
+        return ContextCompat.checkSelfPermission(context, permission) == PackageManager.PERMISSION_GRANTED;
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    private void deleteAttachments(List<String> paths) {
+        for (String path : paths) {
+            File file = new File(path);
+            if (!file.getPath().startsWith(directory.getPath())) continue;
+            file.delete();
+            File parent = file.getParentFile();
+            String[] left = parent != null ? parent.list() : null;
+            if (left != null && left.length == 0) {
+                parent.delete();
+            }
+        }
+    }
+
+    /** Removes captures whose follow-up alert finished while the process was not running. */
+    private void deleteOrphans() {
+        File[] captures = directory.listFiles();
+        if (captures == null) return;
+        Set<String> pending = new HashSet<>();
+        for (EmergencyDispatcher.Delivery delivery : dispatchQueue.getPending()) {
+            pending.addAll(delivery.attachments);
+        }
+        for (File captureDirectory : captures) {
+            File[] files = captureDirectory.listFiles();
+            if (files == null) continue;
+            for (File file : files) {
+                if (!pending.contains(file.getPath())) {
+                    file.delete();
+                }
+            }
+            captureDirectory.delete();
+        }
+    }
+
+    private class FileStore implements EvidenceCapture.Store {
+        @Override
+        public String save(String captureId, String name, EvidenceBufferPool.Stream data) throws IOException {
+            File captureDirectory = new File(directory, captureId);
+            if (!captureDirectory.isDirectory() && !captureDirectory.mkdirs()) {
+                throw new IOException("Could not create " + captureDirectory);
+            }
+            File file = new File(captureDirectory, name);
+            try (OutputStream out = new FileOutputStream(file)) {
+                data.writeTo(out);
+            }
+            return file.getPath();
+        }
+    }
+
+    /**
+     * Back camera frames at VGA size. Frames are converted to NV21 in one reused buffer and
+     * compressed with {@link YuvImage}.
+     */
+    private class CameraFrameSource implements EvidenceCapture.FrameSource {
+        private final LifecycleOwner owner;
+        private final ExecutorService analyzerExecutor = Executors.newSingleThreadExecutor();
+        private ImageAnalysis analysis;
+        private ProcessCameraProvider provider;
+        private byte[] nv21;
+
+        CameraFrameSource(LifecycleOwner owner) {
+            this.owner = owner;
+        }
+
+        @Override
+        public void start(EvidenceCapture.FrameCallback callback) {
+            ListenableFuture<ProcessCameraProvider> future = ProcessCameraProvider.getInstance(context);
+            future.addListener(() -> {
+                try {
+                    provider = future.get();
+                    analysis = new ImageAnalysis.Builder()
+                            .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
+                            .setResolutionSelector(new ResolutionSelector.Builder()
+                                    .setResolutionStrategy(new ResolutionStrategy(new Size(640, 480),
+                                            ResolutionStrategy.FALLBACK_RULE_CLOSEST_LOWER_THEN_HIGHER))
+                                    .build())
+                            .build();
+                    analysis.setAnalyzer(analyzerExecutor, image -> callback.onFrame(new CameraFrame(image)));
+                    provider.bindToLifecycle(owner, CameraSelector.DEFAULT_BACK_CAMERA, analysis);
+                } catch (Exception e) {
+                    // No camera, or the screen was closed first; the capture times out without photos.
+                    Log.w(TAG, "Could not start the camera for evidence", e);
+                }
+            }, ContextCompat.getMainExecutor(context));
+        }
+
+        @Override
+        public void stop() {
+            ContextCompat.getMainExecutor(context).execute(() -> {
+                if (analysis != null) {
+                    analysis.clearAnalyzer();
+                    if (provider != null) {
+                        provider.unbind(analysis);
+                    }
+                }
+                analyzerExecutor.shutdown();
+            });
+        }
+
+        private class CameraFrame implements EvidenceCapture.Frame {
+            private final ImageProxy image;
+
+            CameraFrame(ImageProxy image) {
+                this.image = image;
+            }
+
+            @Override
+            public void compress(OutputStream out) {
+                int width = image.getWidth();
+                int height = image.getHeight();
+                synchronized (CameraFrameSource.this) {
+                    int size = width * height * 3 / 2;
+                    if (nv21 == null || nv21.length != size) {
+                        nv21 = new byte[size];
+                    }
+                    toNv21(image, nv21);
+                    new YuvImage(nv21, ImageFormat.NV21, width, height, null)
+                            .compressToJpeg(new Rect(0, 0, width, height), JPEG_QUALITY, out);
+                }
+            }
+
+            @Override
+            public void close() {
+                image.close();
+            }
+        }
+    }
+
+    /** Copies a YUV_420_888 image into NV21 order, honouring row and pixel strides. */
+    private static void toNv21(ImageProxy image, byte[] out) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        ImageProxy.PlaneProxy[] planes = image.getPlanes();
+
+        ByteBuffer y = planes[0].getBuffer();
+        int yRowStride = planes[0].getRowStride();
+        int position = 0;
+        for (int row = 0; row < height; row++) {
+            y.position(row * yRowStride);
+            y.get(out, position, width);
+            position += width;
+        }
+
+        ByteBuffer u = planes[1].getBuffer();
+        ByteBuffer v = planes[2].getBuffer();
+        int uRowStride = planes[1].getRowStride();
+        int uPixelStride = planes[1].getPixelStride();
+        int vRowStride = planes[2].getRowStride();
+        int vPixelStride = planes[2].getPixelStride();
+        for (int row = 0; row < height / 2; row++) {
+            for (int col = 0; col < width / 2; col++) {
+                out[position++] = v.get(row * vRowStride + col * vPixelStride);
+                out[position++] = u.get(row * uRowStride + col * uPixelStride);
+            }
+        }
+    }
+
+    private static class MicrophoneSource implements EvidenceCapture.AudioSource {
+        private AudioRecord record;
+
+        @Override
+        public int getSampleRate() {
+            return SAMPLE_RATE;
+        }
+
+        @Override
+        public boolean start() {
+            int minBuffer = AudioRecord.getMinBufferSize(SAMPLE_RATE, AudioFormat.CHANNEL_IN_MONO,
+                    AudioFormat.ENCODING_PCM_16BIT);
+            try {
+                record = new AudioRecord(MediaRecorder.AudioSource.MIC, SAMPLE_RATE, AudioFormat.CHANNEL_IN_MONO,
+                        AudioFormat.ENCODING_PCM_16BIT, Math.max(minBuffer, SAMPLE_RATE));
+                if (record.getState() != AudioRecord.STATE_INITIALIZED) {
+                    record.release();
+                    record = null;
+                    return false;
+                }
+                record.startRecording();
+                return true;
+            } catch (SecurityException | IllegalStateException e) {
+                // Permission revoked, or the microphone is held by speech recognition.
+                Log.w(TAG, "Could not record evidence audio", e);
+                if (record != null) {
+                    record.release();
+                    record = null;
+                }
+                return false;
+            }
+        }
+
+        @Override
+        public int read(short[] buffer) {
+            return record != null ? record.read(buffer, 0, buffer.length) : -1;
+        }
+
+        @Override
+        public void stop() {
+            if (record == null) return;
+            try {
+                record.stop();
+            } catch (IllegalStateException e) {
+                // Never started recording.
+            }
+            record.release();
+            record = null;
+        }
+    }
+}
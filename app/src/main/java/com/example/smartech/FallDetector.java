@@ -0,0 +1,191 @@
+package com.example.smartech;
+
+/**
+ * Recognizes the free fall, impact, stillness pattern of a fall from accelerometer and gyroscope
+ * samples.
+ *
+ * The accelerometer drives a small state machine: a stretch of near-weightlessness, a hard
+ * impact shortly after, then the device lying still. The gyroscope confirms that the body
+ * rotated while falling, and the still orientation is compared with the one before the fall, so
+ * a jump (free fall and impact but no rotation) or sitting down hard (rotation but no free fall)
+ * is not reported. Without gyroscope data (no sensor, or switched off to save power) the
+ * orientation change alone has to confirm the fall. All state is kept in primitive fields; the
+ * {@code on*} methods never allocate.
+ */
+public class FallDetector {
+
+    public interface Listener {
+        void onFall(long timestampNs);
+    }
+
+    public enum State { IDLE, FREE_FALL, AWAIT_IMPACT, POST_IMPACT }
+
+    private static final float GRAVITY = 9.80665f;
+
+    // Thresholds in g and rad/s, durations in milliseconds.
+    private static final float FREE_FALL_G = 0.6f;
+    private static final long MIN_FREE_FALL_MS = 60;
+    private static final float IMPACT_G = 2.0f;
+    private static final long IMPACT_WINDOW_MS = 500;
+    private static final long SETTLE_MS = 500;
+    private static final float STILL_TOLERANCE_G = 0.25f;
+    private static final float STILL_GYRO_RAD_S = 0.6f;
+    private static final long STILL_MS = 1500;
+    private static final long STILL_DEADLINE_MS = 6000;
+    private static final float MIN_ROTATION_RAD_S = 2.0f;
+    private static final double MIN_ORIENTATION_CHANGE_COS = Math.cos(Math.toRadians(40));
+    // Smoothing for the pre-fall gravity estimate.
+    private static final float GRAVITY_ALPHA = 0.1f;
+
+    private final Listener listener;
+
+    private State state = State.IDLE;
+    private long phaseStartNs;
+    private long impactNs;
+    private long stillSinceNs;
+    private boolean isStill;
+    private float gravityX, gravityY, gravityZ;
+    private boolean hasGravity = false;
+    private float preFallX, preFallY, preFallZ;
+    private float gyroMagnitude;
+    private float gyroPeak;
+    private boolean gyroscopeAvailable = true;
+    private boolean rotationRequired;
+
+    public FallDetector(Listener listener) {
+        this.listener = listener;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Tells the detector whether gyroscope samples are being delivered. Takes effect from the
+     * next free fall.
+     */
+    public void setGyroscopeAvailable(boolean available) {
+        gyroscopeAvailable = available;
+        if (!available) {
+            gyroMagnitude = 0;
+        }
+    }
+
+    public void onGyroscope(long timestampNs, float x, float y, float z) {
+        gyroMagnitude = (float) Math.sqrt(x * x + y * y + z * z);
+        if (state != State.IDLE && gyroMagnitude > gyroPeak) {
+            gyroPeak = gyroMagnitude;
+        }
+    }
+
+    /**
+     * Feeds one accelerometer sample in m/s^2 with its {@code SensorEvent.timestamp}.
+     */
+    public void onAccelerometer(long timestampNs, float x, float y, float z) {
+        float g = (float) Math.sqrt(x * x + y * y + z * z) / GRAVITY;
+
+        switch (state) {
+            case IDLE:
+                if (g < FREE_FALL_G && hasGravity) {
+                    preFallX = gravityX;
+                    preFallY = gravityY;
+                    preFallZ = gravityZ;
+                    gyroPeak = gyroMagnitude;
+                    rotationRequired = gyroscopeAvailable;
+                    phaseStartNs = timestampNs;
+                    state = State.FREE_FALL;
+                } else {
+                    updateGravity(x, y, z);
+                }
+                break;
+
+            case FREE_FALL:
+                if (g >= FREE_FALL_G) {
+                    if (millisSince(phaseStartNs, timestampNs) < MIN_FREE_FALL_MS) {
+                        state = State.IDLE;
+                    } else if (g >= IMPACT_G) {
+                        enterPostImpact(timestampNs);
+                    } else {
+                        phaseStartNs = timestampNs;
+                        state = State.AWAIT_IMPACT;
+                    }
+                }
+                break;
+
+            case AWAIT_IMPACT:
+                if (g >= IMPACT_G) {
+                    enterPostImpact(timestampNs);
+                } else if (millisSince(phaseStartNs, timestampNs) > IMPACT_WINDOW_MS) {
+                    state = State.IDLE;
+                }
+                break;
+
+            case POST_IMPACT:
+                long sinceImpact = millisSince(impactNs, timestampNs);
+                if (sinceImpact > STILL_DEADLINE_MS) {
+                    // Moving about again: they got up, or it was a jump.
+                    state = State.IDLE;
+                    break;
+                }
+                if (sinceImpact < SETTLE_MS) break;
+
+                boolean still = Math.abs(g - 1f) <= STILL_TOLERANCE_G && gyroMagnitude <= STILL_GYRO_RAD_S;
+                if (!still) {
+                    isStill = false;
+                    break;
+                }
+                if (!isStill) {
+                    isStill = true;
+                    stillSinceNs = timestampNs;
+                    break;
+                }
+                if (millisSince(stillSinceNs, timestampNs) >= STILL_MS) {
+                    boolean rotated = !rotationRequired || gyroPeak >= MIN_ROTATION_RAD_S;
+                    boolean fell = rotated && orientationChanged(x, y, z);
+                    state = State.IDLE;
+                    hasGravity = false;
+                    if (fell) {
+                        listener.onFall(timestampNs);
+                    }
+                }
+                break;
+        }
+    }
+
+    public void reset() {
+        state = State.IDLE;
+        hasGravity = false;
+        gyroMagnitude = 0;
+        gyroPeak = 0;
+    }
+
+    private void enterPostImpact(long timestampNs) {
+        impactNs = timestampNs;
+        isStill = false;
+        state = State.POST_IMPACT;
+    }
+
+    private void updateGravity(float x, float y, float z) {
+        if (!hasGravity) {
+            gravityX = x;
+            gravityY = y;
+            gravityZ = z;
+            hasGravity = true;
+            return;
+        }
+        gravityX += GRAVITY_ALPHA * (x - gravityX);
+        gravityY += GRAVITY_ALPHA * (y - gravityY);
+        gravityZ += GRAVITY_ALPHA * (z - gravityZ);
+    }
+
+    private boolean orientationChanged(float x, float y, float z) {
+        double dot = preFallX * x + preFallY * y + preFallZ * z;
+        double norms = Math.sqrt(preFallX * preFallX + preFallY * preFallY + preFallZ * preFallZ)
+                * Math.sqrt(x * x + y * y + z * z);
+        return norms > 0 && dot / norms <= MIN_ORIENTATION_CHANGE_COS;
+    }
+
+    private static long millisSince(long startNs, long nowNs) {
+        return (nowNs - startNs) / 1000000L;
+    }
+}
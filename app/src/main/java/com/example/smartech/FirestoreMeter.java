@@ -0,0 +1,240 @@
+package com.example.smartech;
+
+import android.util.Log;
+
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.EventListener;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.Transaction;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Issues every Firestore and Realtime Database read and write on the app's behalf and reports
+ * the traffic to the {@link DataAccessMeter}. Call sites use these methods instead of the
+ * Firebase ones, so a new access path is metered without having to remember to.
+ */
+public final class FirestoreMeter {
+
+    private static final String TAG = "DataAccess";
+
+    private FirestoreMeter() {
+    }
+
+    /**
+     * Starts attributing traffic to {@code flow} and logs the previous flow's usage, warning when
+     * it went over budget.
+     */
+    public static void beginFlow(DataAccessMeter.Flow flow) {
+        DataAccessMeter meter = DataAccessMeter.getInstance();
+        DataAccessMeter.Flow previousFlow = meter.getCurrentFlow();
+        List<String> violations = meter.checkBudget(previousFlow);
+        DataAccessMeter.Usage previous = meter.beginFlow(flow);
+
+        Log.d(TAG, previousFlow + ": " + previous);
+        for (String violation : violations) {
+            Log.w(TAG, violation);
+        }
+    }
+
+    /** Reads a document once. */
+    public static Task<DocumentSnapshot> get(DocumentReference document) {
+        return document.get().addOnSuccessListener(FirestoreMeter::read);
+    }
+
+    /** Reads a query once. */
+    public static Task<QuerySnapshot> get(Query query) {
+        return query.get().addOnSuccessListener(FirestoreMeter::read);
+    }
+
+    /** Reads a Realtime Database location once. */
+    public static Task<DataSnapshot> get(DatabaseReference location) {
+        return location.get().addOnSuccessListener(FirestoreMeter::read);
+    }
+
+    /** Listens to a document; every snapshot is metered before {@code listener} sees it. */
+    public static ListenerRegistration listen(DocumentReference document, EventListener<DocumentSnapshot> listener) {
+        return document.addSnapshotListener((snapshot, e) -> {
+            if (snapshot != null) {
+                listenerEvent(snapshot);
+            }
+            listener.onEvent(snapshot, e);
+        });
+    }
+
+    /** Listens to a query; every snapshot is metered before {@code listener} sees it. */
+    public static ListenerRegistration listen(Query query, EventListener<QuerySnapshot> listener) {
+        return query.addSnapshotListener((snapshot, e) -> {
+            if (snapshot != null) {
+                listenerEvent(snapshot);
+            }
+            listener.onEvent(snapshot, e);
+        });
+    }
+
+    /** Writes a whole document. */
+    public static Task<Void> set(DocumentReference document, Map<String, Object> data) {
+        write(document.getPath(), data);
+        return document.set(data);
+    }
+
+    /** Writes some of a document's fields. */
+    public static Task<Void> update(DocumentReference document, Map<String, Object> data) {
+        write(document.getPath(), data);
+        return document.update(data);
+    }
+
+    /** Stages a set in {@code batch}; it is metered now, as batches here are always committed. */
+    public static void set(WriteBatch batch, DocumentReference document, Map<String, Object> data) {
+        write(document.getPath(), data);
+        batch.set(document, data);
+    }
+
+    /** Stages an update in {@code batch}. */
+    public static void update(WriteBatch batch, DocumentReference document, Map<String, Object> data) {
+        write(document.getPath(), data);
+        batch.update(document, data);
+    }
+
+    /** Stages a delete in {@code batch}. */
+    public static void delete(WriteBatch batch, DocumentReference document) {
+        write(document.getPath(), null);
+        batch.delete(document);
+    }
+
+    /**
+     * Runs {@code function} in a transaction. Firestore reruns the function on contention, so
+     * only the last attempt's reads are metered, and its writes only if it committed.
+     */
+    public static <T> Task<T> runTransaction(FirebaseFirestore db, TransactionFunction<T> function) {
+        MeteredTransaction metered = new MeteredTransaction();
+        return db.runTransaction((Transaction.Function<T>) transaction -> {
+            metered.begin(transaction);
+            return function.apply(metered);
+        }).addOnCompleteListener(task -> metered.settle(task.isSuccessful()));
+    }
+
+    public interface TransactionFunction<T> {
+        T apply(MeteredTransaction transaction) throws FirebaseFirestoreException;
+    }
+
+    /** The part of {@link Transaction} the app uses, recording each attempt's traffic. */
+    public static final class MeteredTransaction {
+
+        private final List<DocumentSnapshot> reads = new ArrayList<>();
+        private final List<Runnable> writes = new ArrayList<>();
+        private Transaction transaction;
+
+        private MeteredTransaction() {
+        }
+
+        public DocumentSnapshot get(DocumentReference document) throws FirebaseFirestoreException {
+            DocumentSnapshot snapshot = transaction.get(document);
+            synchronized (this) {
+                reads.add(snapshot);
+            }
+            return snapshot;
+        }
+
+        public MeteredTransaction set(DocumentReference document, Map<String, Object> data) {
+            transaction.set(document, data);
+            synchronized (this) {
+                writes.add(() -> write(document.getPath(), data));
+            }
+            return this;
+        }
+
+        public MeteredTransaction update(DocumentReference document, String field, Object value) {
+            transaction.update(document, field, value);
+            synchronized (this) {
+                writes.add(() -> write(document.getPath(), Collections.singletonMap(field, value)));
+            }
+            return this;
+        }
+
+        private synchronized void begin(Transaction attempt) {
+            transaction = attempt;
+            reads.clear();
+            writes.clear();
+        }
+
+        private synchronized void settle(boolean committed) {
+            for (DocumentSnapshot snapshot : reads) {
+                read(snapshot);
+            }
+            if (committed) {
+                for (Runnable write : writes) {
+                    write.run();
+                }
+            }
+        }
+    }
+
+    /** A one-off {@code get()} of a document. */
+    private static void read(DocumentSnapshot document) {
+        DataAccessMeter.getInstance().recordReads(
+                document.getMetadata().isFromCache() ? 0 : 1, documentSize(document));
+    }
+
+    /** A one-off {@code get()} of a query; an empty result is still billed as one read. */
+    private static void read(QuerySnapshot snapshot) {
+        long bytes = 0;
+        for (DocumentSnapshot document : snapshot.getDocuments()) {
+            bytes += documentSize(document);
+        }
+        int billed = snapshot.getMetadata().isFromCache() ? 0 : Math.max(1, snapshot.size());
+        DataAccessMeter.getInstance().recordReads(billed, bytes);
+    }
+
+    /** A snapshot delivered to a document listener. */
+    private static void listenerEvent(DocumentSnapshot document) {
+        boolean billed = !document.getMetadata().isFromCache() && !document.getMetadata().hasPendingWrites();
+        DataAccessMeter.getInstance().recordListenerEvent(billed ? 1 : 0, documentSize(document));
+    }
+
+    /**
+     * A snapshot delivered to a query listener. Only documents that changed on the server are
+     * billed; echoes of local writes are not.
+     */
+    private static void listenerEvent(QuerySnapshot snapshot) {
+        int billed = 0;
+        long bytes = 0;
+        if (!snapshot.getMetadata().isFromCache()) {
+            for (DocumentChange change : snapshot.getDocumentChanges()) {
+                DocumentSnapshot document = change.getDocument();
+                if (document.getMetadata().hasPendingWrites()) continue;
+                billed++;
+                bytes += documentSize(document);
+            }
+        }
+        DataAccessMeter.getInstance().recordListenerEvent(billed, bytes);
+    }
+
+    /** A document set or update; {@code data} is the written fields, or null for a delete. */
+    private static void write(String path, Map<String, Object> data) {
+        DataAccessMeter.getInstance().recordWrites(1, DataAccessMeter.estimateDocumentSize(path, data));
+    }
+
+    /** A Realtime Database read. It is billed by bytes downloaded rather than by document. */
+    private static void read(DataSnapshot snapshot) {
+        DataAccessMeter.getInstance().recordReads(1,
+                snapshot.getRef().toString().length() + DataAccessMeter.estimateSize(snapshot.getValue()));
+    }
+
+    private static long documentSize(DocumentSnapshot document) {
+        return DataAccessMeter.estimateDocumentSize(document.getReference().getPath(), document.getData());
+    }
+}
@@ -1,6 +1,7 @@
 package com.example.smartech;
 
 import android.Manifest;
+import android.app.Application;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.net.Uri;
@@ -8,7 +9,6 @@ import android.os.Build;
 import android.os.Bundle;
 import android.os.VibrationEffect;
 import android.os.Vibrator;
-import android.speech.tts.TextToSpeech;
 import android.view.MotionEvent;
 import android.widget.TextView;
 import android.widget.Toast;
@@ -18,40 +18,42 @@ import androidx.constraintlayout.widget.ConstraintLayout;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 import com.airbnb.lottie.LottieAnimationView;
-import com.google.firebase.auth.FirebaseAuth;
-import com.google.firebase.database.FirebaseDatabase;
-import com.google.firebase.database.DatabaseReference;
-import com.google.firebase.database.DataSnapshot;
-import com.google.firebase.database.DatabaseError;
-import com.google.firebase.database.ValueEventListener;
-import com.google.firebase.database.Query;
-import java.util.Locale;
+import java.util.List;
 
 public class HelpActivity extends AppCompatActivity {
 
     private static final int REQUEST_RECORD_AUDIO_PERMISSION = 1;
+    // How far ahead the best fuzzy match must score to be offered on its own.
+    private static final double CLEAR_WINNER_MARGIN = 0.1;
+    private final ResourceRegistry resources = ResourceRegistry.bindTo(this);
     private VoiceAssistantHelper voiceAssistantHelper;
     private LottieAnimationView micAnimation;
     private TextView recognizedText;
     private ConstraintLayout mainLayout;
-    private TextToSpeech textToSpeech;
-    private FirebaseAuth mAuth;
-    private DatabaseReference db;
-
-    // State variables for help flow
-    private boolean awaitingContactConfirmation = false;
-    private boolean awaitingMessage = false;
-    private String selectedContactName = "";
-    private String selectedContactEmail = "";
+    private ContactRepository contactRepository;
+    private State state;
+
+    /** Kept across rotations: the engines, and where the help conversation has got to. */
+    public static class State extends ScreenViewModel {
+        boolean awaitingContactConfirmation = false;
+        boolean awaitingMessage = false;
+        String selectedContactName = "";
+        String selectedContactEmail = "";
+
+        public State(@NonNull Application application) {
+            super(application);
+        }
+    }
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_help);
+        state = ScreenViewModel.of(this, State.class);
 
         initializeViews();
         checkPermissions();
-        initializeFirebase();
+        initializeContacts();
         setupTextToSpeech();
         setupVoiceAssistant();
         setupTouchListener();
@@ -72,25 +74,25 @@ public class HelpActivity extends AppCompatActivity {
         }
     }
 
-    private void initializeFirebase() {
-        mAuth = FirebaseAuth.getInstance();
-        db = FirebaseDatabase.getInstance().getReference();
+    private void initializeContacts() {
+        contactRepository = ContactRepository.getInstance(this);
+        contactRepository.startForCurrentUser();
     }
 
     private void setupTextToSpeech() {
-        textToSpeech = new TextToSpeech(this, status -> {
-            if (status == TextToSpeech.SUCCESS) {
-                int result = textToSpeech.setLanguage(Locale.US);
-                if (result == TextToSpeech.LANG_MISSING_DATA ||
-                        result == TextToSpeech.LANG_NOT_SUPPORTED) {
-                    Toast.makeText(this, "Language not supported", Toast.LENGTH_SHORT).show();
-                }
+        TextSpeakerHelper speech = state.getSpeech();
+        // Only a new engine is reported on; one kept from before a rotation already was.
+        if (speech.getStatus() != TextSpeakerHelper.Status.STARTING) return;
+        speech.whenStarted(resources, status -> {
+            if (status == TextSpeakerHelper.Status.LANGUAGE_UNSUPPORTED) {
+                Toast.makeText(this, "Language not supported", Toast.LENGTH_SHORT).show();
             }
         });
     }
 
     private void setupVoiceAssistant() {
-        voiceAssistantHelper = new VoiceAssistantHelper(this, new VoiceAssistantHelper.Listener() {
+        voiceAssistantHelper = state.getVoice();
+        voiceAssistantHelper.bind(resources, new VoiceAssistantHelper.Listener() {
             @Override
             public void onCommandReceived(String command) {
                 recognizedText.setText(command);
@@ -131,11 +133,14 @@ public class HelpActivity extends AppCompatActivity {
         } else if (command.startsWith("send help to ")) {
             String contactName = command.substring("send help to ".length()).trim();
             searchContact(contactName);
-        } else if (awaitingContactConfirmation && (command.contains("yes") || command.contains("confirm"))) {
-            awaitingContactConfirmation = false;
-            awaitingMessage = true;
+        } else if (state.awaitingContactConfirmation && (command.contains("yes") || command.contains("confirm"))) {
+            state.awaitingContactConfirmation = false;
+            state.awaitingMessage = true;
             speakOut("Contact confirmed. Please speak your message now.");
-        } else if (awaitingMessage) {
+        } else if (state.awaitingContactConfirmation && command.matches(".*\\bno\\b.*")) {
+            state.awaitingContactConfirmation = false;
+            speakOut("Okay. Say send help to and the contact's name.");
+        } else if (state.awaitingMessage) {
             sendHelpMessage(command);
         } else {
             speakOut("I didn't understand that command. Please try again.");
@@ -143,45 +148,67 @@ public class HelpActivity extends AppCompatActivity {
     }
 
     private void searchContact(String contactName) {
-        String userId = mAuth.getCurrentUser().getUid();
-        DatabaseReference contactsRef = db.child("users").child(userId).child("contacts");
-
-        Query query = contactsRef.orderByChild("name").equalTo(contactName);
-        query.addListenerForSingleValueEvent(new ValueEventListener() {
-            @Override
-            public void onDataChange(@NonNull DataSnapshot dataSnapshot) {
-                if (dataSnapshot.exists()) {
-                    for (DataSnapshot contactSnapshot : dataSnapshot.getChildren()) {
-                        selectedContactName = contactSnapshot.child("name").getValue(String.class);
-                        selectedContactEmail = contactSnapshot.child("email").getValue(String.class);
-
-                        speakOut("Contact found. Is this the correct contact? Say yes or no.");
-                        awaitingContactConfirmation = true;
-                        break;
-                    }
-                } else {
-                    speakOut("Contact not found. Please try again.");
-                }
+        contactRepository.whenLoaded(resources, () -> {
+            if (!contactRepository.isAvailable()) {
+                speakOut("Error searching for contact. Please try again.");
+                return;
             }
 
-            @Override
-            public void onCancelled(@NonNull DatabaseError databaseError) {
-                speakOut("Error searching for contact. Please try again.");
+            List<ContactIndex.Contact> matches = contactRepository.find(contactName);
+            if (matches.isEmpty()) {
+                suggestSimilarContact(contactName);
+            } else if (matches.size() > 1) {
+                StringBuilder names = new StringBuilder();
+                for (int i = 0; i < matches.size(); i++) {
+                    if (i > 0) names.append(i == matches.size() - 1 ? " and " : ", ");
+                    names.append(matches.get(i).getFullName());
+                }
+                speakOut("I found " + matches.size() + " contacts: " + names + ". Please say send help to and the full name.");
+            } else {
+                ContactIndex.Contact contact = matches.get(0);
+                state.selectedContactName = contact.getFullName();
+                state.selectedContactEmail = contact.email;
+                speakOut("Contact found: " + state.selectedContactName + ". Is this the correct contact? Say yes or no.");
+                state.awaitingContactConfirmation = true;
             }
         });
     }
 
+    /**
+     * The recognizer often misspells names, so offer the closest sounding contact for a yes/no
+     * confirmation instead of asking the user to repeat themselves.
+     */
+    private void suggestSimilarContact(String contactName) {
+        List<PhoneticContactMatcher.Match> similar = contactRepository.findSimilar(contactName, 2);
+        if (similar.isEmpty()) {
+            speakOut("Contact not found. Please try again.");
+            return;
+        }
+
+        PhoneticContactMatcher.Match best = similar.get(0);
+        if (similar.size() > 1 && best.score - similar.get(1).score < CLEAR_WINNER_MARGIN) {
+            speakOut("Did you mean " + best.contact.getFullName() + " or " + similar.get(1).contact.getFullName()
+                    + "? Say send help to and the full name.");
+            return;
+        }
+
+        state.selectedContactName = best.contact.getFullName();
+        state.selectedContactEmail = best.contact.email;
+        speakOut("Did you mean " + state.selectedContactName + "? Say yes or no.");
+        state.awaitingContactConfirmation = true;
+    }
+
     private void sendHelpMessage(String message) {
-        awaitingMessage = false;
+        state.awaitingMessage = false;
 
         try {
             Intent emailIntent = new Intent(Intent.ACTION_SENDTO);
-            emailIntent.setData(Uri.parse("mailto:" + selectedContactEmail));
+            emailIntent.setData(Uri.parse("mailto:" + state.selectedContactEmail));
             emailIntent.putExtra(Intent.EXTRA_SUBJECT, "Emergency Help Request");
             emailIntent.putExtra(Intent.EXTRA_TEXT, "HELP NEEDED: " + message);
             startActivity(Intent.createChooser(emailIntent, "Send email via..."));
 
-            speakOut("Help message sent to " + selectedContactName);
+            speakOut("Help message sent to " + state.selectedContactName);
         } catch (Exception e) {
             speakOut("Failed to send email. Please try again.");
         }
@@ -207,9 +234,7 @@ public class HelpActivity extends AppCompatActivity {
     }
 
     private void speakOut(String text) {
-        if (textToSpeech != null) {
-            textToSpeech.speak(text, TextToSpeech.QUEUE_FLUSH, null, null);
-        }
+        state.getSpeech().speak(text);
     }
 
     @Override
@@ -221,13 +246,4 @@ public class HelpActivity extends AppCompatActivity {
             }
         }
     }
-
-    @Override
-    protected void onDestroy() {
-        if (textToSpeech != null) {
-            textToSpeech.stop();
-            textToSpeech.shutdown();
-        }
-        super.onDestroy();
-    }
 }
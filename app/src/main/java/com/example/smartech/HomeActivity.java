@@ -1,41 +1,49 @@
 package com.example.smartech;
 
 import android.Manifest;
+import android.app.Application;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.VibrationEffect;
 import android.os.Vibrator;
-import android.speech.tts.TextToSpeech;
 import android.view.MotionEvent;
 import android.view.View;
 import android.widget.TextView;
 import android.widget.Toast;
+import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.constraintlayout.widget.ConstraintLayout;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 import com.airbnb.lottie.LottieAnimationView;
-import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.auth.FirebaseAuth;
-import java.util.Locale;
-import java.util.Map;
-import java.util.ArrayList;
+import java.util.List;
 
 public class HomeActivity extends AppCompatActivity {
 
     private static final int REQUEST_RECORD_AUDIO_PERMISSION = 1;
+    private static final int REQUEST_NOTIFICATIONS_PERMISSION = 2;
+    private final ResourceRegistry resources = ResourceRegistry.bindTo(this);
+    private State state;
     private VoiceAssistantHelper voiceAssistantHelper;
     private LottieAnimationView micAnimation;
     private ConstraintLayout mainLayout;
-    private TextToSpeech textToSpeech;
-    private FirebaseAuth mAuth;
     private TextView recognizedText;
-    private FirebaseFirestore db;
+    private UserProfileRepository profileRepository;
+    private ContactRepository contactRepository;
     private String customName = null;
     private String firstName = "";
 
+    /** Kept across rotations: the engines, and whether the user has been greeted yet. */
+    public static class State extends ScreenViewModel {
+        boolean greeted = false;
+
+        public State(@NonNull Application application) {
+            super(application);
+        }
+    }
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -44,8 +52,10 @@ public class HomeActivity extends AppCompatActivity {
         micAnimation = findViewById(R.id.micAnimation);
         recognizedText = findViewById(R.id.recognizedText);
         mainLayout = findViewById(R.id.main);
-        mAuth = FirebaseAuth.getInstance();
-        db = FirebaseFirestore.getInstance();
+        profileRepository = UserProfileRepository.getInstance(this);
+        profileRepository.startForCurrentUser();
+        contactRepository = ContactRepository.getInstance(this);
+        contactRepository.startForCurrentUser();
 
         firstName = getIntent().getStringExtra("firstName");
 
@@ -54,20 +64,30 @@ public class HomeActivity extends AppCompatActivity {
             ActivityCompat.requestPermissions(this, new String[]{Manifest.permission.RECORD_AUDIO},
                     REQUEST_RECORD_AUDIO_PERMISSION);
         }
-
-        textToSpeech = new TextToSpeech(this, status -> {
-            if (status == TextToSpeech.SUCCESS) {
-                int langResult = textToSpeech.setLanguage(Locale.US);
-                if (langResult == TextToSpeech.LANG_MISSING_DATA || langResult == TextToSpeech.LANG_NOT_SUPPORTED) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU
+                && ContextCompat.checkSelfPermission(this, Manifest.permission.POST_NOTIFICATIONS)
+                != PackageManager.PERMISSION_GRANTED) {
+            ActivityCompat.requestPermissions(this, new String[]{Manifest.permission.POST_NOTIFICATIONS},
+                    REQUEST_NOTIFICATIONS_PERMISSION);
+        }
+        EmergencyMonitorService.start(this);
+
+        state = ScreenViewModel.of(this, State.class);
+        if (!state.greeted) {
+            state.getSpeech().whenStarted(resources, status -> {
+                if (status == TextSpeakerHelper.Status.FAILED) {
+                    Toast.makeText(HomeActivity.this, "TextToSpeech initialization failed", Toast.LENGTH_SHORT).show();
+                    return;
+                }
+                if (status == TextSpeakerHelper.Status.LANGUAGE_UNSUPPORTED) {
                     Toast.makeText(HomeActivity.this, "Language not supported", Toast.LENGTH_SHORT).show();
                 }
-                fetchCustomNameFromFirebase();
-            } else {
-                Toast.makeText(HomeActivity.this, "TextToSpeech initialization failed", Toast.LENGTH_SHORT).show();
-            }
-        });
+                profileRepository.whenLoaded(resources, this::greetUser);
+            });
+        }
 
-        voiceAssistantHelper = new VoiceAssistantHelper(this, new VoiceAssistantHelper.Listener() {
+        voiceAssistantHelper = state.getVoice();
+        voiceAssistantHelper.bind(resources, new VoiceAssistantHelper.Listener() {
             @Override
             public void onCommandReceived(String command) {
                 recognizedText.setText(command);
@@ -112,10 +132,20 @@ public class HomeActivity extends AppCompatActivity {
     }
 
     private void greetUser() {
+        state.greeted = true;
+        FirestoreMeter.beginFlow(DataAccessMeter.Flow.GREET);
+        refreshNameFromProfile();
         String greetingMessage = "Hello, " + (customName != null ? customName : firstName) + "! What can I do for you?";
         speakOut(greetingMessage);
     }
 
+    private void refreshNameFromProfile() {
+        if (profileRepository.exists()) {
+            customName = profileRepository.getCustomName();
+            firstName = profileRepository.getFirstName();
+        }
+    }
+
     private void routeCommand(String command) {
         command = command.toLowerCase();
 
@@ -161,6 +191,7 @@ public class HomeActivity extends AppCompatActivity {
 
         // Name intent
         if (matchesAny(command, new String[]{"what", "say", "tell"}, new String[]{"my name"})) {
+            refreshNameFromProfile();
             speakOut("Your name is " + (customName != null ? customName : firstName));
             return;
         }
@@ -191,54 +222,27 @@ public class HomeActivity extends AppCompatActivity {
 
 
     private void getEmergencyContacts() {
-        String userId = mAuth.getCurrentUser().getUid();
-
-        db.collection("users").document(userId).get().addOnSuccessListener(documentSnapshot -> {
-            if (documentSnapshot.exists()) {
-                if (documentSnapshot.contains("emergencyContacts")) {
-                    ArrayList<Map<String, String>> emergencyContacts = (ArrayList<Map<String, String>>) documentSnapshot.get("emergencyContacts");
-                    StringBuilder response = new StringBuilder();
-
-                    response.append("You have ").append(emergencyContacts.size()).append(" emergency contacts. ");
-
-                    for (int i = 0; i < emergencyContacts.size(); i++) {
-                        Map<String, String> contact = emergencyContacts.get(i);
-                        response.append(contact.get("firstName")).append(" ").append(contact.get("lastName"));
-                        if (i < emergencyContacts.size() - 1) response.append(", ");
-                    }
-                    speakOut(response.toString());
-                } else {
-                    speakOut("No emergency contacts found.");
-                }
-            }
-        });
-    }
+        contactRepository.whenLoaded(resources, () -> {
+            if (!contactRepository.isAvailable()) return;
 
-    private void fetchCustomNameFromFirebase() {
-        String userId = mAuth.getCurrentUser().getUid();
-        db.collection("users").document(userId).get().addOnSuccessListener(documentSnapshot -> {
-            if (documentSnapshot.exists()) {
-                if (documentSnapshot.contains("customName")) {
-                    customName = documentSnapshot.getString("customName");
-                }
-                if (documentSnapshot.contains("firstName")) {
-                    firstName = documentSnapshot.getString("firstName");
+            List<ContactIndex.Contact> emergencyContacts = contactRepository.getContacts();
+            if (!emergencyContacts.isEmpty()) {
+                StringBuilder response = new StringBuilder();
+
+                response.append("You have ").append(emergencyContacts.size()).append(" emergency contacts. ");
+
+                for (int i = 0; i < emergencyContacts.size(); i++) {
+                    response.append(emergencyContacts.get(i).getFullName());
+                    if (i < emergencyContacts.size() - 1) response.append(", ");
                 }
-                greetUser();
+                speakOut(response.toString());
+            } else {
+                speakOut("No emergency contacts found.");
             }
         });
     }
 
     private void speakOut(String text) {
-        textToSpeech.speak(text, TextToSpeech.QUEUE_FLUSH, null, null);
-    }
-
-    @Override
-    protected void onDestroy() {
-        if (textToSpeech != null) {
-            textToSpeech.stop();
-            textToSpeech.shutdown();
-        }
-        super.onDestroy();
+        state.getSpeech().speak(text);
     }
 }
\ No newline at end of file
@@ -1,40 +1,50 @@
 package com.example.smartech;
 
+import android.app.Application;
+import android.content.Context;
 import android.content.Intent;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.Looper;
 import android.os.VibrationEffect;
 import android.os.Vibrator;
-import android.speech.RecognizerIntent;
-import android.speech.SpeechRecognizer;
-import android.speech.RecognitionListener;
-import android.speech.tts.TextToSpeech;
 import android.view.GestureDetector;
 import android.view.MotionEvent;
 import android.view.View;
 import android.widget.TextView;
 import android.widget.Toast;
+import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.constraintlayout.widget.ConstraintLayout;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.firestore.FirebaseFirestore;
-import java.util.List;
-import java.util.Locale;
+import java.util.Collections;
 
 public class IntroductionActivity extends AppCompatActivity {
 
-    private TextToSpeech tts;
-    private SpeechRecognizer speechRecognizer;
+    private final ResourceRegistry resources = ResourceRegistry.bindTo(this);
+    private State state;
+    private TextSpeakerHelper speech;
+    private VoiceAssistantHelper voice;
     private GestureDetector gestureDetector;
     private ConstraintLayout mainLayout;
 
     private String firstName;
     private String lastName;
-    private String customName = null;
-    private boolean awaitingNameCorrection = false;
-    private boolean nameConfirmed = false;
-    private boolean listeningEnabled = false;
+
+    /** Kept across rotations: the engines, and where the name conversation has got to. */
+    public static class State extends ScreenViewModel {
+        boolean welcomed = false;
+        String customName = null;
+        boolean awaitingNameCorrection = false;
+        boolean nameConfirmed = false;
+        boolean listeningEnabled = false;
+
+        public State(@NonNull Application application) {
+            super(application);
+        }
+    }
 
     private FirebaseAuth mAuth;
     private FirebaseFirestore db;
@@ -51,14 +61,20 @@ public class IntroductionActivity extends AppCompatActivity {
         mAuth = FirebaseAuth.getInstance();
         db = FirebaseFirestore.getInstance();
 
-        tts = new TextToSpeech(this, status -> {
-            if (status == TextToSpeech.SUCCESS) {
-                tts.setLanguage(Locale.US);
+        state = ScreenViewModel.of(this, State.class);
+        speech = state.getSpeech();
+        voice = state.getVoice();
+        if (!state.welcomed) {
+            speech.whenStarted(resources, status -> {
+                state.welcomed = true;
                 speak("Welcome to Smart Tech, " + firstName + "! Did I pronounce your name correctly? Swipe up for yes, swipe down for no.");
-            }
-        });
+            });
+        }
+        if (state.nameConfirmed) {
+            // Recreated while waiting to move on.
+            redirectAfterDelay();
+        }
 
-        speechRecognizer = SpeechRecognizer.createSpeechRecognizer(this);
         gestureDetector = new GestureDetector(this, new GestureDetector.SimpleOnGestureListener() {
             private static final int SWIPE_THRESHOLD = 100;
             private static final int SWIPE_VELOCITY_THRESHOLD = 100;
@@ -80,39 +96,29 @@ public class IntroductionActivity extends AppCompatActivity {
             }
         });
 
-        speechRecognizer.setRecognitionListener(new RecognitionListener() {
-            @Override public void onReadyForSpeech(Bundle params) {}
-            @Override public void onBeginningOfSpeech() {}
-            @Override public void onRmsChanged(float rmsdB) {}
-            @Override public void onBufferReceived(byte[] buffer) {}
-            @Override public void onEndOfSpeech() {}
-            @Override public void onError(int error) {
-                Toast.makeText(IntroductionActivity.this, "Error in speech recognition", Toast.LENGTH_SHORT).show();
-            }
-
+        voice.bind(resources, new VoiceAssistantHelper.Listener() {
             @Override
-            public void onResults(Bundle results) {
-                List<String> matches = results.getStringArrayList(SpeechRecognizer.RESULTS_RECOGNITION);
-                if (matches != null && !matches.isEmpty()) {
-                    customName = matches.get(0);
-                    listeningEnabled = false;
-                    speak(customName, () -> speak("Did I get it right this time? Swipe up for yes, swipe down for no."));
-                }
+            public void onCommandReceived(String command) {
+                state.customName = command;
+                state.listeningEnabled = false;
+                // Held directly, as a rotation may replace this activity before the name is read back.
+                TextSpeakerHelper speaker = speech;
+                speaker.speak(command, () -> speaker.speak("Did I get it right this time? Swipe up for yes, swipe down for no."));
             }
 
-            @Override public void onPartialResults(Bundle partialResults) {}
-            @Override public void onEvent(int eventType, Bundle params) {}
+            @Override public void onListeningStarted() {}
+            @Override public void onListeningStopped() {}
         });
 
         mainLayout.setOnTouchListener((v, event) -> {
-            if (listeningEnabled) {
+            if (state.listeningEnabled) {
                 switch (event.getAction()) {
                     case MotionEvent.ACTION_DOWN:
                         vibrate();
                         startVoiceInput();
                         break;
                     case MotionEvent.ACTION_UP:
-                        speechRecognizer.stopListening();
+                        voice.stopListening();
                         break;
                 }
                 return true;
@@ -124,15 +130,15 @@ public class IntroductionActivity extends AppCompatActivity {
 
     private void onSwipeUp() {
         vibrate();
-        if (awaitingNameCorrection && customName != null) {
-            speak("Perfect! Thanks, " + customName + ". I’ll remember that.");
-            nameConfirmed = true;
-            updateFirebaseName(customName);
+        if (state.awaitingNameCorrection && state.customName != null) {
+            speak("Perfect! Thanks, " + state.customName + ". I’ll remember that.");
+            state.nameConfirmed = true;
+            updateFirebaseName(state.customName);
             redirectAfterDelay();
-        } else if (!awaitingNameCorrection) {
-            customName = firstName; 
+        } else if (!state.awaitingNameCorrection) {
+            state.customName = firstName; 
             speak("Thank you, " + firstName + "!");
-            nameConfirmed = true;
+            state.nameConfirmed = true;
             redirectAfterDelay();
         }
     }
@@ -140,46 +146,35 @@ public class IntroductionActivity extends AppCompatActivity {
 
     private void onSwipeDown() {
         vibrate();
-        if (!awaitingNameCorrection) {
-            awaitingNameCorrection = true;
+        if (!state.awaitingNameCorrection) {
+            state.awaitingNameCorrection = true;
             speak("Could you please say your name for me? Tap and hold on the screen to speak." );
-            listeningEnabled = true;
+            state.listeningEnabled = true;
         } else {
             speak("Let's try again. Could you please say your name?");
-            listeningEnabled = true;
+            state.listeningEnabled = true;
         }
     }
 
     private void startVoiceInput() {
-        Intent intent = new Intent(RecognizerIntent.ACTION_RECOGNIZE_SPEECH);
-        intent.putExtra(RecognizerIntent.EXTRA_LANGUAGE_MODEL, RecognizerIntent.LANGUAGE_MODEL_FREE_FORM);
-        intent.putExtra(RecognizerIntent.EXTRA_LANGUAGE, Locale.getDefault());
-        speechRecognizer.startListening(intent);
+        voice.startListening();
     }
 
     private void speak(String text) {
-        tts.speak(text, TextToSpeech.QUEUE_FLUSH, null, null);
-    }
-
-    private void speak(String text, Runnable onDone) {
-        tts.speak(text, TextToSpeech.QUEUE_FLUSH, null, "TTS_ID");
-        tts.setOnUtteranceProgressListener(new android.speech.tts.UtteranceProgressListener() {
-            @Override public void onStart(String utteranceId) {}
-            @Override public void onError(String utteranceId) {}
-            @Override public void onDone(String utteranceId) {
-                runOnUiThread(onDone);
-            }
-        });
+        speech.speak(text);
     }
 
     private void redirectAfterDelay() {
-        new Handler().postDelayed(() -> {
+        Handler handler = new Handler(Looper.getMainLooper());
+        Runnable redirect = () -> {
             Intent intent = new Intent(IntroductionActivity.this, HomeActivity.class);
-            intent.putExtra("customName", customName);
+            intent.putExtra("customName", state.customName);
             // Pass corrected name to HomeActivity
             startActivity(intent);
             finish();
-        }, 3000);
+        };
+        handler.postDelayed(redirect, 3000);
+        resources.onRelease(() -> handler.removeCallbacks(redirect));
     }
 
     private void vibrate() {
@@ -195,27 +190,17 @@ public class IntroductionActivity extends AppCompatActivity {
 
     private void updateFirebaseName(String name) {
         String userId = mAuth.getCurrentUser().getUid();
-        db.collection("users").document(userId).update("customName", name)
-                .addOnSuccessListener(aVoid -> Toast.makeText(IntroductionActivity.this, "Name updated successfully", Toast.LENGTH_SHORT).show())
-                .addOnFailureListener(e -> Toast.makeText(IntroductionActivity.this, "Error updating name", Toast.LENGTH_SHORT).show());
+        // The write can outlast this screen, so the results are shown without holding on to it.
+        Context appContext = getApplicationContext();
+        FirestoreMeter.update(db.collection("users").document(userId), Collections.<String, Object>singletonMap("customName", name))
+                .addOnSuccessListener(aVoid -> Toast.makeText(appContext, "Name updated successfully", Toast.LENGTH_SHORT).show())
+                .addOnFailureListener(e -> Toast.makeText(appContext, "Error updating name", Toast.LENGTH_SHORT).show());
     }
 
     @Override
     public boolean onTouchEvent(MotionEvent event) {
         return gestureDetector.onTouchEvent(event) || super.onTouchEvent(event);
     }
-
-    @Override
-    protected void onDestroy() {
-        if (tts != null) {
-            tts.stop();
-            tts.shutdown();
-        }
-        if (speechRecognizer != null) {
-            speechRecognizer.destroy();
-        }
-        super.onDestroy();
-    }
 }
 
 
@@ -0,0 +1,225 @@
+package com.example.smartech;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.location.Location;
+import android.location.LocationManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.core.content.ContextCompat;
+import androidx.core.location.LocationListenerCompat;
+import androidx.core.location.LocationManagerCompat;
+import androidx.core.location.LocationRequestCompat;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Process-wide location source for the emergency features.
+ *
+ * Providers are only switched on by the {@link LocationEscalator} while a request is open.
+ * Between requests the only subscription is the optional breadcrumb trail: a balanced-power
+ * network request at a slow interval that the platform may batch. Fixes are copied into
+ * primitive {@link LocationFix} fields as they arrive. All calls and callbacks happen on the
+ * main thread.
+ */
+public class LocationEngine {
+
+    private static final String TAG = "LocationEngine";
+    private static final long LADDER_INTERVAL_MS = 1000;
+    private static final long BURST_INTERVAL_MS = 500;
+    /** Sixty-four points at least fifteen seconds apart: the last quarter hour or more. */
+    private static final int TRAIL_CAPACITY = 64;
+    private static final long TRAIL_INTERVAL_MS = 15000;
+    /** Older points are left out of alerts, e.g. after the trail was stopped for hours. */
+    private static final long TRAIL_MAX_AGE_MS = 15 * 60 * 1000;
+    private static final long TRAIL_BATCH_MS = 2 * 60 * 1000;
+    private static final float TRAIL_MIN_DISTANCE_M = 10f;
+    private static final float TRAIL_MAX_ACCURACY_M = 200f;
+
+    private static LocationEngine instance;
+
+    private final Context context;
+    private final LocationManager locationManager;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final LocationEscalator escalator;
+    private final Map<LocationEscalator.Source, LocationListenerCompat> listeners =
+            new EnumMap<>(LocationEscalator.Source.class);
+    private final BreadcrumbTrail trail = new BreadcrumbTrail(TRAIL_CAPACITY, TRAIL_INTERVAL_MS);
+    private LocationListenerCompat trailListener;
+
+    public static synchronized LocationEngine getInstance(Context context) {
+        if (instance == null) {
+            instance = new LocationEngine(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private LocationEngine(Context context) {
+        this.context = context;
+        locationManager = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
+        escalator = new LocationEscalator(radio, (task, delayMs) -> {
+            handler.postDelayed(task, delayMs);
+            return () -> handler.removeCallbacks(task);
+        }, SystemClock::elapsedRealtime);
+    }
+
+    /** A fix good enough to show, climbing the provider ladder only as far as needed. */
+    public void requestFix(LocationEscalator.Callback callback) {
+        request(LocationEscalator.NORMAL, callback);
+    }
+
+    /**
+     * A short high-accuracy burst for an armed emergency. Answers at once when a recent precise
+     * fix is already on hand.
+     */
+    public void requestEmergencyFix(LocationEscalator.Callback callback) {
+        request(LocationEscalator.EMERGENCY, callback);
+    }
+
+    /** Stops every provider and drops the open request. */
+    public void cancel() {
+        escalator.cancel();
+    }
+
+    /**
+     * The best fix known without switching anything on, including other apps' last known
+     * positions. Invalid if there is none.
+     */
+    public LocationFix getLastFix() {
+        offerLastKnown();
+        return escalator.getBest().copy();
+    }
+
+    public long getGpsOnMs() {
+        return escalator.getGpsOnMs();
+    }
+
+    /**
+     * Starts recording the breadcrumb trail at a low, batched rate. Fixes taken for requests are
+     * recorded too, whether or not this is running.
+     */
+    public void startTrail() {
+        if (trailListener != null || locationManager == null || !hasPermission()) return;
+        String provider = locationManager.isProviderEnabled(LocationManager.NETWORK_PROVIDER)
+                ? LocationManager.NETWORK_PROVIDER : LocationManager.PASSIVE_PROVIDER;
+        LocationRequestCompat request = new LocationRequestCompat.Builder(TRAIL_INTERVAL_MS)
+                .setQuality(LocationRequestCompat.QUALITY_BALANCED_POWER_ACCURACY)
+                .setMinUpdateIntervalMillis(TRAIL_INTERVAL_MS)
+                .setMinUpdateDistanceMeters(TRAIL_MIN_DISTANCE_M)
+                .setMaxUpdateDelayMillis(TRAIL_BATCH_MS)
+                .build();
+        LocationListenerCompat listener = this::record;
+        try {
+            LocationManagerCompat.requestLocationUpdates(locationManager, provider, request,
+                    ContextCompat.getMainExecutor(context), listener);
+            trailListener = listener;
+        } catch (SecurityException e) {
+            Log.w(TAG, "Location permission revoked", e);
+        }
+    }
+
+    public void stopTrail() {
+        if (trailListener != null) {
+            LocationManagerCompat.removeUpdates(locationManager, trailListener);
+            trailListener = null;
+        }
+    }
+
+    /** A copy of the trail's last quarter hour, or null if that holds fewer than two points. */
+    public BreadcrumbTrail getTrail() {
+        trail.dropOlderThan(SystemClock.elapsedRealtime() - TRAIL_MAX_AGE_MS);
+        return trail.size() > 1 ? trail.copy() : null;
+    }
+
+    private void request(LocationEscalator.Request request, LocationEscalator.Callback callback) {
+        if (!hasPermission()) {
+            callback.onFix(new LocationFix());
+            return;
+        }
+        offerLastKnown();
+        escalator.request(request, callback);
+    }
+
+    private void offerLastKnown() {
+        if (!hasPermission() || locationManager == null) return;
+        for (LocationEscalator.Source source : LocationEscalator.Source.values()) {
+            String provider = providerFor(source);
+            try {
+                Location location = locationManager.getLastKnownLocation(provider);
+                if (location != null) {
+                    escalator.offer(source, location.getLatitude(), location.getLongitude(),
+                            location.hasAccuracy() ? location.getAccuracy() : 0, elapsedMs(location));
+                }
+            } catch (SecurityException | IllegalArgumentException e) {
+                // Provider missing on this device, or permission just revoked.
+            }
+        }
+    }
+
+    private final LocationEscalator.Radio radio = new LocationEscalator.Radio() {
+        @Override
+        public void start(LocationEscalator.Source source, boolean highAccuracy) {
+            if (locationManager == null || !hasPermission()) return;
+            String provider = providerFor(source);
+            if (!locationManager.isProviderEnabled(provider)) return;
+
+            long interval = highAccuracy ? BURST_INTERVAL_MS : LADDER_INTERVAL_MS;
+            LocationRequestCompat request = new LocationRequestCompat.Builder(interval)
+                    .setQuality(highAccuracy ? LocationRequestCompat.QUALITY_HIGH_ACCURACY
+                            : LocationRequestCompat.QUALITY_BALANCED_POWER_ACCURACY)
+                    .setMinUpdateIntervalMillis(interval)
+                    .build();
+            LocationListenerCompat listener = location -> {
+                record(location);
+                escalator.onFix(source, location.getLatitude(), location.getLongitude(),
+                        location.hasAccuracy() ? location.getAccuracy() : 0, elapsedMs(location));
+            };
+            try {
+                LocationManagerCompat.requestLocationUpdates(locationManager, provider, request,
+                        ContextCompat.getMainExecutor(context), listener);
+                listeners.put(source, listener);
+            } catch (SecurityException e) {
+                Log.w(TAG, "Location permission revoked", e);
+            }
+        }
+
+        @Override
+        public void stop(LocationEscalator.Source source) {
+            LocationListenerCompat listener = listeners.remove(source);
+            if (listener != null) {
+                LocationManagerCompat.removeUpdates(locationManager, listener);
+            }
+        }
+    };
+
+    private void record(Location location) {
+        if (location.hasAccuracy() && location.getAccuracy() > TRAIL_MAX_ACCURACY_M) return;
+        trail.add(location.getLatitude(), location.getLongitude(), elapsedMs(location));
+    }
+
+    private boolean hasPermission() {
+        return ContextCompat.checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION)
+                == PackageManager.PERMISSION_GRANTED;
+    }
+
+    private static String providerFor(LocationEscalator.Source source) {
+        switch (source) {
+            case GPS:
+                return LocationManager.GPS_PROVIDER;
+            case NETWORK:
+                return LocationManager.NETWORK_PROVIDER;
+            default:
+                return LocationManager.PASSIVE_PROVIDER;
+        }
+    }
+
+    /** When the fix was taken, on the {@code elapsedRealtime} clock. */
+    private static long elapsedMs(Location location) {
+        return location.getElapsedRealtimeNanos() / 1000000L;
+    }
+}
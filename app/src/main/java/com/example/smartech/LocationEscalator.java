@@ -0,0 +1,205 @@
+package com.example.smartech;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * Decides which location providers to turn on, and for how long, to answer a fix request.
+ *
+ * A cached fix that is recent and accurate enough answers straight away with every radio off.
+ * Otherwise a normal request listens passively first, then asks the network provider, and only
+ * turns GPS on when neither produced a good enough fix in time. An emergency request skips the
+ * ladder and runs GPS and network together in a short high-accuracy burst that ends as soon as
+ * the target accuracy is reached. GPS time is accounted so the cost can be reported.
+ *
+ * Not thread safe: all calls, including fixes and scheduled tasks, are expected on one thread.
+ */
+public class LocationEscalator {
+
+    public enum Source { PASSIVE, NETWORK, GPS }
+
+    public interface Radio {
+        void start(Source source, boolean highAccuracy);
+
+        void stop(Source source);
+    }
+
+    public interface Scheduler {
+        /** Runs {@code task} after {@code delayMs}; the returned runnable cancels it. */
+        Runnable schedule(Runnable task, long delayMs);
+    }
+
+    public interface Callback {
+        /** The best fix found, or an invalid one if nothing came in before the timeout. */
+        void onFix(LocationFix fix);
+    }
+
+    public static class Request {
+        final long maxAgeMs;
+        final float accuracyM;
+        final boolean burst;
+        /** Listening time for each rung of the ladder, or the burst length. */
+        final long[] stepTimeoutsMs;
+
+        public Request(long maxAgeMs, float accuracyM, boolean burst, long... stepTimeoutsMs) {
+            this.maxAgeMs = maxAgeMs;
+            this.accuracyM = accuracyM;
+            this.burst = burst;
+            this.stepTimeoutsMs = stepTimeoutsMs;
+        }
+    }
+
+    /** Passive for 5 s, network for 10 s, then GPS for up to 30 s. */
+    public static final Request NORMAL = new Request(2 * 60 * 1000, 100f, false, 5000, 10000, 30000);
+    /** GPS and network together for up to 20 s, until a fix within 25 m. */
+    public static final Request EMERGENCY = new Request(30 * 1000, 25f, true, 20000);
+
+    private static final Source[] LADDER = {Source.PASSIVE, Source.NETWORK, Source.GPS};
+
+    private final Radio radio;
+    private final Scheduler scheduler;
+    private final LongSupplier elapsedClock;
+    private final LocationFix best = new LocationFix();
+    private final LocationFix candidate = new LocationFix();
+    private final EnumSet<Source> running = EnumSet.noneOf(Source.class);
+    private final List<Callback> waiting = new ArrayList<>();
+
+    private Request request;
+    private int step;
+    private Runnable cancelTimeout;
+    private long gpsOnSinceMs;
+    private long gpsOnTotalMs;
+
+    /**
+     * @param elapsedClock milliseconds on the same clock as {@link LocationFix#elapsedRealtimeMs}
+     */
+    public LocationEscalator(Radio radio, Scheduler scheduler, LongSupplier elapsedClock) {
+        this.radio = radio;
+        this.scheduler = scheduler;
+        this.elapsedClock = elapsedClock;
+    }
+
+    /**
+     * Offers a fix that is already on the device, such as a provider's last known location.
+     * Keeps it if it beats the current best.
+     */
+    public void offer(Source source, double latitude, double longitude, float accuracyM, long elapsedRealtimeMs) {
+        candidate.set(source, latitude, longitude, accuracyM, elapsedRealtimeMs);
+        if (best.isWorseThan(candidate)) {
+            best.copyFrom(candidate);
+        }
+    }
+
+    public void request(Request newRequest, Callback callback) {
+        if (best.isUsable(elapsedClock.getAsLong(), newRequest.maxAgeMs, newRequest.accuracyM)) {
+            callback.onFix(best.copy());
+            return;
+        }
+        waiting.add(callback);
+
+        if (request != null && (request.burst || !newRequest.burst)) {
+            // Already working on a request at least this demanding.
+            return;
+        }
+        stopAll();
+        request = newRequest;
+        step = 0;
+        if (request.burst) {
+            start(Source.NETWORK, true);
+            start(Source.GPS, true);
+        } else {
+            start(LADDER[0], false);
+        }
+        scheduleTimeout();
+    }
+
+    /** A fix reported by a running provider. */
+    public void onFix(Source source, double latitude, double longitude, float accuracyM, long elapsedRealtimeMs) {
+        offer(source, latitude, longitude, accuracyM, elapsedRealtimeMs);
+        if (request != null && best.isUsable(elapsedClock.getAsLong(), request.maxAgeMs, request.accuracyM)) {
+            finish();
+        }
+    }
+
+    public void cancel() {
+        stopAll();
+        request = null;
+        waiting.clear();
+    }
+
+    public boolean isActive() {
+        return request != null;
+    }
+
+    public LocationFix getBest() {
+        return best;
+    }
+
+    public boolean isRunning(Source source) {
+        return running.contains(source);
+    }
+
+    /** Total time GPS has been on, including a session still in progress. */
+    public long getGpsOnMs() {
+        long total = gpsOnTotalMs;
+        if (running.contains(Source.GPS)) {
+            total += elapsedClock.getAsLong() - gpsOnSinceMs;
+        }
+        return total;
+    }
+
+    private void onTimeout() {
+        cancelTimeout = null;
+        if (request == null) return;
+        if (request.burst || step + 1 >= LADDER.length || step + 1 >= request.stepTimeoutsMs.length) {
+            finish();
+            return;
+        }
+        stop(LADDER[step]);
+        step++;
+        start(LADDER[step], false);
+        scheduleTimeout();
+    }
+
+    private void scheduleTimeout() {
+        cancelTimeout = scheduler.schedule(this::onTimeout, request.stepTimeoutsMs[request.burst ? 0 : step]);
+    }
+
+    private void finish() {
+        stopAll();
+        request = null;
+        List<Callback> callbacks = new ArrayList<>(waiting);
+        waiting.clear();
+        for (Callback callback : callbacks) {
+            callback.onFix(best.copy());
+        }
+    }
+
+    private void start(Source source, boolean highAccuracy) {
+        if (!running.add(source)) return;
+        if (source == Source.GPS) {
+            gpsOnSinceMs = elapsedClock.getAsLong();
+        }
+        radio.start(source, highAccuracy);
+    }
+
+    private void stop(Source source) {
+        if (!running.remove(source)) return;
+        if (source == Source.GPS) {
+            gpsOnTotalMs += elapsedClock.getAsLong() - gpsOnSinceMs;
+        }
+        radio.stop(source);
+    }
+
+    private void stopAll() {
+        if (cancelTimeout != null) {
+            cancelTimeout.run();
+            cancelTimeout = null;
+        }
+        for (Source source : LADDER) {
+            stop(source);
+        }
+    }
+}
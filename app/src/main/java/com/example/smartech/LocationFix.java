@@ -0,0 +1,91 @@
+package com.example.smartech;
+
+import java.util.Locale;
+
+/**
+ * A position kept as primitives. Instances are reused by the location engine, and text is only
+ * produced by {@link #describe()} when a message is composed.
+ */
+public class LocationFix {
+
+    private static final long SIGNIFICANTLY_NEWER_MS = 2 * 60 * 1000;
+    private static final float SIMILAR_ACCURACY_M = 50;
+
+    public double latitude;
+    public double longitude;
+    /** Horizontal accuracy radius in metres; {@link Float#MAX_VALUE} when unknown. */
+    public float accuracyM = Float.MAX_VALUE;
+    /** {@code SystemClock.elapsedRealtime()} at which the fix was taken. */
+    public long elapsedRealtimeMs;
+    public LocationEscalator.Source source;
+    private boolean valid = false;
+
+    public LocationFix set(LocationEscalator.Source source, double latitude, double longitude,
+                           float accuracyM, long elapsedRealtimeMs) {
+        this.source = source;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.accuracyM = accuracyM > 0 ? accuracyM : Float.MAX_VALUE;
+        this.elapsedRealtimeMs = elapsedRealtimeMs;
+        this.valid = true;
+        return this;
+    }
+
+    public LocationFix copyFrom(LocationFix other) {
+        source = other.source;
+        latitude = other.latitude;
+        longitude = other.longitude;
+        accuracyM = other.accuracyM;
+        elapsedRealtimeMs = other.elapsedRealtimeMs;
+        valid = other.valid;
+        return this;
+    }
+
+    public LocationFix copy() {
+        return new LocationFix().copyFrom(this);
+    }
+
+    public void clear() {
+        valid = false;
+        accuracyM = Float.MAX_VALUE;
+    }
+
+    public boolean isValid() {
+        return valid;
+    }
+
+    public long ageMs(long nowElapsedMs) {
+        return nowElapsedMs - elapsedRealtimeMs;
+    }
+
+    /** True for a fix no older than {@code maxAgeMs} and at least as accurate as {@code maxAccuracyM}. */
+    public boolean isUsable(long nowElapsedMs, long maxAgeMs, float maxAccuracyM) {
+        return valid && ageMs(nowElapsedMs) <= maxAgeMs && accuracyM <= maxAccuracyM;
+    }
+
+    /**
+     * Whether {@code candidate} should replace this fix: it is clearly newer, or about as recent
+     * and more accurate. A much older fix never wins, however accurate.
+     */
+    public boolean isWorseThan(LocationFix candidate) {
+        if (!candidate.valid) return false;
+        if (!valid) return true;
+
+        long newerByMs = candidate.elapsedRealtimeMs - elapsedRealtimeMs;
+        if (newerByMs > SIGNIFICANTLY_NEWER_MS) return true;
+        if (newerByMs < -SIGNIFICANTLY_NEWER_MS) return false;
+
+        float accuracyDelta = candidate.accuracyM - accuracyM;
+        if (accuracyDelta < 0) return true;
+        return newerByMs > 0 && accuracyDelta <= SIMILAR_ACCURACY_M;
+    }
+
+    /**
+     * Text for an emergency message, with a map link the recipient can open.
+     */
+    public String describe() {
+        if (!valid) return "Location not available";
+        return String.format(Locale.US, "Lat: %.6f, Long: %.6f (within %d m) https://maps.google.com/?q=%.6f,%.6f",
+                latitude, longitude, Math.round(Math.min(accuracyM, 99999f)), latitude, longitude);
+    }
+}
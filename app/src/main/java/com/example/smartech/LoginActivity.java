@@ -21,15 +21,14 @@ import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowInsetsCompat;
 
 import com.google.firebase.auth.FirebaseAuth;
-import com.google.firebase.firestore.FirebaseFirestore;
 
 public class LoginActivity extends AppCompatActivity {
 
+    private final ResourceRegistry resources = ResourceRegistry.bindTo(this);
     private EditText emailEditText, passwordEditText;
     private Button loginButton;
     private TextView incorrectPasswordTextView, invalidEmailTextView;
     private FirebaseAuth mAuth;
-    private FirebaseFirestore db;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -44,7 +43,6 @@ public class LoginActivity extends AppCompatActivity {
         });
 
         mAuth = FirebaseAuth.getInstance();
-        db = FirebaseFirestore.getInstance();
 
         emailEditText = findViewById(R.id.emailEditText);
         passwordEditText = findViewById(R.id.passwordEditText);
@@ -105,35 +103,16 @@ public class LoginActivity extends AppCompatActivity {
     }
 
     private void fetchUserData(String userId) {
-        db.collection("users").document(userId).get()
-                .addOnSuccessListener(documentSnapshot -> {
-                    if (documentSnapshot.exists()) {
-                        String username = documentSnapshot.getString("username");
-                        String firstName = documentSnapshot.getString("firstName");
-                        String lastName = documentSnapshot.getString("lastName");
-                        String email = documentSnapshot.getString("email");
-                        Boolean firstTimeLogin = documentSnapshot.getBoolean("firstTimeLogin");
-
-                        Intent intent;
-                        if (firstTimeLogin != null && firstTimeLogin) {
-                            db.collection("users").document(userId).update("firstTimeLogin", false);
-                            intent = new Intent(LoginActivity.this, IntroductionActivity.class);
-                        } else {
-                            intent = new Intent(LoginActivity.this, HomeActivity.class);
-                        }
-
-                        intent.putExtra("username", username);
-                        intent.putExtra("firstName", firstName);
-                        intent.putExtra("lastName", lastName);
-                        intent.putExtra("email", email);
-                        startActivity(intent);
-                        finish();
-                    } else {
-                        Toast.makeText(LoginActivity.this, "User data not found in Firestore.", Toast.LENGTH_SHORT).show();
-                    }
-                })
-                .addOnFailureListener(e -> {
-                    Toast.makeText(LoginActivity.this, "Error fetching user data: " + e.getMessage(), Toast.LENGTH_SHORT).show();
-                });
+        UserProfileRepository profileRepository = UserProfileRepository.getInstance(this);
+        profileRepository.start(userId);
+        profileRepository.whenLoaded(resources, () -> {
+            if (profileRepository.exists()) {
+                SessionGate.openProfile(LoginActivity.this, profileRepository);
+            } else if (profileRepository.getLastError() != null) {
+                Toast.makeText(LoginActivity.this, "Error fetching user data: " + profileRepository.getLastError().getMessage(), Toast.LENGTH_SHORT).show();
+            } else {
+                Toast.makeText(LoginActivity.this, "User data not found in Firestore.", Toast.LENGTH_SHORT).show();
+            }
+        });
     }
 }
@@ -1,25 +1,62 @@
 package com.example.smartech;
 
-import android.content.Intent;
 import android.os.Bundle;
-import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.content.ContextCompat;
 
 import com.google.firebase.FirebaseApp;
+import com.google.firebase.auth.FirebaseAuth;
+
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 public class MainActivity extends AppCompatActivity {
+
+    private static final String TAG = "Startup";
+    // The splash used to wait this long unconditionally; slow devices never wait longer.
+    private static final long SPLASH_DEADLINE_MS = 1500;
+
+    private final ResourceRegistry resources = ResourceRegistry.bindTo(this);
+
+    private ScheduledExecutorService startupExecutor;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        FirestoreMeter.beginFlow(DataAccessMeter.Flow.LAUNCH);
 
+        long firebaseStart = SystemClock.elapsedRealtime();
         FirebaseApp.initializeApp(this);
+        long firebaseMs = SystemClock.elapsedRealtime() - firebaseStart;
 
         setContentView(R.layout.splash_screen);
 
-        new Handler().postDelayed(() -> {
-            Intent intent = new Intent(MainActivity.this, LoginActivity.class);
-            startActivity(intent);
-            finish();
-        }, 1500);
+        // Only warm-ups whose results outlive the splash: the restored session and the profile
+        // repository singleton. Engines built here and shut down again would be built afresh
+        // by the screens that use them.
+        startupExecutor = Executors.newScheduledThreadPool(2);
+        StartupOrchestrator orchestrator = new StartupOrchestrator(startupExecutor, ContextCompat.getMainExecutor(this));
+        orchestrator.record("firebase", firebaseMs);
+        orchestrator
+                .add("authSession", true, () -> FirebaseAuth.getInstance().getCurrentUser())
+                .add("profileCache", true, () -> UserProfileRepository.getInstance(this).warmUp());
+
+        orchestrator.start(SPLASH_DEADLINE_MS, new StartupOrchestrator.Listener() {
+            @Override
+            public void onCriticalReady(Map<String, Long> timingsMs) {
+                Log.i(TAG, "Critical warm-ups ready: " + timingsMs);
+                if (isFinishing()) return;
+                SessionGate.route(MainActivity.this, resources);
+            }
+
+            @Override
+            public void onAllDone(Map<String, Long> timingsMs) {
+                Log.i(TAG, "All warm-ups done: " + timingsMs);
+                startupExecutor.shutdown();
+            }
+        });
     }
 }
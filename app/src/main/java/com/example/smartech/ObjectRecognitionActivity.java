@@ -1,6 +1,7 @@
 package com.example.smartech;
 
 import android.Manifest;
+import android.app.Application;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.os.Bundle;
@@ -34,20 +35,95 @@ import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 
 public class ObjectRecognitionActivity extends AppCompatActivity {
 
     private static final int CAMERA_PERMISSION_CODE = 100;
 
+    private final ResourceRegistry resources = ResourceRegistry.bindTo(this);
+    private State state;
     private PreviewView previewView;
     private TextView objectTextView;
-    private ExecutorService cameraExecutor;
-    private ObjectDetector objectDetector;
     private GestureDetectorCompat gestureDetector;
-    private CameraSelector currentCameraSelector;
     private TextSpeakerHelper textSpeakerHelper;
     private Vibrator vibrator;
 
+    /**
+     * Kept across rotations: the detector, the analysis use case and its executor, and which
+     * camera is in use. A new activity only binds them to its lifecycle with a fresh preview.
+     */
+    public static class State extends ScreenViewModel {
+        final ObjectDetector objectDetector;
+        final ExecutorService cameraExecutor;
+        final ImageAnalysis imageAnalysis;
+        int lensFacing = CameraSelector.LENS_FACING_BACK;
+        private Consumer<String> screen;
+
+        public State(@NonNull Application application) {
+            super(application);
+            ObjectDetectorOptions options = new ObjectDetectorOptions.Builder()
+                    .setDetectorMode(ObjectDetectorOptions.STREAM_MODE)
+                    .enableMultipleObjects()
+                    .enableClassification()
+                    .build();
+            objectDetector = resources.add(ObjectDetection.getClient(options));
+            // Registered after the detector, so analysis stops before the detector is closed.
+            cameraExecutor = resources.addExecutor(Executors.newSingleThreadExecutor());
+
+            imageAnalysis = new ImageAnalysis.Builder()
+                    .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
+                    .build();
+            imageAnalysis.setAnalyzer(cameraExecutor, this::analyzeImage);
+            resources.onRelease(imageAnalysis::clearAnalyzer);
+        }
+
+        /** Sends what is detected to {@code listener} until {@code scope} is released. */
+        void bind(ResourceRegistry scope, Consumer<String> listener) {
+            screen = listener;
+            scope.onRelease(() -> {
+                if (screen == listener) screen = null;
+            });
+        }
+
+        private void analyzeImage(ImageProxy imageProxy) {
+            if (imageProxy.getImage() != null) {
+                InputImage image = InputImage.fromMediaImage(imageProxy.getImage(), imageProxy.getImageInfo().getRotationDegrees());
+
+                objectDetector.process(image)
+                        .addOnSuccessListener(detectedObjects -> {
+                            StringBuilder resultText = new StringBuilder();
+
+                            for (DetectedObject obj : detectedObjects) {
+                                List<DetectedObject.Label> labels = obj.getLabels();
+                                if (!labels.isEmpty()) {
+                                    for (DetectedObject.Label label : labels) {
+                                        resultText.append("Detected: ").append(label.getText()).append("\n");
+                                    }
+                                } else {
+                                    resultText.append("Detected an object (unlabeled).\n");
+                                }
+                            }
+
+                            report(resultText.toString().trim());
+                            imageProxy.close();
+                        })
+                        .addOnFailureListener(e -> {
+                            report("Detection failed.");
+                            e.printStackTrace();
+                            imageProxy.close();
+                        });
+            } else {
+                imageProxy.close();
+            }
+        }
+
+        // Detection results are delivered on the main thread.
+        private void report(String text) {
+            if (screen != null) screen.accept(text);
+        }
+    }
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -57,19 +133,18 @@ public class ObjectRecognitionActivity extends AppCompatActivity {
         previewView = findViewById(R.id.previewView);
         objectTextView = findViewById(R.id.objectTextView);
 
+        state = ScreenViewModel.of(this, State.class);
+        textSpeakerHelper = state.getSpeech();
+        state.bind(resources, this::updateText);
+
         setupGestureDetector();
-        setupObjectDetector();
 
         if (hasCameraPermission()) {
-            startCamera(CameraSelector.LENS_FACING_BACK);
+            startCamera(state.lensFacing);
         } else {
             requestCameraPermission();
         }
 
-        cameraExecutor = Executors.newSingleThreadExecutor();
-
-        textSpeakerHelper = new TextSpeakerHelper(this);
-
         vibrator = (Vibrator) getSystemService(VIBRATOR_SERVICE);
 
     }
@@ -99,16 +174,6 @@ public class ObjectRecognitionActivity extends AppCompatActivity {
         });
     }
 
-    private void setupObjectDetector() {
-        ObjectDetectorOptions options = new ObjectDetectorOptions.Builder()
-                .setDetectorMode(ObjectDetectorOptions.STREAM_MODE)
-                .enableMultipleObjects()
-                .enableClassification()
-                .build();
-
-        objectDetector = ObjectDetection.getClient(options);
-    }
-
     private boolean hasCameraPermission() {
         return ContextCompat.checkSelfPermission(this, Manifest.permission.CAMERA) == PackageManager.PERMISSION_GRANTED;
     }
@@ -126,20 +191,16 @@ public class ObjectRecognitionActivity extends AppCompatActivity {
             try {
                 ProcessCameraProvider cameraProvider = cameraProviderFuture.get();
 
-                currentCameraSelector = new CameraSelector.Builder()
+                state.lensFacing = lensFacing;
+                CameraSelector cameraSelector = new CameraSelector.Builder()
                         .requireLensFacing(lensFacing)
                         .build();
 
                 androidx.camera.core.Preview preview = new androidx.camera.core.Preview.Builder().build();
                 preview.setSurfaceProvider(previewView.getSurfaceProvider());
 
-                ImageAnalysis imageAnalysis = new ImageAnalysis.Builder()
-                        .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
-                        .build();
-                imageAnalysis.setAnalyzer(cameraExecutor, this::analyzeImage);
-
                 cameraProvider.unbindAll();
-                cameraProvider.bindToLifecycle(this, currentCameraSelector, preview, imageAnalysis);
+                cameraProvider.bindToLifecycle(this, cameraSelector, preview, state.imageAnalysis);
 
             } catch (ExecutionException | InterruptedException e) {
                 e.printStackTrace();
@@ -148,50 +209,16 @@ public class ObjectRecognitionActivity extends AppCompatActivity {
     }
 
     private void switchCamera() {
-        int newLensFacing = currentCameraSelector.getLensFacing() == CameraSelector.LENS_FACING_BACK
+        int newLensFacing = state.lensFacing == CameraSelector.LENS_FACING_BACK
                 ? CameraSelector.LENS_FACING_FRONT
                 : CameraSelector.LENS_FACING_BACK;
 
         startCamera(newLensFacing);
     }
 
-    private void analyzeImage(ImageProxy imageProxy) {
-        if (imageProxy.getImage() != null) {
-            InputImage image = InputImage.fromMediaImage(imageProxy.getImage(), imageProxy.getImageInfo().getRotationDegrees());
-
-            objectDetector.process(image)
-                    .addOnSuccessListener(detectedObjects -> {
-                        StringBuilder resultText = new StringBuilder();
-
-                        for (DetectedObject obj : detectedObjects) {
-                            List<DetectedObject.Label> labels = obj.getLabels();
-                            if (!labels.isEmpty()) {
-                                for (DetectedObject.Label label : labels) {
-                                    resultText.append("Detected: ").append(label.getText()).append("\n");
-                                }
-                            } else {
-                                resultText.append("Detected an object (unlabeled).\n");
-                            }
-                        }
-
-                        updateText(resultText.toString().trim());
-                        imageProxy.close();
-                    })
-                    .addOnFailureListener(e -> {
-                        updateText("Detection failed.");
-                        e.printStackTrace();
-                        imageProxy.close();
-                    });
-        } else {
-            imageProxy.close();
-        }
-    }
-
     private void updateText(String text) {
-        runOnUiThread(() -> {
-            objectTextView.setText(text);
-            textSpeakerHelper.speak(text);
-        });
+        objectTextView.setText(text);
+        textSpeakerHelper.speak(text);
     }
 
     private void closeCameraAndReturnHome() {
@@ -222,20 +249,9 @@ public class ObjectRecognitionActivity extends AppCompatActivity {
     @Override
     public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions, @NonNull int[] grantResults) {
         if (requestCode == CAMERA_PERMISSION_CODE && grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
-            startCamera(CameraSelector.LENS_FACING_BACK);
+            startCamera(state.lensFacing);
         } else {
             Toast.makeText(this, "Camera permission denied", Toast.LENGTH_SHORT).show();
         }
     }
-
-    @Override
-    protected void onDestroy() {
-        super.onDestroy();
-        if (cameraExecutor != null) {
-            cameraExecutor.shutdown();
-        }
-        if (textSpeakerHelper != null) {
-            textSpeakerHelper.shutdown();
-        }
-    }
 }
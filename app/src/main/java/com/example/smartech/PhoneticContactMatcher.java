@@ -0,0 +1,311 @@
+package com.example.smartech;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Fuzzy matcher for spoken contact names that tolerates the way speech recognizers misspell
+ * them ("Katherine" for "Kathryn", "Jon" for "John").
+ *
+ * Each name token is reduced to a Metaphone-style phonetic key. Keys are indexed together with
+ * every single-character deletion of themselves, so a query finds all keys within a small edit
+ * distance with a handful of hash lookups rather than a scan. Candidates are then scored on both
+ * phonetic and spelling similarity and returned best first.
+ */
+public class PhoneticContactMatcher {
+
+    /** Candidates scoring below this are not returned. */
+    public static final double MIN_SCORE = 0.5;
+    private static final int MAX_KEY_LENGTH = 6;
+    private static final double PHONETIC_WEIGHT = 0.6;
+
+    public static class Match {
+        public final ContactIndex.Contact contact;
+        public final double score;
+
+        Match(ContactIndex.Contact contact, double score) {
+            this.contact = contact;
+            this.score = score;
+        }
+    }
+
+    private final List<ContactIndex.Contact> contacts;
+    private final String[][] tokens;
+    private final String[][] keys;
+    private final Map<String, List<Integer>> contactsByKey = new HashMap<>();
+    private final Map<String, List<String>> keysByDeletion = new HashMap<>();
+
+    public PhoneticContactMatcher(List<ContactIndex.Contact> contacts) {
+        this.contacts = new ArrayList<>(contacts);
+        tokens = new String[contacts.size()][];
+        keys = new String[contacts.size()][];
+
+        for (int i = 0; i < this.contacts.size(); i++) {
+            tokens[i] = tokenize(this.contacts.get(i).getFullName());
+            keys[i] = new String[tokens[i].length];
+            for (int t = 0; t < tokens[i].length; t++) {
+                String key = encode(tokens[i][t]);
+                keys[i][t] = key;
+                List<Integer> posting = contactsByKey.get(key);
+                if (posting == null) {
+                    posting = new ArrayList<>(1);
+                    contactsByKey.put(key, posting);
+                    indexDeletions(key);
+                }
+                if (posting.isEmpty() || posting.get(posting.size() - 1) != i) {
+                    posting.add(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns up to {@code limit} contacts that sound like {@code spokenName}, best first.
+     */
+    public List<Match> match(String spokenName, int limit) {
+        String[] queryTokens = tokenize(spokenName);
+        if (queryTokens.length == 0) return Collections.emptyList();
+
+        // Count how many query tokens each contact sounds close to; only the contacts hit by the
+        // most tokens are worth scoring.
+        String[] queryKeys = new String[queryTokens.length];
+        Map<Integer, Integer> hits = new HashMap<>();
+        int mostHits = 0;
+        for (int q = 0; q < queryTokens.length; q++) {
+            queryKeys[q] = encode(queryTokens[q]);
+            Set<Integer> tokenCandidates = new HashSet<>();
+            for (String key : similarKeys(queryKeys[q])) {
+                tokenCandidates.addAll(contactsByKey.get(key));
+            }
+            for (int candidate : tokenCandidates) {
+                Integer previous = hits.get(candidate);
+                int count = previous == null ? 1 : previous + 1;
+                hits.put(candidate, count);
+                mostHits = Math.max(mostHits, count);
+            }
+        }
+
+        List<Match> matches = new ArrayList<>();
+        for (Map.Entry<Integer, Integer> entry : hits.entrySet()) {
+            if (entry.getValue() < mostHits) continue;
+            int candidate = entry.getKey();
+            double score = score(queryTokens, queryKeys, candidate);
+            if (score >= MIN_SCORE) {
+                matches.add(new Match(contacts.get(candidate), score));
+            }
+        }
+        Collections.sort(matches, (a, b) -> Double.compare(b.score, a.score));
+        return matches.size() > limit ? new ArrayList<>(matches.subList(0, limit)) : matches;
+    }
+
+    private double score(String[] queryTokens, String[] queryKeys, int candidate) {
+        double total = 0;
+        for (int q = 0; q < queryTokens.length; q++) {
+            double best = 0;
+            for (int t = 0; t < tokens[candidate].length; t++) {
+                double phonetic = similarity(queryKeys[q], keys[candidate][t]);
+                double spelling = similarity(queryTokens[q], tokens[candidate][t]);
+                best = Math.max(best, PHONETIC_WEIGHT * phonetic + (1 - PHONETIC_WEIGHT) * spelling);
+            }
+            total += best;
+        }
+        return total / queryTokens.length;
+    }
+
+    private void indexDeletions(String key) {
+        addDeletion(key, key);
+        for (int i = 0; i < key.length(); i++) {
+            addDeletion(key.substring(0, i) + key.substring(i + 1), key);
+        }
+    }
+
+    private void addDeletion(String deletion, String key) {
+        List<String> list = keysByDeletion.get(deletion);
+        if (list == null) {
+            list = new ArrayList<>(1);
+            keysByDeletion.put(deletion, list);
+        }
+        if (!list.contains(key)) list.add(key);
+    }
+
+    private Set<String> similarKeys(String key) {
+        Set<String> similar = new HashSet<>();
+        addAll(similar, keysByDeletion.get(key));
+        for (int i = 0; i < key.length(); i++) {
+            addAll(similar, keysByDeletion.get(key.substring(0, i) + key.substring(i + 1)));
+        }
+        return similar;
+    }
+
+    private static void addAll(Set<String> target, List<String> source) {
+        if (source != null) target.addAll(source);
+    }
+
+    static String[] tokenize(String name) {
+        String normalized = ContactIndex.normalize(name);
+        if (normalized.startsWith("my ")) normalized = normalized.substring(3);
+        return normalized.isEmpty() ? new String[0] : normalized.split(" ");
+    }
+
+    static double similarity(String a, String b) {
+        int longest = Math.max(a.length(), b.length());
+        return longest == 0 ? 1 : 1 - (double) editDistance(a, b) / longest;
+    }
+
+    /**
+     * Levenshtein distance with two rolling rows.
+     */
+    static int editDistance(String a, String b) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) previous[j] = j;
+
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+
+    /**
+     * Metaphone-style phonetic key of a lower-case word: consonant sounds only, with the usual
+     * English spelling variants folded together ("ph" and "f", "ck" and "k", silent "gh", ...).
+     */
+    static String encode(String word) {
+        String w = word.toLowerCase(Locale.ROOT).replaceAll("[^a-z]", "");
+        if (w.isEmpty()) return word;
+
+        if (w.startsWith("kn") || w.startsWith("gn") || w.startsWith("pn") || w.startsWith("wr")) {
+            w = w.substring(1);
+        } else if (w.startsWith("x")) {
+            w = "s" + w.substring(1);
+        } else if (w.startsWith("wh")) {
+            w = "w" + w.substring(2);
+        }
+
+        StringBuilder key = new StringBuilder();
+        int length = w.length();
+        for (int i = 0; i < length && key.length() < MAX_KEY_LENGTH; i++) {
+            char c = w.charAt(i);
+            if (c != 'c' && i > 0 && c == w.charAt(i - 1)) continue;
+
+            char next = i + 1 < length ? w.charAt(i + 1) : 0;
+            char afterNext = i + 2 < length ? w.charAt(i + 2) : 0;
+            char previous = i > 0 ? w.charAt(i - 1) : 0;
+
+            switch (c) {
+                case 'a': case 'e': case 'i': case 'o': case 'u':
+                    if (i == 0) key.append('A');
+                    break;
+                case 'b':
+                    if (!(previous == 'm' && i == length - 1)) key.append('B');
+                    break;
+                case 'c':
+                    if (next == 'i' && afterNext == 'a' || next == 'h') {
+                        key.append(previous == 's' ? 'K' : 'X');
+                        if (next == 'h') i++;
+                    } else if (next == 'i' || next == 'e' || next == 'y') {
+                        if (previous != 's') key.append('S');
+                    } else if (next == 'k') {
+                        // "ck" is a single k sound.
+                    } else {
+                        key.append('K');
+                    }
+                    break;
+                case 'd':
+                    if (next == 'g' && isFrontVowel(afterNext)) {
+                        key.append('J');
+                        i++;
+                    } else {
+                        key.append('T');
+                    }
+                    break;
+                case 'g':
+                    if (next == 'h' && !(i + 2 < length && isVowel(afterNext))) {
+                        i++;
+                    } else if (next == 'n' && (i + 2 == length || w.startsWith("ed", i + 2) && i + 4 == length)) {
+                        // Silent in "gn" and "gned" endings.
+                    } else if (isFrontVowel(next)) {
+                        key.append('J');
+                    } else {
+                        key.append('K');
+                    }
+                    break;
+                case 'h':
+                    if (isVowel(next) && "cgpst".indexOf(previous) < 0 || i == 0) key.append('H');
+                    break;
+                case 'k':
+                    if (previous != 'c') key.append('K');
+                    break;
+                case 'p':
+                    if (next == 'h') {
+                        key.append('F');
+                        i++;
+                    } else {
+                        key.append('P');
+                    }
+                    break;
+                case 'q':
+                    key.append('K');
+                    break;
+                case 's':
+                    if (next == 'h' || next == 'i' && (afterNext == 'o' || afterNext == 'a')) {
+                        key.append('X');
+                        if (next == 'h') i++;
+                    } else {
+                        key.append('S');
+                    }
+                    break;
+                case 't':
+                    if (next == 'i' && (afterNext == 'o' || afterNext == 'a')) {
+                        key.append('X');
+                    } else if (next == 'h') {
+                        key.append('0');
+                        i++;
+                    } else if (!(next == 'c' && afterNext == 'h')) {
+                        key.append('T');
+                    }
+                    break;
+                case 'v':
+                    key.append('F');
+                    break;
+                case 'w':
+                case 'y':
+                    if (isVowel(next)) key.append(Character.toUpperCase(c));
+                    break;
+                case 'x':
+                    key.append("KS");
+                    break;
+                case 'z':
+                    key.append('S');
+                    break;
+                default:
+                    key.append(Character.toUpperCase(c));
+                    break;
+            }
+        }
+        if (key.length() > MAX_KEY_LENGTH) key.setLength(MAX_KEY_LENGTH);
+        // Words made only of silent letters keep their spelling so they still match exactly.
+        return key.length() > 0 ? key.toString() : w;
+    }
+
+    private static boolean isVowel(char c) {
+        return c == 'a' || c == 'e' || c == 'i' || c == 'o' || c == 'u';
+    }
+
+    private static boolean isFrontVowel(char c) {
+        return c == 'e' || c == 'i' || c == 'y';
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.smartech;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Splits a planner utterance into individual add and remove operations, so that
+ * "add task call mom and add task buy milk and remove task 2" can be applied in one go.
+ *
+ * Clauses are only split in front of another "add task" or "remove task", which keeps task
+ * text such as "buy bread and butter" intact. An add ending in "tomorrow" is due tomorrow,
+ * everything else is due today. Search words for finding or removing a task by name leave out
+ * articles and other {@link #isStopWord stop words}, which no task title needs to contain.
+ */
+public final class PlannerCommandParser {
+
+    public enum Type { ADD, REMOVE }
+
+    public static class Operation {
+        public final Type type;
+        public final String text;
+        /** 1-based task number for removals, or 0 when it could not be understood. */
+        public final int number;
+        /** Days from today the added task is due. */
+        public final int dueInDays;
+
+        Operation(Type type, String text, int number, int dueInDays) {
+            this.type = type;
+            this.text = text;
+            this.number = number;
+            this.dueInDays = dueInDays;
+        }
+    }
+
+    private static final Pattern CLAUSE_SEPARATOR =
+            Pattern.compile("(?i)\\s*(?:,|\\band then\\b|\\bthen\\b|\\band\\b)\\s*(?=(?:add|remove) task\\b)");
+    private static final Pattern ADD_PREFIX = Pattern.compile("(?i)^add task");
+    private static final Pattern REMOVE_PREFIX = Pattern.compile("(?i)^remove task");
+    private static final Pattern DUE_TOMORROW = Pattern.compile("(?i)\\s*\\b(?:for |by )?tomorrow$");
+    private static final Pattern DUE_TODAY = Pattern.compile("(?i)\\s*\\b(?:for |by )?today$");
+
+    private static final Pattern FIND_TASK =
+            Pattern.compile("(?i)^(?:find|search(?: for)?|look for) (?:the |a |my )?tasks?(?: about| for| with)? (.+)$");
+    private static final Pattern REMOVE_NAMED_TASK =
+            Pattern.compile("(?i)^(?:remove|delete) (?:the |my )(.+?) task$");
+
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+            "a", "an", "the", "my", "our", "this", "that", "some", "any",
+            "of", "to", "for", "about", "with", "on", "in", "at", "by", "from", "and", "or"));
+
+    private static final String[] NUMBER_WORDS = {
+            "zero", "one", "two", "three", "four", "five", "six", "seven", "eight", "nine", "ten"
+    };
+
+    private PlannerCommandParser() {}
+
+    /**
+     * Returns true when the utterance starts with an add or remove clause.
+     */
+    public static boolean isTaskEdit(String command) {
+        String trimmed = command.trim();
+        return ADD_PREFIX.matcher(trimmed).find() || REMOVE_PREFIX.matcher(trimmed).find();
+    }
+
+    public static List<Operation> parse(String command) {
+        List<Operation> operations = new ArrayList<>();
+        for (String clause : CLAUSE_SEPARATOR.split(command.trim())) {
+            String trimmed = clause.trim();
+            if (ADD_PREFIX.matcher(trimmed).find()) {
+                String text = ADD_PREFIX.matcher(trimmed).replaceFirst("").trim();
+                int dueInDays = 0;
+                if (DUE_TOMORROW.matcher(text).find()) {
+                    text = DUE_TOMORROW.matcher(text).replaceFirst("").trim();
+                    dueInDays = 1;
+                } else if (DUE_TODAY.matcher(text).find()) {
+                    text = DUE_TODAY.matcher(text).replaceFirst("").trim();
+                }
+                operations.add(new Operation(Type.ADD, text, 0, dueInDays));
+            } else if (REMOVE_PREFIX.matcher(trimmed).find()) {
+                String numberStr = REMOVE_PREFIX.matcher(trimmed).replaceFirst("").trim();
+                operations.add(new Operation(Type.REMOVE, null, parseNumber(numberStr), 0));
+            }
+        }
+        return operations;
+    }
+
+    /**
+     * Returns the search words of "find task pharmacy", or null for other utterances and ones
+     * made of stop words only.
+     */
+    public static String parseFindQuery(String command) {
+        Matcher matcher = FIND_TASK.matcher(command.trim());
+        return matcher.matches() ? searchWords(matcher.group(1)) : null;
+    }
+
+    /**
+     * Returns the search words of "remove the milk task", or null for other utterances and ones
+     * made of stop words only.
+     */
+    public static String parseRemoveByName(String command) {
+        Matcher matcher = REMOVE_NAMED_TASK.matcher(command.trim());
+        return matcher.matches() ? searchWords(matcher.group(1)) : null;
+    }
+
+    /** Words such as "the" or "about" that say nothing about which task is meant. */
+    static boolean isStopWord(String word) {
+        return STOP_WORDS.contains(word.toLowerCase(Locale.US));
+    }
+
+    private static String searchWords(String text) {
+        StringBuilder words = new StringBuilder();
+        for (String word : text.trim().split("\\s+")) {
+            if (word.isEmpty() || isStopWord(word)) continue;
+            if (words.length() > 0) words.append(' ');
+            words.append(word);
+        }
+        return words.length() > 0 ? words.toString() : null;
+    }
+
+    static int parseNumber(String value) {
+        String normalized = value.toLowerCase(Locale.US).replaceFirst("^number\\s+", "").trim();
+        try {
+            return Math.max(Integer.parseInt(normalized), 0);
+        } catch (NumberFormatException e) {
+            for (int i = 1; i < NUMBER_WORDS.length; i++) {
+                if (NUMBER_WORDS[i].equals(normalized)) return i;
+            }
+            return 0;
+        }
+    }
+}
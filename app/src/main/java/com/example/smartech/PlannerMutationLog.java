@@ -0,0 +1,102 @@
+package com.example.smartech;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Ordered log of planner mutations that have been applied locally but not yet written to
+ * Firestore.
+ *
+ * Appending coalesces redundant operations: removing a task whose add has not been sent yet
+ * drops both entries, and repeated removes of the same task collapse into one. Entries handed
+ * out by {@link #beginFlush(int)} are in flight and are never coalesced, so a batch that is
+ * already on the wire cannot be contradicted by a later edit of the log.
+ */
+public class PlannerMutationLog {
+
+    public enum Type { ADD, REMOVE }
+
+    public static class Mutation {
+        public final Type type;
+        public final String taskId;
+        public final String text;
+        public final long createdAt;
+        public final long dueAt;
+
+        public Mutation(Type type, String taskId, String text) {
+            this(type, taskId, text, 0, 0);
+        }
+
+        public Mutation(Type type, String taskId, String text, long createdAt, long dueAt) {
+            this.type = type;
+            this.taskId = taskId;
+            this.text = text;
+            this.createdAt = createdAt;
+            this.dueAt = dueAt;
+        }
+    }
+
+    private final List<Mutation> pending = new ArrayList<>();
+    private int inFlight = 0;
+
+    public synchronized void append(Mutation mutation) {
+        for (int i = pending.size() - 1; i >= inFlight; i--) {
+            Mutation existing = pending.get(i);
+            if (!existing.taskId.equals(mutation.taskId)) continue;
+
+            if (existing.type == Type.ADD && mutation.type == Type.REMOVE) {
+                pending.remove(i);
+                return;
+            }
+            if (existing.type == mutation.type) {
+                pending.set(i, mutation);
+                return;
+            }
+        }
+        pending.add(mutation);
+    }
+
+    /**
+     * Marks up to {@code max} of the oldest mutations as in flight and returns them. Returns an
+     * empty list while a previous flush is still outstanding.
+     */
+    public synchronized List<Mutation> beginFlush(int max) {
+        if (inFlight > 0) return Collections.emptyList();
+        inFlight = Math.min(max, pending.size());
+        return new ArrayList<>(pending.subList(0, inFlight));
+    }
+
+    /**
+     * Drops the in-flight mutations after they were committed.
+     */
+    public synchronized void completeFlush() {
+        pending.subList(0, inFlight).clear();
+        inFlight = 0;
+    }
+
+    /**
+     * Returns the in-flight mutations to the log so the next flush retries them.
+     */
+    public synchronized void abortFlush() {
+        inFlight = 0;
+    }
+
+    public synchronized boolean isFlushing() {
+        return inFlight > 0;
+    }
+
+    public synchronized boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    public synchronized List<Mutation> getPending() {
+        return new ArrayList<>(pending);
+    }
+
+    public synchronized void replaceAll(List<Mutation> mutations) {
+        pending.clear();
+        pending.addAll(mutations);
+        inFlight = 0;
+    }
+}
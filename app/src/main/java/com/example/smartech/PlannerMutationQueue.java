@@ -0,0 +1,287 @@
+package com.example.smartech;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.WriteBatch;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Durable write-behind queue for planner mutations.
+ *
+ * Adds and removes are recorded in a {@link PlannerMutationLog} and applied to the local task
+ * list right away. The log is committed to SharedPreferences in order on a background thread,
+ * waiting for the disk each time, so a mutation outlives the process once its commit has run.
+ * It is flushed to Firestore in {@link WriteBatch} groups whenever a network is available, and
+ * is replayed when the queue is started again after the process was killed.
+ */
+public class PlannerMutationQueue {
+
+    private static final String TAG = "PlannerMutationQueue";
+    private static final String PREFS_NAME = "planner_mutations";
+    private static final String KEY_LOG = "log_";
+    private static final String KEY_TIMESTAMPS_BACKFILLED = "timestamps_backfilled_";
+    private static final int MAX_BATCH_SIZE = 500;
+    private static final long FLUSH_DELAY_MS = 500;
+    private static final long MIN_RETRY_DELAY_MS = 2000;
+    private static final long MAX_RETRY_DELAY_MS = 60000;
+
+    private static PlannerMutationQueue instance;
+
+    private final SharedPreferences prefs;
+    private final FirebaseFirestore db;
+    private final ConnectivityManager connectivityManager;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final PlannerMutationLog log = new PlannerMutationLog();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Runnable flushRunnable = this::flush;
+    private final Executor diskExecutor = Executors.newSingleThreadExecutor();
+
+    private String userId;
+    private CollectionReference tasksRef;
+    private boolean online = false;
+    private long retryDelayMs = MIN_RETRY_DELAY_MS;
+
+    public interface Listener {
+        void onQueueChanged();
+    }
+
+    public static synchronized PlannerMutationQueue getInstance(Context context) {
+        if (instance == null) {
+            instance = new PlannerMutationQueue(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private PlannerMutationQueue(Context context) {
+        prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        db = FirebaseFirestore.getInstance();
+        connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (connectivityManager != null) {
+            connectivityManager.registerDefaultNetworkCallback(new ConnectivityManager.NetworkCallback() {
+                @Override
+                public void onAvailable(Network network) {
+                    handler.post(() -> {
+                        online = true;
+                        retryDelayMs = MIN_RETRY_DELAY_MS;
+                        flush();
+                    });
+                }
+
+                @Override
+                public void onLost(Network network) {
+                    handler.post(() -> online = false);
+                }
+            });
+        }
+    }
+
+    /**
+     * Binds the queue to a user, replaying any mutations left over from a previous process.
+     */
+    public void start(String uid) {
+        if (uid.equals(userId)) return;
+
+        userId = uid;
+        tasksRef = db.collection("daily_plans").document(uid).collection("tasks");
+        log.replaceAll(loadFromDisk(uid));
+        notifyListeners();
+        scheduleFlush(0);
+        backfillTimestamps(uid);
+    }
+
+    /**
+     * Tasks written before due dates existed have no {@code createdAt}/{@code dueAt} and would
+     * never match the scoped planner queries. They are read once per user and made due today,
+     * and are listed as left over from that day until they are removed.
+     */
+    private void backfillTimestamps(String uid) {
+        if (prefs.getBoolean(KEY_TIMESTAMPS_BACKFILLED + uid, false)) return;
+
+        FirestoreMeter.get(tasksRef).addOnSuccessListener(snapshot -> {
+            long now = System.currentTimeMillis();
+            Timestamp createdAt = new Timestamp(new Date(now));
+            Timestamp dueAt = new Timestamp(new Date(TaskStore.startOfDay(now, 0)));
+
+            WriteBatch batch = db.batch();
+            int updates = 0;
+            for (DocumentSnapshot document : snapshot.getDocuments()) {
+                if (document.contains("dueAt")) continue;
+                Map<String, Object> fields = new HashMap<>();
+                fields.put("createdAt", createdAt);
+                fields.put("dueAt", dueAt);
+                FirestoreMeter.update(batch, document.getReference(), fields);
+                if (++updates == MAX_BATCH_SIZE) {
+                    batch.commit();
+                    batch = db.batch();
+                    updates = 0;
+                }
+            }
+            batch.commit().addOnSuccessListener(aVoid ->
+                    prefs.edit().putBoolean(KEY_TIMESTAMPS_BACKFILLED + uid, true).apply());
+        }).addOnFailureListener(e -> Log.w(TAG, "Could not backfill task timestamps", e));
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public CollectionReference getTasksRef() {
+        return tasksRef;
+    }
+
+    public String newTaskId() {
+        return tasksRef.document().getId();
+    }
+
+    /**
+     * Queues a group of mutations. The group is persisted and handed to the same flush, so it
+     * reaches Firestore in a single {@link WriteBatch}.
+     */
+    public void enqueueAll(List<PlannerMutationLog.Mutation> mutations) {
+        if (mutations.isEmpty()) return;
+        for (PlannerMutationLog.Mutation mutation : mutations) {
+            log.append(mutation);
+        }
+        saveToDisk();
+        notifyListeners();
+        scheduleFlush(FLUSH_DELAY_MS);
+    }
+
+    public List<PlannerMutationLog.Mutation> getPending() {
+        return log.getPending();
+    }
+
+    private void scheduleFlush(long delayMs) {
+        handler.removeCallbacks(flushRunnable);
+        handler.postDelayed(flushRunnable, delayMs);
+    }
+
+    private void flush() {
+        if (tasksRef == null || log.isFlushing() || log.isEmpty()) return;
+        if (!online && connectivityManager != null && connectivityManager.getActiveNetwork() == null) return;
+
+        String uid = userId;
+        List<PlannerMutationLog.Mutation> mutations = log.beginFlush(MAX_BATCH_SIZE);
+        WriteBatch batch = db.batch();
+        for (PlannerMutationLog.Mutation mutation : mutations) {
+            if (mutation.type == PlannerMutationLog.Type.ADD) {
+                Map<String, Object> taskMap = new HashMap<>();
+                taskMap.put("task", mutation.text);
+                taskMap.put("createdAt", new Timestamp(new Date(mutation.createdAt)));
+                taskMap.put("dueAt", new Timestamp(new Date(mutation.dueAt)));
+                FirestoreMeter.set(batch, tasksRef.document(mutation.taskId), taskMap);
+            } else {
+                FirestoreMeter.delete(batch, tasksRef.document(mutation.taskId));
+            }
+        }
+
+        batch.commit()
+                .addOnSuccessListener(aVoid -> {
+                    if (!uid.equals(userId)) return;
+                    log.completeFlush();
+                    retryDelayMs = MIN_RETRY_DELAY_MS;
+                    saveToDisk();
+                    notifyListeners();
+                    if (!log.isEmpty()) {
+                        scheduleFlush(0);
+                    }
+                })
+                .addOnFailureListener(e -> {
+                    if (!uid.equals(userId)) return;
+                    Log.w(TAG, "Planner batch failed, retrying in " + retryDelayMs + " ms", e);
+                    log.abortFlush();
+                    scheduleFlush(retryDelayMs);
+                    retryDelayMs = Math.min(retryDelayMs * 2, MAX_RETRY_DELAY_MS);
+                });
+    }
+
+    private void notifyListeners() {
+        for (Listener listener : listeners) {
+            listener.onQueueChanged();
+        }
+    }
+
+    private List<PlannerMutationLog.Mutation> loadFromDisk(String uid) {
+        List<PlannerMutationLog.Mutation> mutations = new ArrayList<>();
+        String json = prefs.getString(KEY_LOG + uid, null);
+        if (json == null) return mutations;
+
+        try {
+            JSONArray array = new JSONArray(json);
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject item = array.getJSONObject(i);
+                mutations.add(new PlannerMutationLog.Mutation(
+                        PlannerMutationLog.Type.valueOf(item.getString("op")),
+                        item.getString("id"),
+                        item.optString("text", null),
+                        item.optLong("createdAt", 0),
+                        item.optLong("dueAt", 0)));
+            }
+        } catch (JSONException | IllegalArgumentException e) {
+            Log.w(TAG, "Discarding unreadable planner mutation log", e);
+            mutations.clear();
+        }
+        return mutations;
+    }
+
+    /** Snapshots the log here and commits it on {@link #diskExecutor}, in call order. */
+    private void saveToDisk() {
+        String key = KEY_LOG + userId;
+        List<PlannerMutationLog.Mutation> mutations = log.getPending();
+        if (mutations.isEmpty()) {
+            diskExecutor.execute(() -> commit(prefs.edit().remove(key)));
+            return;
+        }
+
+        try {
+            JSONArray array = new JSONArray();
+            for (PlannerMutationLog.Mutation mutation : mutations) {
+                JSONObject item = new JSONObject();
+                item.put("op", mutation.type.name());
+                item.put("id", mutation.taskId);
+                item.putOpt("text", mutation.text);
+                if (mutation.type == PlannerMutationLog.Type.ADD) {
+                    item.put("createdAt", mutation.createdAt);
+                    item.put("dueAt", mutation.dueAt);
+                }
+                array.put(item);
+            }
+            String json = array.toString();
+            diskExecutor.execute(() -> commit(prefs.edit().putString(key, json)));
+        } catch (JSONException e) {
+            Log.w(TAG, "Could not persist planner mutation log", e);
+        }
+    }
+
+    private static void commit(SharedPreferences.Editor editor) {
+        if (!editor.commit()) {
+            Log.w(TAG, "Could not write planner mutation log");
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.smartech;
+
+/**
+ * Energy model and daily budget for background emergency monitoring.
+ *
+ * Charge is estimated from the time spent at each sampling rate: the sensors' own current
+ * (as reported by {@code Sensor.getPower()}) plus a fixed cost per application processor wakeup
+ * to drain the hardware FIFO. The projection scales what was used so far today to a full day,
+ * once there is at least an hour to go on; the count starts over every 24 hours.
+ */
+public class PowerBudget {
+
+    /** About 1% of a typical 4000 mAh phone battery. */
+    public static final double DEFAULT_DAILY_BUDGET_MAH = 40;
+    // Used when a sensor does not report its power draw.
+    public static final double TYPICAL_ACCELEROMETER_MA = 0.15;
+    public static final double TYPICAL_GYROSCOPE_MA = 1.3;
+
+    // Charge the application processor spends waking up to take one sensor batch, in mAs.
+    static final double WAKEUP_COST_MAS = 0.4;
+    // Per-sample processing in the detectors, in mAs.
+    static final double SAMPLE_COST_MAS = 0.00002;
+    private static final double SECONDS_PER_DAY = 86400;
+    private static final double MIN_PROJECTION_SECONDS = 3600;
+
+    private final double dailyBudgetMah;
+    private final double accelerometerMa;
+    private final double gyroscopeMa;
+    private double usedMas;
+    private double elapsedSeconds;
+
+    /**
+     * @param dailyBudgetMah how much charge monitoring may use in 24 hours
+     * @param accelerometerMa accelerometer draw while on, from {@code Sensor.getPower()}
+     * @param gyroscopeMa gyroscope draw while on, from {@code Sensor.getPower()}
+     */
+    public PowerBudget(double dailyBudgetMah, double accelerometerMa, double gyroscopeMa) {
+        this.dailyBudgetMah = dailyBudgetMah;
+        this.accelerometerMa = accelerometerMa;
+        this.gyroscopeMa = gyroscopeMa;
+    }
+
+    public void charge(AdaptiveSamplingPolicy.Rate rate, double seconds) {
+        if (seconds <= 0) return;
+        if (elapsedSeconds >= SECONDS_PER_DAY) {
+            elapsedSeconds = 0;
+            usedMas = 0;
+        }
+        elapsedSeconds += seconds;
+        usedMas += seconds * currentMa(rate);
+    }
+
+    /**
+     * Average current drawn while monitoring at {@code rate}, in mA.
+     */
+    public double currentMa(AdaptiveSamplingPolicy.Rate rate) {
+        double sensors = accelerometerMa + (rate.gyroscope ? gyroscopeMa : 0);
+        double samples = rate.hz() * (rate.gyroscope ? 2 : 1);
+        return sensors + rate.wakeupsPerSecond() * WAKEUP_COST_MAS + samples * SAMPLE_COST_MAS;
+    }
+
+    public double getUsedMah() {
+        return usedMas / 3600;
+    }
+
+    public double getDailyBudgetMah() {
+        return dailyBudgetMah;
+    }
+
+    /**
+     * Charge per day if monitoring keeps going the way it has so far, in mAh.
+     */
+    public double projectedDailyMah() {
+        if (elapsedSeconds <= 0) return 0;
+        return getUsedMah() * SECONDS_PER_DAY / elapsedSeconds;
+    }
+
+    public boolean isOverBudget() {
+        return elapsedSeconds >= MIN_PROJECTION_SECONDS && projectedDailyMah() > dailyBudgetMah;
+    }
+}
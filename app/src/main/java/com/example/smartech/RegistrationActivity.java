@@ -21,16 +21,27 @@ import androidx.core.graphics.Insets;
 import androidx.core.view.ViewCompat;
 import androidx.core.view.WindowInsetsCompat;
 
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.auth.AuthResult;
 import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseAuthUserCollisionException;
+import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.Query;
-import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.FirebaseFirestoreException;
 
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 public class RegistrationActivity extends AppCompatActivity {
 
+    // Usernames double as Firestore document ids, which may not contain '/' or be '.' or '..'.
+    private static final Pattern USERNAME_PATTERN = Pattern.compile("[a-z0-9_.-]{1,30}");
+
     private EditText usernameEditText, firstNameEditText, lastNameEditText, emailEditText, passwordEditText, confirmPasswordEditText;
     private Button registerButton;
     private FirebaseAuth mAuth;
@@ -91,50 +102,73 @@ public class RegistrationActivity extends AppCompatActivity {
         loginTextView.setHighlightColor(Color.TRANSPARENT);
     }
 
+    /**
+     * Usernames are reserved through {@code usernames/{normalizedName}} key documents, so the
+     * availability check is a single document read rather than a query over all users. It runs
+     * in parallel with account creation; email uniqueness is reported by Firebase Auth itself.
+     */
     private void checkIfUserExists(String email, String username) {
-        db.collection("users")
-                .whereEqualTo("email", email)
-                .get()
-                .addOnCompleteListener(task -> {
-                    if (task.isSuccessful() && !task.getResult().isEmpty()) {
-                        emailEditText.setError("Email is already in use.");
-                    } else {
-                        db.collection("users")
-                                .whereEqualTo("username", username)
-                                .get()
-                                .addOnCompleteListener(usernameTask -> {
-                                    if (usernameTask.isSuccessful() && !usernameTask.getResult().isEmpty()) {
-                                        usernameEditText.setError("Username is already taken.");
-                                    } else {
-                                        registerUser(email, username);
-                                    }
-                                });
-                    }
-                });
-    }
-
-    private void registerUser(String email, String username) {
         String password = passwordEditText.getText().toString();
-        String firstName = firstNameEditText.getText().toString().trim();
-        String lastName = lastNameEditText.getText().toString().trim();
-
-        mAuth.createUserWithEmailAndPassword(email, password).addOnCompleteListener(task -> {
-            if (task.isSuccessful()) {
-                String userId = mAuth.getCurrentUser().getUid();
-                saveUserToFirestore(userId, email, username, firstName, lastName);
+        String normalizedName = normalizeUsername(username);
+        registerButton.setEnabled(false);
+
+        Task<DocumentSnapshot> usernameTask = FirestoreMeter.get(db.collection("usernames").document(normalizedName));
+        Task<AuthResult> authTask = mAuth.createUserWithEmailAndPassword(email, password);
+
+        Tasks.whenAllComplete(usernameTask, authTask).addOnCompleteListener(all -> {
+            boolean usernameTaken = usernameTask.isSuccessful() && usernameTask.getResult().exists();
+
+            if (!authTask.isSuccessful()) {
+                registerButton.setEnabled(true);
+                if (usernameTaken) {
+                    usernameEditText.setError("Username is already taken.");
+                }
+                if (authTask.getException() instanceof FirebaseAuthUserCollisionException) {
+                    emailEditText.setError("Email is already in use.");
+                } else {
+                    Toast.makeText(this, "Registration failed: " + authTask.getException().getMessage(), Toast.LENGTH_LONG).show();
+                }
+                return;
+            }
 
-                Toast.makeText(this, "Registered successfully!", Toast.LENGTH_SHORT).show();
-                Intent intent = new Intent(RegistrationActivity.this, EmergencyContactActivity.class);
-                startActivity(intent);
-                finish();
-            } else {
-                Toast.makeText(this, "Registration failed: " + task.getException().getMessage(), Toast.LENGTH_LONG).show();
+            if (usernameTaken) {
+                usernameEditText.setError("Username is already taken.");
+                rollBackAccount();
+                return;
             }
+
+            registerUser(email, username, normalizedName);
         });
     }
 
+    private void registerUser(String email, String username, String normalizedName) {
+        String firstName = firstNameEditText.getText().toString().trim();
+        String lastName = lastNameEditText.getText().toString().trim();
+        String userId = mAuth.getCurrentUser().getUid();
+
+        saveUserToFirestore(userId, email, username, normalizedName, firstName, lastName)
+                .addOnSuccessListener(aVoid -> {
+                    Toast.makeText(this, "Registered successfully!", Toast.LENGTH_SHORT).show();
+                    Intent intent = new Intent(RegistrationActivity.this, EmergencyContactActivity.class);
+                    startActivity(intent);
+                    finish();
+                })
+                .addOnFailureListener(e -> {
+                    if (e instanceof UsernameTakenException) {
+                        usernameEditText.setError("Username is already taken.");
+                    } else {
+                        Toast.makeText(RegistrationActivity.this, "Error saving user: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+                    }
+                    rollBackAccount();
+                });
+    }
 
-    private void saveUserToFirestore(String userId, String email, String username, String firstName, String lastName) {
+    /**
+     * Writes the profile and claims the username in one transaction, so two sign-ups racing for
+     * the same name cannot both succeed.
+     */
+    private Task<Void> saveUserToFirestore(String userId, String email, String username, String normalizedName,
+                                           String firstName, String lastName) {
         Map<String, Object> user = new HashMap<>();
         user.put("userId", userId);
         user.put("username", username);
@@ -142,16 +176,50 @@ public class RegistrationActivity extends AppCompatActivity {
         user.put("lastName", lastName);
         user.put("email", email);
         user.put("firstTimeLogin", true); // <-- NEW FLAG
+        user.put("usernameReserved", true);
 
-        db.collection("users").document(userId).set(user)
-                .addOnSuccessListener(aVoid -> {
-                    // Success handled in registerUser
-                })
-                .addOnFailureListener(e -> {
-                    Toast.makeText(RegistrationActivity.this, "Error saving user: " + e.getMessage(), Toast.LENGTH_SHORT).show();
-                });
+        Map<String, Object> reservation = new HashMap<>();
+        reservation.put("userId", userId);
+
+        DocumentReference usernameRef = db.collection("usernames").document(normalizedName);
+        DocumentReference userRef = db.collection("users").document(userId);
+
+        return FirestoreMeter.runTransaction(db, transaction -> {
+            DocumentSnapshot existing = transaction.get(usernameRef);
+            if (existing.exists() && !userId.equals(existing.getString("userId"))) {
+                throw new UsernameTakenException();
+            }
+            transaction.set(usernameRef, reservation);
+            transaction.set(userRef, user);
+            return null;
+        });
     }
 
+    /**
+     * Deletes the just-created Auth account when its profile could not be stored, so the email
+     * can be used again.
+     */
+    private void rollBackAccount() {
+        FirebaseUser user = mAuth.getCurrentUser();
+        if (user != null) {
+            user.delete().addOnFailureListener(e -> Log.w("RegistrationActivity", "Could not roll back account", e));
+        }
+        registerButton.setEnabled(true);
+    }
+
+    static String normalizeUsername(String username) {
+        return username.trim().toLowerCase(Locale.US);
+    }
+
+    /**
+     * Whether the normalized name can be used as its {@code usernames/} document id: letters,
+     * digits, dots, dashes and underscores, and not one of the ids Firestore reserves.
+     */
+    static boolean isValidUsername(String normalizedName) {
+        return USERNAME_PATTERN.matcher(normalizedName).matches()
+                && !normalizedName.equals(".") && !normalizedName.equals("..")
+                && !(normalizedName.startsWith("__") && normalizedName.endsWith("__"));
+    }
 
     private boolean validateInputs() {
         String username = usernameEditText.getText().toString().trim();
@@ -166,6 +234,11 @@ public class RegistrationActivity extends AppCompatActivity {
             return false;
         }
 
+        if (!isValidUsername(normalizeUsername(username))) {
+            usernameEditText.setError("Use up to 30 letters, numbers, dots, dashes or underscores");
+            return false;
+        }
+
         if (firstName.length() < 2) {
             firstNameEditText.setError("First name must be at least 2 letters");
             return false;
@@ -194,6 +267,12 @@ public class RegistrationActivity extends AppCompatActivity {
         return true;
     }
 
+    private static class UsernameTakenException extends FirebaseFirestoreException {
+        UsernameTakenException() {
+            super("Username is already taken.", FirebaseFirestoreException.Code.ABORTED);
+        }
+    }
+
     public static class User {
         public String userId;
         public String username;
@@ -0,0 +1,136 @@
+package com.example.smartech;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Releases what a screen acquired when the screen is destroyed.
+ *
+ * Engines, listeners and executors are registered together with how to release them, as they
+ * are acquired. On destroy they are released in the reverse order, each on its own, so one that
+ * fails to release does not keep the rest alive. Resources registered after that are released
+ * straight away, and their failures logged since there is no later release to return them from. {@link #getLiveCount()} is the number held by all registries in the process,
+ * which the leak tests expect to drop back to zero once every screen is gone.
+ */
+public class ResourceRegistry {
+
+    public interface Releaser<T> {
+        void release(T resource) throws Exception;
+    }
+
+    private static final String TAG = "ResourceRegistry";
+    private static final AtomicInteger live = new AtomicInteger();
+
+    private final List<Runnable> releases = new ArrayList<>();
+    private final List<Exception> failures = new ArrayList<>();
+    private boolean released = false;
+
+    /** A registry that is released when {@code owner} is destroyed. */
+    public static ResourceRegistry bindTo(LifecycleOwner owner) {
+        ResourceRegistry registry = new ResourceRegistry();
+        owner.getLifecycle().addObserver(new DefaultLifecycleObserver() {
+            @Override
+            public void onDestroy(@NonNull LifecycleOwner source) {
+                source.getLifecycle().removeObserver(this);
+                for (Exception e : registry.release()) {
+                    Log.w(TAG, "Could not release a resource", e);
+                }
+            }
+        });
+        return registry;
+    }
+
+    public static int getLiveCount() {
+        return live.get();
+    }
+
+    /** Registers {@code resource} and returns it. */
+    public <T> T add(T resource, Releaser<? super T> releaser) {
+        if (resource == null) return null;
+        onRelease(() -> {
+            try {
+                releaser.release(resource);
+            } catch (Exception e) {
+                addFailure(e);
+            }
+        });
+        return resource;
+    }
+
+    public <T extends AutoCloseable> T add(T resource) {
+        return add(resource, AutoCloseable::close);
+    }
+
+    /** Shuts {@code executor} down; tasks already running are left to finish. */
+    public <T extends ExecutorService> T addExecutor(T executor) {
+        return add(executor, ExecutorService::shutdown);
+    }
+
+    /** Runs {@code release} on release, e.g. to remove a listener from a longer-lived object. */
+    public void onRelease(Runnable release) {
+        synchronized (this) {
+            if (!released) {
+                releases.add(release);
+                live.incrementAndGet();
+                return;
+            }
+        }
+        runRelease(release);
+        for (Exception e : takeFailures()) {
+            Log.w(TAG, "Could not release a resource registered after release", e);
+        }
+    }
+
+    /**
+     * Releases everything in the reverse order it was registered and returns what failed. Later
+     * calls do nothing.
+     */
+    public List<Exception> release() {
+        List<Runnable> pending;
+        synchronized (this) {
+            if (released) return new ArrayList<>();
+            released = true;
+            pending = new ArrayList<>(releases);
+            releases.clear();
+            live.addAndGet(-pending.size());
+        }
+        for (int i = pending.size() - 1; i >= 0; i--) {
+            runRelease(pending.get(i));
+        }
+        return takeFailures();
+    }
+
+    public synchronized boolean isReleased() {
+        return released;
+    }
+
+    private void runRelease(Runnable release) {
+        try {
+            release.run();
+        } catch (RuntimeException e) {
+            addFailure(e);
+        }
+    }
+
+    private void addFailure(Exception e) {
+        synchronized (failures) {
+            failures.add(e);
+        }
+    }
+
+    private List<Exception> takeFailures() {
+        synchronized (failures) {
+            List<Exception> taken = new ArrayList<>(failures);
+            failures.clear();
+            return taken;
+        }
+    }
+}
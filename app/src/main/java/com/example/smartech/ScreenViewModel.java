@@ -0,0 +1,59 @@
+package com.example.smartech;
+
+import android.app.Application;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.ViewModelProvider;
+import androidx.lifecycle.ViewModelStoreOwner;
+
+/**
+ * Owns a screen's engines and conversation state for as long as the screen is open.
+ *
+ * A rotation or theme change recreates the activity but keeps its view model, so the speech
+ * engine and recognizer are started once per visit and released in {@link #onCleared()} when the
+ * screen is finished. Each new activity only binds its listeners, through its own
+ * {@link ResourceRegistry}, so nothing held here refers to an activity after it is destroyed.
+ * Screens with state of their own extend this class.
+ */
+public class ScreenViewModel extends AndroidViewModel {
+
+    private static final String TAG = "ScreenViewModel";
+
+    protected final ResourceRegistry resources = new ResourceRegistry();
+
+    private TextSpeakerHelper speech;
+    private VoiceAssistantHelper voice;
+
+    public ScreenViewModel(@NonNull Application application) {
+        super(application);
+    }
+
+    public static <T extends ScreenViewModel> T of(ViewModelStoreOwner owner, Class<T> type) {
+        return new ViewModelProvider(owner).get(type);
+    }
+
+    public TextSpeakerHelper getSpeech() {
+        if (speech == null) {
+            speech = resources.add(new TextSpeakerHelper(getApplication()), TextSpeakerHelper::shutdown);
+        }
+        return speech;
+    }
+
+    /** The recognizer, speaking through {@link #getSpeech()}. Bind a listener before using it. */
+    public VoiceAssistantHelper getVoice() {
+        if (voice == null) {
+            voice = resources.add(new VoiceAssistantHelper(getApplication(), getSpeech(), null),
+                    VoiceAssistantHelper::shutdown);
+        }
+        return voice;
+    }
+
+    @Override
+    protected void onCleared() {
+        for (Exception e : resources.release()) {
+            Log.w(TAG, "Could not release a resource", e);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.smartech;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseAuthInvalidUserException;
+import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+import java.util.Collections;
+
+/**
+ * Decides where a launch lands. A signed in user with a cached profile snapshot goes straight
+ * to the home screen while the session and profile are refreshed in the background; the login
+ * screen is only shown when there is no session or it turns out to have been revoked.
+ */
+public class SessionGate {
+
+    private static final String TAG = "SessionGate";
+
+    private SessionGate() {
+    }
+
+    /**
+     * Routes the splash screen to the right first activity and finishes it, unless {@code scope}
+     * is released before the profile is known.
+     */
+    public static void route(Activity activity, ResourceRegistry scope) {
+        FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
+        if (user == null) {
+            openLogin(activity);
+            return;
+        }
+
+        verifySession(activity.getApplicationContext(), user);
+
+        UserProfileRepository profileRepository = UserProfileRepository.getInstance(activity);
+        profileRepository.start(user.getUid());
+        // Runs immediately from the on-disk snapshot; only a first launch on this device waits.
+        profileRepository.whenLoaded(scope, () -> {
+            if (activity.isFinishing()) return;
+            if (profileRepository.exists()) {
+                openProfile(activity, profileRepository);
+            } else {
+                openLogin(activity);
+            }
+        });
+    }
+
+    /**
+     * Opens the introduction for first time users and the home screen for everyone else.
+     */
+    public static void openProfile(Activity activity, UserProfileRepository profileRepository) {
+        Intent intent;
+        if (profileRepository.isFirstTimeLogin()) {
+            DocumentReference userRef = FirebaseFirestore.getInstance().collection("users")
+                    .document(profileRepository.getUserId());
+            FirestoreMeter.update(userRef, Collections.<String, Object>singletonMap("firstTimeLogin", false));
+            intent = new Intent(activity, IntroductionActivity.class);
+        } else {
+            intent = new Intent(activity, HomeActivity.class);
+        }
+
+        intent.putExtra("username", profileRepository.getUsername());
+        intent.putExtra("firstName", profileRepository.getFirstName());
+        intent.putExtra("lastName", profileRepository.getLastName());
+        intent.putExtra("email", profileRepository.getEmail());
+        activity.startActivity(intent);
+        activity.finish();
+    }
+
+    private static void openLogin(Activity activity) {
+        activity.startActivity(new Intent(activity, LoginActivity.class));
+        activity.finish();
+    }
+
+    /**
+     * Checks the cached session with the server. A disabled or deleted account signs the user
+     * out and sends whatever screen is showing back to the login screen; network failures keep
+     * the cached session.
+     */
+    private static void verifySession(Context context, FirebaseUser user) {
+        user.reload().addOnFailureListener(e -> {
+            if (!(e instanceof FirebaseAuthInvalidUserException)) {
+                Log.w(TAG, "Could not refresh session, keeping cached one", e);
+                return;
+            }
+            Log.i(TAG, "Cached session was revoked", e);
+            FirebaseAuth.getInstance().signOut();
+            UserProfileRepository.getInstance(context).clear();
+            ContactRepository.getInstance(context).clearLocal();
+
+            Intent intent = new Intent(context, LoginActivity.class);
+            intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+            context.startActivity(intent);
+        });
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.smartech;
+
+/**
+ * Detects deliberate shakes in a stream of accelerometer samples.
+ *
+ * Gravity is removed from each axis with a first-order high-pass filter and the magnitude of
+ * what remains is compared against the sensitivity threshold, so motion along opposite axes
+ * adds up instead of cancelling out. Every time the magnitude rises through the threshold counts
+ * as one peak; a shake is reported when enough peaks fall inside the sliding window, after which
+ * the detector stays quiet for the refractory period.
+ *
+ * Samples carry their sensor timestamps, so batched delivery is handled the same as live
+ * delivery. All state lives in preallocated primitive fields and a ring buffer of peak times;
+ * {@link #onSample} does not allocate.
+ */
+public class ShakeDetector {
+
+    public interface Listener {
+        void onShake(long timestampNs);
+    }
+
+    public static class Config {
+        /** Linear acceleration, in m/s^2, a peak has to exceed. Lower is more sensitive. */
+        public final float thresholdMs2;
+        /** Peaks needed inside {@link #windowMs}. A back-and-forth shake produces two per cycle. */
+        public final int minPeaks;
+        public final long windowMs;
+        /** Time after a detection during which no further shake is reported. */
+        public final long refractoryMs;
+        /** High-pass cutoff separating hand motion from gravity and slow tilting. */
+        public final float cutoffHz;
+
+        public Config(float thresholdMs2, int minPeaks, long windowMs, long refractoryMs, float cutoffHz) {
+            if (minPeaks < 1) throw new IllegalArgumentException("minPeaks must be at least 1");
+            this.thresholdMs2 = thresholdMs2;
+            this.minPeaks = minPeaks;
+            this.windowMs = windowMs;
+            this.refractoryMs = refractoryMs;
+            this.cutoffHz = cutoffHz;
+        }
+    }
+
+    public static final Config DEFAULT_CONFIG = new Config(13f, 5, 1000, 2000, 0.8f);
+
+    // A peak ends once the magnitude falls back below this fraction of the threshold, so sensor
+    // noise around the threshold is not counted as several peaks.
+    private static final float RELEASE_RATIO = 0.6f;
+    private static final double NS_PER_MS = 1e6;
+
+    private final Config config;
+    private final Listener listener;
+    private final long[] peakTimes;
+    private final float rc;
+    private final float thresholdSquared;
+    private final float releaseSquared;
+
+    private int peakHead = 0;
+    private int peakCount = 0;
+    private boolean inPeak = false;
+    private boolean started = false;
+    private long lastTimestampNs;
+    private long lastShakeNs;
+    private boolean hasShaken = false;
+    private float lastX, lastY, lastZ;
+    private float highX, highY, highZ;
+
+    public ShakeDetector(Config config, Listener listener) {
+        this.config = config;
+        this.listener = listener;
+        this.peakTimes = new long[config.minPeaks];
+        this.rc = (float) (1.0 / (2 * Math.PI * config.cutoffHz));
+        this.thresholdSquared = config.thresholdMs2 * config.thresholdMs2;
+        float release = config.thresholdMs2 * RELEASE_RATIO;
+        this.releaseSquared = release * release;
+    }
+
+    /**
+     * Feeds one accelerometer sample in m/s^2, timestamped in nanoseconds as in
+     * {@code SensorEvent.timestamp}.
+     */
+    public void onSample(long timestampNs, float x, float y, float z) {
+        if (!started || timestampNs <= lastTimestampNs) {
+            if (!started) {
+                lastX = x;
+                lastY = y;
+                lastZ = z;
+                lastTimestampNs = timestampNs;
+                started = true;
+            }
+            return;
+        }
+
+        float dt = (float) ((timestampNs - lastTimestampNs) / 1e9);
+        float alpha = rc / (rc + dt);
+        highX = alpha * (highX + x - lastX);
+        highY = alpha * (highY + y - lastY);
+        highZ = alpha * (highZ + z - lastZ);
+        lastX = x;
+        lastY = y;
+        lastZ = z;
+        lastTimestampNs = timestampNs;
+
+        float magnitudeSquared = highX * highX + highY * highY + highZ * highZ;
+        if (!inPeak) {
+            if (magnitudeSquared > thresholdSquared) {
+                inPeak = true;
+                onPeak(timestampNs);
+            }
+        } else if (magnitudeSquared < releaseSquared) {
+            inPeak = false;
+        }
+    }
+
+    public void reset() {
+        peakHead = 0;
+        peakCount = 0;
+        inPeak = false;
+        started = false;
+        hasShaken = false;
+        highX = highY = highZ = 0;
+    }
+
+    private void onPeak(long timestampNs) {
+        if (hasShaken && (timestampNs - lastShakeNs) / NS_PER_MS < config.refractoryMs) return;
+
+        peakTimes[peakHead] = timestampNs;
+        peakHead = (peakHead + 1) % peakTimes.length;
+        if (peakCount < peakTimes.length) peakCount++;
+        if (peakCount < config.minPeaks) return;
+
+        // The ring holds exactly minPeaks entries, so the oldest one is at the head.
+        long oldest = peakTimes[peakHead];
+        if ((timestampNs - oldest) / NS_PER_MS <= config.windowMs) {
+            hasShaken = true;
+            lastShakeNs = timestampNs;
+            peakCount = 0;
+            listener.onShake(timestampNs);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.smartech;
+
+import android.Manifest;
+import android.app.Activity;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.telephony.SmsManager;
+
+import androidx.core.content.ContextCompat;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends alerts as text messages straight from the phone, so they go out without a data
+ * connection. A delivery counts as sent once the radio accepted every part of the message.
+ */
+public class SmsTransport implements EmergencyDispatcher.Transport {
+
+    private static final String ACTION_SENT = "com.example.smartech.EMERGENCY_SMS_SENT";
+    private static final String EXTRA_REQUEST = "request";
+
+    private final Context context;
+    private final AtomicInteger nextRequest = new AtomicInteger();
+    private final Map<Integer, PendingSms> pending = new ConcurrentHashMap<>();
+
+    private static class PendingSms {
+        final EmergencyDispatcher.Callback callback;
+        int partsLeft;
+        boolean reported = false;
+
+        PendingSms(EmergencyDispatcher.Callback callback, int parts) {
+            this.callback = callback;
+            this.partsLeft = parts;
+        }
+    }
+
+    public SmsTransport(Context context) {
+        this.context = context.getApplicationContext();
+        ContextCompat.registerReceiver(this.context, new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                onPartSent(intent.getIntExtra(EXTRA_REQUEST, -1), getResultCode());
+            }
+        }, new IntentFilter(ACTION_SENT), ContextCompat.RECEIVER_NOT_EXPORTED);
+    }
+
+    @Override
+    public String getName() {
+        return "sms";
+    }
+
+    @Override
+    public boolean canReach(ContactIndex.Contact contact) {
+        return !contact.phone.isEmpty()
+                && context.getPackageManager().hasSystemFeature(PackageManager.FEATURE_TELEPHONY_MESSAGING)
+                && ContextCompat.checkSelfPermission(context, Manifest.permission.SEND_SMS) == PackageManager.PERMISSION_GRANTED;
+    }
+
+    @Override
+    public boolean supportsAttachments() {
+        return false;
+    }
+
+    @Override
+    public void send(EmergencyDispatcher.Delivery delivery, EmergencyDispatcher.Callback callback) {
+        SmsManager smsManager = Build.VERSION.SDK_INT >= Build.VERSION_CODES.S
+                ? context.getSystemService(SmsManager.class)
+                : SmsManager.getDefault();
+        ArrayList<String> parts = smsManager.divideMessage(delivery.subject + ": " + delivery.body);
+
+        int request = nextRequest.incrementAndGet();
+        pending.put(request, new PendingSms(callback, parts.size()));
+        ArrayList<PendingIntent> sentIntents = new ArrayList<>(parts.size());
+        for (int i = 0; i < parts.size(); i++) {
+            Intent sent = new Intent(ACTION_SENT).setPackage(context.getPackageName()).putExtra(EXTRA_REQUEST, request);
+            sentIntents.add(PendingIntent.getBroadcast(context, request * 16 + i, sent,
+                    PendingIntent.FLAG_ONE_SHOT | PendingIntent.FLAG_IMMUTABLE));
+        }
+
+        try {
+            smsManager.sendMultipartTextMessage(delivery.contact.phone, null, parts, sentIntents, null);
+        } catch (RuntimeException e) {
+            pending.remove(request);
+            callback.onFailed(e, false);
+        }
+    }
+
+    private void onPartSent(int request, int resultCode) {
+        PendingSms sms = pending.get(request);
+        if (sms == null) return;
+
+        synchronized (sms) {
+            if (sms.reported) return;
+            if (resultCode != Activity.RESULT_OK) {
+                sms.reported = true;
+                pending.remove(request);
+                // Null PDU means the message itself is bad; anything else is the radio or network.
+                boolean retryable = resultCode != SmsManager.RESULT_ERROR_NULL_PDU;
+                sms.callback.onFailed(new Exception("SMS failed with result " + resultCode), retryable);
+                return;
+            }
+            if (--sms.partsLeft == 0) {
+                sms.reported = true;
+                pending.remove(request);
+                sms.callback.onSent();
+            }
+        }
+    }
+}
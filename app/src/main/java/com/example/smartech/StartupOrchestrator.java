@@ -0,0 +1,130 @@
+package com.example.smartech;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs independent start-up warm-ups concurrently and reports when the critical ones are done.
+ *
+ * Each warm-up is timed. {@link Listener#onCriticalReady} fires once every critical warm-up has
+ * finished (successfully or not) or the deadline passes, whichever is first; the rest keep
+ * running in the background and {@link Listener#onAllDone} reports the full timings.
+ */
+public class StartupOrchestrator {
+
+    public interface WarmUp {
+        void run() throws Exception;
+    }
+
+    public interface Listener {
+        void onCriticalReady(Map<String, Long> timingsMs);
+        void onAllDone(Map<String, Long> timingsMs);
+    }
+
+    /** Recorded instead of a duration when a warm-up threw. */
+    public static final long FAILED = -1;
+
+    private static class Step {
+        final String name;
+        final boolean critical;
+        final WarmUp warmUp;
+
+        Step(String name, boolean critical, WarmUp warmUp) {
+            this.name = name;
+            this.critical = critical;
+            this.warmUp = warmUp;
+        }
+    }
+
+    private final ScheduledExecutorService executor;
+    private final Executor callbackExecutor;
+    private final List<Step> steps = new ArrayList<>();
+    private final Map<String, Long> timings = Collections.synchronizedMap(new LinkedHashMap<String, Long>());
+    private final AtomicBoolean criticalReported = new AtomicBoolean(false);
+
+    public StartupOrchestrator(ScheduledExecutorService executor, Executor callbackExecutor) {
+        this.executor = executor;
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    public StartupOrchestrator add(String name, boolean critical, WarmUp warmUp) {
+        steps.add(new Step(name, critical, warmUp));
+        return this;
+    }
+
+    /**
+     * Records a step that already ran on the caller's thread, such as Firebase initialisation.
+     */
+    public void record(String name, long durationMs) {
+        timings.put(name, durationMs);
+    }
+
+    /**
+     * Starts every warm-up. {@code deadlineMs} caps how long the critical set may hold up the
+     * caller.
+     */
+    public void start(long deadlineMs, Listener listener) {
+        int criticalCount = 0;
+        for (Step step : steps) {
+            if (step.critical) criticalCount++;
+        }
+        AtomicInteger criticalRemaining = new AtomicInteger(criticalCount);
+        AtomicInteger remaining = new AtomicInteger(steps.size());
+
+        if (criticalCount == 0) {
+            reportCritical(listener);
+        } else {
+            executor.schedule(() -> reportCritical(listener), deadlineMs, TimeUnit.MILLISECONDS);
+        }
+        if (steps.isEmpty()) {
+            reportAll(listener);
+            return;
+        }
+
+        for (Step step : steps) {
+            executor.execute(() -> {
+                long start = System.nanoTime();
+                long duration;
+                try {
+                    step.warmUp.run();
+                    duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                } catch (Exception e) {
+                    duration = FAILED;
+                }
+                timings.put(step.name, duration);
+
+                if (step.critical && criticalRemaining.decrementAndGet() == 0) {
+                    reportCritical(listener);
+                }
+                if (remaining.decrementAndGet() == 0) {
+                    reportAll(listener);
+                }
+            });
+        }
+    }
+
+    private void reportCritical(Listener listener) {
+        if (!criticalReported.compareAndSet(false, true)) return;
+        Map<String, Long> snapshot = snapshot();
+        callbackExecutor.execute(() -> listener.onCriticalReady(snapshot));
+    }
+
+    private void reportAll(Listener listener) {
+        Map<String, Long> snapshot = snapshot();
+        callbackExecutor.execute(() -> listener.onAllDone(snapshot));
+    }
+
+    private Map<String, Long> snapshot() {
+        synchronized (timings) {
+            return Collections.unmodifiableMap(new LinkedHashMap<>(timings));
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package com.example.smartech;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.ListenerRegistration;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * On-device full-text index over the user's planner tasks, so "find task pharmacy" can be
+ * answered without a network round trip.
+ *
+ * Task text lives in an SQLite FTS4 table whose docid points at a plain metadata row keyed by
+ * the Firestore document id. Local adds and removes are applied as they are queued,
+ * and {@link #startSync} tails {@code daily_plans/{uid}/tasks} by {@code createdAt}, so after
+ * the first launch only tasks created on other devices are read. Older tasks deleted elsewhere
+ * are dropped by the task store's listener when it sees them go, and by a full reconcile at most
+ * once a day. All database work runs on a single background thread; results are delivered on
+ * the main thread.
+ */
+public class TaskSearchIndex extends SQLiteOpenHelper {
+
+    private static final String TAG = "TaskSearchIndex";
+    private static final int DATABASE_VERSION = 1;
+    private static final String META_TABLE = "task_meta";
+    private static final String TEXT_TABLE = "task_text";
+    private static final String PREFS_NAME = "task_search";
+    private static final String KEY_RECONCILED_AT = "reconciled_at_";
+    private static final long RECONCILE_INTERVAL_MS = 24 * 60 * 60 * 1000L;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final SharedPreferences prefs;
+    private ListenerRegistration syncRegistration;
+    // Callbacks from Firestore and pending pages can arrive after close(); they are dropped.
+    private boolean closed = false;
+
+    public interface SearchCallback {
+        void onResults(List<TaskStore.PlannerTask> results);
+    }
+
+    public TaskSearchIndex(Context context, String userId) {
+        super(context.getApplicationContext(), "task_search_" + userId + ".db", null, DATABASE_VERSION);
+        prefs = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + META_TABLE + " ("
+                + "id INTEGER PRIMARY KEY, task_id TEXT NOT NULL UNIQUE, "
+                + "created_at INTEGER NOT NULL, due_at INTEGER NOT NULL)");
+        db.execSQL("CREATE VIRTUAL TABLE " + TEXT_TABLE + " USING fts4(text, tokenize=porter)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        db.execSQL("DROP TABLE IF EXISTS " + META_TABLE);
+        db.execSQL("DROP TABLE IF EXISTS " + TEXT_TABLE);
+        onCreate(db);
+    }
+
+    /**
+     * Starts tailing the remote collection for tasks newer than the newest indexed one, and
+     * reconciles the whole index against it if that has not been done for a day.
+     */
+    public void startSync(PlannerMutationQueue queue) {
+        if (closed) return;
+        CollectionReference tasksRef = queue.getTasksRef();
+        executor.execute(() -> {
+            long newest = newestCreatedAt();
+            mainHandler.post(() -> {
+                if (closed || syncRegistration != null) return;
+                reconcileIfDue(queue, newest);
+                syncRegistration = FirestoreMeter.listen(tasksRef
+                        .whereGreaterThan("createdAt", new Timestamp(new Date(newest)))
+                        .orderBy("createdAt"), (snapshot, e) -> {
+                            if (e != null) {
+                                Log.w(TAG, "Task index sync failed", e);
+                                return;
+                            }
+                            if (snapshot == null) return;
+
+                            List<TaskStore.PlannerTask> changed = new ArrayList<>();
+                            List<String> removed = new ArrayList<>();
+                            for (DocumentChange change : snapshot.getDocumentChanges()) {
+                                if (change.getType() == DocumentChange.Type.REMOVED) {
+                                    removed.add(change.getDocument().getId());
+                                } else {
+                                    changed.add(TaskStore.toTask(change.getDocument()));
+                                }
+                            }
+                            upsertAll(changed);
+                            deleteAll(removed);
+                        });
+            });
+        });
+    }
+
+    /**
+     * Reads the whole collection once and drops indexed tasks that no longer exist remotely.
+     * Tasks still waiting in the mutation queue are kept, as the read cannot have seen them.
+     */
+    private void reconcileIfDue(PlannerMutationQueue queue, long newest) {
+        String key = KEY_RECONCILED_AT + getDatabaseName();
+        long now = System.currentTimeMillis();
+        if (newest == 0) {
+            // A fresh index is filled by the tail from scratch; there is nothing to reconcile yet.
+            prefs.edit().putLong(key, now).apply();
+            return;
+        }
+        if (now - prefs.getLong(key, 0) < RECONCILE_INTERVAL_MS) return;
+
+        FirestoreMeter.get(queue.getTasksRef()).addOnSuccessListener(snapshot -> {
+            if (closed) return;
+            Set<String> keep = new HashSet<>();
+            for (DocumentSnapshot document : snapshot.getDocuments()) {
+                keep.add(document.getId());
+            }
+            for (PlannerMutationLog.Mutation mutation : queue.getPending()) {
+                keep.add(mutation.taskId);
+            }
+            executor.execute(() -> retainOnlyNow(keep));
+            prefs.edit().putLong(key, now).apply();
+        }).addOnFailureListener(e -> Log.w(TAG, "Could not reconcile the task index", e));
+    }
+
+    public void stopSync() {
+        if (syncRegistration != null) {
+            syncRegistration.remove();
+            syncRegistration = null;
+        }
+    }
+
+    public void upsertAll(List<TaskStore.PlannerTask> tasks) {
+        if (closed || tasks.isEmpty()) return;
+        List<TaskStore.PlannerTask> copy = new ArrayList<>(tasks);
+        executor.execute(() -> upsertNow(copy));
+    }
+
+    public void deleteAll(List<String> taskIds) {
+        if (closed || taskIds.isEmpty()) return;
+        List<String> copy = new ArrayList<>(taskIds);
+        executor.execute(() -> deleteNow(copy));
+    }
+
+    /**
+     * Finds tasks containing every word of the query, matching word prefixes.
+     */
+    public void search(String query, int limit, SearchCallback callback) {
+        if (closed) return;
+        executor.execute(() -> {
+            List<TaskStore.PlannerTask> results = searchNow(query, limit);
+            mainHandler.post(() -> callback.onResults(results));
+        });
+    }
+
+    public void close() {
+        if (closed) return;
+        closed = true;
+        stopSync();
+        executor.execute(super::close);
+        executor.shutdown();
+    }
+
+    void upsertNow(List<TaskStore.PlannerTask> tasks) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            ContentValues meta = new ContentValues();
+            ContentValues text = new ContentValues();
+            for (TaskStore.PlannerTask task : tasks) {
+                meta.clear();
+                meta.put("task_id", task.id);
+                meta.put("created_at", task.createdAt);
+                meta.put("due_at", task.dueAt);
+                text.clear();
+                text.put("text", task.text);
+
+                long rowId = findRowId(db, task.id);
+                if (rowId >= 0) {
+                    String[] args = {String.valueOf(rowId)};
+                    db.update(META_TABLE, meta, "id = ?", args);
+                    db.update(TEXT_TABLE, text, "docid = ?", args);
+                } else {
+                    rowId = db.insert(META_TABLE, null, meta);
+                    text.put("docid", rowId);
+                    db.insert(TEXT_TABLE, null, text);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    void deleteNow(List<String> taskIds) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (String taskId : taskIds) {
+                long rowId = findRowId(db, taskId);
+                if (rowId < 0) continue;
+                String[] args = {String.valueOf(rowId)};
+                db.delete(META_TABLE, "id = ?", args);
+                db.delete(TEXT_TABLE, "docid = ?", args);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    void retainOnlyNow(Set<String> taskIds) {
+        List<String> stale = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().rawQuery("SELECT task_id FROM " + META_TABLE, null)) {
+            while (cursor.moveToNext()) {
+                if (!taskIds.contains(cursor.getString(0))) {
+                    stale.add(cursor.getString(0));
+                }
+            }
+        }
+        if (!stale.isEmpty()) {
+            Log.d(TAG, "Dropping " + stale.size() + " tasks deleted elsewhere");
+            deleteNow(stale);
+        }
+    }
+
+    List<TaskStore.PlannerTask> searchNow(String query, int limit) {
+        String match = toMatchExpression(query);
+        if (match.isEmpty()) return Collections.emptyList();
+
+        List<TaskStore.PlannerTask> results = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().rawQuery(
+                "SELECT m.task_id, t.text, m.created_at, m.due_at FROM " + TEXT_TABLE + " t"
+                        + " JOIN " + META_TABLE + " m ON m.id = t.docid"
+                        + " WHERE t.text MATCH ? ORDER BY m.due_at, m.created_at LIMIT ?",
+                new String[]{match, String.valueOf(limit)})) {
+            while (cursor.moveToNext()) {
+                results.add(new TaskStore.PlannerTask(
+                        cursor.getString(0), cursor.getString(1), cursor.getLong(2), cursor.getLong(3)));
+            }
+        }
+        return results;
+    }
+
+    private static long findRowId(SQLiteDatabase db, String taskId) {
+        try (Cursor cursor = db.rawQuery("SELECT id FROM " + META_TABLE + " WHERE task_id = ?", new String[]{taskId})) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        }
+    }
+
+    private long newestCreatedAt() {
+        try (Cursor cursor = getReadableDatabase().rawQuery("SELECT MAX(created_at) FROM " + META_TABLE, null)) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        }
+    }
+
+    static String toMatchExpression(String query) {
+        StringBuilder match = new StringBuilder();
+        for (String word : query.toLowerCase(Locale.US).split("[^\\p{L}\\p{N}]+")) {
+            // Every word has to match, so a "the" in the query would rule out most titles.
+            if (word.isEmpty() || PlannerCommandParser.isStopWord(word)) continue;
+            if (match.length() > 0) match.append(' ');
+            match.append(word).append('*');
+        }
+        return match.toString();
+    }
+}
@@ -0,0 +1,369 @@
+package com.example.smartech;
+
+import android.util.Log;
+
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Ordered local copy of the current page of {@code daily_plans/{uid}/tasks}.
+ *
+ * The list is kept current from a single snapshot listener by applying
+ * {@link DocumentChange}s, so adding or removing a task never triggers a re-read of the
+ * whole collection. Mutations go through the {@link PlannerMutationQueue} and are merged into
+ * the visible list before Firestore has acknowledged them.
+ *
+ * Tasks are ordered by due date and creation time and the query is scoped to everything due
+ * by the end of today or of this week, {@link #PAGE_SIZE} tasks at a time; further pages are
+ * fetched on demand with a {@code startAfter} cursor. There is no lower bound, so tasks left
+ * over from earlier days come first instead of dropping out at midnight. This relies on the
+ * composite index declared in {@code firestore.indexes.json}.
+ */
+public class TaskStore {
+
+    private static final String TAG = "TaskStore";
+    public static final int PAGE_SIZE = 50;
+
+    public enum Scope { TODAY, WEEK }
+
+    static final Comparator<PlannerTask> TASK_ORDER = (a, b) -> {
+        if (a.dueAt != b.dueAt) return a.dueAt < b.dueAt ? -1 : 1;
+        if (a.createdAt != b.createdAt) return a.createdAt < b.createdAt ? -1 : 1;
+        return a.id.compareTo(b.id);
+    };
+
+    private final PlannerMutationQueue queue;
+    private final CollectionReference tasksRef;
+    private final List<PlannerTask> tasks = new ArrayList<>();
+    private final List<PlannerTask> olderPages = new ArrayList<>();
+    private final List<PlannerTask> visibleTasks = new ArrayList<>();
+    private final Listener listener;
+    private final PlannerMutationQueue.Listener queueListener = this::onQueueChanged;
+
+    private ListenerRegistration registration;
+    private TaskSearchIndex searchIndex;
+    private Scope scope = Scope.TODAY;
+    private long scopeEnd;
+    private DocumentSnapshot pageCursor;
+    private boolean hasMorePages = false;
+    private boolean loaded = false;
+
+    public interface Listener {
+        void onTasksLoaded(List<PlannerTask> tasks);
+        void onTasksChanged(List<PlannerTask> tasks);
+        void onTasksError(Exception e);
+    }
+
+    public interface PageCallback {
+        void onPageLoaded(List<PlannerTask> page);
+    }
+
+    public static class PlannerTask {
+        public final String id;
+        public final String text;
+        public final long createdAt;
+        public final long dueAt;
+
+        public PlannerTask(String id, String text, long createdAt, long dueAt) {
+            this.id = id;
+            this.text = text;
+            this.createdAt = createdAt;
+            this.dueAt = dueAt;
+        }
+    }
+
+    public TaskStore(PlannerMutationQueue queue, String userId, Listener listener) {
+        this.queue = queue;
+        this.listener = listener;
+        queue.start(userId);
+        this.tasksRef = queue.getTasksRef();
+    }
+
+    public void start() {
+        if (registration != null) return;
+        queue.addListener(queueListener);
+        listen();
+    }
+
+    public void stop() {
+        queue.removeListener(queueListener);
+        if (registration != null) {
+            registration.remove();
+            registration = null;
+        }
+    }
+
+    /**
+     * Keeps the given local search index up to date with tasks seen and changed by this store.
+     */
+    public void setSearchIndex(TaskSearchIndex searchIndex) {
+        this.searchIndex = searchIndex;
+    }
+
+    public Scope getScope() {
+        return scope;
+    }
+
+    /**
+     * Switches between today's and this week's tasks. The list is reloaded and
+     * {@link Listener#onTasksLoaded} fires again once the new scope arrives. Asking for the same
+     * scope again after midnight also reloads it, so the new day's tasks are included.
+     */
+    public void setScope(Scope newScope) {
+        if (newScope == scope && registration != null && System.currentTimeMillis() < scopeEnd) {
+            if (loaded) listener.onTasksLoaded(getTasks());
+            return;
+        }
+        scope = newScope;
+        if (registration != null) {
+            registration.remove();
+            registration = null;
+            listen();
+        }
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public boolean hasMorePages() {
+        return hasMorePages;
+    }
+
+    public List<PlannerTask> getTasks() {
+        return Collections.unmodifiableList(visibleTasks);
+    }
+
+    /**
+     * Returns the task at a 1-based position, as read out to the user, or null.
+     */
+    public PlannerTask getByNumber(int number) {
+        if (number < 1 || number > visibleTasks.size()) return null;
+        return visibleTasks.get(number - 1);
+    }
+
+    /**
+     * Creates a task that is due {@code dueInDays} days from today. It is not stored until it is
+     * passed to {@link #apply}.
+     */
+    public PlannerTask newTask(String text, int dueInDays) {
+        long now = System.currentTimeMillis();
+        return new PlannerTask(queue.newTaskId(), text, now, startOfDay(now, dueInDays));
+    }
+
+    /**
+     * Applies several adds and removes as one group that is committed in a single batch.
+     */
+    public void apply(List<PlannerTask> additions, List<PlannerTask> removals) {
+        List<PlannerMutationLog.Mutation> mutations = new ArrayList<>();
+        for (PlannerTask task : additions) {
+            mutations.add(new PlannerMutationLog.Mutation(PlannerMutationLog.Type.ADD,
+                    task.id, task.text, task.createdAt, task.dueAt));
+        }
+        List<String> removedIds = new ArrayList<>();
+        for (PlannerTask task : removals) {
+            mutations.add(new PlannerMutationLog.Mutation(PlannerMutationLog.Type.REMOVE, task.id, null));
+            removedIds.add(task.id);
+            olderPages.remove(task);
+        }
+        queue.enqueueAll(mutations);
+
+        if (searchIndex != null) {
+            searchIndex.upsertAll(additions);
+            searchIndex.deleteAll(removedIds);
+        }
+    }
+
+    /**
+     * Fetches the next page after the tasks loaded so far.
+     */
+    public void loadMore(PageCallback callback) {
+        if (!loaded || !hasMorePages || pageCursor == null) {
+            callback.onPageLoaded(Collections.<PlannerTask>emptyList());
+            return;
+        }
+
+        FirestoreMeter.get(scopedQuery().startAfter(pageCursor).limit(PAGE_SIZE))
+                .addOnSuccessListener(snapshot -> {
+                    List<PlannerTask> page = new ArrayList<>();
+                    for (DocumentSnapshot document : snapshot.getDocuments()) {
+                        page.add(toTask(document));
+                    }
+                    if (!snapshot.isEmpty()) {
+                        pageCursor = snapshot.getDocuments().get(snapshot.size() - 1);
+                    }
+                    hasMorePages = snapshot.size() == PAGE_SIZE;
+                    olderPages.addAll(page);
+                    if (searchIndex != null) {
+                        searchIndex.upsertAll(page);
+                    }
+                    rebuildVisibleTasks();
+                    listener.onTasksChanged(getTasks());
+                    callback.onPageLoaded(page);
+                })
+                .addOnFailureListener(listener::onTasksError);
+    }
+
+    private void listen() {
+        scopeEnd = scopeEnd(scope, System.currentTimeMillis());
+
+        tasks.clear();
+        olderPages.clear();
+        pageCursor = null;
+        hasMorePages = false;
+        loaded = false;
+        registration = FirestoreMeter.listen(scopedQuery().limit(PAGE_SIZE), this::onSnapshot);
+    }
+
+    private Query scopedQuery() {
+        return tasksRef
+                .whereLessThan("dueAt", new Timestamp(new Date(scopeEnd)))
+                .orderBy("dueAt")
+                .orderBy("createdAt");
+    }
+
+    private void onSnapshot(QuerySnapshot snapshot, Exception e) {
+        if (e != null) {
+            Log.e(TAG, "Task listener failed", e);
+            listener.onTasksError(e);
+            return;
+        }
+        if (snapshot == null) return;
+
+        List<PlannerTask> changed = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        for (DocumentChange change : snapshot.getDocumentChanges()) {
+            switch (change.getType()) {
+                case ADDED:
+                    PlannerTask added = toTask(change.getDocument());
+                    tasks.add(change.getNewIndex(), added);
+                    changed.add(added);
+                    break;
+                case MODIFIED:
+                    PlannerTask modified = toTask(change.getDocument());
+                    tasks.remove(change.getOldIndex());
+                    tasks.add(change.getNewIndex(), modified);
+                    changed.add(modified);
+                    break;
+                case REMOVED:
+                    tasks.remove(change.getOldIndex());
+                    removed.add(change.getDocument().getId());
+                    break;
+            }
+        }
+        if (searchIndex != null) {
+            searchIndex.upsertAll(changed);
+            // A full page also drops tasks pushed past the limit; only a short one means deleted.
+            if (snapshot.size() < PAGE_SIZE) {
+                searchIndex.deleteAll(removed);
+            }
+        }
+
+        if (olderPages.isEmpty()) {
+            List<DocumentSnapshot> documents = snapshot.getDocuments();
+            pageCursor = documents.isEmpty() ? null : documents.get(documents.size() - 1);
+            hasMorePages = documents.size() == PAGE_SIZE;
+        }
+
+        rebuildVisibleTasks();
+        if (!loaded) {
+            loaded = true;
+            listener.onTasksLoaded(getTasks());
+        } else {
+            listener.onTasksChanged(getTasks());
+        }
+    }
+
+    private void onQueueChanged() {
+        rebuildVisibleTasks();
+        if (loaded) {
+            listener.onTasksChanged(getTasks());
+        }
+    }
+
+    private void rebuildVisibleTasks() {
+        List<PlannerMutationLog.Mutation> pending = queue.getPending();
+        Set<String> removedIds = new HashSet<>();
+        for (PlannerMutationLog.Mutation mutation : pending) {
+            if (mutation.type == PlannerMutationLog.Type.REMOVE) {
+                removedIds.add(mutation.taskId);
+            }
+        }
+
+        visibleTasks.clear();
+        Set<String> knownIds = new HashSet<>();
+        for (PlannerTask task : tasks) {
+            knownIds.add(task.id);
+            if (!removedIds.contains(task.id)) {
+                visibleTasks.add(task);
+            }
+        }
+        for (PlannerTask task : olderPages) {
+            if (knownIds.add(task.id) && !removedIds.contains(task.id)) {
+                visibleTasks.add(task);
+            }
+        }
+        boolean merged = false;
+        for (PlannerMutationLog.Mutation mutation : pending) {
+            if (mutation.type == PlannerMutationLog.Type.ADD && !knownIds.contains(mutation.taskId)
+                    && mutation.dueAt < scopeEnd) {
+                visibleTasks.add(new PlannerTask(mutation.taskId, mutation.text, mutation.createdAt, mutation.dueAt));
+                merged = true;
+            }
+        }
+        if (merged || !olderPages.isEmpty()) {
+            Collections.sort(visibleTasks, TASK_ORDER);
+        }
+    }
+
+    static PlannerTask toTask(DocumentSnapshot document) {
+        String text = document.getString("task");
+        Timestamp createdAt = document.getTimestamp("createdAt");
+        Timestamp dueAt = document.getTimestamp("dueAt");
+        return new PlannerTask(document.getId(), text != null ? text : "",
+                createdAt != null ? createdAt.toDate().getTime() : 0,
+                dueAt != null ? dueAt.toDate().getTime() : 0);
+    }
+
+    /**
+     * The exclusive upper bound on {@code dueAt} for tasks listed in {@code scope} at
+     * {@code now}.
+     */
+    static long scopeEnd(Scope scope, long now) {
+        return scope == Scope.TODAY ? startOfDay(now, 1) : startOfNextWeek(now);
+    }
+
+    static long startOfDay(long timeMillis, int plusDays) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(timeMillis);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        calendar.add(Calendar.DAY_OF_YEAR, plusDays);
+        return calendar.getTimeInMillis();
+    }
+
+    static long startOfNextWeek(long timeMillis) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(startOfDay(timeMillis, 1));
+        while (calendar.get(Calendar.DAY_OF_WEEK) != calendar.getFirstDayOfWeek()) {
+            calendar.add(Calendar.DAY_OF_YEAR, 1);
+        }
+        return calendar.getTimeInMillis();
+    }
+}
@@ -1,38 +1,108 @@
 package com.example.smartech;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
 import android.speech.tts.TextToSpeech;
+import android.speech.tts.UtteranceProgressListener;
 import android.util.Log;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
+import java.util.function.Consumer;
 
 public class TextSpeakerHelper {
+
+    public enum Status {
+        STARTING,
+        READY,
+        LANGUAGE_UNSUPPORTED,
+        FAILED
+    }
+
+    private static final String UTTERANCE_ID = "TextSpeakerHelper";
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
     private TextToSpeech tts;
     private boolean isReady = false;
+    private Status status = Status.STARTING;
+    private final List<Consumer<Status>> pendingCallbacks = new ArrayList<>();
+    private volatile Runnable onDone;
 
     public TextSpeakerHelper(Context context) {
-        tts = new TextToSpeech(context, status -> {
-            if (status == TextToSpeech.SUCCESS) {
+        // The application context, so the engine can outlive the activity that asked for it.
+        tts = new TextToSpeech(context.getApplicationContext(), initStatus -> {
+            if (initStatus == TextToSpeech.SUCCESS) {
                 int result = tts.setLanguage(Locale.US);
                 isReady = result != TextToSpeech.LANG_MISSING_DATA && result != TextToSpeech.LANG_NOT_SUPPORTED;
                 if (!isReady) {
                     Log.e("TextSpeaker", "TTS language not supported.");
                 }
+                status = isReady ? Status.READY : Status.LANGUAGE_UNSUPPORTED;
             } else {
                 Log.e("TextSpeaker", "TTS initialization failed.");
+                status = Status.FAILED;
+            }
+            List<Consumer<Status>> callbacks = new ArrayList<>(pendingCallbacks);
+            pendingCallbacks.clear();
+            for (Consumer<Status> callback : callbacks) {
+                callback.accept(status);
             }
         });
+        tts.setOnUtteranceProgressListener(new UtteranceProgressListener() {
+            @Override public void onStart(String utteranceId) {}
+            @Override public void onError(String utteranceId) {}
+            @Override public void onDone(String utteranceId) {
+                Runnable done = onDone;
+                onDone = null;
+                if (done != null) {
+                    mainHandler.post(done);
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs {@code callback} with the outcome once the engine has started, straight away if it
+     * already has. The callback is dropped if {@code scope} is released first.
+     */
+    public void whenStarted(ResourceRegistry scope, Consumer<Status> callback) {
+        if (status != Status.STARTING) {
+            callback.accept(status);
+        } else {
+            pendingCallbacks.add(callback);
+            scope.onRelease(() -> pendingCallbacks.remove(callback));
+        }
+    }
+
+    public Status getStatus() {
+        return status;
     }
 
     public void speak(String message) {
         if (isReady && message != null && !message.isEmpty()) {
             // Stop the previous speech if any
+            onDone = null;
             tts.stop();
             tts.speak(message, TextToSpeech.QUEUE_FLUSH, null, null);
         }
     }
 
+    /**
+     * Speaks {@code message} and runs {@code onDone} on the main thread once it has been said,
+     * unless other speech interrupts it.
+     */
+    public void speak(String message, Runnable onDone) {
+        if (isReady && message != null && !message.isEmpty()) {
+            tts.stop();
+            this.onDone = onDone;
+            tts.speak(message, TextToSpeech.QUEUE_FLUSH, null, UTTERANCE_ID);
+        }
+    }
+
     public void shutdown() {
+        onDone = null;
         if (tts != null) {
             tts.stop();
             tts.shutdown();
@@ -0,0 +1,390 @@
+package com.example.smartech;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Process-wide owner of the signed in user's {@code users/{uid}} document.
+ *
+ * A single snapshot listener keeps the in-memory copy current and every change is written to a
+ * small on-disk snapshot, so screens can read the name synchronously instead of issuing their
+ * own {@code get()} calls. Emergency contacts are only held in memory here; the device copy is
+ * kept encrypted by {@link EmergencyContactStore}, on behalf of {@link ContactRepository}.
+ */
+public class UserProfileRepository {
+
+    private static final String TAG = "UserProfileRepository";
+    private static final String PREFS_NAME = "user_profile_cache";
+    private static final String KEY_SNAPSHOT = "snapshot_";
+    private static final String KEY_USERNAME_CHECKED = "username_checked_";
+
+    private static UserProfileRepository instance;
+
+    private final SharedPreferences prefs;
+    private final FirebaseFirestore db;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final List<Runnable> pendingActions = new ArrayList<>();
+
+    private ListenerRegistration registration;
+    private String userId;
+    private boolean loaded = false;
+    private boolean exists = false;
+    private Exception lastError;
+    private boolean reservingUsername = false;
+
+    private String username;
+    private String firstName;
+    private String lastName;
+    private String email;
+    private String customName;
+    private boolean firstTimeLogin = false;
+    private List<Map<String, String>> emergencyContacts = Collections.emptyList();
+    private List<String> emergencyEmails;
+
+    public interface Listener {
+        void onProfileChanged();
+    }
+
+    public static synchronized UserProfileRepository getInstance(Context context) {
+        if (instance == null) {
+            instance = new UserProfileRepository(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private UserProfileRepository(Context context) {
+        prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        db = FirebaseFirestore.getInstance();
+    }
+
+    /**
+     * Forces the on-disk snapshot file to be read. Meant to be called off the main thread during
+     * start-up so the first {@link #start} does not wait on disk.
+     */
+    public void warmUp() {
+        prefs.getAll();
+    }
+
+    /**
+     * Starts listening to the currently signed in user, if any. Safe to call from every screen.
+     */
+    public void startForCurrentUser() {
+        FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
+        if (user != null) {
+            start(user.getUid());
+        }
+    }
+
+    public void start(String uid) {
+        if (uid.equals(userId) && registration != null) return;
+
+        stop();
+        userId = uid;
+        loadFromDisk(uid);
+
+        registration = FirestoreMeter.listen(db.collection("users").document(uid), (snapshot, e) -> {
+            if (e != null) {
+                Log.e(TAG, "Profile listener failed", e);
+                lastError = e;
+                if (!loaded) {
+                    runPendingActions();
+                }
+                return;
+            }
+            if (snapshot != null) {
+                applySnapshot(snapshot);
+            }
+        });
+    }
+
+    /**
+     * Detaches the listener and forgets the in-memory profile. The on-disk snapshot is kept
+     * unless {@link #clear()} is called.
+     */
+    public void stop() {
+        if (registration != null) {
+            registration.remove();
+            registration = null;
+        }
+        userId = null;
+        loaded = false;
+        exists = false;
+        lastError = null;
+        resetFields();
+    }
+
+    /**
+     * Stops listening and deletes the on-disk snapshot, e.g. when the user signs out.
+     */
+    public void clear() {
+        String uid = userId;
+        stop();
+        if (uid != null) {
+            prefs.edit().remove(KEY_SNAPSHOT + uid).apply();
+        }
+    }
+
+    /**
+     * Runs the action immediately when a profile is already in memory, otherwise as soon as the
+     * first snapshot (or error) arrives.
+     */
+    public void whenLoaded(Runnable action) {
+        if (loaded) {
+            action.run();
+        } else {
+            pendingActions.add(action);
+        }
+    }
+
+    /** Like {@link #whenLoaded(Runnable)}, but the action is dropped if {@code scope} is released first. */
+    public void whenLoaded(ResourceRegistry scope, Runnable action) {
+        if (loaded) {
+            action.run();
+        } else {
+            pendingActions.add(action);
+            scope.onRelease(() -> pendingActions.remove(action));
+        }
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public boolean exists() {
+        return exists;
+    }
+
+    public Exception getLastError() {
+        return lastError;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public String getCustomName() {
+        return customName;
+    }
+
+    /**
+     * The name the assistant should address the user by.
+     */
+    public String getDisplayName() {
+        return customName != null ? customName : firstName;
+    }
+
+    public boolean isFirstTimeLogin() {
+        return firstTimeLogin;
+    }
+
+    public List<Map<String, String>> getEmergencyContacts() {
+        return emergencyContacts;
+    }
+
+    /**
+     * The addresses the email relay may send to on this user's behalf, or null until a snapshot
+     * has come from Firestore; the on-disk copy does not keep them.
+     */
+    public List<String> getEmergencyEmails() {
+        return emergencyEmails;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void applySnapshot(DocumentSnapshot snapshot) {
+        exists = snapshot.exists();
+        if (exists) {
+            username = snapshot.getString("username");
+            firstName = snapshot.getString("firstName");
+            lastName = snapshot.getString("lastName");
+            email = snapshot.getString("email");
+            customName = snapshot.getString("customName");
+            Boolean firstTime = snapshot.getBoolean("firstTimeLogin");
+            firstTimeLogin = firstTime != null && firstTime;
+
+            List<Map<String, String>> contacts = (List<Map<String, String>>) snapshot.get("emergencyContacts");
+            emergencyContacts = contacts != null
+                    ? Collections.unmodifiableList(new ArrayList<>(contacts))
+                    : Collections.<Map<String, String>>emptyList();
+            List<String> emails = (List<String>) snapshot.get(ContactRepository.FIELD_EMERGENCY_EMAILS);
+            emergencyEmails = emails != null
+                    ? Collections.unmodifiableList(new ArrayList<>(emails))
+                    : Collections.<String>emptyList();
+            saveToDisk();
+            if (!Boolean.TRUE.equals(snapshot.getBoolean("usernameReserved"))) {
+                reserveLegacyUsername(userId, username);
+            }
+        } else {
+            resetFields();
+            prefs.edit().remove(KEY_SNAPSHOT + userId).apply();
+        }
+
+        lastError = null;
+        markLoaded();
+    }
+
+    /**
+     * Accounts created before usernames were reserved have no {@code usernames/{name}} document,
+     * so their names could be registered again. The first signed-in launch claims it, once per
+     * account; a name that is already held by someone else or cannot be a document id is left
+     * as it is.
+     */
+    private void reserveLegacyUsername(String uid, String name) {
+        if (name == null || reservingUsername || prefs.getBoolean(KEY_USERNAME_CHECKED + uid, false)) return;
+        String normalizedName = RegistrationActivity.normalizeUsername(name);
+        if (!RegistrationActivity.isValidUsername(normalizedName)) {
+            Log.w(TAG, "Legacy username cannot be reserved: " + name);
+            prefs.edit().putBoolean(KEY_USERNAME_CHECKED + uid, true).apply();
+            return;
+        }
+
+        DocumentReference usernameRef = db.collection("usernames").document(normalizedName);
+        DocumentReference userRef = db.collection("users").document(uid);
+        Map<String, Object> reservation = new HashMap<>();
+        reservation.put("userId", uid);
+        reservingUsername = true;
+        FirestoreMeter.runTransaction(db, transaction -> {
+            DocumentSnapshot existing = transaction.get(usernameRef);
+            if (!existing.exists()) {
+                transaction.set(usernameRef, reservation);
+            } else if (!uid.equals(existing.getString("userId"))) {
+                Log.w(TAG, "Legacy username " + normalizedName + " is held by another account");
+                return null;
+            }
+            transaction.update(userRef, "usernameReserved", true);
+            return null;
+        }).addOnCompleteListener(task -> {
+            reservingUsername = false;
+            if (task.isSuccessful()) {
+                prefs.edit().putBoolean(KEY_USERNAME_CHECKED + uid, true).apply();
+            } else {
+                Log.w(TAG, "Could not reserve legacy username", task.getException());
+            }
+        });
+    }
+
+    private void markLoaded() {
+        loaded = true;
+        runPendingActions();
+        for (Listener listener : listeners) {
+            listener.onProfileChanged();
+        }
+    }
+
+    private void runPendingActions() {
+        List<Runnable> actions = new ArrayList<>(pendingActions);
+        pendingActions.clear();
+        for (Runnable action : actions) {
+            action.run();
+        }
+    }
+
+    private void resetFields() {
+        username = null;
+        firstName = null;
+        lastName = null;
+        email = null;
+        customName = null;
+        firstTimeLogin = false;
+        emergencyContacts = Collections.emptyList();
+        emergencyEmails = null;
+    }
+
+    private void loadFromDisk(String uid) {
+        String json = prefs.getString(KEY_SNAPSHOT + uid, null);
+        if (json == null) return;
+
+        try {
+            JSONObject object = new JSONObject(json);
+            username = object.optString("u", null);
+            firstName = object.optString("f", null);
+            lastName = object.optString("l", null);
+            email = object.optString("e", null);
+            customName = object.optString("c", null);
+            firstTimeLogin = object.optBoolean("t", false);
+
+            // Only snapshots written by older versions still carry the contacts.
+            List<Map<String, String>> contacts = new ArrayList<>();
+            JSONArray array = object.optJSONArray("ec");
+            if (array != null) {
+                for (int i = 0; i < array.length(); i++) {
+                    JSONObject item = array.getJSONObject(i);
+                    Map<String, String> contact = new HashMap<>();
+                    Iterator<String> keys = item.keys();
+                    while (keys.hasNext()) {
+                        String key = keys.next();
+                        contact.put(key, item.getString(key));
+                    }
+                    contacts.add(contact);
+                }
+            }
+            emergencyContacts = Collections.unmodifiableList(contacts);
+            exists = true;
+            loaded = true;
+        } catch (JSONException e) {
+            Log.w(TAG, "Discarding unreadable profile snapshot", e);
+            prefs.edit().remove(KEY_SNAPSHOT + uid).apply();
+            resetFields();
+        }
+    }
+
+    private void saveToDisk() {
+        try {
+            JSONObject object = new JSONObject();
+            object.putOpt("u", username);
+            object.putOpt("f", firstName);
+            object.putOpt("l", lastName);
+            object.putOpt("e", email);
+            object.putOpt("c", customName);
+            object.put("t", firstTimeLogin);
+            // Emergency contacts are kept encrypted by EmergencyContactStore, not in this file.
+
+            prefs.edit().putString(KEY_SNAPSHOT + userId, object.toString()).apply();
+        } catch (JSONException e) {
+            Log.w(TAG, "Could not persist profile snapshot", e);
+        }
+    }
+}
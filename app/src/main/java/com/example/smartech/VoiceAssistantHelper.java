@@ -1,6 +1,6 @@
 package com.example.smartech;
 
-import android.app.Activity;
+import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
 import android.speech.RecognitionListener;
@@ -11,28 +11,29 @@ import java.util.ArrayList;
 import java.util.Locale;
 
 public class VoiceAssistantHelper {
-    private final Activity activity;
+    private final Context context;
     private final SpeechRecognizer speechRecognizer;
     private final Intent recognizerIntent;
-    private final Listener listener;
-    private TextSpeakerHelper textSpeakerHelper;  // Reference to TextSpeakerHelper
+    private Listener listener;
+    private final TextSpeakerHelper textSpeakerHelper;  // Shared with the screen, which owns it
 
-    public VoiceAssistantHelper(Activity activity, Listener listener) {
-        this.activity = activity;
+    public VoiceAssistantHelper(Context context, TextSpeakerHelper speaker, Listener listener) {
+        // The application context, so a view model can keep the recognizer across rotations.
+        this.context = context.getApplicationContext();
         this.listener = listener;
+        this.textSpeakerHelper = speaker;
 
-        speechRecognizer = SpeechRecognizer.createSpeechRecognizer(activity);
+        speechRecognizer = SpeechRecognizer.createSpeechRecognizer(this.context);
         recognizerIntent = new Intent(RecognizerIntent.ACTION_RECOGNIZE_SPEECH);
         recognizerIntent.putExtra(RecognizerIntent.EXTRA_LANGUAGE_MODEL, RecognizerIntent.LANGUAGE_MODEL_FREE_FORM);
         recognizerIntent.putExtra(RecognizerIntent.EXTRA_LANGUAGE, Locale.getDefault());
         recognizerIntent.putExtra(RecognizerIntent.EXTRA_PROMPT, "Speak now...");
 
-        // Initialize TextSpeakerHelper for TTS
-        textSpeakerHelper = new TextSpeakerHelper(activity);
-
         speechRecognizer.setRecognitionListener(new RecognitionListener() {
             @Override public void onReadyForSpeech(Bundle params) {
-                listener.onListeningStarted();
+                if (VoiceAssistantHelper.this.listener != null) {
+                    VoiceAssistantHelper.this.listener.onListeningStarted();
+                }
             }
 
             @Override public void onBeginningOfSpeech() {}
@@ -42,20 +43,26 @@ public class VoiceAssistantHelper {
             @Override public void onBufferReceived(byte[] buffer) {}
 
             @Override public void onEndOfSpeech() {
-                listener.onListeningStopped();
+                if (VoiceAssistantHelper.this.listener != null) {
+                    VoiceAssistantHelper.this.listener.onListeningStopped();
+                }
             }
 
             @Override public void onError(int error) {
-                listener.onListeningStopped();
-                Toast.makeText(activity, "Error recognizing speech", Toast.LENGTH_SHORT).show();
+                if (VoiceAssistantHelper.this.listener != null) {
+                    VoiceAssistantHelper.this.listener.onListeningStopped();
+                }
+                Toast.makeText(VoiceAssistantHelper.this.context, "Error recognizing speech", Toast.LENGTH_SHORT).show();
             }
 
             @Override public void onResults(Bundle results) {
+                Listener current = VoiceAssistantHelper.this.listener;
+                if (current == null) return;
                 ArrayList<String> matches = results.getStringArrayList(SpeechRecognizer.RESULTS_RECOGNITION);
                 if (matches != null && !matches.isEmpty()) {
-                    listener.onCommandReceived(matches.get(0));
+                    current.onCommandReceived(matches.get(0));
                 }
-                listener.onListeningStopped();
+                current.onListeningStopped();
             }
 
             @Override public void onPartialResults(Bundle partialResults) {}
@@ -64,11 +71,24 @@ public class VoiceAssistantHelper {
         });
     }
 
+    /**
+     * Sends results to {@code listener} until {@code scope} is released, e.g. to the activity
+     * currently showing a screen whose view model owns this helper.
+     */
+    public void bind(ResourceRegistry scope, Listener listener) {
+        this.listener = listener;
+        scope.onRelease(() -> {
+            if (this.listener == listener) {
+                this.listener = null;
+            }
+        });
+    }
+
     public void startListening() {
-        if (SpeechRecognizer.isRecognitionAvailable(activity)) {
+        if (SpeechRecognizer.isRecognitionAvailable(context)) {
             speechRecognizer.startListening(recognizerIntent);
         } else {
-            Toast.makeText(activity, "Speech recognition not available", Toast.LENGTH_SHORT).show();
+            Toast.makeText(context, "Speech recognition not available", Toast.LENGTH_SHORT).show();
         }
     }
 
@@ -90,10 +110,8 @@ public class VoiceAssistantHelper {
         void onListeningStopped();
     }
 
-    // Don't forget to release resources when the helper is destroyed
+    // Don't forget to release resources when the helper is destroyed; the speaker is left running
     public void shutdown() {
-        if (textSpeakerHelper != null) {
-            textSpeakerHelper.shutdown();  // Release TTS resources
-        }
+        speechRecognizer.destroy();
     }
 }
@@ -0,0 +1,126 @@
+package com.example.smartech;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveSamplingPolicyTest {
+
+    private static final long SAMPLE_NS = 20000000L;
+    private static final long SECOND_NS = 1000000000L;
+
+    @Test
+    public void lyingStill_staysAtLowRate() {
+        AdaptiveSamplingPolicy policy = new AdaptiveSamplingPolicy(typicalBudget());
+        Random noise = new Random(7);
+        for (long t = 0; t < 60 * SECOND_NS; t += SAMPLE_NS) {
+            policy.onAccelerometer(t, 0.1f * (float) noise.nextGaussian(), 9.81f, 0.1f * (float) noise.nextGaussian());
+        }
+
+        assertEquals(AdaptiveSamplingPolicy.Mode.STILL, policy.getMode());
+        assertFalse(policy.getRate().gyroscope);
+    }
+
+    @Test
+    public void motionOnset_switchesToFullRateWithGyroscope() throws Exception {
+        AdaptiveSamplingPolicy policy = new AdaptiveSamplingPolicy(typicalBudget());
+        ShakeDetectorTest.Trace trace = ShakeDetectorTest.Trace.load("walking");
+        boolean changed = false;
+        for (int i = 0; i < trace.size(); i++) {
+            changed |= policy.onAccelerometer(trace.timestampsNs[i], trace.x[i], trace.y[i], trace.z[i]);
+        }
+
+        assertTrue(changed);
+        assertEquals(AdaptiveSamplingPolicy.Mode.ACTIVE, policy.getMode());
+        assertTrue(policy.getRate().gyroscope);
+        assertEquals(50, policy.getRate().hz(), 0.01);
+    }
+
+    @Test
+    public void quietPeriod_dropsBackToLowRate() {
+        AdaptiveSamplingPolicy policy = new AdaptiveSamplingPolicy(typicalBudget());
+        long t = 0;
+        t = feed(policy, t, 2 * SECOND_NS, 15f);
+        assertEquals(AdaptiveSamplingPolicy.Mode.ACTIVE, policy.getMode());
+
+        t = feed(policy, t, 20 * SECOND_NS, 9.80665f);
+        assertEquals(AdaptiveSamplingPolicy.Mode.ACTIVE, policy.getMode());
+
+        feed(policy, t, 15 * SECOND_NS, 9.80665f);
+        assertEquals(AdaptiveSamplingPolicy.Mode.STILL, policy.getMode());
+    }
+
+    @Test
+    public void overBudget_activeMonitoringIsReduced() {
+        // A budget smaller than even the still rate costs.
+        AdaptiveSamplingPolicy policy = new AdaptiveSamplingPolicy(new PowerBudget(0.1,
+                PowerBudget.TYPICAL_ACCELEROMETER_MA, PowerBudget.TYPICAL_GYROSCOPE_MA));
+        long t = feedAtRate(policy, 0, 3600 * SECOND_NS, 9.80665f);
+        feed(policy, t, 2 * SECOND_NS, 15f);
+
+        assertEquals(AdaptiveSamplingPolicy.Mode.ACTIVE_REDUCED, policy.getMode());
+        assertTrue(policy.getRate().gyroscope);
+        assertTrue(policy.getRate().hz() < AdaptiveSamplingPolicy.ACTIVE_RATE.hz());
+    }
+
+    @Test
+    public void projection_scalesUsageToADay() {
+        PowerBudget budget = new PowerBudget(40, 1.0, 0);
+        AdaptiveSamplingPolicy.Rate rate = AdaptiveSamplingPolicy.STILL_RATE;
+        budget.charge(rate, 3600);
+
+        double perHour = budget.currentMa(rate);
+        assertEquals(perHour, budget.getUsedMah(), 1e-9);
+        assertEquals(perHour * 24, budget.projectedDailyMah(), 1e-9);
+    }
+
+    /**
+     * Simulates a day of two hours on the move and twenty-two hours still, and reports the
+     * charge used against a fixed 50 Hz accelerometer plus gyroscope registration.
+     */
+    @Test
+    public void typicalDay_staysWithinDefaultBudget() {
+        PowerBudget budget = typicalBudget();
+        AdaptiveSamplingPolicy policy = new AdaptiveSamplingPolicy(budget);
+        long t = 0;
+        for (int hour = 0; hour < 24; hour++) {
+            boolean moving = hour >= 8 && hour < 10;
+            t = feedAtRate(policy, t, 3600 * SECOND_NS, moving ? 15f : 9.80665f);
+        }
+        policy.account(t);
+
+        PowerBudget fixed = typicalBudget();
+        fixed.charge(AdaptiveSamplingPolicy.ACTIVE_RATE, 86400);
+
+        String report = String.format("Monitoring battery cost: %.1f mAh/day adaptive, %.1f mAh/day fixed 50 Hz, budget %.0f mAh",
+                budget.getUsedMah(), fixed.getUsedMah(), budget.getDailyBudgetMah());
+        assertFalse(report, budget.isOverBudget());
+        assertTrue(report, budget.getUsedMah() < fixed.getUsedMah() / 3);
+    }
+
+    private static PowerBudget typicalBudget() {
+        return new PowerBudget(PowerBudget.DEFAULT_DAILY_BUDGET_MAH,
+                PowerBudget.TYPICAL_ACCELEROMETER_MA, PowerBudget.TYPICAL_GYROSCOPE_MA);
+    }
+
+    /** Feeds constant-magnitude samples every 20 ms. */
+    private static long feed(AdaptiveSamplingPolicy policy, long startNs, long durationNs, float magnitude) {
+        long t = startNs;
+        for (; t < startNs + durationNs; t += SAMPLE_NS) {
+            policy.onAccelerometer(t, 0f, magnitude, 0f);
+        }
+        return t;
+    }
+
+    /** Feeds samples at whatever period the policy currently asks for. */
+    private static long feedAtRate(AdaptiveSamplingPolicy policy, long startNs, long durationNs, float magnitude) {
+        long t = startNs;
+        while (t < startNs + durationNs) {
+            policy.onAccelerometer(t, 0f, magnitude, 0f);
+            t += policy.getRate().samplingPeriodUs * 1000L;
+        }
+        return t;
+    }
+}
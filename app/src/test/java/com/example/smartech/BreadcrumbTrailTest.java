@@ -0,0 +1,213 @@
+package com.example.smartech;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BreadcrumbTrailTest {
+
+    @Test
+    public void encodeValue_matchesThePolylineReferenceExample() {
+        StringBuilder out = new StringBuilder();
+        int[] values = {3850000, -12020000, 220000, -75000, 255200, -550300};
+        for (int value : values) {
+            BreadcrumbTrail.encodeValue(value, out);
+        }
+        assertEquals("_p~iF~ps|U_ulLnnqC_mqNvxq`@", out.toString());
+    }
+
+    @Test
+    public void encode_roundTripsThroughAPolylineDecoder() {
+        BreadcrumbTrail trail = new BreadcrumbTrail(16, 0);
+        double[] lat = {51.50135, 51.50142, 51.50161, 51.50158, 51.50203};
+        double[] lon = {-0.14189, -0.14122, -0.14065, -0.13998, -0.13901};
+        long[] time = {0, 15000, 31000, 46000, 75000};
+        for (int i = 0; i < lat.length; i++) {
+            assertTrue(trail.add(lat[i], lon[i], time[i]));
+        }
+
+        String[] parts = trail.encode(new StringBuilder()).toString().split(" ");
+        double[][] decoded = decodePolyline(parts[0]);
+        String[] secondsAgo = parts[1].split(",");
+
+        assertEquals(lat.length, decoded.length);
+        for (int i = 0; i < lat.length; i++) {
+            assertEquals(lat[i], decoded[i][0], 1e-6);
+            assertEquals(lon[i], decoded[i][1], 1e-6);
+            assertEquals((time[lat.length - 1] - time[i]) / 1000, Long.parseLong(secondsAgo[i]));
+        }
+    }
+
+    @Test
+    public void fullRing_keepsOnlyTheNewestFixes() {
+        BreadcrumbTrail trail = new BreadcrumbTrail(8, 0);
+        for (int i = 0; i < 20; i++) {
+            trail.add(10 + i * 0.001, 20 - i * 0.002, i * 1000L);
+        }
+
+        double[] lat = new double[8];
+        double[] lon = new double[8];
+        long[] time = new long[8];
+        trail.decode(lat, lon, time);
+
+        assertEquals(8, trail.size());
+        for (int i = 0; i < 8; i++) {
+            assertEquals(10 + (12 + i) * 0.001, lat[i], 1e-6);
+            assertEquals(20 - (12 + i) * 0.002, lon[i], 1e-6);
+            assertEquals((12 + i) * 1000L, time[i]);
+        }
+    }
+
+    @Test
+    public void add_skipsFixesTooCloseOrOutOfOrder() {
+        BreadcrumbTrail trail = new BreadcrumbTrail(8, 15000);
+        assertTrue(trail.add(1, 2, 100000));
+        assertFalse(trail.add(1.0001, 2, 110000));
+        assertFalse(trail.add(1.0001, 2, 90000));
+        assertTrue(trail.add(1.0001, 2, 115000));
+        assertEquals(2, trail.size());
+    }
+
+    @Test
+    public void jumpTooLargeForADelta_restartsTheTrail() {
+        BreadcrumbTrail trail = new BreadcrumbTrail(8, 0);
+        trail.add(1, 2, 0);
+        trail.add(1.001, 2.001, 1000);
+        trail.add(5, 2.001, 2000);
+
+        assertEquals(1, trail.size());
+        assertEquals(2000, trail.getNewestTimeMs());
+    }
+
+    @Test
+    public void dropOlderThan_leavesOnlyRecentFixes() {
+        BreadcrumbTrail trail = new BreadcrumbTrail(8, 0);
+        for (int i = 0; i < 5; i++) {
+            trail.add(1 + i * 0.001, 2, i * 60000L);
+        }
+
+        trail.dropOlderThan(180000);
+        double[] lat = new double[2];
+        trail.decode(lat, new double[2], new long[2]);
+        assertEquals(2, trail.size());
+        assertEquals(1.003, lat[0], 1e-6);
+
+        trail.dropOlderThan(Long.MAX_VALUE);
+        assertEquals(0, trail.size());
+        assertTrue(trail.add(1.01, 2, 300000));
+        assertEquals(1, trail.size());
+    }
+
+    @Test
+    public void copy_isIndependentOfTheOriginal() {
+        BreadcrumbTrail trail = new BreadcrumbTrail(4, 0);
+        trail.add(1, 2, 0);
+        trail.add(1.001, 2.001, 1000);
+        BreadcrumbTrail copy = trail.copy();
+        trail.add(1.002, 2.002, 2000);
+
+        assertEquals(2, copy.size());
+        assertEquals(1000, copy.getNewestTimeMs());
+    }
+
+    /**
+     * A day of fixes every fifteen seconds: the ring never grows, recording allocates nothing,
+     * and the payload is compared with spelling every point out in the alert's "Lat/Long" form.
+     */
+    @Test
+    public void benchmark_constantMemoryAndCost() {
+        int capacity = 64;
+        BreadcrumbTrail trail = new BreadcrumbTrail(capacity, 15000);
+        Random random = new Random(7);
+        int fixes = 24 * 60 * 4;
+        double[] lat = new double[fixes];
+        double[] lon = new double[fixes];
+        lat[0] = 48.85837;
+        lon[0] = 2.29448;
+        for (int i = 1; i < fixes; i++) {
+            // Walking pace: up to about twenty metres between fixes.
+            lat[i] = lat[i - 1] + (random.nextDouble() - 0.5) * 0.0004;
+            lon[i] = lon[i - 1] + (random.nextDouble() - 0.5) * 0.0004;
+        }
+
+        for (int warmup = 0; warmup < 20; warmup++) {
+            trail.clear();
+            for (int i = 0; i < fixes; i++) {
+                trail.add(lat[i], lon[i], i * 15000L);
+            }
+        }
+
+        trail.clear();
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < fixes; i++) {
+            trail.add(lat[i], lon[i], i * 15000L);
+        }
+        long addNs = (System.nanoTime() - start) / fixes;
+        long allocated = allocatedBytes() - allocatedBefore;
+
+        StringBuilder payload = new StringBuilder(1024);
+        start = System.nanoTime();
+        trail.encode(payload);
+        long encodeUs = (System.nanoTime() - start) / 1000;
+
+        StringBuilder naive = new StringBuilder();
+        for (int i = fixes - capacity; i < fixes; i++) {
+            naive.append(String.format(Locale.US, "Lat: %.6f, Long: %.6f\n", lat[i], lon[i]));
+        }
+
+        int ringBytes = capacity * (2 + 2 + 4);
+        String report = String.format(Locale.US,
+                "Trail: %d fixes, %d kept in %d bytes, %d ns per add, %d bytes allocated while recording, "
+                        + "encoded in %d us to %d chars (%d as Lat/Long text)",
+                fixes, trail.size(), ringBytes, addNs, Math.max(allocated, 0), encodeUs,
+                payload.length(), naive.length());
+
+        assertEquals(report, capacity, trail.size());
+        if (allocatedBefore >= 0) {
+            assertTrue(report, allocated < 1024);
+        }
+        assertTrue(report, payload.length() * 2 < naive.length());
+        double[] decoded = decodePolyline(payload.substring(0, payload.indexOf(" ")))[capacity - 1];
+        assertEquals(lat[fixes - 1], decoded[0], 1e-5);
+        assertEquals(lon[fixes - 1], decoded[1], 1e-5);
+    }
+
+    /** Bytes allocated by this thread so far, or -1 where the JVM cannot tell. */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static double[][] decodePolyline(String encoded) {
+        java.util.List<double[]> points = new java.util.ArrayList<>();
+        int index = 0;
+        int lat = 0;
+        int lon = 0;
+        while (index < encoded.length()) {
+            int[] value = new int[2];
+            for (int k = 0; k < 2; k++) {
+                int result = 0;
+                int shift = 0;
+                int b;
+                do {
+                    b = encoded.charAt(index++) - 63;
+                    result |= (b & 0x1f) << shift;
+                    shift += 5;
+                } while (b >= 0x20);
+                value[k] = (result & 1) != 0 ? ~(result >> 1) : result >> 1;
+            }
+            lat += value[0];
+            lon += value[1];
+            points.add(new double[]{lat / 1e5, lon / 1e5});
+        }
+        return points.toArray(new double[0][]);
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.smartech;
+
+import org.junit.Test;
+
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+import static org.junit.Assert.*;
+
+/**
+ * Uses a software AES key in place of the keystore one.
+ */
+public class ContactCipherTest {
+
+    private static final String CONTACTS =
+            "[{\"firstName\":\"Ann\",\"lastName\":\"Lee\",\"email\":\"ann@example.com\",\"phone\":\"+15550001\"}]";
+
+    @Test
+    public void sealedRecord_opensForItsOwner() throws Exception {
+        ContactCipher cipher = new ContactCipher(newKey());
+
+        byte[] sealed = cipher.seal("uid-1", CONTACTS);
+
+        assertEquals(CONTACTS, cipher.open("uid-1", sealed));
+        assertFalse(new String(sealed, "ISO-8859-1").contains("ann@example.com"));
+    }
+
+    @Test
+    public void sealingTwice_usesFreshIvs() throws Exception {
+        ContactCipher cipher = new ContactCipher(newKey());
+
+        assertFalse(Arrays.equals(cipher.seal("uid-1", CONTACTS), cipher.seal("uid-1", CONTACTS)));
+    }
+
+    @Test
+    public void recordOfAnotherUser_doesNotOpen() throws Exception {
+        ContactCipher cipher = new ContactCipher(newKey());
+        assertRejected(cipher, "uid-2", cipher.seal("uid-1", CONTACTS));
+    }
+
+    @Test
+    public void alteredRecord_doesNotOpen() throws Exception {
+        ContactCipher cipher = new ContactCipher(newKey());
+        byte[] sealed = cipher.seal("uid-1", CONTACTS);
+        sealed[sealed.length / 2] ^= 1;
+        assertRejected(cipher, "uid-1", sealed);
+    }
+
+    @Test
+    public void recordFromAnotherKey_doesNotOpen() throws Exception {
+        byte[] sealed = new ContactCipher(newKey()).seal("uid-1", CONTACTS);
+        assertRejected(new ContactCipher(newKey()), "uid-1", sealed);
+    }
+
+    @Test
+    public void truncatedRecord_doesNotOpen() throws Exception {
+        assertRejected(new ContactCipher(newKey()), "uid-1", new byte[]{1, 2, 3});
+    }
+
+    private static void assertRejected(ContactCipher cipher, String owner, byte[] sealed) {
+        try {
+            cipher.open(owner, sealed);
+            fail("record should not open");
+        } catch (GeneralSecurityException expected) {
+            // Tampered, foreign, or malformed.
+        }
+    }
+
+    private static SecretKey newKey() throws Exception {
+        KeyGenerator generator = KeyGenerator.getInstance("AES");
+        generator.init(256);
+        return generator.generateKey();
+    }
+}
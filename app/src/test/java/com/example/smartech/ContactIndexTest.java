@@ -0,0 +1,64 @@
+package com.example.smartech;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ContactIndexTest {
+
+    private final ContactIndex index = new ContactIndex(Arrays.asList(
+            new ContactIndex.Contact("Alex", "Doe", "alex@example.com"),
+            new ContactIndex.Contact("Maria", "Lopez", "maria@example.com"),
+            new ContactIndex.Contact("Alex", "Kim", "akim@example.com"),
+            new ContactIndex.Contact("Jean-Luc", "O'Neil", "jl@example.com")));
+
+    @Test
+    public void find_prefersFullNameOverFirstName() {
+        List<ContactIndex.Contact> matches = index.find("Alex Kim");
+        assertEquals(1, matches.size());
+        assertEquals("akim@example.com", matches.get(0).email);
+    }
+
+    @Test
+    public void find_firstNameCanBeAmbiguous() {
+        assertEquals(2, index.find("alex").size());
+    }
+
+    @Test
+    public void find_fallsBackToLastName() {
+        List<ContactIndex.Contact> matches = index.find("lopez");
+        assertEquals(1, matches.size());
+        assertEquals("Maria", matches.get(0).firstName);
+    }
+
+    @Test
+    public void find_ignoresCasePunctuationAndPossessive() {
+        assertEquals(1, index.find("my  MARIA").size());
+        assertEquals(1, index.find("jeanluc oneil").size());
+        assertEquals(1, index.find("Jean-Luc O'Neil").size());
+    }
+
+    @Test
+    public void find_unknownOrBlankName_returnsNothing() {
+        assertTrue(index.find("bob").isEmpty());
+        assertTrue(index.find("  ").isEmpty());
+    }
+
+    @Test
+    public void fromMaps_readsStoredProfileShape() {
+        Map<String, String> stored = new HashMap<>();
+        stored.put("firstName", "Sam");
+        stored.put("lastName", "Lee");
+        stored.put("email", "sam@example.com");
+
+        ContactIndex fromProfile = ContactIndex.fromMaps(Arrays.asList(stored));
+
+        assertEquals("Sam Lee", fromProfile.getContacts().get(0).getFullName());
+        assertEquals(stored, fromProfile.getContacts().get(0).toMap());
+    }
+}
@@ -0,0 +1,538 @@
+package com.example.smartech;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.speech.tts.TextToSpeech;
+
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.Timestamp;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.EventListener;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.SnapshotMetadata;
+import com.google.firebase.firestore.Transaction;
+import com.google.firebase.firestore.WriteBatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.shadows.ShadowTextToSpeech;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Runs the real screens and repositories against a fake Firestore and checks each flow's
+ * metered traffic against its declared budget.
+ *
+ * The fake counts what the server would bill on its own, so a read or write that bypasses the
+ * meter fails here as well as one that goes over budget.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DataAccessBudgetTest {
+
+    private static final String USER_ID = "user-1";
+
+    private final DataAccessMeter meter = DataAccessMeter.getInstance();
+    private FakeFirestore firestore;
+    private MockedStatic<FirebaseFirestore> firestoreStatic;
+    private MockedStatic<FirebaseAuth> authStatic;
+
+    @Before
+    public void setUp() throws Exception {
+        ScreenLeakTest.initializeServices();
+        resetSingletons();
+        meter.reset();
+
+        firestore = new FakeFirestore();
+        firestoreStatic = mockStatic(FirebaseFirestore.class);
+        firestoreStatic.when(FirebaseFirestore::getInstance).thenReturn(firestore.db);
+
+        FirebaseUser user = mock(FirebaseUser.class);
+        Mockito.when(user.getUid()).thenReturn(USER_ID);
+        FirebaseAuth auth = mock(FirebaseAuth.class);
+        Mockito.when(auth.getCurrentUser()).thenReturn(user);
+        authStatic = mockStatic(FirebaseAuth.class);
+        authStatic.when(FirebaseAuth::getInstance).thenReturn(auth);
+
+        // A returning user whose old Realtime Database contacts were merged long ago.
+        RuntimeEnvironment.getApplication().getSharedPreferences("contacts", 0).edit()
+                .putBoolean("legacy_migrated_" + USER_ID, true).commit();
+        firestore.documents.put("users/" + USER_ID, profile());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        firestoreStatic.close();
+        authStatic.close();
+        resetSingletons();
+    }
+
+    @Test
+    public void greeting_isServedFromTheAttachedProfileListener() {
+        FirestoreMeter.beginFlow(DataAccessMeter.Flow.LAUNCH);
+        UserProfileRepository.getInstance(RuntimeEnvironment.getApplication()).start(USER_ID);
+        idle();
+
+        ShadowTextToSpeech.addLanguageAvailability(Locale.US);
+        ActivityController<HomeActivity> home = Robolectric.buildActivity(HomeActivity.class).setup();
+        TextToSpeech tts = ShadowTextToSpeech.getLastTextToSpeechInstance();
+        shadowOf(tts).getOnInitListener().onInit(TextToSpeech.SUCCESS);
+        idle();
+
+        assertEquals("Hello, Bench! What can I do for you?", shadowOf(tts).getLastSpokenText());
+        assertEquals(1, meter.getUsage(DataAccessMeter.Flow.LAUNCH).reads);
+        assertEquals(0, meter.getUsage(DataAccessMeter.Flow.GREET).reads);
+        assertWithinBudget(DataAccessMeter.Flow.LAUNCH);
+        assertWithinBudget(DataAccessMeter.Flow.GREET);
+        assertEverythingMetered();
+
+        home.pause().stop().destroy();
+        idle();
+    }
+
+    @Test
+    public void compoundAddTask_isOneBatchWithoutReads() throws Exception {
+        ActivityController<DailyPlannerActivity> planner = Robolectric.buildActivity(DailyPlannerActivity.class).setup();
+        // The task store's listener, then the search index's tail once its database is open.
+        for (int i = 0; i < 200 && firestore.queryListeners.size() < 2; i++) {
+            Thread.sleep(5);
+            idle();
+        }
+        assertEquals(2, firestore.queryListeners.size());
+
+        planner.get().handleVoiceCommand("add task buy milk and add task call mom");
+        shadowOf(Looper.getMainLooper()).idleFor(1, TimeUnit.SECONDS);
+
+        DataAccessMeter.Usage usage = meter.getUsage(DataAccessMeter.Flow.ADD_TASK);
+        assertEquals(2, usage.writes);
+        assertEquals(0, usage.reads);
+        assertEquals(2, ScreenViewModel.of(planner.get(), DailyPlannerActivity.State.class).taskStore.getTasks().size());
+        assertWithinBudget(DataAccessMeter.Flow.ADD_TASK);
+        assertEverythingMetered();
+
+        planner.pause().stop().destroy();
+        idle();
+    }
+
+    @Test
+    public void removeByNumber_isMeteredAsARemove() throws Exception {
+        Map<String, Object> task = new HashMap<>();
+        task.put("task", "buy milk");
+        task.put("createdAt", new Timestamp(new Date(System.currentTimeMillis())));
+        task.put("dueAt", new Timestamp(new Date(TaskStore.startOfDay(System.currentTimeMillis(), 0))));
+        firestore.documents.put("daily_plans/" + USER_ID + "/tasks/t1", task);
+
+        ActivityController<DailyPlannerActivity> planner = Robolectric.buildActivity(DailyPlannerActivity.class).setup();
+        for (int i = 0; i < 200 && firestore.queryListeners.size() < 2; i++) {
+            Thread.sleep(5);
+            idle();
+        }
+        assertEquals(1, ScreenViewModel.of(planner.get(), DailyPlannerActivity.State.class).taskStore.getTasks().size());
+
+        planner.get().handleVoiceCommand("remove task 1");
+        shadowOf(Looper.getMainLooper()).idleFor(1, TimeUnit.SECONDS);
+
+        assertEquals(1, meter.getUsage(DataAccessMeter.Flow.REMOVE_TASK).writes);
+        assertEquals(0, meter.getUsage(DataAccessMeter.Flow.ADD_TASK).writes);
+        assertFalse(firestore.documents.containsKey("daily_plans/" + USER_ID + "/tasks/t1"));
+        assertWithinBudget(DataAccessMeter.Flow.REMOVE_TASK);
+        assertEverythingMetered();
+
+        planner.pause().stop().destroy();
+        idle();
+    }
+
+    @Test
+    public void retriedTransaction_isMeteredOnce() {
+        firestore.documents.get("users/" + USER_ID).remove("usernameReserved");
+        firestore.transactionAttempts = 2;
+
+        FirestoreMeter.beginFlow(DataAccessMeter.Flow.LAUNCH);
+        UserProfileRepository.getInstance(RuntimeEnvironment.getApplication()).start(USER_ID);
+        idle();
+
+        DataAccessMeter.Usage launch = meter.getUsage(DataAccessMeter.Flow.LAUNCH);
+        assertEquals("the profile snapshot and the reservation check", 2, launch.reads);
+        assertEquals("the reservation and the profile flag", 2, launch.writes);
+        assertEquals(USER_ID, firestore.documents.get("usernames/bench").get("userId"));
+        assertEquals(Boolean.TRUE, firestore.documents.get("users/" + USER_ID).get("usernameReserved"));
+    }
+
+    private void assertWithinBudget(DataAccessMeter.Flow flow) {
+        assertEquals(flow + ": " + meter.getUsage(flow), Collections.<String>emptyList(), meter.checkBudget(flow));
+    }
+
+    private void assertEverythingMetered() {
+        int reads = 0;
+        int writes = 0;
+        for (DataAccessMeter.Flow flow : DataAccessMeter.Flow.values()) {
+            reads += meter.getUsage(flow).reads;
+            writes += meter.getUsage(flow).writes;
+        }
+        assertEquals("billed reads", firestore.reads, reads);
+        assertEquals("billed writes", firestore.writes, writes);
+    }
+
+    private static Map<String, Object> profile() {
+        Map<String, String> contact = new HashMap<>();
+        contact.put("firstName", "Alex");
+        contact.put("lastName", "Doe");
+        contact.put("email", "alex@example.com");
+
+        Map<String, Object> user = new HashMap<>();
+        user.put("userId", USER_ID);
+        user.put("username", "bench");
+        user.put("firstName", "Bench");
+        user.put("lastName", "User");
+        user.put("email", "bench@example.com");
+        user.put("firstTimeLogin", false);
+        user.put("usernameReserved", true);
+        user.put("emergencyContacts", Collections.singletonList(contact));
+        user.put("emergencyEmails", Collections.singletonList("alex@example.com"));
+        return user;
+    }
+
+    private static void idle() {
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    private static void resetSingletons() throws Exception {
+        for (Class<?> type : Arrays.asList(UserProfileRepository.class, ContactRepository.class, PlannerMutationQueue.class)) {
+            Field instance = type.getDeclaredField("instance");
+            instance.setAccessible(true);
+            instance.set(null, null);
+        }
+    }
+
+    /**
+     * Just enough of Firestore for these flows. Documents live in a map; listeners get their
+     * first snapshot from the server and local batch writes echoed back as pending adds.
+     */
+    private static class FakeFirestore {
+
+        final Map<String, Map<String, Object>> documents = new HashMap<>();
+        final List<QueryListener> queryListeners = new ArrayList<>();
+        final FirebaseFirestore db = mock(FirebaseFirestore.class, this::onFirestore);
+        int transactionAttempts = 1;
+        int reads;
+        int writes;
+
+        private final Map<String, DocumentReference> references = new HashMap<>();
+        private final Handler main = new Handler(Looper.getMainLooper());
+        private int nextId;
+
+        private static class QueryListener {
+            final String path;
+            final EventListener<QuerySnapshot> listener;
+            int size;
+
+            QueryListener(String path, EventListener<QuerySnapshot> listener) {
+                this.path = path;
+                this.listener = listener;
+            }
+        }
+
+        private Object onFirestore(InvocationOnMock invocation) throws Throwable {
+            switch (invocation.getMethod().getName()) {
+                case "collection":
+                    return collection(invocation.getArgument(0));
+                case "batch":
+                    return batch();
+                case "runTransaction":
+                    return runTransaction(lastArgument(invocation));
+                default:
+                    return Mockito.RETURNS_DEFAULTS.answer(invocation);
+            }
+        }
+
+        private CollectionReference collection(String path) {
+            return mock(CollectionReference.class, invocation -> {
+                switch (invocation.getMethod().getName()) {
+                    case "getPath":
+                        return path;
+                    case "document":
+                        return document(path + "/" + (invocation.getArguments().length > 0
+                                ? invocation.getArgument(0) : "generated" + (++nextId)));
+                    case "get":
+                        List<DocumentSnapshot> found = documentsIn(path, false);
+                        reads += Math.max(1, found.size());
+                        return Tasks.forResult(querySnapshot(added(found, 0), found));
+                    case "addSnapshotListener":
+                        return listen(path, lastArgument(invocation));
+                    default:
+                        // where(), orderBy(), limit() and the like narrow nothing here.
+                        return self(invocation);
+                }
+            });
+        }
+
+        private DocumentReference document(String path) {
+            DocumentReference existing = references.get(path);
+            if (existing != null) return existing;
+
+            DocumentReference reference = mock(DocumentReference.class, invocation -> {
+                switch (invocation.getMethod().getName()) {
+                    case "getPath":
+                        return path;
+                    case "getId":
+                        return path.substring(path.lastIndexOf('/') + 1);
+                    case "collection":
+                        return collection(path + "/" + invocation.getArgument(0));
+                    case "get":
+                        reads++;
+                        return Tasks.forResult(snapshot(DocumentSnapshot.class, path, false));
+                    case "addSnapshotListener":
+                        EventListener<DocumentSnapshot> listener = lastArgument(invocation);
+                        main.post(() -> {
+                            reads++;
+                            listener.onEvent(snapshot(DocumentSnapshot.class, path, false), null);
+                        });
+                        return mock(ListenerRegistration.class);
+                    case "update":
+                    case "set":
+                    case "delete":
+                        writes++;
+                        return Tasks.forResult(null);
+                    default:
+                        return self(invocation);
+                }
+            });
+            references.put(path, reference);
+            return reference;
+        }
+
+        private ListenerRegistration listen(String path, EventListener<QuerySnapshot> listener) {
+            QueryListener registered = new QueryListener(path, listener);
+            queryListeners.add(registered);
+            main.post(() -> {
+                List<DocumentSnapshot> found = documentsIn(path, false);
+                reads += found.size();
+                registered.size = found.size();
+                listener.onEvent(querySnapshot(added(found, 0), found), null);
+            });
+            return mock(ListenerRegistration.class, invocation -> {
+                if (invocation.getMethod().getName().equals("remove")) {
+                    queryListeners.remove(registered);
+                }
+                return null;
+            });
+        }
+
+        private WriteBatch batch() {
+            List<String> written = new ArrayList<>();
+            return mock(WriteBatch.class, invocation -> {
+                switch (invocation.getMethod().getName()) {
+                    case "set":
+                        String path = ((DocumentReference) invocation.getArgument(0)).getPath();
+                        documents.put(path, new HashMap<>(invocation.<Map<String, Object>>getArgument(1)));
+                        written.add(path);
+                        return invocation.getMock();
+                    case "delete":
+                        path = ((DocumentReference) invocation.getArgument(0)).getPath();
+                        documents.remove(path);
+                        written.add(path);
+                        return invocation.getMock();
+                    case "update":
+                        written.add(((DocumentReference) invocation.getArgument(0)).getPath());
+                        return invocation.getMock();
+                    case "commit":
+                        writes += written.size();
+                        echo(written);
+                        return Tasks.forResult(null);
+                    default:
+                        return self(invocation);
+                }
+            });
+        }
+
+        private Object runTransaction(Transaction.Function<?> function) throws Exception {
+            List<Runnable> staged = new ArrayList<>();
+            Transaction transaction = mock(Transaction.class, invocation -> {
+                String path = ((DocumentReference) invocation.getArgument(0)).getPath();
+                switch (invocation.getMethod().getName()) {
+                    case "get":
+                        return snapshot(DocumentSnapshot.class, path, false);
+                    case "set":
+                        Map<String, Object> data = new HashMap<>(invocation.<Map<String, Object>>getArgument(1));
+                        staged.add(() -> documents.put(path, data));
+                        return invocation.getMock();
+                    case "update":
+                        String field = invocation.getArgument(1);
+                        Object value = invocation.getArgument(2);
+                        staged.add(() -> documents.get(path).put(field, value));
+                        return invocation.getMock();
+                    default:
+                        return self(invocation);
+                }
+            });
+            Object result = null;
+            // Firestore reruns the function when a document it read changed in the meantime;
+            // only the attempt that commits is applied and billed.
+            for (int attempt = 0; attempt < transactionAttempts; attempt++) {
+                staged.clear();
+                result = function.apply(transaction);
+            }
+            for (Runnable write : staged) {
+                write.run();
+            }
+            reads++;
+            writes += staged.size();
+            return Tasks.forResult(result);
+        }
+
+        /** Local writes reach listeners straight away, marked as not yet on the server. */
+        private void echo(List<String> paths) {
+            for (QueryListener registered : new ArrayList<>(queryListeners)) {
+                List<DocumentSnapshot> changed = new ArrayList<>();
+                for (String path : paths) {
+                    if (documents.containsKey(path) && path.startsWith(registered.path + "/")) {
+                        changed.add(snapshot(QueryDocumentSnapshot.class, path, true));
+                    }
+                }
+                if (changed.isEmpty()) continue;
+                List<DocumentChange> changes = added(changed, registered.size);
+                registered.size += changed.size();
+                main.post(() -> registered.listener.onEvent(
+                        querySnapshot(changes, documentsIn(registered.path, true)), null));
+            }
+        }
+
+        private List<DocumentSnapshot> documentsIn(String collectionPath, boolean pendingWrites) {
+            List<String> paths = new ArrayList<>();
+            for (String path : documents.keySet()) {
+                if (path.startsWith(collectionPath + "/") && path.indexOf('/', collectionPath.length() + 1) < 0) {
+                    paths.add(path);
+                }
+            }
+            Collections.sort(paths);
+            List<DocumentSnapshot> found = new ArrayList<>();
+            for (String path : paths) {
+                found.add(snapshot(QueryDocumentSnapshot.class, path, pendingWrites));
+            }
+            return found;
+        }
+
+        private List<DocumentChange> added(List<DocumentSnapshot> snapshots, int firstIndex) {
+            List<DocumentChange> changes = new ArrayList<>();
+            for (int i = 0; i < snapshots.size(); i++) {
+                DocumentSnapshot document = snapshots.get(i);
+                int newIndex = firstIndex + i;
+                changes.add(mock(DocumentChange.class, invocation -> {
+                    switch (invocation.getMethod().getName()) {
+                        case "getType":
+                            return DocumentChange.Type.ADDED;
+                        case "getDocument":
+                            return document;
+                        case "getNewIndex":
+                            return newIndex;
+                        case "getOldIndex":
+                            return -1;
+                        default:
+                            return Mockito.RETURNS_DEFAULTS.answer(invocation);
+                    }
+                }));
+            }
+            return changes;
+        }
+
+        private QuerySnapshot querySnapshot(List<DocumentChange> changes, List<DocumentSnapshot> found) {
+            SnapshotMetadata metadata = metadata(false);
+            return mock(QuerySnapshot.class, invocation -> {
+                switch (invocation.getMethod().getName()) {
+                    case "getMetadata":
+                        return metadata;
+                    case "getDocumentChanges":
+                        return changes;
+                    case "getDocuments":
+                        return found;
+                    case "size":
+                        return found.size();
+                    case "isEmpty":
+                        return found.isEmpty();
+                    default:
+                        return Mockito.RETURNS_DEFAULTS.answer(invocation);
+                }
+            });
+        }
+
+        private <T extends DocumentSnapshot> T snapshot(Class<T> type, String path, boolean pendingWrites) {
+            Map<String, Object> data = documents.containsKey(path) ? new HashMap<>(documents.get(path)) : null;
+            SnapshotMetadata metadata = metadata(pendingWrites);
+            return mock(type, invocation -> {
+                switch (invocation.getMethod().getName()) {
+                    case "exists":
+                        return data != null;
+                    case "getId":
+                        return path.substring(path.lastIndexOf('/') + 1);
+                    case "getReference":
+                        return document(path);
+                    case "getMetadata":
+                        return metadata;
+                    case "getData":
+                        return data;
+                    case "get":
+                    case "getString":
+                    case "getBoolean":
+                    case "getTimestamp":
+                        return data != null ? data.get(invocation.<String>getArgument(0)) : null;
+                    default:
+                        return Mockito.RETURNS_DEFAULTS.answer(invocation);
+                }
+            });
+        }
+
+        private static SnapshotMetadata metadata(boolean pendingWrites) {
+            return mock(SnapshotMetadata.class, invocation -> {
+                switch (invocation.getMethod().getName()) {
+                    case "hasPendingWrites":
+                        return pendingWrites;
+                    case "isFromCache":
+                        return false;
+                    default:
+                        return Mockito.RETURNS_DEFAULTS.answer(invocation);
+                }
+            });
+        }
+
+        private static <T> T lastArgument(InvocationOnMock invocation) {
+            return invocation.getArgument(invocation.getArguments().length - 1);
+        }
+
+        private static Object self(InvocationOnMock invocation) throws Throwable {
+            if (invocation.getMethod().getReturnType().isInstance(invocation.getMock())) {
+                return invocation.getMock();
+            }
+            return Mockito.RETURNS_DEFAULTS.answer(invocation);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.smartech;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class DataAccessMeterTest {
+
+    private DataAccessMeter meter;
+
+    @Before
+    public void setUp() {
+        meter = new DataAccessMeter();
+    }
+
+    @Test
+    public void usage_isAttributedToCurrentFlow() {
+        meter.beginFlow(DataAccessMeter.Flow.LAUNCH);
+        meter.recordListenerEvent(1, 200);
+        meter.beginFlow(DataAccessMeter.Flow.GREET);
+        meter.recordReads(2, 100);
+
+        DataAccessMeter.Usage launch = meter.getUsage(DataAccessMeter.Flow.LAUNCH);
+        assertEquals(1, launch.reads);
+        assertEquals(1, launch.listenerEvents);
+        assertEquals(200, launch.bytes);
+        assertEquals(2, meter.getUsage(DataAccessMeter.Flow.GREET).reads);
+    }
+
+    @Test
+    public void beginFlow_restartsCountersAndReturnsPreviousUsage() {
+        meter.beginFlow(DataAccessMeter.Flow.ADD_TASK);
+        meter.recordWrites(3, 300);
+
+        DataAccessMeter.Usage previous = meter.beginFlow(DataAccessMeter.Flow.ADD_TASK);
+
+        assertEquals(3, previous.writes);
+        assertEquals(0, meter.getUsage(DataAccessMeter.Flow.ADD_TASK).writes);
+    }
+
+    @Test
+    public void checkBudget_reportsEachExceededLimit() {
+        meter.beginFlow(DataAccessMeter.Flow.GREET);
+        meter.recordReads(2, 0);
+        meter.recordWrites(1, 0);
+
+        List<String> violations = meter.checkBudget(DataAccessMeter.Flow.GREET);
+
+        assertEquals(2, violations.size());
+        assertTrue(violations.get(0).contains("reads"));
+        assertTrue(violations.get(1).contains("writes"));
+    }
+
+    @Test
+    public void estimateDocumentSize_followsFirestoreSizeRules() {
+        Map<String, Object> data = new HashMap<>();
+        data.put("task", "buy milk");
+        data.put("done", true);
+
+        // "task"+1 + "buy milk"+1 + "done"+1 + 1, plus the path and per-document overhead.
+        long expected = 5 + 9 + 5 + 1 + "daily_plans/u/tasks/t".length() + 1 + DataAccessMeter.DOCUMENT_OVERHEAD_BYTES;
+        assertEquals(expected, DataAccessMeter.estimateDocumentSize("daily_plans/u/tasks/t", data));
+    }
+
+    @Test
+    public void everyUserFlow_declaresABudget() {
+        for (DataAccessMeter.Flow flow : DataAccessMeter.Flow.values()) {
+            if (flow == DataAccessMeter.Flow.OTHER) continue;
+            assertNotNull(flow + " has no budget", DataAccessMeter.getBudget(flow));
+        }
+    }
+}
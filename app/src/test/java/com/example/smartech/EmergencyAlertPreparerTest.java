@@ -0,0 +1,147 @@
+package com.example.smartech;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+
+public class EmergencyAlertPreparerTest {
+
+    private static final List<ContactIndex.Contact> CONTACTS = Collections.singletonList(
+            new ContactIndex.Contact("Ann", "Lee", "ann@example.com", "+15550001"));
+
+    @Test
+    public void expiry_afterPreparation_firesWithoutWaiting() {
+        List<Consumer<List<ContactIndex.Contact>>> pending = new ArrayList<>();
+        FakeLocation location = new FakeLocation();
+        EmergencyAlertPreparer preparer = new EmergencyAlertPreparer(pending::add, location);
+
+        preparer.start();
+        // Both arrive while the countdown is still running.
+        pending.get(0).accept(CONTACTS);
+        location.pendingFix.accept(fix(1.0, 2.0));
+        AtomicReference<EmergencyAlertPreparer.Alert> fired = new AtomicReference<>();
+        preparer.fire(fired::set);
+
+        assertNotNull("fired before fire() returned, with nothing left to wait for", fired.get());
+        assertEquals(CONTACTS, fired.get().contacts);
+        assertTrue(fired.get().freshLocation);
+        assertTrue(fired.get().getBody().contains("Lat: 1.000000, Long: 2.000000"));
+    }
+
+    @Test
+    public void slowLocationFix_isNotWaitedFor() {
+        FakeLocation location = new FakeLocation();
+        location.lastKnown = fix(5.0, 6.0);
+        EmergencyAlertPreparer preparer = new EmergencyAlertPreparer(callback -> callback.accept(CONTACTS), location);
+
+        preparer.start();
+        AtomicReference<EmergencyAlertPreparer.Alert> fired = new AtomicReference<>();
+        preparer.fire(fired::set);
+
+        assertFalse(fired.get().freshLocation);
+        assertTrue(fired.get().getBody().contains("Lat: 5.000000, Long: 6.000000"));
+        assertTrue(location.cancelled);
+    }
+
+    @Test
+    public void recentMovement_isAppendedAsAPolyline() {
+        FakeLocation location = new FakeLocation();
+        location.trail = new BreadcrumbTrail(8, 0);
+        location.trail.add(1.0, 2.0, 0);
+        location.trail.add(1.0001, 2.0002, 60000);
+        location.trail.add(1.0003, 2.0003, 90000);
+        EmergencyAlertPreparer preparer = new EmergencyAlertPreparer(callback -> callback.accept(CONTACTS), location);
+
+        preparer.start();
+        AtomicReference<EmergencyAlertPreparer.Alert> fired = new AtomicReference<>();
+        preparer.fire(fired::set);
+
+        String body = fired.get().getBody();
+        assertTrue(body.contains("Recent movement"));
+        assertTrue(body.endsWith(" 90,30,0"));
+    }
+
+    @Test
+    public void contactsStillLoading_fireWaitsForThem() throws Exception {
+        List<Consumer<List<ContactIndex.Contact>>> pending = new ArrayList<>();
+        EmergencyAlertPreparer preparer = new EmergencyAlertPreparer(pending::add, new FakeLocation());
+
+        preparer.start();
+        CountDownLatch fired = new CountDownLatch(1);
+        preparer.fire(alert -> fired.countDown());
+        assertEquals(1, fired.getCount());
+
+        pending.get(0).accept(CONTACTS);
+        assertTrue(fired.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void cancel_dropsLateResultsAndStopsTheFix() {
+        List<Consumer<List<ContactIndex.Contact>>> pending = new ArrayList<>();
+        FakeLocation location = new FakeLocation();
+        EmergencyAlertPreparer preparer = new EmergencyAlertPreparer(pending::add, location);
+
+        preparer.start();
+        preparer.fire(alert -> fail("cancelled alerts must not fire"));
+        preparer.cancel();
+        pending.get(0).accept(CONTACTS);
+
+        assertTrue(location.cancelled);
+        assertNull(preparer.getPrepared());
+    }
+
+    @Test
+    public void restart_ignoresResultsOfTheEarlierPreparation() {
+        List<Consumer<List<ContactIndex.Contact>>> pending = new ArrayList<>();
+        EmergencyAlertPreparer preparer = new EmergencyAlertPreparer(pending::add, new FakeLocation());
+
+        preparer.start();
+        preparer.start();
+        pending.get(0).accept(Collections.<ContactIndex.Contact>emptyList());
+        assertNull(preparer.getPrepared());
+
+        pending.get(1).accept(CONTACTS);
+        assertEquals(CONTACTS, preparer.getPrepared().contacts);
+    }
+
+    private static LocationFix fix(double latitude, double longitude) {
+        return new LocationFix().set(LocationEscalator.Source.GPS, latitude, longitude, 10f, 0);
+    }
+
+    /** Never answers on its own; a test delivers a fix through {@link #pendingFix}. */
+    private static class FakeLocation implements EmergencyAlertPreparer.LocationSource {
+        boolean cancelled = false;
+        LocationFix lastKnown = new LocationFix();
+        BreadcrumbTrail trail;
+        Consumer<LocationFix> pendingFix;
+
+        @Override
+        public void requestFix(Consumer<LocationFix> callback) {
+            cancelled = false;
+            pendingFix = callback;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public LocationFix lastKnown() {
+            return lastKnown;
+        }
+
+        @Override
+        public BreadcrumbTrail trail() {
+            return trail;
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package com.example.smartech;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives {@link EmergencyDispatcher} with in-process fake transports and reports the time until
+ * every contact was notified.
+ */
+public class EmergencyDispatcherTest {
+
+    private static final long SEND_LATENCY_MS = 150;
+
+    @Test
+    public void fanOut_notifiesAllContactsInAboutOneSendLatency() throws Exception {
+        List<ContactIndex.Contact> contacts = contacts(10);
+        ExecutorService executor = Executors.newCachedThreadPool();
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+        FakeTransport sms = new FakeTransport("sms", SEND_LATENCY_MS, 0);
+        EmergencyDispatcher dispatcher = new EmergencyDispatcher(Collections.<EmergencyDispatcher.Transport>singletonList(sms),
+                executor, scheduler, new MemoryStore(), Runnable::run, System::currentTimeMillis);
+        RecordingListener listener = new RecordingListener(1);
+        dispatcher.setListener(listener);
+
+        long start = System.nanoTime();
+        dispatcher.dispatch(contacts, "EMERGENCY ALERT", "Help");
+        assertTrue(listener.finished.await(5, TimeUnit.SECONDS));
+        long parallelMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        long serialMs = SEND_LATENCY_MS * contacts.size();
+
+        String report = String.format("Time to all %d contacts notified: %d ms parallel, %d ms if sent one by one",
+                contacts.size(), parallelMs, serialMs);
+        assertEquals(report, contacts.size(), listener.sentCount());
+        assertTrue(report, parallelMs < serialMs / 2);
+        executor.shutdownNow();
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void failedSend_isRetriedOnTheNextTransport() throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+        FakeTransport sms = new FakeTransport("sms", 10, 1);
+        FakeTransport relay = new FakeTransport("relay", 10, 0);
+        List<EmergencyDispatcher.Transport> transports = new ArrayList<>();
+        transports.add(sms);
+        transports.add(relay);
+        EmergencyDispatcher dispatcher = new EmergencyDispatcher(transports, executor, scheduler,
+                new MemoryStore(), Runnable::run, System::currentTimeMillis);
+        RecordingListener listener = new RecordingListener(1);
+        dispatcher.setListener(listener);
+
+        dispatcher.dispatch(contacts(1), "EMERGENCY ALERT", "Help");
+
+        assertTrue(listener.finished.await(EmergencyDispatcher.MIN_RETRY_DELAY_MS + 2000, TimeUnit.MILLISECONDS));
+        EmergencyDispatcher.Delivery delivery = listener.finishedDeliveries.get().get(0);
+        assertEquals(EmergencyDispatcher.Status.SENT, delivery.getStatus());
+        assertEquals(2, delivery.getAttempts());
+        assertEquals("relay", delivery.getTransport());
+        executor.shutdownNow();
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void permanentFailure_movesOnToTheNextTransportAtOnce() throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+        FakeTransport sms = new FakeTransport("sms", 10, Integer.MAX_VALUE);
+        sms.retryable = false;
+        FakeTransport email = new FakeTransport("email", 10, 0);
+        List<EmergencyDispatcher.Transport> transports = new ArrayList<>();
+        transports.add(sms);
+        transports.add(email);
+        EmergencyDispatcher dispatcher = new EmergencyDispatcher(transports, executor, scheduler,
+                new MemoryStore(), Runnable::run, System::currentTimeMillis);
+        RecordingListener listener = new RecordingListener(1);
+        dispatcher.setListener(listener);
+
+        dispatcher.dispatch(contacts(1), "EMERGENCY ALERT", "Help");
+
+        // Well inside the first backoff: nothing waits for a transport that cannot succeed.
+        assertTrue(listener.finished.await(EmergencyDispatcher.MIN_RETRY_DELAY_MS / 2, TimeUnit.MILLISECONDS));
+        EmergencyDispatcher.Delivery delivery = listener.finishedDeliveries.get().get(0);
+        assertEquals(EmergencyDispatcher.Status.SENT, delivery.getStatus());
+        assertEquals("email", delivery.getTransport());
+        assertEquals(Collections.singletonList("sms"), delivery.getRuledOut());
+        assertEquals(1, sms.calls.get());
+        assertEquals(1, email.calls.get());
+        executor.shutdownNow();
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void permanentFailureOnEveryTransport_failsTheDelivery() throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+        FakeTransport sms = new FakeTransport("sms", 10, Integer.MAX_VALUE);
+        sms.retryable = false;
+        FakeTransport email = new FakeTransport("email", 10, Integer.MAX_VALUE);
+        email.retryable = false;
+        List<EmergencyDispatcher.Transport> transports = new ArrayList<>();
+        transports.add(sms);
+        transports.add(email);
+        EmergencyDispatcher dispatcher = new EmergencyDispatcher(transports, executor, scheduler,
+                new MemoryStore(), Runnable::run, System::currentTimeMillis);
+        RecordingListener listener = new RecordingListener(1);
+        dispatcher.setListener(listener);
+
+        dispatcher.dispatch(contacts(1), "EMERGENCY ALERT", "Help");
+
+        assertTrue(listener.finished.await(EmergencyDispatcher.MIN_RETRY_DELAY_MS / 2, TimeUnit.MILLISECONDS));
+        EmergencyDispatcher.Delivery delivery = listener.finishedDeliveries.get().get(0);
+        assertEquals(EmergencyDispatcher.Status.FAILED, delivery.getStatus());
+        assertEquals(2, delivery.getAttempts());
+        assertEquals("No service", delivery.getLastError());
+        executor.shutdownNow();
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void unreachableContact_failsWithoutRetrying() throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+        FakeTransport sms = new FakeTransport("sms", 10, 0) {
+            @Override
+            public boolean canReach(ContactIndex.Contact contact) {
+                return !contact.phone.isEmpty();
+            }
+        };
+        EmergencyDispatcher dispatcher = new EmergencyDispatcher(Collections.<EmergencyDispatcher.Transport>singletonList(sms),
+                executor, scheduler, new MemoryStore(), Runnable::run, System::currentTimeMillis);
+        RecordingListener listener = new RecordingListener(1);
+        dispatcher.setListener(listener);
+
+        dispatcher.dispatch(Collections.singletonList(new ContactIndex.Contact("Ann", "Lee", "ann@example.com")),
+                "EMERGENCY ALERT", "Help");
+
+        assertTrue(listener.finished.await(1, TimeUnit.SECONDS));
+        assertEquals(EmergencyDispatcher.Status.FAILED, listener.finishedDeliveries.get().get(0).getStatus());
+        assertEquals(0, sms.calls.get());
+        executor.shutdownNow();
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void attachments_goOnlyThroughTransportsThatCarryThem() throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+        FakeTransport sms = new FakeTransport("sms", 10, 0);
+        FakeTransport relay = new FakeTransport("relay", 10, 0) {
+            @Override
+            public boolean canReach(ContactIndex.Contact contact) {
+                return !contact.email.isEmpty();
+            }
+        };
+        relay.attachments = true;
+        List<EmergencyDispatcher.Transport> transports = new ArrayList<>();
+        transports.add(sms);
+        transports.add(relay);
+        EmergencyDispatcher dispatcher = new EmergencyDispatcher(transports, executor, scheduler,
+                new MemoryStore(), Runnable::run, System::currentTimeMillis);
+        RecordingListener listener = new RecordingListener(1);
+        dispatcher.setListener(listener);
+
+        List<ContactIndex.Contact> contacts = contacts(2);
+        contacts.add(new ContactIndex.Contact("Phone", "Only", "", "+15550009"));
+        dispatcher.dispatch(contacts, "EMERGENCY ALERT", "Photos", Collections.singletonList("photo-1.jpg"));
+
+        assertTrue(listener.finished.await(1, TimeUnit.SECONDS));
+        List<EmergencyDispatcher.Delivery> deliveries = listener.finishedDeliveries.get();
+        assertEquals(2, deliveries.size());
+        for (EmergencyDispatcher.Delivery delivery : deliveries) {
+            assertEquals("relay", delivery.getTransport());
+            assertEquals(Collections.singletonList("photo-1.jpg"), delivery.attachments);
+        }
+        assertEquals(0, sms.calls.get());
+        executor.shutdownNow();
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void pendingDeliveries_surviveProcessDeath() throws Exception {
+        MemoryStore store = new MemoryStore();
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+
+        // The first process hands the sends to an executor that never runs them, then dies.
+        EmergencyDispatcher dying = new EmergencyDispatcher(
+                Collections.<EmergencyDispatcher.Transport>singletonList(new FakeTransport("sms", 10, 0)),
+                command -> { }, scheduler, store, Runnable::run, System::currentTimeMillis);
+        dying.dispatch(contacts(3), "EMERGENCY ALERT", "Help");
+        assertEquals(3, store.load().size());
+        scheduler.shutdownNow();
+
+        ExecutorService executor = Executors.newCachedThreadPool();
+        scheduler = Executors.newScheduledThreadPool(1);
+        FakeTransport sms = new FakeTransport("sms", 10, 0);
+        EmergencyDispatcher restarted = new EmergencyDispatcher(Collections.<EmergencyDispatcher.Transport>singletonList(sms),
+                executor, scheduler, store, Runnable::run, System::currentTimeMillis);
+        RecordingListener listener = new RecordingListener(1);
+        restarted.setListener(listener);
+        restarted.resume();
+
+        assertTrue(listener.finished.await(2, TimeUnit.SECONDS));
+        assertEquals(3, listener.sentCount());
+        assertTrue(store.load().isEmpty());
+        executor.shutdownNow();
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void slowStore_doesNotHoldUpSendsAndCoalescesWrites() throws Exception {
+        CountDownLatch storeReleased = new CountDownLatch(1);
+        List<List<EmergencyDispatcher.Delivery>> saves = Collections.synchronizedList(new ArrayList<>());
+        EmergencyDispatcher.Store slowStore = new EmergencyDispatcher.Store() {
+            @Override
+            public void save(List<EmergencyDispatcher.Delivery> deliveries) {
+                saves.add(deliveries);
+                try {
+                    storeReleased.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            @Override
+            public List<EmergencyDispatcher.Delivery> load() {
+                return Collections.emptyList();
+            }
+        };
+        ExecutorService executor = Executors.newCachedThreadPool();
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        FakeTransport sms = new FakeTransport("sms", 0, 0);
+        EmergencyDispatcher dispatcher = new EmergencyDispatcher(Collections.<EmergencyDispatcher.Transport>singletonList(sms),
+                executor, scheduler, slowStore, writer, System::currentTimeMillis);
+        RecordingListener listener = new RecordingListener(1);
+        dispatcher.setListener(listener);
+
+        // Every contact is notified while the first write is still stuck in the store.
+        dispatcher.dispatch(contacts(5), "EMERGENCY ALERT", "Help");
+        assertTrue(listener.finished.await(2, TimeUnit.SECONDS));
+        assertEquals(5, listener.sentCount());
+        assertEquals(1, saves.size());
+
+        storeReleased.countDown();
+        writer.shutdown();
+        assertTrue(writer.awaitTermination(2, TimeUnit.SECONDS));
+        assertTrue("six changes, at most two writes: " + saves.size(), saves.size() <= 2);
+        assertTrue(saves.get(saves.size() - 1).isEmpty());
+        executor.shutdownNow();
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void retryDelay_backsOffExponentiallyUpToTheCap() {
+        assertEquals(2000, EmergencyDispatcher.retryDelay(1));
+        assertEquals(4000, EmergencyDispatcher.retryDelay(2));
+        assertEquals(8000, EmergencyDispatcher.retryDelay(3));
+        assertEquals(EmergencyDispatcher.MAX_RETRY_DELAY_MS, EmergencyDispatcher.retryDelay(20));
+    }
+
+    private static List<ContactIndex.Contact> contacts(int count) {
+        List<ContactIndex.Contact> contacts = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            contacts.add(new ContactIndex.Contact("Contact", "Number" + i, "c" + i + "@example.com", "+155500000" + i));
+        }
+        return contacts;
+    }
+
+    /** Succeeds after a fixed latency, failing the first {@code failures} calls. */
+    private static class FakeTransport implements EmergencyDispatcher.Transport {
+        private final String name;
+        private final long latencyMs;
+        private final AtomicInteger failuresLeft;
+        final AtomicInteger calls = new AtomicInteger();
+        boolean attachments = false;
+        boolean retryable = true;
+
+        FakeTransport(String name, long latencyMs, int failures) {
+            this.name = name;
+            this.latencyMs = latencyMs;
+            this.failuresLeft = new AtomicInteger(failures);
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public boolean canReach(ContactIndex.Contact contact) {
+            return true;
+        }
+
+        @Override
+        public boolean supportsAttachments() {
+            return attachments;
+        }
+
+        @Override
+        public void send(EmergencyDispatcher.Delivery delivery, EmergencyDispatcher.Callback callback) {
+            calls.incrementAndGet();
+            try {
+                Thread.sleep(latencyMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (failuresLeft.getAndDecrement() > 0) {
+                callback.onFailed(new Exception("No service"), retryable);
+            } else {
+                callback.onSent();
+            }
+        }
+    }
+
+    private static class MemoryStore implements EmergencyDispatcher.Store {
+        private List<EmergencyDispatcher.Delivery> saved = new ArrayList<>();
+
+        @Override
+        public synchronized void save(List<EmergencyDispatcher.Delivery> deliveries) {
+            saved = new ArrayList<>(deliveries);
+        }
+
+        @Override
+        public synchronized List<EmergencyDispatcher.Delivery> load() {
+            return new ArrayList<>(saved);
+        }
+    }
+
+    private static class RecordingListener implements EmergencyDispatcher.Listener {
+        final CountDownLatch finished;
+        final AtomicReference<List<EmergencyDispatcher.Delivery>> finishedDeliveries = new AtomicReference<>();
+
+        RecordingListener(int alerts) {
+            finished = new CountDownLatch(alerts);
+        }
+
+        @Override
+        public void onDeliveryChanged(EmergencyDispatcher.Delivery delivery) {}
+
+        @Override
+        public void onAlertFinished(String alertId, List<EmergencyDispatcher.Delivery> deliveries) {
+            finishedDeliveries.set(deliveries);
+            finished.countDown();
+        }
+
+        int sentCount() {
+            int sent = 0;
+            for (EmergencyDispatcher.Delivery delivery : finishedDeliveries.get()) {
+                if (delivery.getStatus() == EmergencyDispatcher.Status.SENT) sent++;
+            }
+            return sent;
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package com.example.smartech;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the tracer's bookkeeping, then replays the recorded shakes through the emergency path
+ * wired the way the app wires it and asserts the p99 overhead against the SLO. The replay runs
+ * on a virtual clock, so it is fast and the same on every machine; EmergencyLatencyBenchmark
+ * measures the real threads on a device.
+ */
+public class EmergencyLatencyTracerTest {
+
+    private static final String[] SHAKE_TRACES = {
+            "shake_vigorous", "shake_gentle", "shake_opposite_axes_while_walking"};
+    // Where the hardware's batch boundaries fall relative to the shake.
+    private static final int BATCH_PHASES = 6;
+    private static final long MS = 1000000L;
+
+    @Test
+    public void finishedTrace_reportsEveryStageAndItsOverhead() {
+        EmergencyLatencyTracer tracer = new EmergencyLatencyTracer();
+        tracer.begin("shake", 1000 * MS, 1200 * MS);
+        tracer.mark(EmergencyLatencyTracer.Stage.COUNTDOWN_STARTED, 1500 * MS);
+        tracer.mark(EmergencyLatencyTracer.Stage.CONTACTS_RESOLVED, 1510 * MS);
+        tracer.mark(EmergencyLatencyTracer.Stage.COUNTDOWN_ENDED, 6500 * MS);
+        tracer.dispatched("a", 6510 * MS);
+        tracer.sent("a", "sms", 6700 * MS);
+        tracer.sent("a", "relay", 7100 * MS);
+        tracer.sent("a", "sms", 6900 * MS);
+
+        EmergencyLatencyTracer.Trace trace = tracer.finish("a");
+
+        assertNotNull(trace);
+        assertEquals(3, trace.getSentCount());
+        assertEquals(200, trace.sinceSensorMs(EmergencyLatencyTracer.Stage.DETECTED));
+        assertEquals(-1, trace.sinceSensorMs(EmergencyLatencyTracer.Stage.LOCATION_FIXED));
+        // 500 ms to show the countdown and 600 ms after it for the last message.
+        assertEquals(1100, trace.getOverheadMs());
+        assertEquals("shake: detected +200ms countdown_started +500ms countdown_ended +5500ms"
+                + " contacts_resolved +510ms dispatched +5510ms, sms 2 sent by +5900ms,"
+                + " relay 1 sent by +6100ms; overhead 1100ms", trace.describe());
+        assertEquals(1100, tracer.overheadPercentileMs(99));
+    }
+
+    @Test
+    public void repeatDetection_duringTheCountdown_keepsTheFirstTrace() {
+        EmergencyLatencyTracer tracer = new EmergencyLatencyTracer();
+        tracer.begin("shake", 1000 * MS, 1100 * MS);
+        tracer.mark(EmergencyLatencyTracer.Stage.COUNTDOWN_STARTED, 1300 * MS);
+        tracer.begin("shake", 3000 * MS, 3100 * MS);
+        tracer.mark(EmergencyLatencyTracer.Stage.COUNTDOWN_ENDED, 6300 * MS);
+        tracer.dispatched("a", 6300 * MS);
+        tracer.sent("a", "sms", 6400 * MS);
+
+        assertEquals(400, tracer.finish("a").getOverheadMs());
+    }
+
+    @Test
+    public void sendsOfOtherAlerts_andCancelledCountdowns_areNotCounted() {
+        EmergencyLatencyTracer tracer = new EmergencyLatencyTracer();
+        tracer.begin("fall", 1000 * MS, 1100 * MS);
+        tracer.cancel();
+        tracer.sent("evidence", "relay", 2000 * MS);
+        assertNull(tracer.finish("evidence"));
+
+        tracer.begin("shake", 3000 * MS, 3100 * MS);
+        tracer.mark(EmergencyLatencyTracer.Stage.COUNTDOWN_STARTED, 3200 * MS);
+        tracer.mark(EmergencyLatencyTracer.Stage.COUNTDOWN_ENDED, 8200 * MS);
+        // The send finished before dispatch returned the id.
+        tracer.mark(EmergencyLatencyTracer.Stage.DISPATCHED, 8200 * MS);
+        tracer.sent("a", "sms", 8300 * MS);
+        tracer.dispatched("a", 8200 * MS);
+        tracer.sent("evidence", "relay", 9000 * MS);
+
+        EmergencyLatencyTracer.Trace trace = tracer.finish("a");
+        assertEquals(1, trace.getSentCount());
+        assertEquals(300, trace.getOverheadMs());
+    }
+
+    @Test
+    public void percentile_isNearestRank() {
+        long[] values = {50, 10, 40, 20, 30};
+        assertEquals(10, EmergencyLatencyTracer.percentile(values, 5, 1));
+        assertEquals(30, EmergencyLatencyTracer.percentile(values, 5, 50));
+        assertEquals(50, EmergencyLatencyTracer.percentile(values, 5, 99));
+        assertEquals(-1, EmergencyLatencyTracer.percentile(values, 0, 99));
+    }
+
+    /**
+     * Every recorded shake, with the sensor FIFO flushing at several offsets from it, goes through
+     * the detector under the adaptive sampling policy's batching, a hop to the main thread, the
+     * countdown, the alert preparer and the dispatcher, which sends by fake SMS and relay
+     * transports with jittered latency.
+     */
+    @Test
+    public void recordedShakes_meetTheP99Slo() throws Exception {
+        Pipeline pipeline = new Pipeline();
+        List<EmergencyLatencyTracer.Trace> traces = new ArrayList<>();
+        int expected = 0;
+        try {
+            for (String name : SHAKE_TRACES) {
+                ShakeDetectorTest.Trace recording = ShakeDetectorTest.Trace.load(name);
+                for (int phase = 0; phase < BATCH_PHASES; phase++) {
+                    expected += recording.expectedShakes;
+                    long offsetNs = AdaptiveSamplingPolicy.STILL_RATE.maxReportLatencyUs * 1000L * phase / BATCH_PHASES;
+                    traces.addAll(replay(recording, offsetNs, pipeline));
+                }
+            }
+        } finally {
+            pipeline.shutdown();
+        }
+
+        long[] overheads = new long[traces.size()];
+        long[] detections = new long[traces.size()];
+        for (int i = 0; i < traces.size(); i++) {
+            EmergencyLatencyTracer.Trace trace = traces.get(i);
+            assertEquals(trace.describe(), Pipeline.CONTACTS.size(), trace.getSentCount());
+            overheads[i] = trace.getOverheadMs();
+            detections[i] = trace.sinceSensorMs(EmergencyLatencyTracer.Stage.DETECTED);
+        }
+        long p50 = EmergencyLatencyTracer.percentile(overheads, overheads.length, 50);
+        long p99 = EmergencyLatencyTracer.percentile(overheads, overheads.length, 99);
+
+        // A shake missed while the sensor was slow never gets an alert at all.
+        assertEquals("shakes alerted", expected, traces.size());
+        String report = String.format("Emergency overhead over %d replayed shakes: p50 %d ms, p99 %d ms"
+                        + " (sensor to detection p99 %d ms), SLO %d ms; slowest: %s",
+                traces.size(), p50, p99, EmergencyLatencyTracer.percentile(detections, detections.length, 99),
+                EmergencyLatencyTracer.SLO_P99_MS, slowest(traces).describe());
+        assertTrue(report, p99 <= EmergencyLatencyTracer.SLO_P99_MS);
+    }
+
+    /**
+     * Delivers {@code recording} the way a batching sensor does: each batch arrives once its
+     * oldest sample is as old as the current rate's report latency, and a change of rate applies
+     * from the next batch. A detection reaches the app when its batch does.
+     */
+    private static List<EmergencyLatencyTracer.Trace> replay(ShakeDetectorTest.Trace recording, long offsetNs,
+                                                             Pipeline pipeline) {
+        AdaptiveSamplingPolicy policy = new AdaptiveSamplingPolicy(new PowerBudget(PowerBudget.DEFAULT_DAILY_BUDGET_MAH,
+                PowerBudget.TYPICAL_ACCELEROMETER_MA, PowerBudget.TYPICAL_GYROSCOPE_MA));
+        List<Long> fired = new ArrayList<>();
+        ShakeDetector detector = new ShakeDetector(ShakeDetector.DEFAULT_CONFIG, fired::add);
+        List<EmergencyLatencyTracer.Trace> traces = new ArrayList<>();
+
+        int i = 0;
+        long lastSampleNs = recording.timestampsNs[0] - AdaptiveSamplingPolicy.STILL_RATE.samplingPeriodUs * 1000L;
+        boolean first = true;
+        while (i < recording.size()) {
+            AdaptiveSamplingPolicy.Rate rate = policy.getRate();
+            long deliveredAtNs = recording.timestampsNs[i] + rate.maxReportLatencyUs * 1000L - (first ? offsetNs : 0);
+            first = false;
+            for (; i < recording.size() && recording.timestampsNs[i] <= deliveredAtNs; i++) {
+                // The recordings are 50 Hz; slower rates see every n-th sample.
+                if (recording.timestampsNs[i] - lastSampleNs < rate.samplingPeriodUs * 1000L - MS) continue;
+                lastSampleNs = recording.timestampsNs[i];
+                detector.onSample(recording.timestampsNs[i], recording.x[i], recording.y[i], recording.z[i]);
+                policy.onAccelerometer(recording.timestampsNs[i], recording.x[i], recording.y[i], recording.z[i]);
+                for (long sampleNs : fired) {
+                    traces.add(pipeline.run(sampleNs, deliveredAtNs));
+                }
+                fired.clear();
+            }
+        }
+        return traces;
+    }
+
+    private static EmergencyLatencyTracer.Trace slowest(List<EmergencyLatencyTracer.Trace> traces) {
+        EmergencyLatencyTracer.Trace slowest = traces.get(0);
+        for (EmergencyLatencyTracer.Trace trace : traces) {
+            if (trace.getOverheadMs() > slowest.getOverheadMs()) slowest = trace;
+        }
+        return slowest;
+    }
+
+    /**
+     * The emergency path from detection to send on a virtual clock. The preparer and dispatcher
+     * are the real ones; the hop to the main thread, the location fix and each send take a fixed
+     * amount of virtual time, and the countdown is shortened since its length is not part of the
+     * overhead.
+     */
+    private static class Pipeline {
+        static final List<ContactIndex.Contact> CONTACTS = new ArrayList<>();
+        private static final long MAIN_HOP_MS = 16;
+        private static final long COUNTDOWN_MS = 50;
+        private static final long LOCATION_FIX_MS = 30;
+
+        static {
+            CONTACTS.add(new ContactIndex.Contact("Sam", "Lee", "sam@example.com", "+15550001"));
+            CONTACTS.add(new ContactIndex.Contact("Kim", "Park", "kim@example.com", "+15550002"));
+            CONTACTS.add(new ContactIndex.Contact("Ali", "Khan", "ali@example.com"));
+        }
+
+        // Only runs the dispatcher's send timeouts, which virtual sends never reach.
+        private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        private final EmergencyLatencyTracer tracer = new EmergencyLatencyTracer();
+        private final List<FakeTransport.Send> sends = new ArrayList<>();
+        private final EmergencyDispatcher dispatcher;
+        private final EmergencyAlertPreparer preparer;
+        private Consumer<LocationFix> pendingFix;
+        private EmergencyLatencyTracer.Trace result;
+        private long nowNs;
+
+        Pipeline() {
+            List<EmergencyDispatcher.Transport> transports = new ArrayList<>();
+            transports.add(new FakeTransport("sms", 25, true, this));
+            transports.add(new FakeTransport("relay", 60, false, this));
+            dispatcher = new EmergencyDispatcher(transports, Runnable::run, scheduler, new EmergencyDispatcher.Store() {
+                @Override
+                public void save(List<EmergencyDispatcher.Delivery> deliveries) {}
+
+                @Override
+                public List<EmergencyDispatcher.Delivery> load() {
+                    return Collections.emptyList();
+                }
+            }, Runnable::run, () -> nowNs / MS);
+            dispatcher.setListener(new EmergencyDispatcher.Listener() {
+                @Override
+                public void onDeliveryChanged(EmergencyDispatcher.Delivery delivery) {
+                    if (delivery.getStatus() == EmergencyDispatcher.Status.SENT) {
+                        tracer.sent(delivery.alertId, delivery.getTransport(), nowNs);
+                    }
+                }
+
+                @Override
+                public void onAlertFinished(String alertId, List<EmergencyDispatcher.Delivery> deliveries) {
+                    result = tracer.finish(alertId);
+                }
+            });
+
+            preparer = new EmergencyAlertPreparer(callback -> {
+                // Contacts come from the on-device store, already in memory.
+                tracer.mark(EmergencyLatencyTracer.Stage.CONTACTS_RESOLVED, nowNs);
+                callback.accept(CONTACTS);
+            }, new EmergencyAlertPreparer.LocationSource() {
+                @Override
+                public void requestFix(Consumer<LocationFix> callback) {
+                    pendingFix = callback;
+                }
+
+                @Override
+                public void cancel() {}
+
+                @Override
+                public LocationFix lastKnown() {
+                    return new LocationFix();
+                }
+
+                @Override
+                public BreadcrumbTrail trail() {
+                    return null;
+                }
+            });
+        }
+
+        /** Runs one alert to the last send and returns its trace. */
+        EmergencyLatencyTracer.Trace run(long sensorNs, long detectedNs) {
+            result = null;
+            nowNs = detectedNs;
+            tracer.begin("shake", sensorNs, detectedNs);
+
+            nowNs += MAIN_HOP_MS * MS;
+            tracer.mark(EmergencyLatencyTracer.Stage.COUNTDOWN_STARTED, nowNs);
+            preparer.start();
+            nowNs += LOCATION_FIX_MS * MS;
+            tracer.mark(EmergencyLatencyTracer.Stage.LOCATION_FIXED, nowNs);
+            pendingFix.accept(new LocationFix().set(LocationEscalator.Source.GPS, 1.0, 2.0, 5f, 0));
+            nowNs += (COUNTDOWN_MS - LOCATION_FIX_MS) * MS;
+            tracer.mark(EmergencyLatencyTracer.Stage.COUNTDOWN_ENDED, nowNs);
+            preparer.fire(alert -> {
+                String alertId = dispatcher.dispatch(alert.contacts, alert.subject, alert.getBody());
+                tracer.dispatched(alertId, nowNs);
+            });
+
+            // The sends were all started at dispatch and complete in order of their latency.
+            sends.sort((a, b) -> Long.compare(a.doneAtNs, b.doneAtNs));
+            List<FakeTransport.Send> started = new ArrayList<>(sends);
+            sends.clear();
+            for (FakeTransport.Send send : started) {
+                nowNs = send.doneAtNs;
+                send.callback.onSent();
+            }
+            assertNotNull("every send completed", result);
+            return result;
+        }
+
+        void shutdown() {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /** Takes a latency that varies by up to half again, like a real network. */
+    private static class FakeTransport implements EmergencyDispatcher.Transport {
+        static class Send {
+            final long doneAtNs;
+            final EmergencyDispatcher.Callback callback;
+
+            Send(long doneAtNs, EmergencyDispatcher.Callback callback) {
+                this.doneAtNs = doneAtNs;
+                this.callback = callback;
+            }
+        }
+
+        private final String name;
+        private final long latencyMs;
+        private final boolean needsPhone;
+        private final Pipeline pipeline;
+        private final Random random = new Random(7);
+
+        FakeTransport(String name, long latencyMs, boolean needsPhone, Pipeline pipeline) {
+            this.name = name;
+            this.latencyMs = latencyMs;
+            this.needsPhone = needsPhone;
+            this.pipeline = pipeline;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public boolean canReach(ContactIndex.Contact contact) {
+            return needsPhone ? !contact.phone.isEmpty() : !contact.email.isEmpty();
+        }
+
+        @Override
+        public boolean supportsAttachments() {
+            return false;
+        }
+
+        @Override
+        public void send(EmergencyDispatcher.Delivery delivery, EmergencyDispatcher.Callback callback) {
+            long jitterNs = (long) (random.nextDouble() * latencyMs / 2 * MS);
+            pipeline.sends.add(new Send(pipeline.nowNs + latencyMs * MS + jitterNs, callback));
+        }
+    }
+}
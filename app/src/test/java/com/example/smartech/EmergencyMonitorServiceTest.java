@@ -0,0 +1,165 @@
+package com.example.smartech;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.hardware.Sensor;
+import android.hardware.SensorManager;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.os.Vibrator;
+import android.speech.tts.TextToSpeech;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.MockedStatic;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.android.controller.ServiceController;
+import org.robolectric.shadows.ShadowSensor;
+import org.robolectric.shadows.ShadowTextToSpeech;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Runs the monitoring service on its own, with no screen ever opened, the way it is after a
+ * detection while the phone is locked or another app is in front.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class EmergencyMonitorServiceTest {
+
+    private static final List<ContactIndex.Contact> CONTACTS = Collections.singletonList(
+            new ContactIndex.Contact("Alex", "Doe", "alex@example.com"));
+
+    private final Context context = RuntimeEnvironment.getApplication();
+    private final EmergencyDispatchQueue dispatchQueue = mock(EmergencyDispatchQueue.class);
+    private final LocationEngine location = mock(LocationEngine.class);
+    private MockedStatic<EmergencyDispatchQueue> queueStatic;
+    private MockedStatic<ContactRepository> contactsStatic;
+    private MockedStatic<LocationEngine> locationStatic;
+    private ServiceController<EmergencyMonitorService> controller;
+
+    @Before
+    public void setUp() {
+        ContactRepository contacts = mock(ContactRepository.class);
+        when(contacts.isAvailable()).thenReturn(true);
+        when(contacts.getContacts()).thenReturn(CONTACTS);
+        doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(0).run();
+            return null;
+        }).when(contacts).whenLoaded(any(Runnable.class));
+        when(location.getLastFix()).thenReturn(
+                new LocationFix().set(LocationEscalator.Source.NETWORK, 1.0, 2.0, 30f, 0));
+        when(dispatchQueue.dispatch(anyList(), anyString(), anyString())).thenReturn("alert-1");
+
+        queueStatic = mockStatic(EmergencyDispatchQueue.class);
+        queueStatic.when(() -> EmergencyDispatchQueue.getInstance(any())).thenReturn(dispatchQueue);
+        contactsStatic = mockStatic(ContactRepository.class);
+        contactsStatic.when(() -> ContactRepository.getInstance(any())).thenReturn(contacts);
+        locationStatic = mockStatic(LocationEngine.class);
+        locationStatic.when(() -> LocationEngine.getInstance(any())).thenReturn(location);
+
+        SensorManager sensors = (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
+        shadowOf(sensors).addSensor(ShadowSensor.newInstance(Sensor.TYPE_ACCELEROMETER));
+        controller = Robolectric.buildService(EmergencyMonitorService.class).create();
+    }
+
+    @After
+    public void tearDown() {
+        controller.destroy();
+        queueStatic.close();
+        contactsStatic.close();
+        locationStatic.close();
+    }
+
+    @Test
+    public void detection_sendsTheAlertWithoutAnyScreen() {
+        controller.get().dispatchTrigger(EmergencyMonitorService.TRIGGER_SHAKE, SystemClock.elapsedRealtimeNanos());
+
+        assertTrue(EmergencyMonitorService.isCountdownRunning());
+        assertNotNull("the countdown is shown with a way to cancel it", cancelAction());
+        verify(dispatchQueue, never()).dispatch(anyList(), anyString(), anyString());
+
+        shadowOf(Looper.getMainLooper()).idleFor(EmergencyMonitorService.SHAKE_COUNTDOWN_SECONDS + 1, TimeUnit.SECONDS);
+
+        assertFalse(EmergencyMonitorService.isCountdownRunning());
+        verify(dispatchQueue).dispatch(eq(CONTACTS), eq(EmergencyAlertPreparer.SUBJECT), anyString());
+        assertNull("the sent alert can no longer be cancelled", cancelAction());
+    }
+
+    @Test
+    public void countdown_isSpokenAndFeltWithoutAnyScreen() {
+        ShadowTextToSpeech.addLanguageAvailability(Locale.US);
+        controller.get().dispatchTrigger(EmergencyMonitorService.TRIGGER_FALL, SystemClock.elapsedRealtimeNanos());
+
+        Vibrator vibrator = (Vibrator) context.getSystemService(Context.VIBRATOR_SERVICE);
+        assertTrue(shadowOf(vibrator).isVibrating());
+        // The announcement made while the engine was starting is spoken once it is up.
+        TextToSpeech tts = ShadowTextToSpeech.getLastTextToSpeechInstance();
+        shadowOf(tts).getOnInitListener().onInit(TextToSpeech.SUCCESS);
+        assertTrue(shadowOf(tts).getLastSpokenText().startsWith("Fall detected. Sending an emergency alert in "
+                + EmergencyMonitorService.FALL_COUNTDOWN_SECONDS + " seconds."));
+
+        shadowOf(Looper.getMainLooper()).idleFor(5, TimeUnit.SECONDS);
+        assertEquals("10", shadowOf(tts).getLastSpokenText());
+    }
+
+    @Test
+    public void cancelFromTheNotification_stopsTheAlert() {
+        controller.get().dispatchTrigger(EmergencyMonitorService.TRIGGER_FALL, SystemClock.elapsedRealtimeNanos());
+        shadowOf(Looper.getMainLooper()).idleFor(3, TimeUnit.SECONDS);
+
+        Intent cancel = shadowOf(cancelAction().actionIntent).getSavedIntent();
+        controller.withIntent(cancel).startCommand(0, 1);
+        shadowOf(Looper.getMainLooper()).idleFor(EmergencyMonitorService.FALL_COUNTDOWN_SECONDS, TimeUnit.SECONDS);
+
+        assertFalse(EmergencyMonitorService.isCountdownRunning());
+        verify(dispatchQueue, never()).dispatch(anyList(), anyString(), anyString());
+        assertNull(shadowOf(context.getSystemService(NotificationManager.class))
+                .getNotification(EmergencyMonitorService.ALERT_NOTIFICATION_ID));
+    }
+
+    @Test
+    public void stickyRestart_leavesLocationAlone_untilAScreenStartsTheService() {
+        shadowOf(RuntimeEnvironment.getApplication()).grantPermissions(android.Manifest.permission.ACCESS_FINE_LOCATION);
+
+        // Started without a screen in front, as a sticky restart after the process died is.
+        controller.startCommand(Service.START_FLAG_RETRY, 1);
+        verify(location, never()).startTrail();
+
+        controller.withIntent(new Intent(context, EmergencyMonitorService.class)
+                .putExtra(EmergencyMonitorService.EXTRA_FROM_VISIBLE_SCREEN, true)).startCommand(0, 2);
+        verify(location).startTrail();
+    }
+
+    private Notification.Action cancelAction() {
+        Notification alert = shadowOf(context.getSystemService(NotificationManager.class))
+                .getNotification(EmergencyMonitorService.ALERT_NOTIFICATION_ID);
+        if (alert == null || alert.actions == null) return null;
+        for (Notification.Action action : alert.actions) {
+            if ("Cancel".contentEquals(action.title)) return action;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,443 @@
+package com.example.smartech;
+
+import com.google.android.gms.tasks.OnSuccessListener;
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Drives {@link EvidenceCapture} with a fake camera that streams full-size frames as fast as it
+ * can from a small pool of its own, the way CameraX does, and a fake microphone. Runs under
+ * Robolectric for the email relay's base64 encoder.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class EvidenceCaptureTest {
+
+    private static final int FRAME_BYTES = 640 * 480 * 3 / 2;
+    private static final List<ContactIndex.Contact> EMAIL_CONTACTS = Arrays.asList(
+            new ContactIndex.Contact("Ann", "Lee", "ann@example.com"),
+            new ContactIndex.Contact("Bo", "Kim", "bo@example.com"),
+            new ContactIndex.Contact("Cy", "Ng", "cy@example.com"),
+            new ContactIndex.Contact("Di", "Ito", "di@example.com"));
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void capture_savesEveryPhotoAndTheClipThenReturnsAllBuffers() throws Exception {
+        ScheduledExecutorService executor = Executors.newScheduledThreadPool(2);
+        FakeCamera camera = new FakeCamera(8 * 1024, true);
+        FakeMicrophone microphone = new FakeMicrophone(8000);
+        MemoryStore store = new MemoryStore();
+        EvidenceBufferPool pool = new EvidenceBufferPool(16 * 1024, 32);
+        EvidenceCapture capture = new EvidenceCapture(camera, microphone, store, pool, executor,
+                System::currentTimeMillis, new EvidenceCapture.Config(4, 50, 1000, 5000));
+
+        List<String> saved = captureAndWait(capture);
+
+        assertEquals(5, saved.size());
+        assertEquals("photo-1.jpg", saved.get(0));
+        assertEquals("audio.wav", saved.get(4));
+        assertFalse(camera.running);
+        assertTrue(microphone.stopped);
+        // Header plus one byte per sample.
+        assertEquals(44 + 8000, store.items.get("audio.wav").length);
+        assertEquals(0, pool.getInUseBytes());
+        assertEquals(0, camera.outstanding());
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void itemOverTheCap_isDroppedWithoutGoingOverIt() throws Exception {
+        ScheduledExecutorService executor = Executors.newScheduledThreadPool(2);
+        // Incompressible frames of 100 KB against a 64 KB cap.
+        FakeCamera camera = new FakeCamera(100 * 1024, false);
+        MemoryStore store = new MemoryStore();
+        EvidenceBufferPool pool = new EvidenceBufferPool(16 * 1024, 4);
+        EvidenceCapture capture = new EvidenceCapture(camera, new FakeMicrophone(8000), store, pool, executor,
+                System::currentTimeMillis, new EvidenceCapture.Config(2, 10, 500, 5000));
+
+        List<String> saved = captureAndWait(capture);
+
+        assertEquals(1, saved.size());
+        assertEquals("audio.wav", saved.get(0));
+        assertTrue(pool.getAllocatedBytes() <= pool.getCapBytes());
+        assertEquals(0, pool.getInUseBytes());
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void silentCamera_isGivenUpOnAtTheTimeout() throws Exception {
+        ScheduledExecutorService executor = Executors.newScheduledThreadPool(2);
+        EvidenceCapture.FrameSource dark = new EvidenceCapture.FrameSource() {
+            @Override
+            public void start(EvidenceCapture.FrameCallback callback) {}
+
+            @Override
+            public void stop() {}
+        };
+        EvidenceCapture capture = new EvidenceCapture(dark, null, new MemoryStore(),
+                new EvidenceBufferPool(1024, 4), executor, System::currentTimeMillis,
+                new EvidenceCapture.Config(4, 10, 0, 200));
+
+        long start = System.nanoTime();
+        List<String> saved = captureAndWait(capture);
+
+        assertTrue(saved.isEmpty());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 200);
+        assertFalse(capture.isCapturing());
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void secondCapture_whileRunning_isRefused() {
+        ScheduledExecutorService executor = Executors.newScheduledThreadPool(2);
+        FakeCamera camera = new FakeCamera(1024, true);
+        EvidenceCapture capture = new EvidenceCapture(camera, null, new MemoryStore(),
+                new EvidenceBufferPool(1024, 4), executor, System::currentTimeMillis,
+                new EvidenceCapture.Config(4, 1000, 0, 5000));
+
+        assertTrue(capture.capture("a", (id, saved) -> { }));
+        assertFalse(capture.capture("b", (id, saved) -> { }));
+        camera.stop();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void muLaw_matchesTheG711Table() {
+        assertEquals((byte) 0xFF, EvidenceCapture.muLaw((short) 0));
+        assertEquals((byte) 0x80, EvidenceCapture.muLaw(Short.MAX_VALUE));
+        assertEquals((byte) 0x00, EvidenceCapture.muLaw(Short.MIN_VALUE));
+        assertEquals((byte) 0xF2, EvidenceCapture.muLaw((short) 100));
+    }
+
+    /**
+     * Heap in use while the fake camera streams frames at full speed and the result is then
+     * relayed to four contacts in parallel, as {@link EvidenceRecorder} does. Raw frames come
+     * from the camera's own pool, so everything the capture adds has to fit in the buffer pool's
+     * cap, and the relay may hold one encoded copy of the evidence, not one per contact.
+     */
+    @Test
+    public void peakHeap_staysWithinTheCap() throws Exception {
+        ScheduledExecutorService executor = Executors.newScheduledThreadPool(2);
+        FakeCamera camera = new FakeCamera(FRAME_BYTES, true);
+        EvidenceBufferPool pool = new EvidenceBufferPool(64 * 1024, 8);
+        DiskStore store = new DiskStore(folder.getRoot());
+        FakeMailCollection mail = new FakeMailCollection();
+        EmailRelayTransport relay = new EmailRelayTransport(mail.db, mail.auth);
+        CountDownLatch relayed = new CountDownLatch(1);
+        EmergencyDispatcher dispatcher = new EmergencyDispatcher(Collections.singletonList(relay),
+                Executors.newFixedThreadPool(EMAIL_CONTACTS.size()), executor, new NoStore(), Runnable::run,
+                System::currentTimeMillis);
+        dispatcher.setListener(new EmergencyDispatcher.Listener() {
+            @Override
+            public void onDeliveryChanged(EmergencyDispatcher.Delivery delivery) {}
+
+            @Override
+            public void onAlertFinished(String alertId, List<EmergencyDispatcher.Delivery> deliveries) {
+                relayed.countDown();
+            }
+        });
+        EvidenceCapture capture = new EvidenceCapture(camera, new FakeMicrophone(8000), store, pool, executor,
+                System::currentTimeMillis, new EvidenceCapture.Config(10, 20, 2000, 10000));
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        long baseline = memory.getHeapMemoryUsage().getUsed();
+        HeapSampler sampler = new HeapSampler(memory);
+        sampler.start();
+        List<String> saved = captureAndWait(capture);
+        dispatcher.dispatch(EMAIL_CONTACTS, "Emergency: photos and audio", "Evidence", saved);
+        assertTrue(relayed.await(15, TimeUnit.SECONDS));
+        sampler.stop = true;
+        sampler.join();
+        long peakGrowth = sampler.peak - baseline;
+
+        long encodedBytes = 0;
+        for (Map<String, Object> attachment : mail.attachments(0)) {
+            encodedBytes += ((String) attachment.get("content")).length();
+        }
+        String report = String.format("Evidence capture: %d frames offered, %d saved (%d KB), pool peak %d KB of %d KB cap, "
+                        + "%d emails with %d KB encoded, heap growth %d KB",
+                camera.delivered, store.count, store.bytes / 1024, pool.getPeakInUseBytes() / 1024,
+                pool.getCapBytes() / 1024, mail.written.size(), encodedBytes / 1024, Math.max(0, peakGrowth) / 1024);
+        assertTrue(report, camera.delivered > 10);
+        assertTrue(report, pool.getPeakInUseBytes() <= pool.getCapBytes());
+        assertTrue(report, pool.getAllocatedBytes() <= pool.getCapBytes());
+        assertEquals(report, EMAIL_CONTACTS.size(), mail.written.size());
+        assertEquals(report, saved.size(), mail.attachments(0).size());
+        for (int i = 1; i < mail.written.size(); i++) {
+            assertSame("every email shares one encoding", mail.attachments(0), mail.attachments(i));
+        }
+        // The cap, one encoded copy of the evidence with the raw bytes it was read into, and
+        // garbage from the fake compressor and the test itself; holding on to every offered frame
+        // would be tens of megabytes.
+        assertTrue(report, peakGrowth < pool.getCapBytes() + 2 * encodedBytes + 8L * 1024 * 1024);
+        executor.shutdownNow();
+    }
+
+    private static List<String> captureAndWait(EvidenceCapture capture) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicReference<List<String>> result = new AtomicReference<>();
+        assertTrue(capture.capture("alert", (id, saved) -> {
+            result.set(saved);
+            done.countDown();
+        }));
+        assertTrue(done.await(15, TimeUnit.SECONDS));
+        return result.get();
+    }
+
+    /** Hands out frames from three preallocated buffers and skips a frame when none is free. */
+    private static class FakeCamera implements EvidenceCapture.FrameSource {
+        private final BlockingQueue<byte[]> free = new ArrayBlockingQueue<>(3);
+        private final boolean compressible;
+        volatile boolean running;
+        volatile int delivered;
+        private Thread thread;
+
+        /** Compressible frames stand in for ordinary scenes, the others for noise. */
+        FakeCamera(int frameBytes, boolean compressible) {
+            Random random = new Random(3);
+            this.compressible = compressible;
+            for (int i = 0; i < 3; i++) {
+                byte[] frame = new byte[frameBytes];
+                if (compressible) {
+                    for (int j = 0; j < frame.length; j++) {
+                        frame[j] = (byte) ((j / 640 + random.nextInt(4)) & 0xff);
+                    }
+                } else {
+                    random.nextBytes(frame);
+                }
+                free.add(frame);
+            }
+        }
+
+        int outstanding() {
+            return 3 - free.size();
+        }
+
+        @Override
+        public void start(EvidenceCapture.FrameCallback callback) {
+            running = true;
+            thread = new Thread(() -> {
+                while (running) {
+                    byte[] data = free.poll();
+                    if (data == null) {
+                        Thread.yield();
+                        continue;
+                    }
+                    delivered++;
+                    callback.onFrame(new EvidenceCapture.Frame() {
+                        @Override
+                        public void compress(OutputStream out) throws IOException {
+                            if (!compressible) {
+                                out.write(data);
+                                return;
+                            }
+                            DeflaterOutputStream deflater = new DeflaterOutputStream(out, new Deflater(1));
+                            deflater.write(data);
+                            deflater.finish();
+                        }
+
+                        @Override
+                        public void close() {
+                            free.add(data);
+                        }
+                    });
+                    try {
+                        Thread.sleep(2);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            });
+            thread.start();
+        }
+
+        @Override
+        public void stop() {
+            running = false;
+        }
+    }
+
+    private static class FakeMicrophone implements EvidenceCapture.AudioSource {
+        private final int sampleRate;
+        volatile boolean stopped;
+        private int phase;
+
+        FakeMicrophone(int sampleRate) {
+            this.sampleRate = sampleRate;
+        }
+
+        @Override
+        public int getSampleRate() {
+            return sampleRate;
+        }
+
+        @Override
+        public boolean start() {
+            return true;
+        }
+
+        @Override
+        public int read(short[] buffer) {
+            for (int i = 0; i < buffer.length; i++) {
+                buffer[i] = (short) (Math.sin(phase++ * 0.2) * 8000);
+            }
+            return buffer.length;
+        }
+
+        @Override
+        public void stop() {
+            stopped = true;
+        }
+    }
+
+    private static class MemoryStore implements EvidenceCapture.Store {
+        final Map<String, byte[]> items = new ConcurrentHashMap<>();
+
+        @Override
+        public String save(String captureId, String name, EvidenceBufferPool.Stream data) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.size());
+            data.writeTo(out);
+            items.put(name, out.toByteArray());
+            return name;
+        }
+    }
+
+    /** Writes to disk, as the recorder does, without keeping anything on the heap. */
+    private static class DiskStore implements EvidenceCapture.Store {
+        private final File directory;
+        volatile int count;
+        volatile long bytes;
+
+        DiskStore(File directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        public synchronized String save(String captureId, String name, EvidenceBufferPool.Stream data) throws IOException {
+            File file = new File(directory, name);
+            try (OutputStream out = new FileOutputStream(file)) {
+                data.writeTo(out);
+            }
+            count++;
+            bytes += file.length();
+            return file.getPath();
+        }
+    }
+
+    private static class NoStore implements EmergencyDispatcher.Store {
+        @Override
+        public void save(List<EmergencyDispatcher.Delivery> deliveries) {}
+
+        @Override
+        public List<EmergencyDispatcher.Delivery> load() {
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * The relay's {@code mail} collection. Writes succeed at once and are kept, the way pending
+     * writes are kept by Firestore until the server has them.
+     */
+    @SuppressWarnings("unchecked")
+    private static class FakeMailCollection {
+        final FirebaseFirestore db = mock(FirebaseFirestore.class);
+        final FirebaseAuth auth = mock(FirebaseAuth.class);
+        final List<Map<String, Object>> written = Collections.synchronizedList(new ArrayList<>());
+
+        FakeMailCollection() {
+            FirebaseUser user = mock(FirebaseUser.class);
+            when(user.getUid()).thenReturn("user-1");
+            when(auth.getCurrentUser()).thenReturn(user);
+
+            Task<Void> done = mock(Task.class);
+            doAnswer(invocation -> {
+                invocation.<OnSuccessListener<Void>>getArgument(0).onSuccess(null);
+                return done;
+            }).when(done).addOnSuccessListener(any(OnSuccessListener.class));
+            when(done.addOnFailureListener(any())).thenReturn(done);
+
+            CollectionReference collection = mock(CollectionReference.class);
+            when(db.collection("mail")).thenReturn(collection);
+            when(collection.document(anyString())).thenAnswer(invocation -> {
+                DocumentReference document = mock(DocumentReference.class);
+                when(document.getPath()).thenReturn("mail/" + invocation.getArgument(0));
+                when(document.set(anyMap())).thenAnswer(set -> {
+                    written.add(set.getArgument(0));
+                    return done;
+                });
+                return document;
+            });
+        }
+
+        List<Map<String, Object>> attachments(int email) {
+            Map<String, Object> message = (Map<String, Object>) written.get(email).get("message");
+            return (List<Map<String, Object>>) message.get("attachments");
+        }
+    }
+
+    private static class HeapSampler extends Thread {
+        private final MemoryMXBean memory;
+        volatile boolean stop;
+        volatile long peak;
+
+        HeapSampler(MemoryMXBean memory) {
+            this.memory = memory;
+        }
+
+        @Override
+        public void run() {
+            while (!stop) {
+                peak = Math.max(peak, memory.getHeapMemoryUsage().getUsed());
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.example.smartech;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Replays recorded IMU traces through {@link FallDetector} and reports detection rate, false
+ * alarms per hour and CPU time per hour of sensor data.
+ */
+public class FallDetectorTest {
+
+    private static final String[] FALL_TRACES = {
+            "fall_forward_while_walking", "fall_backward_from_standing", "fall_slump_to_side", "two_falls_with_recovery"};
+    private static final String[] EVERYDAY_TRACES = {
+            "walking", "running", "jumping", "sitting_down_hard", "lying_down"};
+    private static final int BATCH_PHASES = 10;
+
+    @Test
+    public void replayHarness_detectsFallsWithoutFalseAlarms() throws IOException {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long cpuNs = 0;
+        double hours = 0;
+        double everydayHours = 0;
+        int expectedFalls = 0;
+        int detectedFalls = 0;
+        int falseAlarms = 0;
+
+        for (String name : FALL_TRACES) {
+            ImuTrace trace = ImuTrace.load(name);
+            long start = threads.getCurrentThreadCpuTime();
+            int falls = replay(trace).size();
+            cpuNs += threads.getCurrentThreadCpuTime() - start;
+            hours += trace.hours();
+
+            assertEquals(name, trace.expectedFalls, falls);
+            expectedFalls += trace.expectedFalls;
+            detectedFalls += falls;
+        }
+        for (String name : EVERYDAY_TRACES) {
+            ImuTrace trace = ImuTrace.load(name);
+            long start = threads.getCurrentThreadCpuTime();
+            int falls = replay(trace).size();
+            cpuNs += threads.getCurrentThreadCpuTime() - start;
+            hours += trace.hours();
+            everydayHours += trace.hours();
+
+            assertEquals(name, 0, falls);
+            falseAlarms += falls;
+        }
+
+        double cpuMsPerHour = cpuNs / 1e6 / hours;
+        String report = String.format("Fall replay: detection rate %.2f (%d/%d), %.1f false alarms/hour, %.2f ms CPU per hour of data",
+                (double) detectedFalls / expectedFalls, detectedFalls, expectedFalls, falseAlarms / everydayHours, cpuMsPerHour);
+        assertTrue(report, cpuMsPerHour < 1000);
+    }
+
+    @Test
+    public void withoutGyroscope_orientationChangeAloneConfirmsFalls() throws IOException {
+        for (String name : FALL_TRACES) {
+            ImuTrace trace = ImuTrace.load(name);
+            assertEquals(name, trace.expectedFalls, replay(trace, false).size());
+        }
+        assertEquals(0, replay(ImuTrace.load("jumping"), false).size());
+    }
+
+    /**
+     * Falls that start from rest, replayed the way the monitoring service sees them: at the rate
+     * {@link AdaptiveSamplingPolicy} picks, in hardware batches, with a new rate and the
+     * gyroscope only applying from the batch after the policy asked for them. Each trace is
+     * started at several offsets into the first batch, like the shakes in
+     * {@link EmergencyLatencyTracerTest}.
+     */
+    @Test
+    public void underAdaptiveSampling_fallsFromRestAreStillDetected() throws IOException {
+        for (String name : FALL_TRACES) {
+            ImuTrace trace = ImuTrace.load(name);
+            for (int phase = 0; phase < BATCH_PHASES; phase++) {
+                long offsetNs = AdaptiveSamplingPolicy.STILL_RATE.maxReportLatencyUs * 1000L * phase / BATCH_PHASES;
+                assertEquals(name + " at batch offset " + offsetNs / 1000000 + " ms",
+                        trace.expectedFalls, replayUnderPolicy(trace, offsetNs).size());
+            }
+        }
+        for (String name : EVERYDAY_TRACES) {
+            assertEquals(name, 0, replayUnderPolicy(ImuTrace.load(name), 0).size());
+        }
+    }
+
+    @Test
+    public void freeFallWithoutImpact_returnsToIdle() {
+        List<Long> falls = new ArrayList<>();
+        FallDetector detector = new FallDetector(falls::add);
+        long t = 0;
+        for (int i = 0; i < 50; i++, t += 20000000L) detector.onAccelerometer(t, 0f, 9.8f, 0f);
+        for (int i = 0; i < 10; i++, t += 20000000L) detector.onAccelerometer(t, 0f, 1f, 0f);
+        assertEquals(FallDetector.State.FREE_FALL, detector.getState());
+
+        for (int i = 0; i < 50; i++, t += 20000000L) detector.onAccelerometer(t, 0f, 9.8f, 0f);
+
+        assertEquals(FallDetector.State.IDLE, detector.getState());
+        assertTrue(falls.isEmpty());
+    }
+
+    @Test
+    public void briefDip_isNotFreeFall() {
+        FallDetector detector = new FallDetector(timestampNs -> fail("no fall expected"));
+        detector.onAccelerometer(0, 0f, 9.8f, 0f);
+        detector.onAccelerometer(20000000L, 0f, 2f, 0f);
+        detector.onAccelerometer(40000000L, 0f, 30f, 0f);
+
+        assertEquals(FallDetector.State.IDLE, detector.getState());
+    }
+
+    private static List<Long> replayUnderPolicy(ImuTrace trace, long offsetNs) {
+        AdaptiveSamplingPolicy policy = new AdaptiveSamplingPolicy(new PowerBudget(PowerBudget.DEFAULT_DAILY_BUDGET_MAH,
+                PowerBudget.TYPICAL_ACCELEROMETER_MA, PowerBudget.TYPICAL_GYROSCOPE_MA));
+        List<Long> falls = new ArrayList<>();
+        FallDetector detector = new FallDetector(falls::add);
+
+        int i = 0;
+        long lastSampleNs = trace.timestampsNs[0] - AdaptiveSamplingPolicy.STILL_RATE.samplingPeriodUs * 1000L;
+        boolean first = true;
+        while (i < trace.size()) {
+            // Registered for the whole batch, whatever the policy decides part way through it.
+            AdaptiveSamplingPolicy.Rate rate = policy.getRate();
+            detector.setGyroscopeAvailable(rate.gyroscope);
+            long deliveredAtNs = trace.timestampsNs[i] + rate.maxReportLatencyUs * 1000L - (first ? offsetNs : 0);
+            first = false;
+            for (; i < trace.size() && trace.timestampsNs[i] <= deliveredAtNs; i++) {
+                long timestampNs = trace.timestampsNs[i];
+                // The recordings are 50 Hz; slower rates see every n-th sample.
+                if (timestampNs - lastSampleNs < rate.samplingPeriodUs * 1000L - 1000000L) continue;
+                lastSampleNs = timestampNs;
+                float[] v = trace.values[i];
+                if (rate.gyroscope) detector.onGyroscope(timestampNs, v[3], v[4], v[5]);
+                detector.onAccelerometer(timestampNs, v[0], v[1], v[2]);
+                policy.onAccelerometer(timestampNs, v[0], v[1], v[2]);
+            }
+        }
+        return falls;
+    }
+
+    private static List<Long> replay(ImuTrace trace) {
+        return replay(trace, true);
+    }
+
+    private static List<Long> replay(ImuTrace trace, boolean gyroscope) {
+        List<Long> falls = new ArrayList<>();
+        FallDetector detector = new FallDetector(falls::add);
+        detector.setGyroscopeAvailable(gyroscope);
+        for (int i = 0; i < trace.size(); i++) {
+            long timestampNs = trace.timestampsNs[i];
+            if (gyroscope) detector.onGyroscope(timestampNs, trace.values[i][3], trace.values[i][4], trace.values[i][5]);
+            detector.onAccelerometer(timestampNs, trace.values[i][0], trace.values[i][1], trace.values[i][2]);
+        }
+        return falls;
+    }
+
+    /**
+     * Accelerometer and gyroscope recording from {@code src/test/resources/imu}.
+     */
+    static class ImuTrace {
+        final int expectedFalls;
+        final long[] timestampsNs;
+        final float[][] values;
+
+        private ImuTrace(int expectedFalls, long[] timestampsNs, float[][] values) {
+            this.expectedFalls = expectedFalls;
+            this.timestampsNs = timestampsNs;
+            this.values = values;
+        }
+
+        int size() {
+            return timestampsNs.length;
+        }
+
+        double hours() {
+            return (timestampsNs[size() - 1] - timestampsNs[0]) / 3.6e12;
+        }
+
+        static ImuTrace load(String name) throws IOException {
+            InputStream in = FallDetectorTest.class.getResourceAsStream("/imu/" + name + ".csv");
+            assertNotNull("missing trace " + name, in);
+
+            int expected = 0;
+            List<Long> times = new ArrayList<>();
+            List<float[]> rows = new ArrayList<>();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith("# expectedFalls=")) {
+                        expected = Integer.parseInt(line.substring("# expectedFalls=".length()).trim());
+                        continue;
+                    }
+                    if (line.startsWith("#") || line.startsWith("timestamp") || line.isEmpty()) continue;
+                    String[] parts = line.split(",");
+                    times.add(Long.parseLong(parts[0]) * 1000000L);
+                    float[] row = new float[6];
+                    for (int i = 0; i < 6; i++) {
+                        row[i] = Float.parseFloat(parts[i + 1]);
+                    }
+                    rows.add(row);
+                }
+            }
+
+            long[] timestampsNs = new long[times.size()];
+            for (int i = 0; i < timestampsNs.length; i++) {
+                timestampsNs[i] = times.get(i);
+            }
+            return new ImuTrace(expected, timestampsNs, rows.toArray(new float[0][]));
+        }
+    }
+}
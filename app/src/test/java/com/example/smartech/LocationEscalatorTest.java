@@ -0,0 +1,167 @@
+package com.example.smartech;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs {@link LocationEscalator} on a virtual clock against a fake radio and compares GPS-on
+ * time with the old behaviour of keeping GPS on for as long as the emergency screen is open.
+ */
+public class LocationEscalatorTest {
+
+    private final VirtualScheduler scheduler = new VirtualScheduler();
+    private final FakeRadio radio = new FakeRadio();
+    private final LocationEscalator escalator = new LocationEscalator(radio, scheduler, () -> scheduler.nowMs);
+    private final List<LocationFix> fixes = new ArrayList<>();
+
+    @Test
+    public void freshCachedFix_answersWithEveryRadioOff() {
+        scheduler.nowMs = 100000;
+        escalator.offer(LocationEscalator.Source.NETWORK, 1, 2, 40f, 90000);
+
+        escalator.request(LocationEscalator.NORMAL, fixes::add);
+
+        assertEquals(1, fixes.size());
+        assertTrue(radio.started.isEmpty());
+    }
+
+    @Test
+    public void normalRequest_stopsAtNetworkWhenThatIsGoodEnough() {
+        escalator.request(LocationEscalator.NORMAL, fixes::add);
+        assertTrue(escalator.isRunning(LocationEscalator.Source.PASSIVE));
+
+        scheduler.advance(5000);
+        assertTrue(escalator.isRunning(LocationEscalator.Source.NETWORK));
+        assertFalse(escalator.isRunning(LocationEscalator.Source.PASSIVE));
+
+        scheduler.advance(2000);
+        escalator.onFix(LocationEscalator.Source.NETWORK, 1, 2, 60f, scheduler.nowMs);
+
+        assertEquals(1, fixes.size());
+        assertFalse(radio.started.contains(LocationEscalator.Source.GPS));
+        assertEquals(0, escalator.getGpsOnMs());
+    }
+
+    @Test
+    public void normalRequest_escalatesToGpsAndGivesUpWithTheBestItHas() {
+        escalator.offer(LocationEscalator.Source.PASSIVE, 1, 2, 500f, 0);
+        scheduler.nowMs = 10 * 60 * 1000;
+
+        escalator.request(LocationEscalator.NORMAL, fixes::add);
+        scheduler.advance(15000);
+        assertTrue(escalator.isRunning(LocationEscalator.Source.GPS));
+
+        scheduler.advance(30000);
+        assertEquals(1, fixes.size());
+        assertTrue(fixes.get(0).isValid());
+        assertFalse(escalator.isActive());
+        assertEquals(30000, escalator.getGpsOnMs());
+    }
+
+    @Test
+    public void emergencyBurst_runsGpsOnlyUntilAccurateFix() {
+        escalator.request(LocationEscalator.EMERGENCY, fixes::add);
+        assertTrue(escalator.isRunning(LocationEscalator.Source.GPS));
+        assertTrue(escalator.isRunning(LocationEscalator.Source.NETWORK));
+        assertTrue(radio.highAccuracy);
+
+        scheduler.advance(3000);
+        escalator.onFix(LocationEscalator.Source.NETWORK, 1, 2, 80f, scheduler.nowMs);
+        assertTrue(fixes.isEmpty());
+
+        scheduler.advance(5000);
+        escalator.onFix(LocationEscalator.Source.GPS, 1.0001, 2.0001, 8f, scheduler.nowMs);
+
+        assertEquals(1, fixes.size());
+        assertEquals(8f, fixes.get(0).accuracyM, 0f);
+        assertFalse(escalator.isRunning(LocationEscalator.Source.GPS));
+        assertEquals(8000, escalator.getGpsOnMs());
+    }
+
+    @Test
+    public void emergencyRequest_upgradesANormalOneInProgress() {
+        List<LocationFix> normal = new ArrayList<>();
+        escalator.request(LocationEscalator.NORMAL, normal::add);
+        escalator.request(LocationEscalator.EMERGENCY, fixes::add);
+        assertTrue(escalator.isRunning(LocationEscalator.Source.GPS));
+
+        escalator.onFix(LocationEscalator.Source.GPS, 1, 2, 10f, scheduler.nowMs);
+
+        assertEquals(1, normal.size());
+        assertEquals(1, fixes.size());
+    }
+
+    /**
+     * Ten minutes on the emergency screen with one alert: previously GPS ran the whole time.
+     */
+    @Test
+    public void gpsOnTime_dropsAgainstAlwaysOn() {
+        long sessionMs = 10 * 60 * 1000;
+        escalator.request(LocationEscalator.NORMAL, fix -> { });
+        scheduler.advance(5000);
+        escalator.onFix(LocationEscalator.Source.NETWORK, 1, 2, 50f, scheduler.nowMs);
+
+        scheduler.advance(4 * 60 * 1000);
+        escalator.request(LocationEscalator.EMERGENCY, fixes::add);
+        scheduler.advance(6000);
+        escalator.onFix(LocationEscalator.Source.GPS, 1, 2, 12f, scheduler.nowMs);
+
+        scheduler.advance(sessionMs - scheduler.nowMs);
+        long gpsOnMs = escalator.getGpsOnMs();
+
+        assertEquals(1, fixes.size());
+        String report = String.format("GPS on %.1f s of a %d s session (was %d s), emergency fix within %.0f m",
+                gpsOnMs / 1000.0, sessionMs / 1000, sessionMs / 1000, fixes.get(0).accuracyM);
+        assertTrue(report, fixes.get(0).accuracyM <= LocationEscalator.EMERGENCY.accuracyM);
+        assertTrue(report, gpsOnMs * 20 < sessionMs);
+    }
+
+    private static class FakeRadio implements LocationEscalator.Radio {
+        final List<LocationEscalator.Source> started = new ArrayList<>();
+        boolean highAccuracy;
+
+        @Override
+        public void start(LocationEscalator.Source source, boolean highAccuracy) {
+            started.add(source);
+            this.highAccuracy |= highAccuracy;
+        }
+
+        @Override
+        public void stop(LocationEscalator.Source source) {}
+    }
+
+    private static class VirtualScheduler implements LocationEscalator.Scheduler {
+        long nowMs = 0;
+        private long sequence = 0;
+        private final PriorityQueue<long[]> queue = new PriorityQueue<>((a, b) ->
+                a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+        private final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public Runnable schedule(Runnable task, long delayMs) {
+            int index = tasks.size();
+            tasks.add(task);
+            queue.add(new long[]{nowMs + delayMs, sequence++, index});
+            return () -> tasks.set(index, null);
+        }
+
+        void advance(long ms) {
+            long until = nowMs + ms;
+            while (!queue.isEmpty() && queue.peek()[0] <= until) {
+                long[] next = queue.poll();
+                nowMs = next[0];
+                Runnable task = tasks.get((int) next[2]);
+                if (task != null) {
+                    tasks.set((int) next[2], null);
+                    task.run();
+                }
+            }
+            nowMs = until;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.smartech;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PhoneticContactMatcherTest {
+
+    private final PhoneticContactMatcher matcher = new PhoneticContactMatcher(Arrays.asList(
+            new ContactIndex.Contact("Kathryn", "Smith", "kathryn@example.com"),
+            new ContactIndex.Contact("Stephen", "Walsh", "stephen@example.com"),
+            new ContactIndex.Contact("John", "Knight", "john@example.com"),
+            new ContactIndex.Contact("Maria", "Lopez", "maria@example.com"),
+            new ContactIndex.Contact("Mario", "Lopes", "mario@example.com")));
+
+    @Test
+    public void encode_foldsCommonSpellingVariants() {
+        assertEquals(PhoneticContactMatcher.encode("kathryn"), PhoneticContactMatcher.encode("catherine"));
+        assertEquals(PhoneticContactMatcher.encode("stephen"), PhoneticContactMatcher.encode("steven"));
+        assertEquals(PhoneticContactMatcher.encode("john"), PhoneticContactMatcher.encode("jon"));
+        assertEquals(PhoneticContactMatcher.encode("smith"), PhoneticContactMatcher.encode("smyth"));
+        assertEquals(PhoneticContactMatcher.encode("knight"), PhoneticContactMatcher.encode("night"));
+    }
+
+    @Test
+    public void editDistance_countsInsertionsDeletionsAndSubstitutions() {
+        assertEquals(0, PhoneticContactMatcher.editDistance("maria", "maria"));
+        assertEquals(1, PhoneticContactMatcher.editDistance("maria", "mario"));
+        assertEquals(2, PhoneticContactMatcher.editDistance("jon", "joann"));
+        assertEquals(3, PhoneticContactMatcher.editDistance("", "abc"));
+    }
+
+    @Test
+    public void match_findsMisrecognizedName() {
+        List<PhoneticContactMatcher.Match> matches = matcher.match("catherine smyth", 3);
+
+        assertFalse(matches.isEmpty());
+        assertEquals("kathryn@example.com", matches.get(0).contact.email);
+    }
+
+    @Test
+    public void match_ranksCandidatesWithScores() {
+        List<PhoneticContactMatcher.Match> matches = matcher.match("maria lopes", 3);
+
+        assertEquals(2, matches.size());
+        assertTrue(matches.get(0).score >= matches.get(1).score);
+        assertTrue(matches.get(0).score < 1.0 || matches.get(1).score < 1.0);
+    }
+
+    @Test
+    public void match_singleTokenMatchesFirstOrLastName() {
+        assertEquals("stephen@example.com", matcher.match("steven", 1).get(0).contact.email);
+        assertEquals("john@example.com", matcher.match("my night", 1).get(0).contact.email);
+    }
+
+    @Test
+    public void match_unrelatedName_returnsNothing() {
+        assertTrue(matcher.match("bartholomew", 3).isEmpty());
+        assertTrue(matcher.match("", 3).isEmpty());
+    }
+
+    /** Recall only; the lookup latency is measured on a device by PhoneticContactMatcherBenchmark. */
+    @Test
+    public void largeSyntheticContactList_findsMisspelledNamesInTheTopThree() {
+        String[] onsets = {"b", "c", "d", "f", "g", "j", "k", "l", "m", "n", "p", "r", "s", "t", "v", "w", "z", "br", "ch", "st", "tr", "sh"};
+        String[] vowels = {"a", "e", "i", "o", "u", "ay", "ee"};
+        String[] codas = {"n", "r", "l", "s", "th", "ck", "m", "x", "nd", "rt"};
+        Random random = new Random(11);
+
+        int contactCount = 10000;
+        List<ContactIndex.Contact> contacts = new ArrayList<>();
+        for (int i = 0; i < contactCount; i++) {
+            contacts.add(new ContactIndex.Contact(
+                    syllables(random, onsets, vowels, codas, 2), syllables(random, onsets, vowels, codas, 3),
+                    i + "@example.com"));
+        }
+        PhoneticContactMatcher large = new PhoneticContactMatcher(contacts);
+
+        int queries = 2000;
+        int foundInTop3 = 0;
+        for (int i = 0; i < queries; i++) {
+            ContactIndex.Contact target = contacts.get(random.nextInt(contactCount));
+            String spoken = misspell(random, target.firstName) + " " + target.lastName;
+            for (PhoneticContactMatcher.Match match : large.match(spoken, 3)) {
+                if (match.contact == target) {
+                    foundInTop3++;
+                    break;
+                }
+            }
+        }
+
+        double recall = (double) foundInTop3 / queries;
+        assertTrue(String.format("%d contacts: top-3 recall %.3f", contactCount, recall), recall >= 0.95);
+    }
+
+    private static String syllables(Random random, String[] onsets, String[] vowels, String[] codas, int count) {
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            word.append(onsets[random.nextInt(onsets.length)]).append(vowels[random.nextInt(vowels.length)]);
+        }
+        word.append(codas[random.nextInt(codas.length)]);
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+
+    /**
+     * Applies the kind of error a recognizer makes: a vowel swapped or a letter doubled or dropped.
+     */
+    private static String misspell(Random random, String word) {
+        char[] chars = word.toLowerCase().toCharArray();
+        int position = 1 + random.nextInt(chars.length - 1);
+        switch (random.nextInt(3)) {
+            case 0:
+                if ("aeiou".indexOf(chars[position]) >= 0) {
+                    chars[position] = "aeiou".charAt(random.nextInt(5));
+                }
+                return new String(chars);
+            case 1:
+                return word.substring(0, position) + word.charAt(position) + word.substring(position);
+            default:
+                return word.substring(0, position) + word.substring(position + 1);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.smartech;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PlannerCommandParserTest {
+
+    @Test
+    public void compoundUtterance_isSplitIntoOperations() {
+        List<PlannerCommandParser.Operation> operations =
+                PlannerCommandParser.parse("add task call mom and add task buy milk and remove task 2");
+
+        assertEquals(3, operations.size());
+        assertEquals(PlannerCommandParser.Type.ADD, operations.get(0).type);
+        assertEquals("call mom", operations.get(0).text);
+        assertEquals("buy milk", operations.get(1).text);
+        assertEquals(PlannerCommandParser.Type.REMOVE, operations.get(2).type);
+        assertEquals(2, operations.get(2).number);
+    }
+
+    @Test
+    public void conjunctionInsideTaskText_isKept() {
+        List<PlannerCommandParser.Operation> operations =
+                PlannerCommandParser.parse("Add task buy bread and butter");
+
+        assertEquals(1, operations.size());
+        assertEquals("buy bread and butter", operations.get(0).text);
+    }
+
+    @Test
+    public void trailingTomorrow_setsDueDate() {
+        List<PlannerCommandParser.Operation> operations =
+                PlannerCommandParser.parse("add task pick up prescription tomorrow and add task water plants");
+
+        assertEquals("pick up prescription", operations.get(0).text);
+        assertEquals(1, operations.get(0).dueInDays);
+        assertEquals(0, operations.get(1).dueInDays);
+    }
+
+    @Test
+    public void spokenNumbers_areUnderstood() {
+        List<PlannerCommandParser.Operation> operations =
+                PlannerCommandParser.parse("remove task three then remove task number 1");
+
+        assertEquals(2, operations.size());
+        assertEquals(3, operations.get(0).number);
+        assertEquals(1, operations.get(1).number);
+    }
+
+    @Test
+    public void invalidNumber_isReportedAsZero() {
+        List<PlannerCommandParser.Operation> operations = PlannerCommandParser.parse("remove task banana");
+
+        assertEquals(1, operations.size());
+        assertEquals(0, operations.get(0).number);
+    }
+
+    @Test
+    public void otherCommands_areNotTaskEdits() {
+        assertTrue(PlannerCommandParser.isTaskEdit("add task water plants"));
+        assertFalse(PlannerCommandParser.isTaskEdit("what are my tasks"));
+    }
+
+    @Test
+    public void findAndRemoveByName_extractSearchWords() {
+        assertEquals("pharmacy", PlannerCommandParser.parseFindQuery("find task pharmacy"));
+        assertEquals("pharmacy", PlannerCommandParser.parseFindQuery("search for tasks about the pharmacy"));
+        assertEquals("pharmacy pickup", PlannerCommandParser.parseFindQuery("find the task about the pharmacy pickup"));
+        assertEquals("bread butter", PlannerCommandParser.parseRemoveByName("remove the bread and butter task"));
+        assertNull(PlannerCommandParser.parseFindQuery("find task about the"));
+        assertEquals("milk", PlannerCommandParser.parseRemoveByName("remove the milk task"));
+        assertNull(PlannerCommandParser.parseFindQuery("add task find keys"));
+        assertNull(PlannerCommandParser.parseRemoveByName("remove task 2"));
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.smartech;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PlannerMutationLogTest {
+
+    private static PlannerMutationLog.Mutation add(String id, String text) {
+        return new PlannerMutationLog.Mutation(PlannerMutationLog.Type.ADD, id, text);
+    }
+
+    private static PlannerMutationLog.Mutation remove(String id) {
+        return new PlannerMutationLog.Mutation(PlannerMutationLog.Type.REMOVE, id, null);
+    }
+
+    @Test
+    public void addFollowedByRemove_cancelsOut() {
+        PlannerMutationLog log = new PlannerMutationLog();
+        log.append(add("a", "buy milk"));
+        log.append(add("b", "call mom"));
+        log.append(remove("a"));
+
+        List<PlannerMutationLog.Mutation> pending = log.getPending();
+        assertEquals(1, pending.size());
+        assertEquals("b", pending.get(0).taskId);
+    }
+
+    @Test
+    public void repeatedRemove_isCollapsed() {
+        PlannerMutationLog log = new PlannerMutationLog();
+        log.append(remove("a"));
+        log.append(remove("a"));
+
+        assertEquals(1, log.getPending().size());
+    }
+
+    @Test
+    public void inFlightAdd_isNotCoalesced() {
+        PlannerMutationLog log = new PlannerMutationLog();
+        log.append(add("a", "buy milk"));
+        assertEquals(1, log.beginFlush(10).size());
+
+        log.append(remove("a"));
+        log.completeFlush();
+
+        List<PlannerMutationLog.Mutation> pending = log.getPending();
+        assertEquals(1, pending.size());
+        assertEquals(PlannerMutationLog.Type.REMOVE, pending.get(0).type);
+    }
+
+    @Test
+    public void abortedFlush_keepsMutationsForRetry() {
+        PlannerMutationLog log = new PlannerMutationLog();
+        log.append(add("a", "buy milk"));
+        log.append(add("b", "call mom"));
+
+        assertEquals(1, log.beginFlush(1).size());
+        assertTrue(log.beginFlush(1).isEmpty());
+        log.abortFlush();
+
+        assertFalse(log.isFlushing());
+        assertEquals(2, log.getPending().size());
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.smartech;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RegistrationActivityTest {
+
+    @Test
+    public void ordinaryNames_areValidDocumentIds() {
+        assertTrue(RegistrationActivity.isValidUsername("anna"));
+        assertTrue(RegistrationActivity.isValidUsername("anna.k_99-x"));
+        assertEquals("anna", RegistrationActivity.normalizeUsername("  Anna "));
+    }
+
+    @Test
+    public void namesThatAreNotDocumentIds_areRejected() {
+        assertFalse(RegistrationActivity.isValidUsername("anna/bob"));
+        assertFalse(RegistrationActivity.isValidUsername("."));
+        assertFalse(RegistrationActivity.isValidUsername(".."));
+        assertFalse(RegistrationActivity.isValidUsername("__name__"));
+        assertFalse(RegistrationActivity.isValidUsername(""));
+        assertFalse(RegistrationActivity.isValidUsername("anna k"));
+        assertFalse(RegistrationActivity.isValidUsername("a234567890123456789012345678901"));
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.smartech;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleOwner;
+import androidx.lifecycle.LifecycleRegistry;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+public class ResourceRegistryTest {
+
+    private static class Owner implements LifecycleOwner {
+        final LifecycleRegistry lifecycle = LifecycleRegistry.createUnsafe(this);
+
+        @NonNull
+        @Override
+        public Lifecycle getLifecycle() {
+            return lifecycle;
+        }
+    }
+
+    @Test
+    public void release_runsInReverseOrderOfRegistration() {
+        ResourceRegistry registry = new ResourceRegistry();
+        List<String> released = new ArrayList<>();
+        registry.add("recognizer", released::add);
+        registry.add("tts", released::add);
+        registry.onRelease(() -> released.add("listener"));
+
+        assertTrue(registry.release().isEmpty());
+        assertEquals(Arrays.asList("listener", "tts", "recognizer"), released);
+    }
+
+    @Test
+    public void release_continuesPastFailuresAndReturnsThem() {
+        ResourceRegistry registry = new ResourceRegistry();
+        List<String> released = new ArrayList<>();
+        AutoCloseable broken = () -> {
+            throw new IOException("close failed");
+        };
+        registry.add("first", released::add);
+        registry.add(broken);
+        registry.onRelease(() -> {
+            throw new IllegalStateException("already gone");
+        });
+        registry.add("last", released::add);
+
+        List<Exception> failures = registry.release();
+
+        assertEquals(Arrays.asList("last", "first"), released);
+        assertEquals(2, failures.size());
+        assertTrue(failures.get(0) instanceof IllegalStateException);
+        assertTrue(failures.get(1) instanceof IOException);
+    }
+
+    @Test
+    public void release_isIdempotent() {
+        ResourceRegistry registry = new ResourceRegistry();
+        int[] count = {0};
+        registry.onRelease(() -> count[0]++);
+
+        registry.release();
+        registry.release();
+
+        assertEquals(1, count[0]);
+        assertTrue(registry.isReleased());
+    }
+
+    @Test
+    public void add_afterRelease_releasesImmediately() {
+        ResourceRegistry registry = new ResourceRegistry();
+        registry.release();
+        List<String> released = new ArrayList<>();
+
+        assertEquals("late", registry.add("late", released::add));
+        assertEquals(Arrays.asList("late"), released);
+    }
+
+    @Test
+    public void add_null_registersNothing() {
+        int before = ResourceRegistry.getLiveCount();
+        ResourceRegistry registry = new ResourceRegistry();
+
+        assertNull(registry.add(null, resource -> fail("nothing to release")));
+        assertEquals(before, ResourceRegistry.getLiveCount());
+    }
+
+    @Test
+    public void addExecutor_shutsItDown() {
+        ResourceRegistry registry = new ResourceRegistry();
+        ExecutorService executor = registry.addExecutor(Executors.newSingleThreadExecutor());
+
+        registry.release();
+
+        assertTrue(executor.isShutdown());
+    }
+
+    @Test
+    public void liveCount_tracksUnreleasedResources() {
+        int before = ResourceRegistry.getLiveCount();
+        ResourceRegistry registry = new ResourceRegistry();
+        registry.onRelease(() -> {});
+        registry.onRelease(() -> {});
+        assertEquals(before + 2, ResourceRegistry.getLiveCount());
+
+        registry.release();
+        assertEquals(before, ResourceRegistry.getLiveCount());
+    }
+
+    @Test
+    public void bindTo_releasesWhenOwnerIsDestroyed() {
+        Owner owner = new Owner();
+        owner.lifecycle.handleLifecycleEvent(Lifecycle.Event.ON_CREATE);
+        ResourceRegistry registry = ResourceRegistry.bindTo(owner);
+        int[] count = {0};
+        registry.onRelease(() -> count[0]++);
+
+        owner.lifecycle.handleLifecycleEvent(Lifecycle.Event.ON_START);
+        owner.lifecycle.handleLifecycleEvent(Lifecycle.Event.ON_STOP);
+        assertEquals(0, count[0]);
+
+        owner.lifecycle.handleLifecycleEvent(Lifecycle.Event.ON_DESTROY);
+        assertEquals(1, count[0]);
+        assertEquals(0, owner.lifecycle.getObserverCount());
+    }
+}
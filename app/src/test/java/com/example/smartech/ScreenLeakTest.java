@@ -0,0 +1,137 @@
+package com.example.smartech;
+
+import android.app.Activity;
+import android.content.Context;
+import android.os.Looper;
+
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.FirebaseOptions;
+import com.google.mlkit.common.sdkinternal.MlKitContext;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.android.controller.ActivityController;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Opens and closes every screen repeatedly and checks that nothing keeps the closed ones alive.
+ *
+ * The first round is a warm-up: singletons and caches filled by it are there for good. After
+ * it, no round may leave more activities reachable, any resource registered with a
+ * {@link ResourceRegistry} unreleased, or the heap noticeably bigger than the round before.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ScreenLeakTest {
+
+    private static final int ROUNDS = 5;
+    // Generous next to a leaked activity, which holds its whole view tree and engines.
+    private static final long MAX_HEAP_GROWTH_BYTES = 8L * 1024 * 1024;
+
+    private static final List<Class<? extends Activity>> SCREENS = new ArrayList<>();
+
+    static {
+        // The splash screen is left out: its warm-ups hold it on purpose until they finish, a
+        // few seconds at most, which would read as a leak here.
+        SCREENS.add(LoginActivity.class);
+        SCREENS.add(RegistrationActivity.class);
+        SCREENS.add(EmergencyContactActivity.class);
+        SCREENS.add(IntroductionActivity.class);
+        SCREENS.add(TutorialActivity.class);
+        SCREENS.add(HomeActivity.class);
+        SCREENS.add(DailyPlannerActivity.class);
+        SCREENS.add(HelpActivity.class);
+        SCREENS.add(EmergencyActivity.class);
+        SCREENS.add(ObjectRecognitionActivity.class);
+    }
+
+    @Before
+    public void setUp() {
+        initializeServices();
+    }
+
+    /** Firebase and ML Kit as the app's content providers would set them up on a device. */
+    static void initializeServices() {
+        Context context = RuntimeEnvironment.getApplication();
+        if (FirebaseApp.getApps(context).isEmpty()) {
+            FirebaseApp.initializeApp(context, new FirebaseOptions.Builder()
+                    .setApplicationId("1:000000000000:android:0000000000000000")
+                    .setApiKey("test-api-key")
+                    .setProjectId("smartech-test")
+                    .setDatabaseUrl("https://smartech-test.firebaseio.com")
+                    .build());
+        }
+        MlKitContext.initializeIfNeeded(context);
+    }
+
+    @Test
+    public void navigatingThroughAllScreens_retainsNothing() {
+        List<WeakReference<Activity>> closed = new ArrayList<>();
+        int retainedAfterWarmUp = -1;
+        long heapAfterWarmUp = -1;
+        long heapBefore = -1;
+
+        for (int round = 0; round < ROUNDS; round++) {
+            for (Class<? extends Activity> screen : SCREENS) {
+                closed.add(new WeakReference<>(openAndClose(screen)));
+            }
+
+            long heap = usedHeapAfterGc();
+            int retained = countReachable(closed);
+            assertEquals("resources still registered after round " + round, 0, ResourceRegistry.getLiveCount());
+
+            if (round == 0) {
+                retainedAfterWarmUp = retained;
+                heapAfterWarmUp = heap;
+            } else {
+                assertTrue("round " + round + " retained " + retained + " activities, warm-up retained "
+                        + retainedAfterWarmUp, retained <= retainedAfterWarmUp);
+                assertTrue("heap grew by " + (heap - heapBefore) + " bytes in round " + round,
+                        heap - heapBefore < MAX_HEAP_GROWTH_BYTES);
+            }
+            heapBefore = heap;
+        }
+        assertTrue("heap grew by " + (heapBefore - heapAfterWarmUp) + " bytes after the warm-up",
+                heapBefore - heapAfterWarmUp < MAX_HEAP_GROWTH_BYTES);
+    }
+
+    private static Activity openAndClose(Class<? extends Activity> screen) {
+        ActivityController<? extends Activity> controller = Robolectric.buildActivity(screen).setup();
+        shadowOf(Looper.getMainLooper()).idle();
+        Activity activity = controller.get();
+        controller.pause().stop().destroy();
+        shadowOf(Looper.getMainLooper()).idle();
+        return activity;
+    }
+
+    private static int countReachable(List<WeakReference<Activity>> references) {
+        int reachable = 0;
+        for (WeakReference<Activity> reference : references) {
+            if (reference.get() != null) reachable++;
+        }
+        return reachable;
+    }
+
+    private static long usedHeapAfterGc() {
+        // A collected sentinel shows a collection really ran; a few of them let finalizers and
+        // reference queues catch up.
+        for (int i = 0; i < 3; i++) {
+            WeakReference<Object> sentinel = new WeakReference<>(new Object());
+            for (int attempt = 0; attempt < 50 && sentinel.get() != null; attempt++) {
+                System.gc();
+                System.runFinalization();
+            }
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
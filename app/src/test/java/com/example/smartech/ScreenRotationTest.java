@@ -0,0 +1,80 @@
+package com.example.smartech;
+
+import android.os.Looper;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ActivityController;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Recreates screens the way a rotation does and checks that their engines and conversation
+ * state carry over instead of starting again.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ScreenRotationTest {
+
+    @Before
+    public void setUp() {
+        ScreenLeakTest.initializeServices();
+    }
+
+    @Test
+    public void rotation_keepsEnginesOfEveryScreen() {
+        assertEnginesSurvive(HomeActivity.class, HomeActivity.State.class);
+        assertEnginesSurvive(IntroductionActivity.class, IntroductionActivity.State.class);
+        assertEnginesSurvive(DailyPlannerActivity.class, DailyPlannerActivity.State.class);
+        assertEnginesSurvive(HelpActivity.class, HelpActivity.State.class);
+        assertEnginesSurvive(EmergencyActivity.class, EmergencyActivity.State.class);
+        assertEnginesSurvive(ObjectRecognitionActivity.class, ObjectRecognitionActivity.State.class);
+    }
+
+    @Test
+    public void rotation_keepsConversationState() {
+        ActivityController<HelpActivity> controller = Robolectric.buildActivity(HelpActivity.class).setup();
+        HelpActivity.State state = ScreenViewModel.of(controller.get(), HelpActivity.State.class);
+        state.awaitingMessage = true;
+        state.selectedContactName = "Anna";
+
+        controller.recreate();
+
+        HelpActivity.State after = ScreenViewModel.of(controller.get(), HelpActivity.State.class);
+        assertTrue(after.awaitingMessage);
+        assertEquals("Anna", after.selectedContactName);
+        close(controller);
+    }
+
+    private static <A extends AppCompatActivity, S extends ScreenViewModel> void assertEnginesSurvive(
+            Class<A> screen, Class<S> stateType) {
+        ActivityController<A> controller = Robolectric.buildActivity(screen).setup();
+        shadowOf(Looper.getMainLooper()).idle();
+        A before = controller.get();
+        S state = ScreenViewModel.of(before, stateType);
+        TextSpeakerHelper speech = state.getSpeech();
+        VoiceAssistantHelper voice = state.getVoice();
+
+        controller.recreate();
+        shadowOf(Looper.getMainLooper()).idle();
+
+        assertNotSame(before, controller.get());
+        S after = ScreenViewModel.of(controller.get(), stateType);
+        assertSame(screen.getSimpleName(), state, after);
+        assertSame(screen.getSimpleName(), speech, after.getSpeech());
+        assertSame(screen.getSimpleName(), voice, after.getVoice());
+
+        close(controller);
+        assertEquals(screen.getSimpleName() + " left resources registered", 0, ResourceRegistry.getLiveCount());
+    }
+
+    private static void close(ActivityController<?> controller) {
+        controller.pause().stop().destroy();
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+}
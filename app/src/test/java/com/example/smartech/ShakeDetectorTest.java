@@ -0,0 +1,139 @@
+package com.example.smartech;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ShakeDetectorTest {
+
+    private static final String[] SHAKE_TRACES = {
+            "shake_vigorous", "shake_gentle", "shake_opposite_axes_while_walking"};
+    private static final String[] EVERYDAY_TRACES = {
+            "stationary_table", "walking", "running", "car_ride", "set_down_hard"};
+
+    @Test
+    public void shakeTraces_everyShakeIsDetectedOnce() throws IOException {
+        int expected = 0;
+        int detected = 0;
+        for (String trace : SHAKE_TRACES) {
+            Trace recording = Trace.load(trace);
+            int shakes = replay(recording, ShakeDetector.DEFAULT_CONFIG).size();
+            assertEquals(trace, recording.expectedShakes, shakes);
+            expected += recording.expectedShakes;
+            detected += shakes;
+        }
+        assertEquals(1.0, (double) detected / expected, 0.0);
+    }
+
+    @Test
+    public void everydayMotion_producesNoFalsePositives() throws IOException {
+        for (String trace : EVERYDAY_TRACES) {
+            assertEquals(trace, 0, replay(Trace.load(trace), ShakeDetector.DEFAULT_CONFIG).size());
+        }
+    }
+
+    @Test
+    public void lowerThreshold_isMoreSensitive() throws IOException {
+        ShakeDetector.Config insensitive = new ShakeDetector.Config(30f, 5, 1000, 2000, 0.8f);
+        ShakeDetector.Config sensitive = new ShakeDetector.Config(6f, 3, 1000, 2000, 0.8f);
+        Trace gentle = Trace.load("shake_gentle");
+        Trace running = Trace.load("running");
+
+        assertEquals(0, replay(gentle, insensitive).size());
+        assertTrue(replay(running, sensitive).size() > 0);
+    }
+
+    @Test
+    public void refractoryPeriod_suppressesRepeatsWithinOneShake() {
+        List<Long> shakes = new ArrayList<>();
+        ShakeDetector detector = new ShakeDetector(
+                new ShakeDetector.Config(10f, 4, 1000, 10000, 0.8f), shakes::add);
+
+        // Five seconds of continuous shaking along x at 4 Hz, sampled at 50 Hz.
+        for (int i = 0; i < 250; i++) {
+            double t = i / 50.0;
+            detector.onSample(i * 20000000L, (float) (25 * Math.sin(2 * Math.PI * 4 * t)), 0f, 9.81f);
+        }
+
+        assertEquals(1, shakes.size());
+    }
+
+    @Test
+    public void outOfOrderAndDuplicateTimestamps_areIgnored() {
+        List<Long> shakes = new ArrayList<>();
+        ShakeDetector detector = new ShakeDetector(ShakeDetector.DEFAULT_CONFIG, shakes::add);
+
+        detector.onSample(1000, 0f, 0f, 9.81f);
+        detector.onSample(1000, 50f, 50f, 50f);
+        detector.onSample(500, -50f, -50f, -50f);
+
+        assertTrue(shakes.isEmpty());
+    }
+
+    private static List<Long> replay(Trace trace, ShakeDetector.Config config) {
+        List<Long> shakes = new ArrayList<>();
+        ShakeDetector detector = new ShakeDetector(config, shakes::add);
+        for (int i = 0; i < trace.size(); i++) {
+            detector.onSample(trace.timestampsNs[i], trace.x[i], trace.y[i], trace.z[i]);
+        }
+        return shakes;
+    }
+
+    /**
+     * Accelerometer recording from {@code src/test/resources/traces}. See the README there.
+     */
+    static class Trace {
+        final int expectedShakes;
+        final long[] timestampsNs;
+        final float[] x, y, z;
+
+        private Trace(int expectedShakes, List<float[]> rows, List<Long> times) {
+            this.expectedShakes = expectedShakes;
+            timestampsNs = new long[rows.size()];
+            x = new float[rows.size()];
+            y = new float[rows.size()];
+            z = new float[rows.size()];
+            for (int i = 0; i < rows.size(); i++) {
+                timestampsNs[i] = times.get(i);
+                x[i] = rows.get(i)[0];
+                y[i] = rows.get(i)[1];
+                z[i] = rows.get(i)[2];
+            }
+        }
+
+        int size() {
+            return timestampsNs.length;
+        }
+
+        static Trace load(String name) throws IOException {
+            InputStream in = ShakeDetectorTest.class.getResourceAsStream("/traces/" + name + ".csv");
+            assertNotNull("missing trace " + name, in);
+
+            int expected = 0;
+            List<float[]> rows = new ArrayList<>();
+            List<Long> times = new ArrayList<>();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith("# expectedShakes=")) {
+                        expected = Integer.parseInt(line.substring("# expectedShakes=".length()).trim());
+                        continue;
+                    }
+                    if (line.startsWith("#") || line.startsWith("timestamp") || line.isEmpty()) continue;
+                    String[] parts = line.split(",");
+                    times.add(Long.parseLong(parts[0]) * 1000000L);
+                    rows.add(new float[]{Float.parseFloat(parts[1]), Float.parseFloat(parts[2]), Float.parseFloat(parts[3])});
+                }
+            }
+            return new Trace(expected, rows, times);
+        }
+    }
+}
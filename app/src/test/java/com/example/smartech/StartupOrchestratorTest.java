@@ -0,0 +1,106 @@
+package com.example.smartech;
+
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class StartupOrchestratorTest {
+
+    private static StartupOrchestrator.WarmUp sleep(long ms) {
+        return () -> Thread.sleep(ms);
+    }
+
+    @Test
+    public void criticalReady_doesNotWaitForBackgroundWarmUps() throws Exception {
+        ScheduledExecutorService executor = Executors.newScheduledThreadPool(4);
+        CountDownLatch critical = new CountDownLatch(1);
+        CountDownLatch all = new CountDownLatch(1);
+        AtomicLong criticalAt = new AtomicLong();
+        AtomicReference<Map<String, Long>> finalTimings = new AtomicReference<>();
+
+        long start = System.nanoTime();
+        new StartupOrchestrator(executor, Runnable::run)
+                .add("auth", true, sleep(50))
+                .add("profile", true, sleep(80))
+                .add("tts", false, sleep(400))
+                .start(1500, new StartupOrchestrator.Listener() {
+                    @Override
+                    public void onCriticalReady(Map<String, Long> timingsMs) {
+                        criticalAt.set(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                        critical.countDown();
+                    }
+
+                    @Override
+                    public void onAllDone(Map<String, Long> timingsMs) {
+                        finalTimings.set(timingsMs);
+                        all.countDown();
+                    }
+                });
+
+        assertTrue(critical.await(2, TimeUnit.SECONDS));
+        assertTrue("critical set took " + criticalAt.get() + " ms", criticalAt.get() < 300);
+        assertTrue(all.await(2, TimeUnit.SECONDS));
+        assertEquals(3, finalTimings.get().size());
+        assertTrue(finalTimings.get().get("tts") >= 400);
+        executor.shutdown();
+    }
+
+    @Test
+    public void deadline_releasesSlowCriticalSet() throws Exception {
+        ScheduledExecutorService executor = Executors.newScheduledThreadPool(2);
+        CountDownLatch critical = new CountDownLatch(1);
+        AtomicReference<Map<String, Long>> timings = new AtomicReference<>();
+
+        new StartupOrchestrator(executor, Runnable::run)
+                .add("slow", true, sleep(1000))
+                .start(100, new StartupOrchestrator.Listener() {
+                    @Override
+                    public void onCriticalReady(Map<String, Long> timingsMs) {
+                        timings.set(timingsMs);
+                        critical.countDown();
+                    }
+
+                    @Override
+                    public void onAllDone(Map<String, Long> timingsMs) {}
+                });
+
+        assertTrue(critical.await(500, TimeUnit.MILLISECONDS));
+        assertFalse(timings.get().containsKey("slow"));
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void failingWarmUp_isRecordedAndDoesNotBlock() throws Exception {
+        ScheduledExecutorService executor = Executors.newScheduledThreadPool(2);
+        CountDownLatch all = new CountDownLatch(1);
+        AtomicReference<Map<String, Long>> timings = new AtomicReference<>();
+
+        StartupOrchestrator orchestrator = new StartupOrchestrator(executor, Runnable::run);
+        orchestrator.record("firebase", 12);
+        orchestrator
+                .add("broken", true, () -> { throw new IllegalStateException("boom"); })
+                .start(1000, new StartupOrchestrator.Listener() {
+                    @Override
+                    public void onCriticalReady(Map<String, Long> timingsMs) {}
+
+                    @Override
+                    public void onAllDone(Map<String, Long> timingsMs) {
+                        timings.set(timingsMs);
+                        all.countDown();
+                    }
+                });
+
+        assertTrue(all.await(1, TimeUnit.SECONDS));
+        assertEquals(Long.valueOf(12), timings.get().get("firebase"));
+        assertEquals(Long.valueOf(StartupOrchestrator.FAILED), timings.get().get("broken"));
+        executor.shutdown();
+    }
+}
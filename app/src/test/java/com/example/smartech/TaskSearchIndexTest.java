@@ -0,0 +1,83 @@
+package com.example.smartech;
+
+import android.content.Context;
+import android.os.Looper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricTestRunner.class)
+public class TaskSearchIndexTest {
+
+    private static final String USER_ID = "test";
+
+    private Context context;
+    private TaskSearchIndex index;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.getApplication();
+        index = new TaskSearchIndex(context, USER_ID);
+        index.upsertNow(Arrays.asList(
+                new TaskStore.PlannerTask("a", "buy milk", 1, 10),
+                new TaskStore.PlannerTask("b", "buy bread", 2, 10),
+                new TaskStore.PlannerTask("c", "call the pharmacy", 3, 20)));
+    }
+
+    @After
+    public void tearDown() {
+        index.close();
+        shadowOf(Looper.getMainLooper()).idle();
+        context.deleteDatabase("task_search_" + USER_ID + ".db");
+    }
+
+    @Test
+    public void retainOnly_dropsTasksDeletedElsewhere() {
+        index.retainOnlyNow(new HashSet<>(Arrays.asList("a", "c")));
+
+        List<TaskStore.PlannerTask> results = index.searchNow("buy", 5);
+        assertEquals(1, results.size());
+        assertEquals("a", results.get(0).id);
+        assertEquals(1, index.searchNow("pharmacy", 5).size());
+    }
+
+    @Test
+    public void search_ignoresStopWordsInTheQuery() {
+        assertEquals("pharmacy*", TaskSearchIndex.toMatchExpression("the pharmacy"));
+        index.upsertNow(Collections.singletonList(new TaskStore.PlannerTask("d", "pharmacy pickup", 4, 10)));
+
+        assertEquals(2, index.searchNow("the pharmacy", 5).size());
+    }
+
+    @Test
+    public void deleteNow_removesTextAndMetadata() {
+        index.deleteNow(Collections.singletonList("b"));
+
+        assertTrue(index.searchNow("bread", 5).isEmpty());
+        index.upsertNow(Collections.singletonList(new TaskStore.PlannerTask("d", "buy bread", 4, 10)));
+        assertEquals("d", index.searchNow("bread", 5).get(0).id);
+    }
+
+    @Test
+    public void callsAfterClose_areDroppedInsteadOfRejected() {
+        index.close();
+
+        index.upsertAll(Collections.singletonList(new TaskStore.PlannerTask("d", "late page", 4, 10)));
+        index.deleteAll(Collections.singletonList("a"));
+        index.search("milk", 5, results -> fail("no results after close"));
+        index.close();
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.smartech;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TaskStoreTest {
+
+    // A Wednesday, so the next day is in the same week wherever the week starts.
+    private static long at(int day, int hour, int minute) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(2026, Calendar.OCTOBER, day, hour, minute);
+        return calendar.getTimeInMillis();
+    }
+
+    @Test
+    public void taskDueToday_isStillListedAfterMidnight() {
+        long beforeMidnight = at(21, 23, 59);
+        long afterMidnight = at(22, 0, 1);
+        TaskStore.PlannerTask task = new TaskStore.PlannerTask("a", "water plants",
+                beforeMidnight, TaskStore.startOfDay(beforeMidnight, 0));
+
+        assertTrue(task.dueAt < TaskStore.scopeEnd(TaskStore.Scope.TODAY, beforeMidnight));
+        assertTrue(task.dueAt < TaskStore.scopeEnd(TaskStore.Scope.TODAY, afterMidnight));
+        assertTrue(task.dueAt < TaskStore.scopeEnd(TaskStore.Scope.WEEK, afterMidnight));
+    }
+
+    @Test
+    public void backfilledLegacyTask_isStillListedDaysLater() {
+        long backfilledAt = at(14, 10, 0);
+        long dueAt = TaskStore.startOfDay(backfilledAt, 0);
+
+        assertTrue(dueAt < TaskStore.scopeEnd(TaskStore.Scope.TODAY, at(21, 9, 0)));
+    }
+
+    @Test
+    public void tomorrowsTask_isOnlyInTheWeekScope() {
+        long now = at(21, 12, 0);
+        long tomorrow = TaskStore.startOfDay(now, 1);
+
+        assertFalse(tomorrow < TaskStore.scopeEnd(TaskStore.Scope.TODAY, now));
+        assertTrue(tomorrow < TaskStore.scopeEnd(TaskStore.Scope.WEEK, now));
+        assertTrue("a new day starts the new scope",
+                tomorrow < TaskStore.scopeEnd(TaskStore.Scope.TODAY, at(22, 0, 1)));
+    }
+
+    @Test
+    public void leftoverTasks_areNumberedBeforeTodaysTasks() {
+        long now = at(22, 9, 0);
+        TaskStore.PlannerTask today = new TaskStore.PlannerTask("b", "call mom", now, TaskStore.startOfDay(now, 0));
+        TaskStore.PlannerTask yesterday = new TaskStore.PlannerTask("a", "buy milk",
+                at(21, 20, 0), TaskStore.startOfDay(now, -1));
+        List<TaskStore.PlannerTask> tasks = new ArrayList<>(Arrays.asList(today, yesterday));
+
+        Collections.sort(tasks, TaskStore.TASK_ORDER);
+
+        assertSame(yesterday, tasks.get(0));
+        assertSame(today, tasks.get(1));
+    }
+}